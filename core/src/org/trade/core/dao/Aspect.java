@@ -130,6 +130,17 @@ public abstract class Aspect extends Object implements Serializable {
 		this.dirty = dirty;
 	}
 
+	/**
+	 * Method clone. Used by AspectCache, subclasses that are held in the cache
+	 * implement Cloneable.
+	 * 
+	 * @return Object
+	 * @throws CloneNotSupportedException
+	 */
+	public Object clone() throws CloneNotSupportedException {
+		return super.clone();
+	}
+
 	/**
 	 * Method equals.
 	 * 
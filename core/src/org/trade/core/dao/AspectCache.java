@@ -0,0 +1,454 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.core.dao;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.lookup.DBTableLookupServiceProvider;
+import org.trade.core.properties.ConfigProperties;
+
+/**
+ * A process wide cache of reference data read from the database e.g.
+ * contracts, strategies and portfolios. Each cache is a region that holds the
+ * results of one or more finders by key and depends on a set of Aspect
+ * classes. When an Aspect of one of these classes is saved or removed see
+ * AspectHome the region is cleared and its version incremented. A result
+ * read from the database while the region was being cleared is not added.
+ * The decode lookups built from the class are cleared at the same time.
+ * 
+ * A region can instead name the owner of an Aspect class see addOwner(). When
+ * an Aspect of that class is saved or removed only the results that hold its
+ * owner are removed e.g. a TradePosition only removes its Contract.
+ * 
+ * The results are Aspects or lists of Aspects. A copy made with the Aspect's
+ * clone() is held and a new copy is returned on each hit so the cached values
+ * cannot be changed by the caller. The copies share any objects that clone()
+ * does not copy, these must not be changed. Null results and results that
+ * cannot be copied are not held. While a UnitOfWork is open on the thread the
+ * cache is not used so the unit of work sees its own changes.
+ * 
+ * When trade.aspect.cache is false every lookup reads the database.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class AspectCache {
+
+	private final static Logger _log = LoggerFactory.getLogger(AspectCache.class);
+
+	private static boolean _enabled = false;
+
+	private static final List<AspectCache> _regions = new CopyOnWriteArrayList<AspectCache>();
+
+	static {
+		try {
+			_enabled = ConfigProperties.getPropAsBoolean("trade.aspect.cache");
+		} catch (IOException ex) {
+			throw new IllegalArgumentException("Error initializing AspectCache Msg: " + ex.getMessage());
+		}
+	}
+
+	private final String name;
+	private final Class<?>[] dependsOn;
+	private final boolean enabled;
+	private final ConcurrentHashMap<Object, Object> entries = new ConcurrentHashMap<Object, Object>();
+	private final ConcurrentHashMap<Class<?>, Owner> owners = new ConcurrentHashMap<Class<?>, Owner>();
+	private final AtomicLong version = new AtomicLong(0);
+	private final AtomicLong hits = new AtomicLong(0);
+	private final AtomicLong misses = new AtomicLong(0);
+
+	/**
+	 * Constructor for AspectCache.
+	 * 
+	 * @param name
+	 *            String
+	 * @param enabled
+	 *            boolean
+	 * @param dependsOn
+	 *            Class<?>[]
+	 */
+	private AspectCache(String name, boolean enabled, Class<?>... dependsOn) {
+		this.name = name;
+		this.enabled = enabled;
+		this.dependsOn = dependsOn;
+	}
+
+	/**
+	 * Method create. Create a region using trade.aspect.cache.
+	 * 
+	 * @param name
+	 *            String
+	 * @param dependsOn
+	 *            Class<?>... the Aspect classes whose changes clear the
+	 *            region.
+	 * @return AspectCache
+	 */
+	public static AspectCache create(String name, Class<?>... dependsOn) {
+		return create(name, _enabled, dependsOn);
+	}
+
+	/**
+	 * Method create.
+	 * 
+	 * @param name
+	 *            String
+	 * @param enabled
+	 *            boolean false to always read the database.
+	 * @param dependsOn
+	 *            Class<?>... the Aspect classes whose changes clear the
+	 *            region.
+	 * @return AspectCache
+	 */
+	public static AspectCache create(String name, boolean enabled, Class<?>... dependsOn) {
+		AspectCache region = new AspectCache(name, enabled, dependsOn);
+		_regions.add(region);
+		return region;
+	}
+
+	/**
+	 * Method addOwner. When an Aspect of the class is saved or removed only
+	 * the results that hold its owner are removed from the region.
+	 * 
+	 * @param type
+	 *            Class<?> the class of the Aspects that are owned.
+	 * @param owner
+	 *            Owner
+	 * @return AspectCache this region.
+	 */
+	public AspectCache addOwner(Class<?> type, Owner owner) {
+		this.owners.put(type, owner);
+		return this;
+	}
+
+	/**
+	 * Method get.
+	 * 
+	 * @param key
+	 *            Object
+	 * @return Object a copy of the cached result or null if it is not
+	 *         cached.
+	 */
+	public Object get(Object key) {
+		if (!this.enabled || UnitOfWork.isActive())
+			return null;
+		Object value = this.entries.get(key);
+		if (null == value) {
+			this.misses.incrementAndGet();
+			return null;
+		}
+		try {
+			Object result = copy(value);
+			this.hits.incrementAndGet();
+			return result;
+		} catch (CloneNotSupportedException ex) {
+			_log.warn("AspectCache " + this.name + " could not copy key: " + key + " Msg: " + ex.getMessage());
+			this.entries.remove(key, value);
+			this.misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Method getVersion. Get the version before reading the database and pass
+	 * it to put().
+	 * 
+	 * @return long
+	 */
+	public long getVersion() {
+		return this.version.get();
+	}
+
+	/**
+	 * Method put. Hold a copy of the result if the region has not been
+	 * cleared since the version was read.
+	 * 
+	 * @param key
+	 *            Object
+	 * @param value
+	 *            Object the result read from the database.
+	 * @param version
+	 *            long see getVersion().
+	 */
+	public void put(Object key, Object value, long version) {
+		if (!this.enabled || null == value || UnitOfWork.isActive())
+			return;
+		try {
+			Object copy = copy(value);
+			if (this.version.get() == version) {
+				this.entries.put(key, copy);
+				/*
+				 * Cleared while we were adding.
+				 */
+				if (this.version.get() != version)
+					this.entries.remove(key, copy);
+			}
+		} catch (CloneNotSupportedException ex) {
+			_log.debug("AspectCache " + this.name + " could not hold key: " + key + " Msg: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Method clear. Clear the region and increment its version.
+	 */
+	public void clear() {
+		this.version.incrementAndGet();
+		this.entries.clear();
+	}
+
+	/**
+	 * Method removeOwner. Remove the results that hold the Aspect with the id
+	 * and increment the version. If the id is not known the region is
+	 * cleared.
+	 * 
+	 * @param id
+	 *            Integer
+	 */
+	private void removeOwner(Integer id) {
+		if (null == id) {
+			clear();
+			return;
+		}
+		this.version.incrementAndGet();
+		for (Iterator<Map.Entry<Object, Object>> iter = this.entries.entrySet().iterator(); iter.hasNext();) {
+			if (holds(iter.next().getValue(), id))
+				iter.remove();
+		}
+	}
+
+	/**
+	 * Method size.
+	 * 
+	 * @return int
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Method getHits.
+	 * 
+	 * @return long
+	 */
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Method getMisses.
+	 * 
+	 * @return long
+	 */
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Method getHitRatio.
+	 * 
+	 * @return double the hits as a percentage of the lookups.
+	 */
+	public double getHitRatio() {
+		long lookups = getHits() + getMisses();
+		if (lookups == 0)
+			return 0;
+		return (getHits() * 100d) / lookups;
+	}
+
+	/**
+	 * Method getStatistics.
+	 * 
+	 * @return String
+	 */
+	public String getStatistics() {
+		return this.name + " hits: " + getHits() + " misses: " + getMisses() + " ratio: "
+				+ Math.round(getHitRatio()) + "% entries: " + size() + " version: " + getVersion();
+	}
+
+	/**
+	 * Method getAllStatistics.
+	 * 
+	 * @return String the statistics for every region.
+	 */
+	public static String getAllStatistics() {
+		StringBuilder statistics = new StringBuilder("AspectCache");
+		for (AspectCache region : _regions) {
+			statistics.append(" [" + region.getStatistics() + "]");
+		}
+		return statistics.toString();
+	}
+
+	/**
+	 * Method invalidate. Clear the regions that depend on the class. If a
+	 * UnitOfWork is open they are cleared again when it commits.
+	 * 
+	 * @param type
+	 *            Class<?> the class of the Aspect that was saved or removed.
+	 */
+	public static void invalidate(Class<?> type) {
+		clearRegions(type);
+		UnitOfWork.addChange(type);
+	}
+
+	/**
+	 * Method invalidate. Clear the regions that depend on the class of the
+	 * Aspect and remove its owner from the regions that name one. If a
+	 * UnitOfWork is open this is done again when it commits.
+	 * 
+	 * @param aspect
+	 *            Aspect the Aspect that was saved or removed.
+	 */
+	public static void invalidate(Aspect aspect) {
+		clearRegions(aspect.getClass());
+		removeOwners(aspect);
+		UnitOfWork.addChange(aspect);
+	}
+
+	/**
+	 * Method removeOwners.
+	 * 
+	 * @param aspect
+	 *            Aspect
+	 */
+	static void removeOwners(Aspect aspect) {
+		for (AspectCache region : _regions) {
+			for (Map.Entry<Class<?>, Owner> entry : region.owners.entrySet()) {
+				if (entry.getKey().isAssignableFrom(aspect.getClass())) {
+					region.removeOwner(entry.getValue().getOwnerId(aspect));
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method clearRegions. Also clears the decode lookups built from the
+	 * class.
+	 * 
+	 * @param type
+	 *            Class<?>
+	 */
+	static void clearRegions(Class<?> type) {
+		DBTableLookupServiceProvider.clearLookup(type);
+		for (AspectCache region : _regions) {
+			for (Class<?> dependency : region.dependsOn) {
+				if (dependency.isAssignableFrom(type)) {
+					if (region.size() > 0)
+						_log.debug("AspectCache clear " + region.getStatistics() + " changed: " + type.getSimpleName());
+					region.clear();
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method clearAll. Clear every region.
+	 */
+	public static void clearAll() {
+		for (AspectCache region : _regions) {
+			region.clear();
+		}
+	}
+
+	/**
+	 * Method copy.
+	 * 
+	 * @param value
+	 *            Object an Aspect or a List of Aspects.
+	 * @return Object a copy made with the Aspect's clone().
+	 * @throws CloneNotSupportedException
+	 *             if the value is not an Aspect or a List or the Aspect is not
+	 *             Cloneable.
+	 */
+	private static Object copy(Object value) throws CloneNotSupportedException {
+		if (value instanceof Aspect)
+			return ((Aspect) value).clone();
+		if (value instanceof List) {
+			List<?> values = (List<?>) value;
+			List<Object> copies = new ArrayList<Object>(values.size());
+			for (Object item : values) {
+				copies.add(copy(item));
+			}
+			return copies;
+		}
+		throw new CloneNotSupportedException(value.getClass().getName());
+	}
+
+	/**
+	 * Method holds.
+	 * 
+	 * @param value
+	 *            Object an Aspect or a List of Aspects.
+	 * @param id
+	 *            Integer
+	 * @return boolean true if the value is or contains an Aspect with the id.
+	 */
+	private static boolean holds(Object value, Integer id) {
+		if (value instanceof Aspect)
+			return id.equals(((Aspect) value).getId());
+		if (value instanceof List) {
+			for (Object item : (List<?>) value) {
+				if (holds(item, id))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the id of the Aspect held in a region that owns a changed Aspect.
+	 */
+	public interface Owner {
+
+		/**
+		 * Method getOwnerId.
+		 * 
+		 * @param aspect
+		 *            Aspect the Aspect that was saved or removed.
+		 * @return Integer the id of its owner or null if it is not known.
+		 */
+		Integer getOwnerId(Aspect aspect);
+	}
+}
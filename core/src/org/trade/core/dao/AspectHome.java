@@ -65,12 +65,13 @@ public class AspectHome {
 	 * @return Aspect
 	 * @throws Exception
 	 */
-	public synchronized <T extends Aspect> T persist(T transientInstance) throws Exception {
+	public <T extends Aspect> T persist(T transientInstance) throws Exception {
 		return persist(transientInstance, false);
 	}
 
 	/**
-	 * Method persist.
+	 * Method persist. Each thread has its own EntityManager so persists run in
+	 * parallel, concurrent updates to the same Aspect fail on its version.
 	 * 
 	 * @param transientInstance
 	 *            Aspect
@@ -80,7 +81,7 @@ public class AspectHome {
 	 * @throws Exception
 	 */
 
-	public synchronized <T extends Aspect> T persist(T transientInstance, boolean overrideVersion) throws Exception {
+	public <T extends Aspect> T persist(T transientInstance, boolean overrideVersion) throws Exception {
 
 		try {
 
@@ -91,6 +92,7 @@ public class AspectHome {
 			if (null == transientInstance.getId()) {
 				entityManager.persist(transientInstance);
 				entityManager.getTransaction().commit();
+				AspectCache.invalidate(transientInstance);
 				transientInstance.setDirty(false);
 				return transientInstance;
 			} else {
@@ -100,6 +102,7 @@ public class AspectHome {
 				}
 				T instance = entityManager.merge(transientInstance);
 				entityManager.getTransaction().commit();
+				AspectCache.invalidate(transientInstance);
 				instance.setDirty(false);
 				return instance;
 			}
@@ -129,6 +132,7 @@ public class AspectHome {
 					entityManager.remove(aspect);
 				}
 				entityManager.getTransaction().commit();
+				AspectCache.invalidate(transientInstance);
 			}
 
 		} catch (Exception re) {
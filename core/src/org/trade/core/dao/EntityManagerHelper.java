@@ -92,13 +92,18 @@ public class EntityManagerHelper {
 	 * <p>
 	 * This method can be called as many times as needed per thread, and it will
 	 * return the same EntityManager instance, until the manager is closed.
+	 * When a UnitOfWork is open on this thread its EntityManager is returned.
 	 * </p>
 	 * 
 	 * 
 	 * @return EntityManager singleton for this thread
 	 */
 	public static EntityManager getEntityManager() {
-		EntityManager manager = threadLocal.get();
+		EntityManager manager = UnitOfWork.getSessionEntityManager();
+		if (null != manager) {
+			return manager;
+		}
+		manager = threadLocal.get();
 		if ((manager == null) || !manager.isOpen()) {
 			manager = factory.createEntityManager();
 			threadLocal.set(manager);
@@ -126,10 +131,14 @@ public class EntityManagerHelper {
 
 	/**
 	 * <p>
-	 * Close the EntityManager and set the thread's instance to null.
+	 * Close the EntityManager and set the thread's instance to null. Does
+	 * nothing while a UnitOfWork is open on this thread.
 	 * </p>
 	 */
 	public static void close() {
+		if (UnitOfWork.isActive()) {
+			return;
+		}
 		EntityManager em = threadLocal.get();
 		if (em != null) {
 			em.close();
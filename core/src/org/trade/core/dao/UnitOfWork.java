@@ -0,0 +1,329 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.core.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.RollbackException;
+
+/**
+ * A unit of work runs many reads and writes in one EntityManager and one
+ * transaction. While a unit of work is open on a thread the Homes, which
+ * each get the EntityManager from EntityManagerHelper and begin, commit and
+ * close it, join the unit of work instead. Their begin, commit and close do
+ * nothing and their rollback marks the unit of work rollback only. The
+ * changes are written when the unit of work commits or when a query needs
+ * them.
+ * 
+ * Entities read in a unit of work stay managed until it closes so later
+ * reads of the same entity are served from the EntityManager.
+ * 
+ * Usage:
+ * 
+ * <pre>
+ * UnitOfWork unitOfWork = UnitOfWork.begin();
+ * try {
+ * 	// Calls to the Homes or the PersistentModel.
+ * 	unitOfWork.commit();
+ * } finally {
+ * 	unitOfWork.close();
+ * }
+ * </pre>
+ * 
+ * A unit of work begun while another is open on the thread joins it. Only
+ * the outer unit of work commits, an inner one closed without commit marks
+ * the whole unit of work rollback only.
+ * 
+ * The AspectCache regions that depend on the Aspects saved or removed in the
+ * unit of work are cleared again once it commits.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class UnitOfWork implements AutoCloseable {
+
+	private static final ThreadLocal<Session> _session = new ThreadLocal<Session>();
+
+	private final Session session;
+	private final boolean outer;
+	private boolean completed = false;
+
+	/**
+	 * Constructor for UnitOfWork.
+	 * 
+	 * @param session
+	 *            Session
+	 * @param outer
+	 *            boolean
+	 */
+	private UnitOfWork(Session session, boolean outer) {
+		this.session = session;
+		this.outer = outer;
+	}
+
+	/**
+	 * Method begin. Begin a unit of work on this thread or join the one that
+	 * is open.
+	 * 
+	 * @return UnitOfWork
+	 */
+	public static UnitOfWork begin() {
+		Session session = _session.get();
+		if (null != session) {
+			return new UnitOfWork(session, false);
+		}
+		return begin(EntityManagerHelper.getLocalEntityManager());
+	}
+
+	/**
+	 * Method begin. Begin a unit of work on this thread using the
+	 * EntityManager.
+	 * 
+	 * @param entityManager
+	 *            EntityManager
+	 * @return UnitOfWork
+	 */
+	static UnitOfWork begin(EntityManager entityManager) {
+		Session session = new Session(entityManager);
+		entityManager.getTransaction().begin();
+		_session.set(session);
+		return new UnitOfWork(session, true);
+	}
+
+	/**
+	 * Method isActive.
+	 * 
+	 * @return boolean true if a unit of work is open on this thread.
+	 */
+	public static boolean isActive() {
+		return null != _session.get();
+	}
+
+	/**
+	 * Method addChange. Used by AspectCache.
+	 * 
+	 * @param type
+	 *            Class<?> the class of an Aspect saved or removed.
+	 */
+	static void addChange(Class<?> type) {
+		Session session = _session.get();
+		if (null != session)
+			session.changes.add(type);
+	}
+
+	/**
+	 * Method addChange. Used by AspectCache.
+	 * 
+	 * @param aspect
+	 *            Aspect an Aspect saved or removed.
+	 */
+	static void addChange(Aspect aspect) {
+		Session session = _session.get();
+		if (null != session) {
+			session.changes.add(aspect.getClass());
+			session.changedAspects.add(aspect);
+		}
+	}
+
+	/**
+	 * Method getSessionEntityManager. Used by EntityManagerHelper.
+	 * 
+	 * @return EntityManager the EntityManager of the unit of work open on
+	 *         this thread or null.
+	 */
+	static EntityManager getSessionEntityManager() {
+		Session session = _session.get();
+		if (null == session)
+			return null;
+		return session.sessionManager;
+	}
+
+	/**
+	 * Method getEntityManager.
+	 * 
+	 * @return EntityManager the EntityManager the Homes use in this unit of
+	 *         work.
+	 */
+	public EntityManager getEntityManager() {
+		return this.session.sessionManager;
+	}
+
+	/**
+	 * Method setRollbackOnly.
+	 */
+	public void setRollbackOnly() {
+		this.session.rollbackOnly = true;
+	}
+
+	/**
+	 * Method isRollbackOnly.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isRollbackOnly() {
+		return this.session.rollbackOnly;
+	}
+
+	/**
+	 * Method commit. Commit the transaction if this is the outer unit of
+	 * work.
+	 * 
+	 * @throws RollbackException
+	 *             if the unit of work was marked rollback only or the commit
+	 *             failed.
+	 */
+	public void commit() {
+		this.completed = true;
+		if (!this.outer)
+			return;
+		EntityTransaction transaction = this.session.entityManager.getTransaction();
+		if (this.session.rollbackOnly) {
+			if (transaction.isActive())
+				transaction.rollback();
+			throw new RollbackException("Unit of work was marked rollback only.");
+		}
+		transaction.commit();
+		for (Class<?> type : this.session.changes) {
+			AspectCache.clearRegions(type);
+		}
+		for (Aspect aspect : this.session.changedAspects) {
+			AspectCache.removeOwners(aspect);
+		}
+	}
+
+	/**
+	 * Method close. Roll back if the unit of work was not committed and
+	 * close the EntityManager if this is the outer unit of work.
+	 */
+	public void close() {
+		if (!this.completed) {
+			this.session.rollbackOnly = true;
+		}
+		if (!this.outer)
+			return;
+		try {
+			EntityTransaction transaction = this.session.entityManager.getTransaction();
+			if (transaction.isActive())
+				transaction.rollback();
+		} finally {
+			_session.remove();
+			if (this.session.entityManager.isOpen())
+				this.session.entityManager.close();
+		}
+	}
+
+	/**
+	 * The EntityManager shared by the units of work open on a thread.
+	 */
+	private static class Session {
+
+		private final EntityManager entityManager;
+		private final EntityManager sessionManager;
+		private final EntityTransaction sessionTransaction;
+		private final Set<Class<?>> changes = new HashSet<Class<?>>();
+		private final List<Aspect> changedAspects = new ArrayList<Aspect>();
+		private boolean rollbackOnly = false;
+
+		/**
+		 * Constructor for Session.
+		 * 
+		 * @param entityManager
+		 *            EntityManager
+		 */
+		private Session(final EntityManager entityManager) {
+			this.entityManager = entityManager;
+
+			this.sessionTransaction = (EntityTransaction) Proxy.newProxyInstance(
+					EntityTransaction.class.getClassLoader(), new Class<?>[] { EntityTransaction.class },
+					new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							String name = method.getName();
+							if ("begin".equals(name) || "commit".equals(name)) {
+								return null;
+							} else if ("rollback".equals(name) || "setRollbackOnly".equals(name)) {
+								rollbackOnly = true;
+								return null;
+							} else if ("getRollbackOnly".equals(name)) {
+								return rollbackOnly;
+							}
+							return delegate(entityManager.getTransaction(), method, args);
+						}
+					});
+
+			this.sessionManager = (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(),
+					new Class<?>[] { EntityManager.class }, new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							String name = method.getName();
+							if ("close".equals(name)) {
+								return null;
+							} else if ("getTransaction".equals(name)) {
+								return sessionTransaction;
+							}
+							return delegate(entityManager, method, args);
+						}
+					});
+		}
+
+		/**
+		 * Method delegate.
+		 * 
+		 * @param target
+		 *            Object
+		 * @param method
+		 *            Method
+		 * @param args
+		 *            Object[]
+		 * @return Object
+		 * @throws Throwable
+		 */
+		private static Object delegate(Object target, Method method, Object[] args) throws Throwable {
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException ex) {
+				throw ex.getCause();
+			}
+		}
+	}
+}
@@ -38,9 +38,12 @@ package org.trade.core.lookup;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
@@ -57,14 +60,31 @@ import org.trade.core.valuetype.Decode;
  * Implementation of the LookupServiceProvider interface that uses the
  * devtool.properties.ConfigProperties object for obtaining Lookup information.
  * 
+ * Lookups are cached by lookup name, LookupQualifier and optional. Reads from
+ * the cache do not lock, each lookup is loaded once while other lookups are
+ * read or loaded. When an Aspect is saved or removed the lookups built from
+ * its class are cleared see clearLookup(Class).
+ * 
  * @author Simon Allen
  */
 public class DBTableLookupServiceProvider implements LookupServiceProvider {
 	/*
-	 * This will be a hashtable of hashtables of Lookup objects. The first key
-	 * is the lookup name and the second key is the LookupQualifier.
+	 * The cached lookups. Use lookupName|qualifier|optional as key.
+	 */
+	private static final ConcurrentHashMap<String, CachedLookup> _lookups = new ConcurrentHashMap<String, CachedLookup>();
+
+	/*
+	 * One lookup is loaded at a time per key.
 	 */
-	private static Hashtable<String, Hashtable<String, Lookup>> _lookups = new Hashtable<String, Hashtable<String, Lookup>>();
+	private static final ConcurrentHashMap<String, Object> _lookupLocks = new ConcurrentHashMap<String, Object>();
+
+	/*
+	 * The DAO classes lookups are built from and a version that is
+	 * incremented each time one of them changes. A lookup loaded while its
+	 * DAO class changed is not cached.
+	 */
+	private static final Set<Class<?>> _daoClasses = ConcurrentHashMap.newKeySet();
+	private static final AtomicLong _version = new AtomicLong(0);
 
 	/**
 	 * Default Constructor
@@ -72,10 +92,52 @@ public class DBTableLookupServiceProvider implements LookupServiceProvider {
 	public DBTableLookupServiceProvider() {
 	}
 
+	/**
+	 * Method clearLookup. Clear all the lookups.
+	 */
 	public static void clearLookup() {
+		_version.incrementAndGet();
 		_lookups.clear();
 	}
 
+	/**
+	 * Method clearLookup. Clear the lookups with this name.
+	 * 
+	 * @param lookupName
+	 *            String
+	 */
+	public static void clearLookup(String lookupName) {
+		_version.incrementAndGet();
+		for (Iterator<CachedLookup> iter = _lookups.values().iterator(); iter.hasNext();) {
+			if (iter.next().lookupName.equals(lookupName))
+				iter.remove();
+		}
+	}
+
+	/**
+	 * Method clearLookup. Clear the lookups built from this class or one of
+	 * its super classes.
+	 * 
+	 * @param daoClass
+	 *            Class<?> the class of an Aspect that was saved or removed.
+	 */
+	public static void clearLookup(Class<?> daoClass) {
+		boolean found = false;
+		for (Class<?> item : _daoClasses) {
+			if (item.isAssignableFrom(daoClass)) {
+				found = true;
+				break;
+			}
+		}
+		if (!found)
+			return;
+		_version.incrementAndGet();
+		for (Iterator<CachedLookup> iter = _lookups.values().iterator(); iter.hasNext();) {
+			if (iter.next().daoClass.isAssignableFrom(daoClass))
+				iter.remove();
+		}
+	}
+
 	/**
 	 * Method getLookup.
 	 * 
@@ -91,143 +153,181 @@ public class DBTableLookupServiceProvider implements LookupServiceProvider {
 	 * @see org.trade.core.lookup.LookupServiceProvider#getLookup(String,
 	 *      LookupQualifier)
 	 */
-	public synchronized Lookup getLookup(String lookupName, LookupQualifier qualifier, boolean optional)
+	public Lookup getLookup(String lookupName, LookupQualifier qualifier, boolean optional)
 			throws LookupException {
-		Lookup lookup = getCachedLookup(lookupName, qualifier);
+		String key = lookupName + "|" + qualifier + "|" + optional;
+		Lookup lookup = getCachedLookup(key);
 
 		if (null == lookup) {
-			try {
-				Vector<Vector<Object>> rows = new Vector<Vector<Object>>();
-				Vector<String> colNames = new Vector<String>();
-				Enumeration<?> en = ConfigProperties.getPropAsEnumeration(lookupName + "_DBTable");
-
-				while (en.hasMoreElements()) {
-					colNames.addElement((String) en.nextElement());
+			Object lock = _lookupLocks.get(key);
+			if (null == lock) {
+				lock = new Object();
+				Object currLock = _lookupLocks.putIfAbsent(key, lock);
+				if (null != currLock)
+					lock = currLock;
+			}
+			synchronized (lock) {
+				lookup = getCachedLookup(key);
+				if (null == lookup) {
+					lookup = loadLookup(key, lookupName, qualifier, optional);
 				}
+			}
+		}
 
-				// Have all of the columns - want to get a vector for each
-				// column value
-				Vector<Enumeration<?>> colRows = new Vector<Enumeration<?>>();
-				int i;
-				int colNamesSize = colNames.size();
+		return lookup;
+	}
 
-				for (i = 0; i < colNamesSize; i++) {
-					colRows.addElement(ConfigProperties.getPropAsEnumeration(colNames.elementAt(i)));
-				}
+	/**
+	 * Method loadLookup.
+	 * 
+	 * @param key
+	 *            String
+	 * @param lookupName
+	 *            String
+	 * @param qualifier
+	 *            LookupQualifier
+	 * @param optional
+	 *            boolean
+	 * @return Lookup
+	 */
+	private Lookup loadLookup(String key, String lookupName, LookupQualifier qualifier, boolean optional) {
+		Lookup lookup = null;
+		Class<?> daoClass = null;
+		long version = _version.get();
+		try {
+			Vector<Vector<Object>> rows = new Vector<Vector<Object>>();
+			Vector<String> colNames = new Vector<String>();
+			Enumeration<?> en = ConfigProperties.getPropAsEnumeration(lookupName + "_DBTable");
 
-				// Now construct a Vector Vector - representing the table of
-				// data
-				boolean exit = false;
+			while (en.hasMoreElements()) {
+				colNames.addElement((String) en.nextElement());
+			}
 
-				do {
-					Vector<Object> row = new Vector<Object>();
-					boolean foundOne = false;
-					boolean addIt = true;
-					int colRowsSize = colRows.size();
+			// Have all of the columns - want to get a vector for each
+			// column value
+			Vector<Enumeration<?>> colRows = new Vector<Enumeration<?>>();
+			int i;
+			int colNamesSize = colNames.size();
 
-					for (i = 0; i < colRowsSize; i++) {
-						Object value = null;
+			for (i = 0; i < colNamesSize; i++) {
+				colRows.addElement(ConfigProperties.getPropAsEnumeration(colNames.elementAt(i)));
+			}
 
-						en = colRows.elementAt(i);
+			// Now construct a Vector Vector - representing the table of
+			// data
+			boolean exit = false;
 
-						if (en.hasMoreElements()) {
-							foundOne = true;
-							value = en.nextElement();
+			do {
+				Vector<Object> row = new Vector<Object>();
+				boolean foundOne = false;
+				boolean addIt = true;
+				int colRowsSize = colRows.size();
 
-							row.addElement(value);
-						} else {
-							// Represent an empty value
-							row.addElement("");
-						}
+				for (i = 0; i < colRowsSize; i++) {
+					Object value = null;
 
-						// Check to see if the returned lookup is to be
-						// constrained
-						if (foundOne && (qualifier != null)) {
-							Object qualVal = qualifier.getValue("" + colNames.elementAt(i));
+					en = colRows.elementAt(i);
 
-							if (null != qualVal) {
-								if (!qualVal.equals(value)) {
-									addIt = false;
-								}
-							}
-						}
-					}
+					if (en.hasMoreElements()) {
+						foundOne = true;
+						value = en.nextElement();
 
-					if (foundOne) {
-						if (addIt) {
-							rows.addElement(row);
-						}
+						row.addElement(value);
 					} else {
-						exit = true;
-					}
-				} while (!exit);
-
-				// There should be only one row per table that
-				// contains the DAO name and method name for the display name
-				String dao = null;
-				String type = null;
-				String methodName = null;
-				int rowsSize = rows.size();
-				for (i = 0; i < rowsSize; i++) {
-					Vector<Object> row = rows.elementAt(i);
-					int rowSize = row.size();
-
-					for (int y = 0; y < rowSize; y++) {
-
-						if ("DAO_DECODE_TYPE".equals(colNames.elementAt(y))) {
-							type = (String) row.elementAt(y);
-
-						} else if ("DAO_DECODE_CODE".equals(colNames.elementAt(y))) {
-							dao = (String) row.elementAt(y);
-						} else if ("DAO_DECODE_DISPLAY_NAME".equals(colNames.elementAt(y))) {
-							methodName = (String) row.elementAt(y);
-						}
-					}
-					// Clear the first row and add the objects and display name
-					// from the DB
-					rows.clear();
-					/*
-					 * Add the None selected row.
-					 */
-					if (optional) {
-						Vector<Object> newRowNone = new Vector<Object>();
-						Class<?> clazz = Class.forName(dao);
-						Object daoObjectNone = clazz.newInstance();
-						newRowNone.add(type);
-						newRowNone.add(daoObjectNone);
-						newRowNone.add(Decode.NONE);
-						rows.add(newRowNone);
+						// Represent an empty value
+						row.addElement("");
 					}
 
-					List<?> codes = getCodes(dao);
-					for (Object daoObject : codes) {
-
-						Method method = Reflector.findMethod(daoObject.getClass(), methodName, null);
-						if (null != method) {
-							Object[] o = new Object[0];
-							Object displayNameValue = method.invoke(daoObject, o);
-							if (null != displayNameValue) {
-								Vector<Object> newRow = new Vector<Object>();
-								newRow.add(type);
-								newRow.add(daoObject);
-								newRow.add(displayNameValue);
-								rows.add(newRow);
+					// Check to see if the returned lookup is to be
+					// constrained
+					if (foundOne && (qualifier != null)) {
+						Object qualVal = qualifier.getValue("" + colNames.elementAt(i));
+
+						if (null != qualVal) {
+							if (!qualVal.equals(value)) {
+								addIt = false;
 							}
 						}
 					}
 				}
 
-				// If rows where found then I managed to provide the lookup
-				if (rows.size() > 0) {
-					lookup = new PropertiesLookup(colNames, rows);
+				if (foundOne) {
+					if (addIt) {
+						rows.addElement(row);
+					}
+				} else {
+					exit = true;
+				}
+			} while (!exit);
+
+			// There should be only one row per table that
+			// contains the DAO name and method name for the display name
+			String dao = null;
+			String type = null;
+			String methodName = null;
+			int rowsSize = rows.size();
+			for (i = 0; i < rowsSize; i++) {
+				Vector<Object> row = rows.elementAt(i);
+				int rowSize = row.size();
+
+				for (int y = 0; y < rowSize; y++) {
+
+					if ("DAO_DECODE_TYPE".equals(colNames.elementAt(y))) {
+						type = (String) row.elementAt(y);
+
+					} else if ("DAO_DECODE_CODE".equals(colNames.elementAt(y))) {
+						dao = (String) row.elementAt(y);
+					} else if ("DAO_DECODE_DISPLAY_NAME".equals(colNames.elementAt(y))) {
+						methodName = (String) row.elementAt(y);
+					}
+				}
+				// Clear the first row and add the objects and display name
+				// from the DB
+				rows.clear();
+				daoClass = Class.forName(dao);
+				if (_daoClasses.add(daoClass))
+					version = _version.get();
+				/*
+				 * Add the None selected row.
+				 */
+				if (optional) {
+					Vector<Object> newRowNone = new Vector<Object>();
+					Object daoObjectNone = daoClass.newInstance();
+					newRowNone.add(type);
+					newRowNone.add(daoObjectNone);
+					newRowNone.add(Decode.NONE);
+					rows.add(newRowNone);
+				}
+
+				List<?> codes = getCodes(dao);
+				for (Object daoObject : codes) {
+
+					Method method = Reflector.findMethod(daoObject.getClass(), methodName, null);
+					if (null != method) {
+						Object[] o = new Object[0];
+						Object displayNameValue = method.invoke(daoObject, o);
+						if (null != displayNameValue) {
+							Vector<Object> newRow = new Vector<Object>();
+							newRow.add(type);
+							newRow.add(daoObject);
+							newRow.add(displayNameValue);
+							rows.add(newRow);
+						}
+					}
 				}
-			} catch (Throwable t) {
-				// If this occurs means this provider is unable to provide
-				// the lookup ignore the exception.
 			}
-			if (null != lookup) {
-				addLookupToCache(lookupName, qualifier, lookup);
+
+			// If rows where found then I managed to provide the lookup
+			if (rows.size() > 0) {
+				lookup = new PropertiesLookup(colNames, rows);
 			}
+		} catch (Throwable t) {
+			// If this occurs means this provider is unable to provide
+			// the lookup ignore the exception.
+		}
+		if (null != lookup && null != daoClass) {
+			addLookupToCache(key, new CachedLookup(lookupName, daoClass, lookup), version);
+			lookup = (Lookup) lookup.clone();
 		}
 
 		return lookup;
@@ -236,18 +336,16 @@ public class DBTableLookupServiceProvider implements LookupServiceProvider {
 	/**
 	 * Returns null if the lookup is not in the cache.
 	 * 
-	 * @param lookupName
+	 * @param key
 	 *            String
-	 * @param qualifier
-	 *            LookupQualifier
 	 * @return Lookup
 	 */
-	private Lookup getCachedLookup(String lookupName, LookupQualifier qualifier) {
+	private Lookup getCachedLookup(String key) {
 		Lookup lookup = null;
-		Hashtable<?, ?> lookupsByQualifier = _lookups.get(lookupName);
+		CachedLookup cachedLookup = _lookups.get(key);
 
-		if (null != lookupsByQualifier) {
-			lookup = (Lookup) lookupsByQualifier.get(qualifier.toString());
+		if (null != cachedLookup) {
+			lookup = cachedLookup.lookup;
 		}
 
 		/*
@@ -262,24 +360,25 @@ public class DBTableLookupServiceProvider implements LookupServiceProvider {
 	}
 
 	/**
-	 * Method addLookupToCache.
+	 * Method addLookupToCache. The lookup is not cached if a lookup was
+	 * cleared since the version was read.
 	 * 
-	 * @param lookupName
+	 * @param key
 	 *            String
-	 * @param qualifier
-	 *            LookupQualifier
-	 * @param lookup
-	 *            Lookup
+	 * @param cachedLookup
+	 *            CachedLookup
+	 * @param version
+	 *            long
 	 */
-	private synchronized void addLookupToCache(String lookupName, LookupQualifier qualifier, Lookup lookup) {
-		Hashtable<String, Lookup> lookupsByQualifier = _lookups.get(lookupName);
-
-		if (null == lookupsByQualifier) {
-			lookupsByQualifier = new Hashtable<String, Lookup>();
-			_lookups.put(lookupName, lookupsByQualifier);
-		}
-
-		lookupsByQualifier.put(qualifier.toString(), lookup);
+	private void addLookupToCache(String key, CachedLookup cachedLookup, long version) {
+		if (_version.get() != version)
+			return;
+		_lookups.put(key, cachedLookup);
+		/*
+		 * Cleared while we were adding.
+		 */
+		if (_version.get() != version)
+			_lookups.remove(key, cachedLookup);
 	}
 
 	/**
@@ -290,7 +389,7 @@ public class DBTableLookupServiceProvider implements LookupServiceProvider {
 	 * @return List<?>
 	 * @throws ClassNotFoundException
 	 */
-	private synchronized List<?> getCodes(String className) throws ClassNotFoundException {
+	private List<?> getCodes(String className) throws ClassNotFoundException {
 
 		try {
 			EntityManager entityManager = EntityManagerHelper.getEntityManager();
@@ -315,4 +414,31 @@ public class DBTableLookupServiceProvider implements LookupServiceProvider {
 		}
 		return new ArrayList<Object>(0);
 	}
+
+	/**
+	 * A cached lookup with the lookup name and the DAO class it was built
+	 * from.
+	 */
+	private static class CachedLookup {
+
+		private final String lookupName;
+		private final Class<?> daoClass;
+		private final Lookup lookup;
+
+		/**
+		 * Constructor for CachedLookup.
+		 * 
+		 * @param lookupName
+		 *            String
+		 * @param daoClass
+		 *            Class<?>
+		 * @param lookup
+		 *            Lookup
+		 */
+		CachedLookup(String lookupName, Class<?> daoClass, Lookup lookup) {
+			this.lookupName = lookupName;
+			this.daoClass = daoClass;
+			this.lookup = lookup;
+		}
+	}
 }
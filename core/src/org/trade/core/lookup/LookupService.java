@@ -35,7 +35,7 @@
  */
 package org.trade.core.lookup;
 
-import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @author Simon Allen
@@ -44,7 +44,7 @@ public class LookupService {
 	//
 	// Private Attributes
 	//
-	private static Vector<LookupServiceProvider> _providers = new Vector<LookupServiceProvider>();
+	private static CopyOnWriteArrayList<LookupServiceProvider> _providers = new CopyOnWriteArrayList<LookupServiceProvider>();
 
 	static {
 		addLookupServiceProvider(new PropertyFileLookupServiceProvider());
@@ -68,10 +68,8 @@ public class LookupService {
 		Lookup lookup = null;
 		// Loop through the registered providers and find and try to find one
 		// that can provide the lookup
-		int providersSize = _providers.size();
-
-		for (int i = 0; i < providersSize; i++) {
-			lookup = _providers.elementAt(i).getLookup(lookupName, qualifier, optional);
+		for (LookupServiceProvider provider : _providers) {
+			lookup = provider.getLookup(lookupName, qualifier, optional);
 
 			if (null != lookup) {
 				// Have found a Lookup - don't care if another provider can
@@ -89,9 +87,7 @@ public class LookupService {
 	 *            LookupServiceProvider
 	 */
 	public static void addLookupServiceProvider(LookupServiceProvider provider) {
-		if (!_providers.contains(provider)) {
-			_providers.addElement(provider);
-		}
+		_providers.addIfAbsent(provider);
 	}
 
 	/**
@@ -101,6 +97,6 @@ public class LookupService {
 	 *            LookupServiceProvider
 	 */
 	public static void removeLookupServiceProvider(LookupServiceProvider provider) {
-		_providers.removeElement(provider);
+		_providers.remove(provider);
 	}
 }
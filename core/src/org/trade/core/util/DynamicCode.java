@@ -38,6 +38,8 @@ package org.trade.core.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
@@ -46,20 +48,53 @@ import java.lang.reflect.Proxy;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Compiles and loads classes from source directories and creates proxies
+ * that delegate to the latest version of a class.
+ * 
+ * The source directories of the loaded classes are watched by one background
+ * thread shared by all instances. When a source changes the class is marked
+ * changed and the next call through a proxy reloads it. Until then a call
+ * through a proxy reads a flag and invokes a cached MethodHandle. If the file
+ * system cannot be watched the source file time stamp is checked on each
+ * call.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
  */
 public final class DynamicCode {
 
 	private final static Logger _log = LoggerFactory.getLogger(DynamicCode.class);
+
+	/*
+	 * The watcher and the classes it watches for all instances. The classes
+	 * are held weakly so they go when their DynamicCode and proxies go.
+	 */
+	private static WatchService _watchService = null;
+	private static final Set<Path> _watchedDirs = ConcurrentHashMap.newKeySet();
+	private static final Map<LoadedClass, Boolean> _watchedClasses = Collections
+			.synchronizedMap(new WeakHashMap<LoadedClass, Boolean>());
 	private String compileClasspath;
 	private ClassLoader parentClassLoader;
 	private List<SourceDir> sourceDirs = new ArrayList<SourceDir>();
@@ -137,6 +172,18 @@ public final class DynamicCode {
 	 * @throws Exception
 	 */
 	public Class<?> loadClass(String className) throws Exception {
+		return getLoadedClass(className).clazz;
+	}
+
+	/**
+	 * Method getLoadedClass. Returns the up-to-date dynamic class by name.
+	 * 
+	 * @param className
+	 *            String
+	 * @return LoadedClass
+	 * @throws Exception
+	 */
+	private LoadedClass getLoadedClass(String className) throws Exception {
 
 		LoadedClass loadedClass = null;
 		synchronized (loadedClasses) {
@@ -156,23 +203,24 @@ public final class DynamicCode {
 
 				// compile and load class
 				loadedClass = new LoadedClass(className, src);
+				loadedClass.watched = watch(loadedClass);
 
 				synchronized (loadedClasses) {
 					loadedClasses.put(className, loadedClass);
 				}
 			}
 
-			return loadedClass.clazz;
+			return loadedClass;
 		}
 
 		// subsequent access
 		if (loadedClass.isChanged()) {
 			// unload and load again
 			unload(loadedClass.srcDir);
-			return loadClass(className);
+			return getLoadedClass(className);
 		}
 
-		return loadedClass.clazz;
+		return loadedClass;
 	}
 
 	/**
@@ -204,6 +252,9 @@ public final class DynamicCode {
 			for (Iterator<LoadedClass> iter = loadedClasses.values().iterator(); iter.hasNext();) {
 				LoadedClass loadedClass = iter.next();
 				if (loadedClass.srcDir == src) {
+					// proxies using the class will reload it
+					loadedClass.changed = true;
+					_watchedClasses.remove(loadedClass);
 					iter.remove();
 				}
 			}
@@ -213,6 +264,83 @@ public final class DynamicCode {
 		src.recreateClassLoader();
 	}
 
+	/**
+	 * Method watch. Watch the directory of the class source, starts the
+	 * watcher on first use.
+	 * 
+	 * @param loadedClass
+	 *            LoadedClass
+	 * @return boolean false if the directory cannot be watched.
+	 */
+	private static synchronized boolean watch(LoadedClass loadedClass) {
+		try {
+			if (null == _watchService) {
+				_watchService = FileSystems.getDefault().newWatchService();
+				Thread watcher = new Thread(new Runnable() {
+					public void run() {
+						processEvents();
+					}
+				}, "DynamicCode");
+				watcher.setDaemon(true);
+				watcher.start();
+			}
+			Path dir = loadedClass.srcFile.getParentFile().toPath();
+			if (!_watchedDirs.contains(dir)) {
+				dir.register(_watchService, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+				_watchedDirs.add(dir);
+			}
+			_watchedClasses.put(loadedClass, Boolean.TRUE);
+			// changed before the directory was watched
+			if (loadedClass.srcFile.lastModified() != loadedClass.lastModified) {
+				loadedClass.changed = true;
+			}
+			return true;
+		} catch (IOException | UnsupportedOperationException ex) {
+			_log.warn("Could not watch DynaCode source " + loadedClass.srcFile.getAbsolutePath() + " Msg: "
+					+ ex.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Method processEvents. Marks the classes whose source has changed. Runs
+	 * on the watcher thread.
+	 */
+	private static void processEvents() {
+		while (true) {
+			WatchKey key = null;
+			try {
+				key = _watchService.take();
+			} catch (InterruptedException | ClosedWatchServiceException ex) {
+				return;
+			}
+			Path dir = (Path) key.watchable();
+			for (WatchEvent<?> event : key.pollEvents()) {
+				// all the classes in the directory on overflow
+				Path file = null;
+				if (StandardWatchEventKinds.OVERFLOW != event.kind()) {
+					file = dir.resolve((Path) event.context());
+				}
+				List<LoadedClass> loadedClasses = null;
+				synchronized (_watchedClasses) {
+					loadedClasses = new ArrayList<LoadedClass>(_watchedClasses.keySet());
+				}
+				for (LoadedClass loadedClass : loadedClasses) {
+					Path srcFile = loadedClass.srcFile.toPath();
+					if (dir.equals(srcFile.getParent()) && (null == file || file.equals(srcFile))
+							&& loadedClass.srcFile.lastModified() != loadedClass.lastModified) {
+						_log.debug("DynaCode source changed: " + srcFile);
+						loadedClass.changed = true;
+					}
+				}
+			}
+			if (!key.reset()) {
+				_watchedDirs.remove(dir);
+			}
+		}
+	}
+
 	/**
 	 * Get a resource from added source directories.
 	 * 
@@ -322,6 +450,9 @@ public final class DynamicCode {
 		File binFile;
 		Class<?> clazz;
 		long lastModified;
+		// set by the watcher or when the class is unloaded
+		volatile boolean changed = false;
+		boolean watched = false;
 
 		/**
 		 * Constructor for LoadedClass.
@@ -349,6 +480,9 @@ public final class DynamicCode {
 		 * @return boolean
 		 */
 		boolean isChanged() {
+			if (changed || watched) {
+				return changed;
+			}
 			return srcFile.lastModified() != lastModified;
 		}
 
@@ -387,7 +521,7 @@ public final class DynamicCode {
 
 		String backendClassName;
 
-		Object backend;
+		volatile Backend backend;
 		Vector<Object> parm;
 
 		/**
@@ -403,8 +537,8 @@ public final class DynamicCode {
 			backendClassName = className;
 			this.parm = parm;
 			try {
-				Class<?> clz = loadClass(backendClassName);
-				backend = newDynaCodeInstance(clz);
+				LoadedClass loadedClass = getLoadedClass(backendClassName);
+				backend = new Backend(loadedClass, newDynaCodeInstance(loadedClass.clazz));
 
 			} catch (ClassNotFoundException e) {
 				throw new Exception(e);
@@ -422,8 +556,8 @@ public final class DynamicCode {
 			backendClassName = className;
 
 			try {
-				Class<?> clz = loadClass(backendClassName);
-				backend = newDynaCodeInstance(clz);
+				LoadedClass loadedClass = getLoadedClass(backendClassName);
+				backend = new Backend(loadedClass, newDynaCodeInstance(loadedClass.clazz));
 
 			} catch (ClassNotFoundException e) {
 				throw new Exception(e);
@@ -447,18 +581,35 @@ public final class DynamicCode {
 		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
 
 			// check if class has been updated
-			Class<?> clz = loadClass(backendClassName);
-			if (backend.getClass() != clz) {
-				backend = newDynaCodeInstance(clz);
+			Backend current = backend;
+			if (current.loadedClass.isChanged()) {
+				current = reload(current);
 			}
 
-			try {
-				// invoke on backend
-				return method.invoke(backend, args);
+			// invoke on backend
+			return (Object) current.getMethodHandle(method).invokeExact(args);
+		}
 
-			} catch (InvocationTargetException e) {
-				throw e.getTargetException();
+		/**
+		 * Method reload. Create a backend from the up-to-date class.
+		 * 
+		 * @param current
+		 *            Backend
+		 * @return Backend
+		 * @throws Exception
+		 */
+		private synchronized Backend reload(Backend current) throws Exception {
+			if (backend != current) {
+				// reloaded by another thread
+				return backend;
+			}
+			LoadedClass loadedClass = getLoadedClass(backendClassName);
+			if (current.instance.getClass() == loadedClass.clazz) {
+				backend = new Backend(loadedClass, current.instance);
+			} else {
+				backend = new Backend(loadedClass, newDynaCodeInstance(loadedClass.clazz));
 			}
+			return backend;
 		}
 
 		/**
@@ -480,6 +631,49 @@ public final class DynamicCode {
 
 	}
 
+	/**
+	 * An instance of a dynamic class and the MethodHandles used to call it.
+	 */
+	private static class Backend {
+
+		final LoadedClass loadedClass;
+		final Object instance;
+		// proxy method => handle bound to the instance
+		final ConcurrentHashMap<Method, MethodHandle> methodHandles = new ConcurrentHashMap<Method, MethodHandle>();
+
+		/**
+		 * Constructor for Backend.
+		 * 
+		 * @param loadedClass
+		 *            LoadedClass
+		 * @param instance
+		 *            Object
+		 */
+		Backend(LoadedClass loadedClass, Object instance) {
+			this.loadedClass = loadedClass;
+			this.instance = instance;
+		}
+
+		/**
+		 * Method getMethodHandle.
+		 * 
+		 * @param method
+		 *            Method the proxied method.
+		 * @return MethodHandle a handle of type (Object[])Object.
+		 * @throws IllegalAccessException
+		 */
+		MethodHandle getMethodHandle(Method method) throws IllegalAccessException {
+			MethodHandle methodHandle = methodHandles.get(method);
+			if (null == methodHandle) {
+				methodHandle = MethodHandles.publicLookup().unreflect(method).bindTo(instance);
+				methodHandle = methodHandle.asType(methodHandle.type().generic()).asSpreader(Object[].class,
+						method.getParameterCount());
+				methodHandles.putIfAbsent(method, methodHandle);
+			}
+			return methodHandle;
+		}
+	}
+
 	/**
 	 * Method getCreateClass.
 	 * 
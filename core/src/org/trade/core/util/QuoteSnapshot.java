@@ -0,0 +1,203 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.core.util;
+
+import java.math.BigDecimal;
+
+/**
+ * The latest bid, ask and last price for a contract held as primitives. There
+ * must be only one thread that updates the snapshot i.e. the thread that
+ * receives the ticks from the broker. Each update changes the sequence to an
+ * odd number while the values are being written and back to an even number
+ * when they are complete so a reader on any thread can use read() to get a
+ * bid, ask and last that were all current at the same time without locking.
+ * 
+ * Prices are converted to BigDecimal only when they are asked for as a
+ * BigDecimal.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class QuoteSnapshot {
+
+	public static final int SCALE = 5;
+
+	public static final int BID = 0;
+	public static final int ASK = 1;
+	public static final int LAST = 2;
+
+	private volatile long sequence = 0;
+	private volatile double bid = 0;
+	private volatile double ask = 0;
+	private volatile double last = 0;
+
+	public QuoteSnapshot() {
+	}
+
+	/**
+	 * Method setBid.
+	 * 
+	 * @param bid
+	 *            double
+	 */
+	public void setBid(double bid) {
+		this.sequence++;
+		this.bid = bid;
+		this.sequence++;
+	}
+
+	/**
+	 * Method setAsk.
+	 * 
+	 * @param ask
+	 *            double
+	 */
+	public void setAsk(double ask) {
+		this.sequence++;
+		this.ask = ask;
+		this.sequence++;
+	}
+
+	/**
+	 * Method setLast.
+	 * 
+	 * @param last
+	 *            double
+	 */
+	public void setLast(double last) {
+		this.sequence++;
+		this.last = last;
+		this.sequence++;
+	}
+
+	/**
+	 * Method getBid.
+	 * 
+	 * @return double
+	 */
+	public double getBid() {
+		return this.bid;
+	}
+
+	/**
+	 * Method getAsk.
+	 * 
+	 * @return double
+	 */
+	public double getAsk() {
+		return this.ask;
+	}
+
+	/**
+	 * Method getLast.
+	 * 
+	 * @return double
+	 */
+	public double getLast() {
+		return this.last;
+	}
+
+	/**
+	 * Method getSequence.
+	 * 
+	 * @return long the number of changes times two, odd while a change is
+	 *         being made.
+	 */
+	public long getSequence() {
+		return this.sequence;
+	}
+
+	/**
+	 * Method read. Copy the bid, ask and last into the values using the
+	 * BID/ASK/LAST indexes. The copy is retried until no update was made while
+	 * it was being read.
+	 * 
+	 * @param values
+	 *            double[] of at least three values.
+	 * @return long the sequence the values were read at.
+	 */
+	public long read(double[] values) {
+		while (true) {
+			long start = this.sequence;
+			if ((start & 1) == 0) {
+				values[BID] = this.bid;
+				values[ASK] = this.ask;
+				values[LAST] = this.last;
+				if (start == this.sequence)
+					return start;
+			}
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Method getBidPrice.
+	 * 
+	 * @return BigDecimal
+	 */
+	public BigDecimal getBidPrice() {
+		return toPrice(this.bid);
+	}
+
+	/**
+	 * Method getAskPrice.
+	 * 
+	 * @return BigDecimal
+	 */
+	public BigDecimal getAskPrice() {
+		return toPrice(this.ask);
+	}
+
+	/**
+	 * Method getLastPrice.
+	 * 
+	 * @return BigDecimal
+	 */
+	public BigDecimal getLastPrice() {
+		return toPrice(this.last);
+	}
+
+	/**
+	 * Method toPrice.
+	 * 
+	 * @param value
+	 *            double
+	 * @return BigDecimal the value at SCALE decimal places.
+	 */
+	public static BigDecimal toPrice(double value) {
+		return (new BigDecimal(value)).setScale(SCALE, BigDecimal.ROUND_HALF_EVEN);
+	}
+}
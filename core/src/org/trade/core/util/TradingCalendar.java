@@ -71,6 +71,7 @@ public class TradingCalendar {
 	public static ZoneId MKT_TIMEZONE = null;
 
 	private static final HashMap<Integer, int[]> HOLIDAYS = new HashMap<Integer, int[]>();
+	private static final HashMap<Integer, int[]> HALFDAYS = new HashMap<Integer, int[]>();
 	private static int[] NONTRADINGDAYS = new int[] {};
 
 	private static Integer openHour = new Integer(9);
@@ -78,6 +79,8 @@ public class TradingCalendar {
 	private static Integer closeHour = new Integer(16);
 	private static Integer closeMinute = new Integer(0);
 	private static Integer closeDayOffset = new Integer(0);
+	private static Integer halfdayCloseHour = new Integer(13);
+	private static Integer halfdayCloseMinute = new Integer(0);
 
 	private static Integer currentYear = null;
 	private static Integer currentMonth = null;
@@ -136,6 +139,30 @@ public class TradingCalendar {
 			_log.warn("Property trade.holidays." + TradingCalendar.getDateTimeNowMarketTimeZone().getYear()
 					+ " not set in org/trade/core/util/config.properties");
 		}
+		try {
+			String close = ConfigProperties.getPropAsString("trade.market.halfday.close");
+			halfdayCloseHour = new Integer(close.substring(0, close.indexOf(":")));
+			halfdayCloseMinute = new Integer(close.substring(close.indexOf(":") + 1, close.length()));
+		} catch (IOException ex) {
+			_log.warn("Property trade.market.halfday.close not set in config.properties will use default 13:00");
+		}
+
+		/*
+		 * Half days are read for this year and last year as a backfill can go
+		 * back a year.
+		 */
+		int year = TradingCalendar.getDateTimeNowMarketTimeZone().getYear();
+		for (int i = year - 1; i <= year; i++) {
+			try {
+				if (!HALFDAYS.containsKey(i)) {
+					String halfdaysString = ConfigProperties.getPropAsString("trade.halfdays." + i);
+					parseHolidayIntegerCSVString(HALFDAYS, i, halfdaysString);
+				}
+			} catch (IOException ex) {
+				_log.debug("Property trade.halfdays." + i + " not set in config.properties");
+			}
+		}
+
 		try {
 			String nontradingdays = ConfigProperties.getPropAsString("trade.market.nontradingdays");
 			StringTokenizer st = new StringTokenizer(nontradingdays, ",");
@@ -606,6 +633,58 @@ public class TradingCalendar {
 		return false;
 	}
 
+	/**
+	 * Method isHalfDay.
+	 * 
+	 * @param date
+	 *            ZonedDateTime
+	 * @return boolean true if the market closes early on the date.
+	 */
+	public static boolean isHalfDay(ZonedDateTime date) {
+
+		int[] halfdays = HALFDAYS.get(date.getYear());
+		if (null != halfdays) {
+			for (int halfday : halfdays) {
+				if (halfday == date.getDayOfYear()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Method setHalfDays.
+	 * 
+	 * @param year
+	 *            Integer
+	 * @param halfdaysString
+	 *            String the days of the year the market closes early i.e.
+	 *            329,359
+	 */
+	public static void setHalfDays(Integer year, String halfdaysString) {
+		HALFDAYS.remove(year);
+		if (null != halfdaysString)
+			parseHolidayIntegerCSVString(HALFDAYS, year, halfdaysString);
+	}
+
+	/**
+	 * Method getTradingDayClose.
+	 * 
+	 * @param close
+	 *            ZonedDateTime the close of the tradingday.
+	 * @return ZonedDateTime the close or the half day close if the market
+	 *         closes early on the date.
+	 */
+	public static ZonedDateTime getTradingDayClose(ZonedDateTime close) {
+		if (isHalfDay(close)) {
+			ZonedDateTime halfdayClose = getDateAtTime(close, halfdayCloseHour, halfdayCloseMinute, 0);
+			if (halfdayClose.isBefore(close))
+				return halfdayClose;
+		}
+		return close;
+	}
+
 	/**
 	 * Method between.
 	 * 
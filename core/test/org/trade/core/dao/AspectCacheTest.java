@@ -0,0 +1,341 @@
+/* ===========================================================
+ * TradeManager : a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.core.dao;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Some tests for the {@link AspectCache} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class AspectCacheTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(AspectCacheTest.class);
+
+	@Rule
+	public TestName name = new TestName();
+
+	private AspectCache itemCache = null;
+	private AspectCache partCache = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		itemCache = AspectCache.create("Item", true, Item.class).addOwner(Part.class, new AspectCache.Owner() {
+			public Integer getOwnerId(Aspect aspect) {
+				return ((Part) aspect).getIdItem();
+			}
+		});
+		partCache = AspectCache.create("Part", true, Part.class);
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		itemCache.clear();
+		partCache.clear();
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testGetPut() {
+		try {
+			assertNull("1", itemCache.get("key"));
+			List<Item> values = new ArrayList<Item>();
+			values.add(new Item(1, "one"));
+			itemCache.put("key", values, itemCache.getVersion());
+			itemCache.put("null", null, itemCache.getVersion());
+			assertEquals("2", 1, itemCache.size());
+
+			/*
+			 * Each hit is a copy so changes by the caller are not cached.
+			 */
+			@SuppressWarnings("unchecked")
+			List<Item> cached = (List<Item>) itemCache.get("key");
+			assertEquals("3", "one", cached.get(0).getName());
+			assertNotSame("4", values.get(0), cached.get(0));
+			cached.get(0).setName("two");
+			cached.add(new Item(2, "two"));
+			values.get(0).setName("three");
+			@SuppressWarnings("unchecked")
+			List<Item> again = (List<Item>) itemCache.get("key");
+			assertEquals("5", 1, again.size());
+			assertEquals("6", "one", again.get(0).getName());
+			assertEquals("7", 2, itemCache.getHits());
+			assertEquals("8", 1, itemCache.getMisses());
+			assertEquals("9", 66.67, itemCache.getHitRatio(), 0.01);
+
+			/*
+			 * Values that cannot be copied are not cached.
+			 */
+			itemCache.put("object", new Object(), itemCache.getVersion());
+			itemCache.put("part", new Part(1, 1), itemCache.getVersion());
+			assertNull("10", itemCache.get("object"));
+			assertNotNull("11", itemCache.get("part"));
+			_log.info(AspectCache.getAllStatistics());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testInvalidate() {
+		try {
+			itemCache.put("key", new Item(1, "one"), itemCache.getVersion());
+			partCache.put("key", new Part(1, 1), partCache.getVersion());
+
+			/*
+			 * Only the regions that depend on the class are cleared.
+			 */
+			long version = itemCache.getVersion();
+			AspectCache.invalidate(Item.class);
+			assertNull("1", itemCache.get("key"));
+			assertNotNull("2", partCache.get("key"));
+			assertEquals("3", version + 1, itemCache.getVersion());
+
+			/*
+			 * A value read before the region was cleared is not added.
+			 */
+			itemCache.put("key", new Item(1, "stale"), version);
+			assertEquals("4", 0, itemCache.size());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testInvalidateOwner() {
+		try {
+			List<Item> values = new ArrayList<Item>();
+			values.add(new Item(1, "one"));
+			values.add(new Item(2, "two"));
+			itemCache.put("all", values, itemCache.getVersion());
+			itemCache.put("id:1", new Item(1, "one"), itemCache.getVersion());
+			itemCache.put("id:2", new Item(2, "two"), itemCache.getVersion());
+			partCache.put("id:1", new Part(1, 2), partCache.getVersion());
+
+			/*
+			 * A saved Part removes only the results that hold its Item.
+			 */
+			long version = itemCache.getVersion();
+			AspectCache.invalidate(new Part(1, 2));
+			assertNull("1", itemCache.get("all"));
+			assertNull("2", itemCache.get("id:2"));
+			assertNotNull("3", itemCache.get("id:1"));
+			assertEquals("4", version + 1, itemCache.getVersion());
+			assertEquals("5", 0, partCache.size());
+
+			/*
+			 * If the owner is not known the region is cleared.
+			 */
+			AspectCache.invalidate(new Part(2, null));
+			assertEquals("6", 0, itemCache.size());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testUnitOfWork() {
+		try {
+			itemCache.put("key", new Item(1, "one"), itemCache.getVersion());
+			itemCache.put("id:2", new Item(2, "two"), itemCache.getVersion());
+			UnitOfWork unitOfWork = UnitOfWork.begin(createEntityManager());
+			try {
+				/*
+				 * A unit of work always reads the database.
+				 */
+				assertNull("1", itemCache.get("key"));
+				AspectCache.invalidate(new Item(1, "one"));
+				AspectCache.invalidate(new Part(1, 2));
+				assertEquals("2", 0, itemCache.size());
+
+				/*
+				 * Another thread reads the values before the unit of work
+				 * commits. The region is cleared again on commit.
+				 */
+				Thread reader = new Thread(new Runnable() {
+					public void run() {
+						itemCache.put("key", new Item(1, "one"), itemCache.getVersion());
+						partCache.put("id:1", new Part(1, 2), partCache.getVersion());
+					}
+				});
+				reader.start();
+				reader.join();
+				assertEquals("3", 1, itemCache.size());
+				assertEquals("4", 1, partCache.size());
+				unitOfWork.commit();
+			} finally {
+				unitOfWork.close();
+			}
+			assertEquals("5", 0, itemCache.size());
+			assertEquals("6", 0, partCache.size());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method createEntityManager.
+	 * 
+	 * @return EntityManager an EntityManager whose transaction does nothing.
+	 */
+	private EntityManager createEntityManager() {
+		final boolean[] active = { false };
+		final EntityTransaction transaction = (EntityTransaction) Proxy.newProxyInstance(
+				EntityTransaction.class.getClassLoader(), new Class<?>[] { EntityTransaction.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						String methodName = method.getName();
+						if ("begin".equals(methodName)) {
+							active[0] = true;
+						} else if ("commit".equals(methodName) || "rollback".equals(methodName)) {
+							active[0] = false;
+						} else if ("isActive".equals(methodName)) {
+							return active[0];
+						}
+						return null;
+					}
+				});
+		return (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(),
+				new Class<?>[] { EntityManager.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if ("getTransaction".equals(method.getName())) {
+							return transaction;
+						} else if ("isOpen".equals(method.getName())) {
+							return true;
+						}
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * An Aspect held in the cache.
+	 */
+	public static class Item extends Aspect implements Cloneable {
+
+		private static final long serialVersionUID = 1L;
+
+		private String name;
+
+		public Item(Integer id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	 * An Aspect owned by an Item.
+	 */
+	public static class Part extends Aspect implements Cloneable {
+
+		private static final long serialVersionUID = 1L;
+
+		private Integer idItem;
+
+		public Part(Integer id, Integer idItem) {
+			this.id = id;
+			this.idItem = idItem;
+		}
+
+		public Integer getIdItem() {
+			return this.idItem;
+		}
+	}
+}
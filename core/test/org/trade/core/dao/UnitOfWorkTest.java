@@ -0,0 +1,241 @@
+/* ===========================================================
+ * TradeManager : a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.core.dao;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.RollbackException;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Some tests for the {@link UnitOfWork} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class UnitOfWorkTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(UnitOfWorkTest.class);
+
+	@Rule
+	public TestName name = new TestName();
+
+	private EntityManager entityManager = null;
+	private boolean active = false;
+	private boolean open = true;
+	private int begins = 0;
+	private int commits = 0;
+	private int rollbacks = 0;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		active = false;
+		open = true;
+		begins = 0;
+		commits = 0;
+		rollbacks = 0;
+		final EntityTransaction transaction = (EntityTransaction) Proxy.newProxyInstance(
+				EntityTransaction.class.getClassLoader(), new Class<?>[] { EntityTransaction.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						String methodName = method.getName();
+						if ("begin".equals(methodName)) {
+							begins++;
+							active = true;
+						} else if ("commit".equals(methodName)) {
+							commits++;
+							active = false;
+						} else if ("rollback".equals(methodName)) {
+							rollbacks++;
+							active = false;
+						} else if ("isActive".equals(methodName)) {
+							return active;
+						}
+						return null;
+					}
+				});
+		entityManager = (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(),
+				new Class<?>[] { EntityManager.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						String methodName = method.getName();
+						if ("getTransaction".equals(methodName)) {
+							return transaction;
+						} else if ("close".equals(methodName)) {
+							open = false;
+						} else if ("isOpen".equals(methodName)) {
+							return open;
+						}
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testCommit() {
+		try {
+			UnitOfWork unitOfWork = UnitOfWork.begin(entityManager);
+			try {
+				assertTrue("1", UnitOfWork.isActive());
+				assertEquals("2", 1, begins);
+
+				/*
+				 * The Homes begin, commit and close the session EntityManager,
+				 * these do nothing in a unit of work.
+				 */
+				EntityManager session = UnitOfWork.getSessionEntityManager();
+				assertSame("3", unitOfWork.getEntityManager(), session);
+				session.getTransaction().begin();
+				session.getTransaction().commit();
+				session.close();
+				assertTrue("4", session.getTransaction().isActive());
+				assertTrue("5", open);
+				assertEquals("6", 1, begins);
+				assertEquals("7", 0, commits);
+
+				/*
+				 * An inner unit of work joins the outer one.
+				 */
+				UnitOfWork inner = UnitOfWork.begin();
+				assertSame("8", session, inner.getEntityManager());
+				inner.commit();
+				inner.close();
+				assertEquals("9", 0, commits);
+				assertTrue("10", UnitOfWork.isActive());
+
+				unitOfWork.commit();
+				assertEquals("11", 1, commits);
+			} finally {
+				unitOfWork.close();
+			}
+			assertFalse("12", UnitOfWork.isActive());
+			assertFalse("13", open);
+			assertEquals("14", 0, rollbacks);
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testRollback() {
+		try {
+			UnitOfWork unitOfWork = UnitOfWork.begin(entityManager);
+			try {
+				/*
+				 * A Home that fails rolls back, this marks the unit of work
+				 * rollback only.
+				 */
+				unitOfWork.getEntityManager().getTransaction().rollback();
+				assertTrue("1", unitOfWork.isRollbackOnly());
+				assertEquals("2", 0, rollbacks);
+				try {
+					unitOfWork.commit();
+					fail("3");
+				} catch (RollbackException ex) {
+					assertEquals("4", 1, rollbacks);
+				}
+			} finally {
+				unitOfWork.close();
+			}
+			assertEquals("5", 0, commits);
+			assertFalse("6", open);
+
+			/*
+			 * Closed without commit rolls back.
+			 */
+			open = true;
+			unitOfWork = UnitOfWork.begin(entityManager);
+			UnitOfWork inner = UnitOfWork.begin();
+			inner.close();
+			assertTrue("7", unitOfWork.isRollbackOnly());
+			unitOfWork.close();
+			assertEquals("8", 2, rollbacks);
+			assertFalse("9", UnitOfWork.isActive());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/* ===========================================================
+ * TradeManager : a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.core.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Some tests for the {@link DynamicCode} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class DynamicCodeTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(DynamicCodeTest.class);
+
+	@Rule
+	public TestName name = new TestName();
+
+	private File srcDir = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		srcDir = Files.createTempDirectory("dynacode").toFile();
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		for (File file : srcDir.listFiles()) {
+			file.delete();
+		}
+		srcDir.delete();
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testProxyReload() {
+		try {
+			writeSource("one", System.currentTimeMillis() - 10000);
+			DynamicCode dynacode = new DynamicCode(System.getProperty("java.class.path"),
+					getClass().getClassLoader());
+			dynacode.addSourceDir(srcDir);
+			@SuppressWarnings("unchecked")
+			Callable<Object> proxy = (Callable<Object>) dynacode.newProxyInstance(Callable.class, "DynaCallable",
+					new Vector<Object>());
+			assertEquals("1", "one", proxy.call());
+			assertEquals("2", "DynaCallable", proxy.toString());
+			assertEquals("3", proxy.hashCode(), proxy.hashCode());
+
+			/*
+			 * The watcher marks the class changed and the next call uses the
+			 * new version.
+			 */
+			writeSource("two", System.currentTimeMillis() + 5000);
+			Object value = proxy.call();
+			for (int i = 0; i < 100 && !"two".equals(value); i++) {
+				Thread.sleep(100);
+				value = proxy.call();
+			}
+			assertEquals("4", "two", value);
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method writeSource.
+	 * 
+	 * @param value
+	 *            String the value returned by call().
+	 * @param lastModified
+	 *            long
+	 * @return File
+	 * @throws IOException
+	 */
+	private File writeSource(String value, long lastModified) throws IOException {
+		File srcFile = new File(srcDir, "DynaCallable.java");
+		try (FileWriter writer = new FileWriter(srcFile)) {
+			writer.write("public class DynaCallable implements java.util.concurrent.Callable<Object> {\n"
+					+ "	public Object call() {\n		return \"" + value + "\";\n	}\n\n"
+					+ "	public String toString() {\n		return \"DynaCallable\";\n	}\n}\n");
+		}
+		srcFile.setLastModified(lastModified);
+		return srcFile;
+	}
+}
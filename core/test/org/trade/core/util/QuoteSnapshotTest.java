@@ -0,0 +1,173 @@
+/* ===========================================================
+ * TradeManager : a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.core.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Some tests for the {@link QuoteSnapshot} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class QuoteSnapshotTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(QuoteSnapshotTest.class);
+
+	@Rule
+	public TestName name = new TestName();
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testPrices() {
+
+		try {
+			QuoteSnapshot quote = new QuoteSnapshot();
+			quote.setBid(20.11);
+			quote.setAsk(20.13);
+			quote.setLast(20.12);
+			double[] values = new double[3];
+			long sequence = quote.read(values);
+			assertEquals("1", 6, sequence);
+			assertEquals("2", 20.11, values[QuoteSnapshot.BID], 0);
+			assertEquals("3", 20.13, values[QuoteSnapshot.ASK], 0);
+			assertEquals("4", 20.12, values[QuoteSnapshot.LAST], 0);
+			assertEquals("5", QuoteSnapshot.toPrice(20.12), quote.getLastPrice());
+			assertEquals("6", QuoteSnapshot.SCALE, quote.getBidPrice().scale());
+
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testConcurrentReadWrite() {
+
+		try {
+			/*
+			 * The writer sets the bid, then the ask, then the last to the same
+			 * count. Between updates bid >= ask >= last and the bid is at most
+			 * one ahead of the last so any other values were a torn read.
+			 */
+			final QuoteSnapshot quote = new QuoteSnapshot();
+			final AtomicBoolean running = new AtomicBoolean(true);
+			Thread writer = new Thread(new Runnable() {
+				public void run() {
+					for (int i = 1; running.get(); i++) {
+						quote.setBid(i);
+						quote.setAsk(i);
+						quote.setLast(i);
+					}
+				}
+			});
+			writer.start();
+			while (quote.getSequence() == 0)
+				Thread.yield();
+
+			double[] values = new double[3];
+			long lastSequence = 0;
+			try {
+				for (int i = 0; i < 1000000; i++) {
+					long sequence = quote.read(values);
+					assertEquals("1", 0, sequence & 1);
+					assertTrue("2", sequence >= lastSequence);
+					assertTrue("3", values[QuoteSnapshot.BID] >= values[QuoteSnapshot.ASK]);
+					assertTrue("4", values[QuoteSnapshot.ASK] >= values[QuoteSnapshot.LAST]);
+					assertTrue("5", (values[QuoteSnapshot.BID] - values[QuoteSnapshot.LAST]) <= 1);
+					lastSequence = sequence;
+				}
+			} finally {
+				running.set(false);
+				writer.join();
+			}
+			assertTrue("6", lastSequence > 0);
+
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+}
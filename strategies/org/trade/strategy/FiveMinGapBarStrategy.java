@@ -87,6 +87,14 @@ public class FiveMinGapBarStrategy extends AbstractStrategyRule {
 
 	private Integer openPositionOrderKey = null;
 
+	/*
+	 * Strategy parameters that can be set in Strategy Parms or by a parameter
+	 * sweep.
+	 */
+	public static final String BAR_BODY_PERCENT = "BarBodyPercent";
+	public static final String TIME_OUT_MINUTES = "TimeOutMinutes";
+	public static final String PERCENT_OF_PRICE_FACTOR = "PercentOfPriceFactor";
+
 	/**
 	 * Default Constructor Note if you use class variables remember these will
 	 * need to be initialized if the strategy is restarted i.e. if they are
@@ -124,6 +132,8 @@ public class FiveMinGapBarStrategy extends AbstractStrategyRule {
 			// AbstractStrategyRule.logCandle(this,
 			// currentCandleItem.getCandle());
 			ZonedDateTime startPeriod = currentCandleItem.getPeriod().getStart();
+			ZonedDateTime timeOutPeriod = this.getTradestrategy().getTradingday().getOpen()
+					.plusMinutes(getParameter(TIME_OUT_MINUTES, 120));
 
 			/*
 			 * Trade is open kill this Strategy as its job is done.
@@ -181,7 +191,7 @@ public class FiveMinGapBarStrategy extends AbstractStrategyRule {
 						prevCandleItem.getVwap())) {
 					double barBodyPercent = (Math.abs(prevCandleItem.getOpen() - prevCandleItem.getClose())
 							/ Math.abs(prevCandleItem.getHigh() - prevCandleItem.getLow())) * 100;
-					if (barBodyPercent < 10) {
+					if (barBodyPercent < getParameter(BAR_BODY_PERCENT, 10d)) {
 						_log.info("Bar Body outside % range  Symbol: " + getSymbol() + " Time: " + startPeriod);
 						updateTradestrategyStatus(TradestrategyStatus.NBB);
 						this.cancel();
@@ -209,7 +219,8 @@ public class FiveMinGapBarStrategy extends AbstractStrategyRule {
 				priceStop = new Money(prevCandleItem.getOpen());
 
 				// If the candle less than the entry limit %
-				if (((highLowRange) / prevCandleItem.getClose()) < entrylimit.getPercentOfPrice().doubleValue()) {
+				if (((highLowRange) / prevCandleItem.getClose()) < (entrylimit.getPercentOfPrice().doubleValue()
+						* getParameter(PERCENT_OF_PRICE_FACTOR, 1d))) {
 
 					/*
 					 * Check that the entry - stop is greater than 2* the STPLMT
@@ -243,7 +254,7 @@ public class FiveMinGapBarStrategy extends AbstractStrategyRule {
 				}
 
 			} else {
-				if (startPeriod.isBefore(this.getTradestrategy().getTradingday().getOpen().plusMinutes(120))
+				if (startPeriod.isBefore(timeOutPeriod)
 						&& startPeriod.isAfter(this.getTradestrategy().getTradingday().getOpen().plusMinutes(5))) {
 					CandleItem firstCandle = this.getCandle(TradingCalendar.getDateAtTime(startPeriod,
 							this.getTradestrategy().getTradingday().getOpen()));
@@ -275,16 +286,16 @@ public class FiveMinGapBarStrategy extends AbstractStrategyRule {
 				}
 			}
 
-			if (!startPeriod.isBefore(this.getTradestrategy().getTradingday().getOpen().plusMinutes(120))) {
-				_log.info("Rule 11:30:00 bar, time out unfilled open position Symbol: " + getSymbol() + " Time: "
-						+ startPeriod);
+			if (!startPeriod.isBefore(timeOutPeriod)) {
+				_log.info("Rule " + timeOutPeriod.toLocalTime() + " bar, time out unfilled open position Symbol: "
+						+ getSymbol() + " Time: " + startPeriod);
 				if (!this.isThereOpenPosition()
 						&& !TradestrategyStatus.CANCELLED.equals(getTradestrategy().getStatus())) {
 					updateTradestrategyStatus(TradestrategyStatus.TO);
 					this.cancelAllOrders();
 					// No trade we timed out
-					_log.info("Rule 11:30:00 bar, time out unfilled open position Symbol: " + getSymbol() + " Time: "
-							+ startPeriod);
+					_log.info("Rule " + timeOutPeriod.toLocalTime() + " bar, time out unfilled open position Symbol: "
+							+ getSymbol() + " Time: " + startPeriod);
 				}
 				this.cancel();
 			}
@@ -89,6 +89,12 @@ public class FiveMinSideGapBarStrategy extends AbstractStrategyRule {
 	private static final long serialVersionUID = -1629661431267666769L;
 	private final static Logger _log = LoggerFactory.getLogger(FiveMinSideGapBarStrategy.class);
 
+	/*
+	 * Strategy parameters that can be set in Strategy Parms or by a parameter
+	 * sweep.
+	 */
+	public static final String PERCENT_OF_PRICE_FACTOR = "PercentOfPriceFactor";
+
 	private Integer openPositionOrderKey = null;
 
 	/**
@@ -222,7 +228,8 @@ public class FiveMinSideGapBarStrategy extends AbstractStrategyRule {
 					double percentChange = Math.abs(prevCandleItem.getHigh() - prevCandleItem.getLow())
 							/ prevCandleItem.getClose();
 					// If the candle less than the entry limit %
-					if (percentChange < entrylimit.getPercentOfPrice().doubleValue()) {
+					if (percentChange < (entrylimit.getPercentOfPrice().doubleValue()
+							* getParameter(PERCENT_OF_PRICE_FACTOR, 1d))) {
 						// TODO add the tails as a % of the body.
 						_log.info(" We have a trade!!  Symbol: " + getSymbol() + " Time: " + startPeriod);
 
@@ -91,6 +91,12 @@ public class FiveMinWRBGapBarStrategy extends AbstractStrategyRule {
 	private static final long serialVersionUID = -2517966650638318307L;
 	private final static Logger _log = LoggerFactory.getLogger(FiveMinWRBGapBarStrategy.class);
 
+	/*
+	 * Strategy parameters that can be set in Strategy Parms or by a parameter
+	 * sweep.
+	 */
+	public static final String PERCENT_OF_PRICE_FACTOR = "PercentOfPriceFactor";
+
 	private Integer openPositionOrderKey = null;
 
 	/**
@@ -220,7 +226,8 @@ public class FiveMinWRBGapBarStrategy extends AbstractStrategyRule {
 				priceStop = new Money(prevCandleItem.getOpen());
 
 				// If the candle less than the entry limit %
-				if ((highLowRange / prevCandleItem.getClose()) < entrylimit.getPercentOfPrice().doubleValue()) {
+				if ((highLowRange / prevCandleItem.getClose()) < (entrylimit.getPercentOfPrice().doubleValue()
+						* getParameter(PERCENT_OF_PRICE_FACTOR, 1d))) {
 					// TODO add the tails as a % of the body.
 					_log.info(" We have a trade!!  Symbol: " + getSymbol() + " Time: " + startPeriod);
 					/*
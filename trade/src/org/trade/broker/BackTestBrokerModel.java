@@ -40,6 +40,7 @@ import java.math.BigDecimal;
 import java.text.ParseException;
 import java.time.ZonedDateTime;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -58,6 +59,7 @@ import org.trade.dictionary.valuetype.BarSize;
 import org.trade.dictionary.valuetype.ChartDays;
 import org.trade.dictionary.valuetype.OrderStatus;
 import org.trade.persistent.PersistentModel;
+import org.trade.persistent.PersistentModelException;
 import org.trade.persistent.dao.Contract;
 import org.trade.persistent.dao.TradeOrder;
 import org.trade.persistent.dao.TradeOrderfill;
@@ -415,6 +417,46 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements ClientWr
 		}
 	}
 
+	/**
+	 * Method onBrokerData. Each back test request reads its own candles so the
+	 * rollup tradestrategies are requested one after the other.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @param endDate
+	 *            ZonedDateTime
+	 * @param rollupTradestrategies
+	 *            List<Tradestrategy>
+	 * @throws BrokerModelException
+	 * @see org.trade.broker.BrokerModel#onBrokerData(Tradestrategy,
+	 *      ZonedDateTime, List)
+	 */
+	public void onBrokerData(Tradestrategy tradestrategy, ZonedDateTime endDate,
+			List<Tradestrategy> rollupTradestrategies) throws BrokerModelException {
+		this.onBrokerData(tradestrategy, endDate);
+		if (null != rollupTradestrategies) {
+			for (Tradestrategy rollupTradestrategy : rollupTradestrategies) {
+				this.onBrokerData(rollupTradestrategy, endDate);
+			}
+		}
+	}
+
+	/**
+	 * Method isHistoricalDataRequired. The back test data always comes from
+	 * the back test broker.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @param endDate
+	 *            ZonedDateTime
+	 * @return boolean
+	 * @see org.trade.broker.BrokerModel#isHistoricalDataRequired(Tradestrategy,
+	 *      ZonedDateTime)
+	 */
+	public boolean isHistoricalDataRequired(Tradestrategy tradestrategy, ZonedDateTime endDate) {
+		return true;
+	}
+
 	/**
 	 * Method isHistoricalDataRunning.
 	 * 
@@ -562,7 +604,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements ClientWr
 			tradestrategy.getContract().removeTradestrategy(tradestrategy);
 			synchronized (m_historyDataRequests) {
 				m_historyDataRequests.remove(tradestrategy.getId());
-				m_historyDataRequests.notify();
+				m_historyDataRequests.notifyAll();
 			}
 		}
 		m_client.removeBackTestBroker(tradestrategy.getId());
@@ -582,7 +624,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements ClientWr
 				m_client.removeBackTestBroker(tradestrategy.getId());
 				synchronized (m_historyDataRequests) {
 					m_historyDataRequests.remove(tradestrategy.getId());
-					m_historyDataRequests.notify();
+					m_historyDataRequests.notifyAll();
 				}
 			}
 		}
@@ -664,7 +706,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements ClientWr
 				if (null == tradeOrder.getClientId()) {
 					tradeOrder.setClientId(999);
 				}
-				TradeOrder transientInstance = m_tradePersistentModel.persistTradeOrder(tradeOrder);
+				TradeOrder transientInstance = persistTradeOrder(tradeOrder);
 				// Debug logging
 				_log.debug("Order Placed Key: " + transientInstance.getOrderKey());
 				TWSBrokerModel.logContract(TWSBrokerModel.getIBContract(contract));
@@ -719,8 +761,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements ClientWr
 
 			BackTestBrokerModel.logExecution(execution);
 
-			TradeOrder transientInstance = m_tradePersistentModel
-					.findTradeOrderByKey(execution.getTradeOrder().getOrderKey());
+			TradeOrder transientInstance = findTradeOrderByKey(execution.getTradeOrder().getOrderKey());
 			if (null == transientInstance) {
 				error(execution.getTradeOrder().getOrderKey(), 3170,
 						"Warning Order not found for Order Key: " + execution.getTradeOrder().getOrderKey()
@@ -742,7 +783,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements ClientWr
 			transientInstance.setFilledQuantity(tradeOrderfill.getCumulativeQuantity());
 			transientInstance.setFilledDate(tradeOrderfill.getTime());
 			boolean isFilled = transientInstance.getIsFilled();
-			TradeOrder updatedOrder = m_tradePersistentModel.persistTradeOrderfill(transientInstance);
+			TradeOrder updatedOrder = persistTradeOrderfill(transientInstance);
 
 			// Let the controller know an order was filled
 			if (updatedOrder.getIsFilled() && !isFilled)
@@ -783,7 +824,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements ClientWr
 
 		try {
 
-			TradeOrder transientInstance = m_tradePersistentModel.findTradeOrderByKey(tradeOrder.getOrderKey());
+			TradeOrder transientInstance = findTradeOrderByKey(tradeOrder.getOrderKey());
 			if (null == transientInstance) {
 				error(orderId, 3170, "Warning Order not found for Order Key: " + orderId + " make sure Client ID: " + 0
 						+ " is not the master in TWS. On openOrder update.");
@@ -803,7 +844,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements ClientWr
 					BackTestBrokerModel.logOrderState(orderState);
 					BackTestBrokerModel.logTradeOrder(tradeOrder);
 
-					TradeOrder updatedOrder = m_tradePersistentModel.persistTradeOrder(transientInstance);
+					TradeOrder updatedOrder = persistTradeOrder(transientInstance);
 
 					if (updatedOrder.hasTradePosition() && !updatedOrder.getTradePosition().isOpen()) {
 						// Let the controller know a position was closed
@@ -814,7 +855,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements ClientWr
 							+ orderState.m_status);
 					BackTestBrokerModel.logOrderState(orderState);
 					BackTestBrokerModel.logTradeOrder(tradeOrder);
-					TradeOrder updatedOrder = m_tradePersistentModel.persistTradeOrder(transientInstance);
+					TradeOrder updatedOrder = persistTradeOrder(transientInstance);
 					if (OrderStatus.CANCELLED.equals(updatedOrder.getStatus())) {
 						// Let the controller know a position was closed
 						this.fireTradeOrderCancelled(updatedOrder);
@@ -861,7 +902,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements ClientWr
 	public void orderStatus(int orderId, String status, int filled, int remaining, double avgFillPrice, int permId,
 			int parentId, double lastFillPrice, int clientId, String whyHeld) {
 		try {
-			TradeOrder transientInstance = m_tradePersistentModel.findTradeOrderByKey(new Integer(orderId));
+			TradeOrder transientInstance = findTradeOrderByKey(new Integer(orderId));
 			if (null == transientInstance) {
 				error(orderId, 3170, "Warning Order not found for Order Key: " + orderId + " make sure Client ID: " + 0
 						+ " is not the master in TWS. On orderStatus update.");
@@ -901,7 +942,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements ClientWr
 						lastFillPrice, clientId, whyHeld);
 
 				boolean isFilled = transientInstance.getIsFilled();
-				TradeOrder updatedOrder = m_tradePersistentModel.persistTradeOrder(transientInstance);
+				TradeOrder updatedOrder = persistTradeOrder(transientInstance);
 
 				if (OrderStatus.CANCELLED.equals(updatedOrder.getStatus())) {
 					// Let the controller know a position was closed
@@ -919,6 +960,55 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements ClientWr
 		}
 	}
 
+	/**
+	 * Method findTradeOrderByKey. If the order is in a back test order book
+	 * return the book order otherwise read it from the database.
+	 * 
+	 * @param orderKey
+	 *            Integer
+	 * @return TradeOrder
+	 * @throws PersistentModelException
+	 */
+	private TradeOrder findTradeOrderByKey(Integer orderKey) throws PersistentModelException {
+		BackTestOrderBook orderBook = BackTestOrderBook.findOrderBookByOrderKey(orderKey);
+		if (null == orderBook)
+			return m_tradePersistentModel.findTradeOrderByKey(orderKey);
+		return orderBook.getTradeOrder(orderKey);
+	}
+
+	/**
+	 * Method persistTradeOrder. If the orders Tradestrategy has a back test
+	 * order book save the order to the book otherwise to the database.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return TradeOrder
+	 * @throws PersistentModelException
+	 */
+	private TradeOrder persistTradeOrder(TradeOrder tradeOrder) throws PersistentModelException {
+		BackTestOrderBook orderBook = BackTestOrderBook.getOrderBook(tradeOrder);
+		if (null == orderBook)
+			return m_tradePersistentModel.persistTradeOrder(tradeOrder);
+		return orderBook.persistTradeOrder(tradeOrder);
+	}
+
+	/**
+	 * Method persistTradeOrderfill. If the orders Tradestrategy has a back
+	 * test order book save the order fills to the book otherwise to the
+	 * database.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return TradeOrder
+	 * @throws PersistentModelException
+	 */
+	private TradeOrder persistTradeOrderfill(TradeOrder tradeOrder) throws PersistentModelException {
+		BackTestOrderBook orderBook = BackTestOrderBook.getOrderBook(tradeOrder);
+		if (null == orderBook)
+			return m_tradePersistentModel.persistTradeOrderfill(tradeOrder);
+		return orderBook.persistTradeOrderfill(tradeOrder);
+	}
+
 	/**
 	 * Method error.
 	 * 
@@ -969,7 +1059,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements ClientWr
 			symbol = m_historyDataRequests.get(id).getContract().getSymbol();
 			synchronized (m_historyDataRequests) {
 				m_historyDataRequests.remove(id);
-				m_historyDataRequests.notify();
+				m_historyDataRequests.notifyAll();
 			}
 		}
 		if (m_realTimeBarsRequests.containsKey(id)) {
@@ -1125,7 +1215,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements ClientWr
 					} else {
 						synchronized (m_historyDataRequests) {
 							m_historyDataRequests.remove(reqId);
-							m_historyDataRequests.notify();
+							m_historyDataRequests.notifyAll();
 						}
 					}
 				} else {
@@ -0,0 +1,559 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.persistence.PersistenceException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.dao.Aspect;
+import org.trade.core.dao.UnitOfWork;
+import org.trade.core.util.TradingCalendar;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.PersistentModelException;
+import org.trade.persistent.TradePositionAccounting;
+import org.trade.persistent.dao.ContractLite;
+import org.trade.persistent.dao.TradeOrder;
+import org.trade.persistent.dao.TradePosition;
+import org.trade.persistent.dao.TradestrategyLite;
+import org.trade.persistent.dao.TradestrategyOrders;
+
+/**
+ * In memory order book used by the DBBroker when back testing a
+ * Tradestrategy. The TradestrategyOrders, TradeOrders and TradePositions are
+ * read once when the book is opened and all order placement, order fill and
+ * position accounting is then done against this book rather than the
+ * database. The position accounting is shared with the TradePersistentModel
+ * see TradePositionAccounting, this book supplies the reads and saves.
+ * 
+ * The book is written to the database in one pass when the Tradestrategy
+ * completes see close().
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class BackTestOrderBook extends TradePositionAccounting {
+
+	private final static Logger _log = LoggerFactory.getLogger(BackTestOrderBook.class);
+
+	// Use idTradestrategy as key
+	private static final ConcurrentHashMap<Integer, BackTestOrderBook> m_orderBooks = new ConcurrentHashMap<Integer, BackTestOrderBook>();
+
+	private final PersistentModel tradePersistentModel;
+	private final TradestrategyOrders tradestrategyOrders;
+	private final TradestrategyLite tradestrategyLite;
+
+	private final HashMap<Integer, TradeOrder> tradeOrders = new HashMap<Integer, TradeOrder>();
+	private final LinkedHashMap<Integer, TradeOrder> changedTradeOrders = new LinkedHashMap<Integer, TradeOrder>();
+	private final List<TradePosition> changedTradePositions = new ArrayList<TradePosition>();
+	private final List<TradestrategyLite> changedTradestrategies = new ArrayList<TradestrategyLite>();
+	private boolean tradestrategyChanged = false;
+	private boolean contractChanged = false;
+
+	/**
+	 * Constructor for BackTestOrderBook.
+	 * 
+	 * @param tradePersistentModel
+	 *            PersistentModel
+	 * @param tradestrategyOrders
+	 *            TradestrategyOrders
+	 * @param tradestrategyLite
+	 *            TradestrategyLite
+	 */
+	private BackTestOrderBook(PersistentModel tradePersistentModel, TradestrategyOrders tradestrategyOrders,
+			TradestrategyLite tradestrategyLite) {
+		this.tradePersistentModel = tradePersistentModel;
+		this.tradestrategyOrders = tradestrategyOrders;
+		this.tradestrategyLite = tradestrategyLite;
+	}
+
+	/**
+	 * Method open. Read the orders and open position for the Tradestrategy and
+	 * register the book so the BackTestBrokerModel and the strategies use it
+	 * in place of the database.
+	 * 
+	 * @param tradePersistentModel
+	 *            PersistentModel
+	 * @param idTradestrategy
+	 *            Integer
+	 * @return BackTestOrderBook
+	 * @throws PersistentModelException
+	 */
+	public static BackTestOrderBook open(PersistentModel tradePersistentModel, Integer idTradestrategy)
+			throws PersistentModelException {
+
+		TradestrategyOrders tradestrategyOrders = tradePersistentModel
+				.findPositionOrdersByTradestrategyId(idTradestrategy);
+		TradestrategyLite tradestrategyLite = tradePersistentModel.findTradestrategyLiteById(idTradestrategy);
+		BackTestOrderBook orderBook = new BackTestOrderBook(tradePersistentModel, tradestrategyOrders,
+				tradestrategyLite);
+
+		/*
+		 * The orders are read with their fills and linked to one instance of
+		 * their TradePosition so the accounting can be done in memory. Note
+		 * the open position could have been opened by a different
+		 * tradestrategy and is read with all its orders.
+		 */
+		HashMap<Integer, TradePosition> tradePositions = new HashMap<Integer, TradePosition>();
+		if (tradestrategyOrders.hasOpenTradePosition()) {
+			TradePosition openPosition = tradestrategyOrders.getOpenTradePosition();
+			tradePositions.put(openPosition.getIdTradePosition(), openPosition);
+		}
+		List<TradeOrder> orders = tradestrategyOrders.getTradeOrders();
+		for (int i = 0; i < orders.size(); i++) {
+			TradeOrder order = tradePersistentModel.findTradeOrderByKey(orders.get(i).getOrderKey());
+			if (order.hasTradePosition()) {
+				TradePosition tradePosition = tradePositions.get(order.getTradePosition().getIdTradePosition());
+				if (null == tradePosition) {
+					tradePosition = tradePersistentModel
+							.findTradePositionById(order.getTradePosition().getIdTradePosition());
+					tradePositions.put(tradePosition.getIdTradePosition(), tradePosition);
+				}
+				order.setTradePosition(tradePosition);
+				orderBook.replaceTradeOrder(tradePosition, order);
+			}
+			orders.set(i, order);
+			orderBook.tradeOrders.put(order.getOrderKey(), order);
+		}
+		m_orderBooks.put(idTradestrategy, orderBook);
+		return orderBook;
+	}
+
+	/**
+	 * Method getOrderBook.
+	 * 
+	 * @param idTradestrategy
+	 *            Integer
+	 * @return BackTestOrderBook null if there is no open book for the
+	 *         Tradestrategy.
+	 */
+	public static BackTestOrderBook getOrderBook(Integer idTradestrategy) {
+		if (null == idTradestrategy || m_orderBooks.isEmpty())
+			return null;
+		return m_orderBooks.get(idTradestrategy);
+	}
+
+	/**
+	 * Method getOrderBook.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return BackTestOrderBook null if there is no open book for the orders
+	 *         Tradestrategy.
+	 */
+	public static BackTestOrderBook getOrderBook(TradeOrder tradeOrder) {
+		if (m_orderBooks.isEmpty())
+			return null;
+		if (null != tradeOrder.getTradestrategyId())
+			return getOrderBook(tradeOrder.getTradestrategyId().getIdTradeStrategy());
+		if (null != tradeOrder.getTradestrategy())
+			return getOrderBook(tradeOrder.getTradestrategy().getIdTradeStrategy());
+		return findOrderBookByOrderKey(tradeOrder.getOrderKey());
+	}
+
+	/**
+	 * Method findOrderBookByOrderKey.
+	 * 
+	 * @param orderKey
+	 *            Integer
+	 * @return BackTestOrderBook null if no open book holds the order.
+	 */
+	public static BackTestOrderBook findOrderBookByOrderKey(Integer orderKey) {
+		for (BackTestOrderBook orderBook : m_orderBooks.values()) {
+			if (null != orderBook.getTradeOrder(orderKey))
+				return orderBook;
+		}
+		return null;
+	}
+
+	/**
+	 * Method getPositionOrders. Returns a copy of the TradestrategyOrders that
+	 * holds the book orders. As with a read from the database the orders are
+	 * returned clean.
+	 * 
+	 * @return TradestrategyOrders
+	 */
+	public synchronized TradestrategyOrders getPositionOrders() {
+
+		TradestrategyOrders positionOrders = new TradestrategyOrders();
+		positionOrders.setIdTradeStrategy(this.tradestrategyOrders.getIdTradeStrategy());
+		positionOrders.setContract(this.tradestrategyOrders.getContract());
+		positionOrders.setStatus(this.tradestrategyOrders.getStatus());
+		positionOrders.setLastUpdateDate(this.tradestrategyOrders.getLastUpdateDate());
+		positionOrders.setVersion(this.tradestrategyOrders.getVersion());
+		for (TradeOrder order : this.tradestrategyOrders.getTradeOrders()) {
+			order.setDirty(false);
+			positionOrders.addTradeOrder(order);
+		}
+		positionOrders.setDirty(false);
+		return positionOrders;
+	}
+
+	/**
+	 * Method getTradeOrder.
+	 * 
+	 * @param orderKey
+	 *            Integer
+	 * @return TradeOrder
+	 */
+	public synchronized TradeOrder getTradeOrder(Integer orderKey) {
+		return this.tradeOrders.get(orderKey);
+	}
+
+	/**
+	 * Method setStatus. Update the Tradestrategy status.
+	 * 
+	 * @param status
+	 *            String
+	 */
+	public synchronized void setStatus(String status) {
+		setTradestrategyStatus(status);
+	}
+
+	/**
+	 * Method persistTradeOrder. Same as
+	 * TradePersistentModel.persistTradeOrder() but against this book.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return TradeOrder
+	 * @throws PersistentModelException
+	 */
+	public synchronized TradeOrder persistTradeOrder(final TradeOrder tradeOrder) throws PersistentModelException {
+
+		if (null == tradeOrder.getOrderKey()) {
+			throw new PersistentModelException("Order key cannot be null.");
+		}
+
+		if (null == tradeOrder.getTradestrategyId()) {
+			tradeOrder.setTradestrategyId(this.tradestrategyLite);
+		}
+
+		/*
+		 * The order may be a different instance to the one held by the book
+		 * make sure it uses the book TradePosition.
+		 */
+		TradeOrder currentOrder = this.tradeOrders.get(tradeOrder.getOrderKey());
+		if (null != currentOrder && currentOrder != tradeOrder && currentOrder.hasTradePosition()) {
+			tradeOrder.setTradePosition(currentOrder.getTradePosition());
+		}
+		addTradeOrder(tradeOrder);
+		return super.persistTradeOrder(tradeOrder);
+	}
+
+	/**
+	 * Method persistTradeOrderfill. Same as
+	 * TradePersistentModel.persistTradeOrderfill() but against this book.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return TradeOrder
+	 * @throws PersistentModelException
+	 */
+	public synchronized TradeOrder persistTradeOrderfill(final TradeOrder tradeOrder)
+			throws PersistentModelException {
+		return super.persistTradeOrderfill(tradeOrder);
+	}
+
+	/**
+	 * Method findTradestrategyLite.
+	 * 
+	 * @param idTradestrategy
+	 *            Integer
+	 * @return TradestrategyLite
+	 */
+	protected TradestrategyLite findTradestrategyLite(Integer idTradestrategy) {
+		return this.tradestrategyLite;
+	}
+
+	/**
+	 * Method findTradestrategyOrders.
+	 * 
+	 * @param idTradestrategy
+	 *            Integer
+	 * @return TradestrategyOrders
+	 */
+	protected TradestrategyOrders findTradestrategyOrders(Integer idTradestrategy) {
+		return this.tradestrategyOrders;
+	}
+
+	/**
+	 * Method findTradePosition. The book holds one instance of each
+	 * TradePosition, make sure it holds this instance of the order.
+	 * 
+	 * @param tradePosition
+	 *            TradePosition
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return TradePosition
+	 */
+	protected TradePosition findTradePosition(TradePosition tradePosition, TradeOrder tradeOrder) {
+		replaceTradeOrder(tradePosition, tradeOrder);
+		return tradePosition;
+	}
+
+	/**
+	 * Method persistTradestrategyOrders.
+	 * 
+	 * @param tradestrategyOrders
+	 *            TradestrategyOrders
+	 */
+	protected void persistTradestrategyOrders(TradestrategyOrders tradestrategyOrders) {
+		this.tradestrategyLite.setStatus(tradestrategyOrders.getStatus());
+		this.tradestrategyLite.setLastUpdateDate(tradestrategyOrders.getLastUpdateDate());
+		this.tradestrategyChanged = true;
+	}
+
+	/**
+	 * Method persistTradestrategyLite.
+	 * 
+	 * @param tradestrategyLite
+	 *            TradestrategyLite
+	 */
+	protected void persistTradestrategyLite(TradestrategyLite tradestrategyLite) {
+		addChanged(this.changedTradestrategies, tradestrategyLite);
+	}
+
+	/**
+	 * Method persistTradePosition.
+	 * 
+	 * @param tradePosition
+	 *            TradePosition
+	 * @return TradePosition
+	 */
+	protected TradePosition persistTradePosition(TradePosition tradePosition) {
+		addChanged(this.changedTradePositions, tradePosition);
+		return tradePosition;
+	}
+
+	/**
+	 * Method persistContract.
+	 * 
+	 * @param contract
+	 *            ContractLite
+	 */
+	protected void persistContract(ContractLite contract) {
+		this.contractChanged = true;
+	}
+
+	/**
+	 * Method persistTradeOrderOnly. The order was added to the book see
+	 * persistTradeOrder().
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return TradeOrder
+	 */
+	protected TradeOrder persistTradeOrderOnly(TradeOrder tradeOrder) {
+		return tradeOrder;
+	}
+
+	/**
+	 * Method close. Write the book to the database in one UnitOfWork and
+	 * remove it from the registry. New TradeOrders are inserted first without
+	 * their TradePosition so the new TradePositions can then be inserted with
+	 * all their orders known. The orders are then updated with their
+	 * TradePosition followed by the Contract open position and the
+	 * Tradestrategy status.
+	 * 
+	 * The versions are copied back to the book instances once the UnitOfWork
+	 * commits so any strategy still holding them can carry on against the
+	 * database.
+	 * 
+	 * @throws PersistentModelException
+	 */
+	public void close() throws PersistentModelException {
+
+		synchronized (this) {
+			IdentityHashMap<Aspect, Aspect> mergedInstances = new IdentityHashMap<Aspect, Aspect>();
+			UnitOfWork unitOfWork = UnitOfWork.begin();
+			try {
+				for (TradeOrder order : this.changedTradeOrders.values()) {
+					if (null == order.getIdTradeOrder()) {
+						TradePosition tradePosition = order.getTradePosition();
+						order.setTradePosition(null);
+						this.tradePersistentModel.persistAspect(order);
+						order.setTradePosition(tradePosition);
+					}
+				}
+				for (TradePosition tradePosition : this.changedTradePositions) {
+					persistAspect(tradePosition, mergedInstances);
+				}
+				for (TradeOrder order : this.changedTradeOrders.values()) {
+					persistAspect(order, mergedInstances);
+				}
+				if (this.contractChanged) {
+					persistAspect(this.tradestrategyOrders.getContract(), mergedInstances);
+				}
+				if (this.tradestrategyChanged) {
+					persistAspect(this.tradestrategyOrders, mergedInstances);
+				}
+				for (TradestrategyLite tradestrategy : this.changedTradestrategies) {
+					persistAspect(tradestrategy, mergedInstances);
+				}
+				unitOfWork.commit();
+
+				for (Map.Entry<Aspect, Aspect> entry : mergedInstances.entrySet()) {
+					entry.getKey().setVersion(entry.getValue().getVersion());
+					entry.getKey().setDirty(false);
+					if (entry.getKey() instanceof TradeOrder) {
+						((TradeOrder) entry.getKey())
+								.setTradeOrderfills(((TradeOrder) entry.getValue()).getTradeOrderfills());
+					}
+				}
+				if (this.tradestrategyChanged) {
+					this.tradestrategyLite.setVersion(this.tradestrategyOrders.getVersion());
+				}
+				_log.debug("BackTestOrderBook closed idTradestrategy: " + this.tradestrategyOrders.getIdTradeStrategy()
+						+ " orders: " + this.changedTradeOrders.size() + " positions: "
+						+ this.changedTradePositions.size());
+			} catch (PersistenceException ex) {
+				throw new PersistentModelException("Error saving BackTestOrderBook idTradestrategy: "
+						+ this.tradestrategyOrders.getIdTradeStrategy() + " Msg: " + ex.getMessage());
+			} finally {
+				unitOfWork.close();
+				this.changedTradeOrders.clear();
+				this.changedTradePositions.clear();
+				this.changedTradestrategies.clear();
+				this.tradestrategyChanged = false;
+				this.contractChanged = false;
+				m_orderBooks.remove(this.tradestrategyOrders.getIdTradeStrategy(), this);
+			}
+		}
+	}
+
+	/**
+	 * Method persistAspect. Persist the aspect and keep the merged instance
+	 * so its version can be copied back to the book instance on commit.
+	 * 
+	 * @param transientInstance
+	 *            T
+	 * @param mergedInstances
+	 *            IdentityHashMap<Aspect, Aspect>
+	 * @return T
+	 * @throws PersistentModelException
+	 */
+	private <T extends Aspect> T persistAspect(T transientInstance, IdentityHashMap<Aspect, Aspect> mergedInstances)
+			throws PersistentModelException {
+		T instance = this.tradePersistentModel.persistAspect(transientInstance);
+		if (instance != transientInstance)
+			mergedInstances.put(transientInstance, instance);
+		return instance;
+	}
+
+	/**
+	 * Method addTradeOrder. Add the order to the book or replace the book
+	 * instance with the same order key.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 */
+	private void addTradeOrder(TradeOrder tradeOrder) {
+
+		TradeOrder currentOrder = this.tradeOrders.put(tradeOrder.getOrderKey(), tradeOrder);
+		if (currentOrder != tradeOrder) {
+			List<TradeOrder> orders = this.tradestrategyOrders.getTradeOrders();
+			int index = orders.size();
+			while (--index > -1) {
+				if (orders.get(index).getOrderKey().equals(tradeOrder.getOrderKey()))
+					break;
+			}
+			if (index < 0) {
+				orders.add(tradeOrder);
+			} else {
+				orders.set(index, tradeOrder);
+			}
+		}
+		this.changedTradeOrders.put(tradeOrder.getOrderKey(), tradeOrder);
+	}
+
+	/**
+	 * Method replaceTradeOrder. Replace the order in the positions orders that
+	 * has the same order key.
+	 * 
+	 * @param tradePosition
+	 *            TradePosition
+	 * @param tradeOrder
+	 *            TradeOrder
+	 */
+	private void replaceTradeOrder(TradePosition tradePosition, TradeOrder tradeOrder) {
+		List<TradeOrder> orders = tradePosition.getTradeOrders();
+		for (int i = 0; i < orders.size(); i++) {
+			if (orders.get(i).getOrderKey().equals(tradeOrder.getOrderKey())) {
+				orders.set(i, tradeOrder);
+				return;
+			}
+		}
+		orders.add(tradeOrder);
+	}
+
+	/**
+	 * Method setTradestrategyStatus.
+	 * 
+	 * @param status
+	 *            String
+	 */
+	private void setTradestrategyStatus(String status) {
+		this.tradestrategyOrders.setStatus(status);
+		this.tradestrategyOrders.setLastUpdateDate(TradingCalendar.getDateTimeNowMarketTimeZone());
+		persistTradestrategyOrders(this.tradestrategyOrders);
+	}
+
+	/**
+	 * Method addChanged. Add the aspect if this instance is not already in the
+	 * list. Note the aspects may not have an id yet so this is by instance.
+	 * 
+	 * @param aspects
+	 *            List<T>
+	 * @param aspect
+	 *            T
+	 */
+	private static <T extends Aspect> void addChanged(List<T> aspects, T aspect) {
+		for (T item : aspects) {
+			if (item == aspect)
+				return;
+		}
+		aspects.add(aspect);
+	}
+}
@@ -0,0 +1,321 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingWorker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.broker.client.BackTestEngine;
+import org.trade.core.properties.ConfigProperties;
+import org.trade.core.util.TradingCalendar;
+import org.trade.persistent.CandleCache;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.PersistentModelException;
+import org.trade.persistent.dao.Portfolio;
+import org.trade.persistent.dao.TradelogDetail;
+import org.trade.persistent.dao.TradelogReport;
+import org.trade.persistent.dao.TradelogSummary;
+import org.trade.persistent.dao.Tradestrategy;
+import org.trade.persistent.dao.Tradingday;
+import org.trade.persistent.dao.Tradingdays;
+import org.trade.strategy.data.StrategyData;
+
+/**
+ * Runs a back test over a range of tradingdays. The tradestrategies are split
+ * by contract and each contract is back tested, one tradingday after the
+ * other, on a pool of threads. As no broker is connected there are no data
+ * request pacing limits to observe. When all the tradestrategies are complete
+ * a tradelog report for the tradingdays is created.
+ */
+public class BackTestScheduler extends SwingWorker<Void, String> {
+
+	private final static Logger _log = LoggerFactory.getLogger(BackTestScheduler.class);
+
+	private static boolean _backTestScheduler = false;
+
+	private BrokerModel brokerModel;
+	private PersistentModel tradePersistentModel = null;
+	private Tradingdays tradingdays = null;
+	private int grandTotal = 0;
+	private long startTime = 0;
+	private final AtomicInteger totalCompleted = new AtomicInteger(0);
+	private ExecutorService executor = null;
+	private TradelogReport tradelogReport = null;
+
+	static {
+		try {
+			_backTestScheduler = ConfigProperties.getPropAsBoolean("trade.backtest.scheduler");
+		} catch (IOException ex) {
+			throw new IllegalArgumentException("Error initializing BackTestScheduler Msg: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Constructor for BackTestScheduler.
+	 * 
+	 * @param brokerModel
+	 *            BrokerModel
+	 * @param tradePersistentModel
+	 *            PersistentModel
+	 * @param tradingdays
+	 *            Tradingdays
+	 */
+	public BackTestScheduler(BrokerModel brokerModel, PersistentModel tradePersistentModel, Tradingdays tradingdays) {
+		this.brokerModel = brokerModel;
+		this.tradePersistentModel = tradePersistentModel;
+		this.tradingdays = tradingdays;
+	}
+
+	/**
+	 * Method isEnabled.
+	 * 
+	 * @return boolean true if back tests should use this scheduler.
+	 */
+	public static boolean isEnabled() {
+		return _backTestScheduler;
+	}
+
+	/**
+	 * Method doInBackground.
+	 * 
+	 * @return Void
+	 */
+	public Void doInBackground() {
+
+		this.startTime = System.currentTimeMillis();
+		setProgress(0);
+
+		try {
+			Collections.sort(tradingdays.getTradingdays(), Tradingday.DATE_ORDER_ASC);
+
+			/*
+			 * Split the tradestrategies by contract. The tradestrategies for a
+			 * contract share the contract so they are run one after the other
+			 * in tradingday order.
+			 */
+			LinkedHashMap<Integer, List<Tradestrategy>> partitions = new LinkedHashMap<Integer, List<Tradestrategy>>();
+			for (Tradingday tradingday : tradingdays.getTradingdays()) {
+				for (Tradestrategy tradestrategy : tradingday.getTradestrategies()) {
+					if (this.brokerModel.isRealtimeBarsRunning(tradestrategy))
+						continue;
+
+					tradestrategy.setStrategyData(StrategyData.create(tradestrategy));
+					List<Tradestrategy> partition = partitions.get(tradestrategy.getContract().getIdContract());
+					if (null == partition) {
+						partition = new ArrayList<Tradestrategy>();
+						partitions.put(tradestrategy.getContract().getIdContract(), partition);
+					}
+					partition.add(tradestrategy);
+					this.grandTotal++;
+				}
+			}
+
+			if (!partitions.isEmpty()) {
+				this.executor = Executors
+						.newFixedThreadPool(Math.min(BackTestEngine.getThreads(), partitions.size()));
+				List<Future<?>> futures = new ArrayList<Future<?>>(partitions.size());
+				for (final List<Tradestrategy> partition : partitions.values()) {
+					futures.add(this.executor.submit(new Runnable() {
+						public void run() {
+							try {
+								runPartition(partition);
+							} catch (BrokerModelException ex) {
+								throw new IllegalStateException(ex.getMessage(), ex);
+							} catch (InterruptedException ex) {
+								Thread.currentThread().interrupt();
+							}
+						}
+					}));
+				}
+				this.executor.shutdown();
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			}
+
+			if (!this.isCancelled() && !tradingdays.getTradingdays().isEmpty()) {
+				this.tradelogReport = createTradelogReport();
+			}
+
+		} catch (InterruptedException ex) {
+			// Do nothing
+			_log.error("doInBackground interupted Msg: " + ex.getMessage());
+		} catch (ExecutionException ex) {
+			_log.error("Error running back test Msg: " + ex.getCause().getMessage(), ex.getCause());
+			this.firePropertyChange("error", new String("OK"), ex.getCause());
+		} catch (Exception ex) {
+			_log.error("Error running back test Msg: " + ex.getMessage(), ex);
+			this.firePropertyChange("error", new String("OK"), ex);
+		} finally {
+			if (null != this.executor) {
+				this.executor.shutdownNow();
+			}
+			setProgress(100);
+			String message = "Completed back test total tradestrategies processed: " + this.totalCompleted.get()
+					+ " in : " + ((System.currentTimeMillis() - this.startTime) / 1000) + " Seconds."
+					+ getTotalMessage();
+			_log.info(message + " " + CandleCache.getStatistics());
+			publish(message);
+		}
+		return null;
+	}
+
+	/**
+	 * Method runPartition. Back test the tradestrategies one at a time waiting
+	 * for each to complete before starting the next.
+	 * 
+	 * @param partition
+	 *            List<Tradestrategy>
+	 * @throws BrokerModelException
+	 * @throws InterruptedException
+	 */
+	private void runPartition(List<Tradestrategy> partition) throws BrokerModelException, InterruptedException {
+
+		for (Tradestrategy tradestrategy : partition) {
+			if (this.isCancelled())
+				return;
+
+			_log.debug("runPartition: " + tradestrategy.getContract().getSymbol() + " Tradingday: "
+					+ tradestrategy.getTradingday().getOpen());
+
+			this.brokerModel.onBrokerData(tradestrategy, tradestrategy.getTradingday().getClose());
+
+			synchronized (this.brokerModel.getHistoricalData()) {
+				while (this.brokerModel.isHistoricalDataRunning(tradestrategy) && !this.isCancelled()) {
+					this.brokerModel.getHistoricalData().wait();
+				}
+			}
+			int percent = (int) (((double) this.totalCompleted.incrementAndGet() / this.grandTotal) * 100d);
+			setProgress(Math.min(percent, 99));
+		}
+	}
+
+	/**
+	 * Method createTradelogReport. Create one tradelog report for all the
+	 * portfolios that were back tested in the range of tradingdays.
+	 * 
+	 * @return TradelogReport
+	 * @throws PersistentModelException
+	 */
+	private TradelogReport createTradelogReport() throws PersistentModelException {
+
+		ZonedDateTime start = TradingCalendar.getDateAtTime(tradingdays.getTradingdays().get(0).getOpen(), 0, 0, 0);
+		ZonedDateTime end = TradingCalendar.getDateAtTime(
+				tradingdays.getTradingdays().get(tradingdays.getTradingdays().size() - 1).getClose(), 23, 59, 59);
+
+		List<Portfolio> portfolios = new ArrayList<Portfolio>();
+		for (Tradingday tradingday : tradingdays.getTradingdays()) {
+			for (Tradestrategy tradestrategy : tradingday.getTradestrategies()) {
+				if (!portfolios.contains(tradestrategy.getPortfolio()))
+					portfolios.add(tradestrategy.getPortfolio());
+			}
+		}
+
+		TradelogReport report = new TradelogReport();
+		for (Portfolio portfolio : portfolios) {
+			TradelogReport portfolioReport = this.tradePersistentModel.findTradelogReport(portfolio, start, end,
+					false, null, BigDecimal.ZERO);
+			for (TradelogDetail tradelogDetail : portfolioReport.getTradelogDetail()) {
+				report.add(tradelogDetail);
+			}
+			for (TradelogSummary tradelogSummary : portfolioReport.getTradelogSummary()) {
+				report.add(tradelogSummary);
+			}
+		}
+		return report;
+	}
+
+	/**
+	 * Method getTotalMessage.
+	 * 
+	 * @return String the totals from the tradelog report.
+	 */
+	private String getTotalMessage() {
+		StringBuffer message = new StringBuffer();
+		if (null != this.tradelogReport) {
+			for (TradelogSummary tradelogSummary : this.tradelogReport.getTradelogSummary()) {
+				if ("Total".equals(tradelogSummary.getPeriod())) {
+					message.append(" Net P/L: " + tradelogSummary.getNetProfitLoss() + " Batting Avg: "
+							+ tradelogSummary.getBattingAverage() + " Sharpe Ratio: "
+							+ tradelogSummary.getSimpleSharpeRatio());
+				}
+			}
+		}
+		return message.toString();
+	}
+
+	/**
+	 * Method getTradelogReport.
+	 * 
+	 * @return TradelogReport the report for the back test or null if it has
+	 *         not completed.
+	 */
+	public TradelogReport getTradelogReport() {
+		return this.tradelogReport;
+	}
+
+	/**
+	 * Method process.This method process the publish method from
+	 * doInBackground().
+	 * 
+	 * @param messages
+	 *            List<String>
+	 */
+	protected void process(List<String> messages) {
+		String message = messages.get(messages.size() - 1);
+		this.firePropertyChange("information", new String("OK"), message);
+	}
+
+	public void done() {
+		if (null != this.tradelogReport) {
+			this.firePropertyChange("report", null, this.tradelogReport);
+		}
+	}
+}
@@ -0,0 +1,352 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.SwingWorker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.properties.ConfigProperties;
+import org.trade.core.util.CoreUtils;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.PersistentModelException;
+import org.trade.persistent.dao.TradelogReport;
+import org.trade.persistent.dao.TradelogSummary;
+import org.trade.persistent.dao.Tradestrategy;
+import org.trade.persistent.dao.Tradingday;
+import org.trade.persistent.dao.Tradingdays;
+import org.trade.strategy.ParameterSpace;
+import org.trade.strategy.StrategyParameters;
+
+/**
+ * Back tests the tradingdays once for each point in a strategy parameter space
+ * and ranks the points by the tradelog totals. The candles are shared by every
+ * point through the CandleCache. The sweep only runs on tradingdays with no
+ * orders and removes the orders it creates when it completes.
+ */
+public class BackTestSweep extends SwingWorker<Void, String> {
+
+	private final static Logger _log = LoggerFactory.getLogger(BackTestSweep.class);
+
+	private static String _sweepSpace = null;
+	private static int _sweepPoints = 0;
+	private static long _sweepSeed = 0;
+
+	private BrokerModel brokerModel;
+	private PersistentModel tradePersistentModel = null;
+	private Tradingdays tradingdays = null;
+	private List<Map<String, Object>> points = null;
+	private final List<Result> results = new ArrayList<Result>();
+	private long startTime = 0;
+
+	static {
+		try {
+			_sweepSpace = ConfigProperties.getPropAsString("trade.backtest.sweep");
+			_sweepPoints = ConfigProperties.getPropAsInt("trade.backtest.sweep.points");
+			_sweepSeed = ConfigProperties.getPropAsInt("trade.backtest.sweep.seed");
+		} catch (IOException ex) {
+			throw new IllegalArgumentException("Error initializing BackTestSweep Msg: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Constructor for BackTestSweep.
+	 * 
+	 * @param brokerModel
+	 *            BrokerModel
+	 * @param tradePersistentModel
+	 *            PersistentModel
+	 * @param tradingdays
+	 *            Tradingdays
+	 * @param points
+	 *            List<Map<String,Object>> the parameter values to back test.
+	 */
+	public BackTestSweep(BrokerModel brokerModel, PersistentModel tradePersistentModel, Tradingdays tradingdays,
+			List<Map<String, Object>> points) {
+		this.brokerModel = brokerModel;
+		this.tradePersistentModel = tradePersistentModel;
+		this.tradingdays = tradingdays;
+		this.points = points;
+	}
+
+	/**
+	 * Method isEnabled.
+	 * 
+	 * @return boolean true if a parameter space is set for back tests.
+	 */
+	public static boolean isEnabled() {
+		return !getParameterSpace().isEmpty();
+	}
+
+	/**
+	 * Method getParameterSpace.
+	 * 
+	 * @return ParameterSpace the parameter space from trade.backtest.sweep.
+	 */
+	public static ParameterSpace getParameterSpace() {
+		return ParameterSpace.parse(_sweepSpace);
+	}
+
+	/**
+	 * Method getPoints. The points from trade.backtest.sweep either all the
+	 * grid or a random sample of trade.backtest.sweep.points.
+	 * 
+	 * @return List<Map<String,Object>>
+	 */
+	public static List<Map<String, Object>> getPoints() {
+		ParameterSpace parameterSpace = getParameterSpace();
+		if (_sweepPoints > 0)
+			return parameterSpace.getRandomPoints(_sweepPoints, _sweepSeed);
+		return parameterSpace.getGridPoints();
+	}
+
+	/**
+	 * Method doInBackground.
+	 * 
+	 * @return Void
+	 */
+	public Void doInBackground() {
+
+		this.startTime = System.currentTimeMillis();
+		setProgress(0);
+		boolean sweepOrders = false;
+
+		try {
+			/*
+			 * The orders created by each point are removed before the next
+			 * point so only run on tradingdays that have no orders. This
+			 * keeps any orders already saved for the tradingdays.
+			 */
+			checkNoTradeOrders();
+			sweepOrders = true;
+
+			int pointCount = 0;
+			for (Map<String, Object> point : this.points) {
+				if (this.isCancelled())
+					break;
+
+				removeTradeOrders();
+				StrategyParameters.setValues(point);
+
+				BackTestScheduler scheduler = new BackTestScheduler(this.brokerModel, this.tradePersistentModel,
+						this.tradingdays);
+				scheduler.run();
+				TradelogSummary total = getTotal(scheduler.getTradelogReport());
+				if (null != total) {
+					this.results.add(new Result(point, total));
+				}
+				pointCount++;
+				_log.info("Back test sweep point: " + point + getTotalMessage(total));
+				publish("Back test sweep completed " + pointCount + " of " + this.points.size() + " point: " + point
+						+ getTotalMessage(total));
+				setProgress(Math.min((int) (((double) pointCount / this.points.size()) * 100d), 99));
+			}
+
+			Collections.sort(this.results, Result.RANK_ORDER);
+			for (int rank = 0; rank < this.results.size(); rank++) {
+				Result result = this.results.get(rank);
+				_log.info("Back test sweep rank: " + (rank + 1) + " point: " + result.getPoint()
+						+ getTotalMessage(result.getTotal()));
+			}
+
+		} catch (Exception ex) {
+			_log.error("Error running back test sweep Msg: " + ex.getMessage(), ex);
+			this.firePropertyChange("error", new String("OK"), ex);
+		} finally {
+			StrategyParameters.clear();
+			if (sweepOrders) {
+				try {
+					removeTradeOrders();
+				} catch (PersistentModelException ex) {
+					_log.error("Error removing back test sweep orders Msg: " + ex.getMessage(), ex);
+				}
+			}
+			setProgress(100);
+			String message = "Completed back test sweep of " + this.points.size() + " points in : "
+					+ ((System.currentTimeMillis() - this.startTime) / 1000) + " Seconds.";
+			if (!this.results.isEmpty()) {
+				message = message + " Best point: " + this.results.get(0).getPoint()
+						+ getTotalMessage(this.results.get(0).getTotal());
+			}
+			_log.info(message);
+			publish(message);
+		}
+		return null;
+	}
+
+	/**
+	 * Method checkNoTradeOrders. Check the database for orders on the
+	 * tradestrategies to be back tested.
+	 * 
+	 * @throws PersistentModelException
+	 *             if a tradestrategy has orders.
+	 */
+	private void checkNoTradeOrders() throws PersistentModelException {
+		for (Tradingday tradingday : this.tradingdays.getTradingdays()) {
+			for (Tradestrategy tradestrategy : tradingday.getTradestrategies()) {
+				if (!this.tradePersistentModel.findPositionOrdersByTradestrategyId(tradestrategy.getIdTradeStrategy())
+						.getTradeOrders().isEmpty()) {
+					throw new PersistentModelException("Back test sweep not run as Tradingday: "
+							+ tradingday.getOpen() + " Symbol: " + tradestrategy.getContract().getSymbol()
+							+ " has orders. Please delete the orders before running a sweep.");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method removeTradeOrders. Remove the orders created by the last point.
+	 * 
+	 * @throws PersistentModelException
+	 */
+	private void removeTradeOrders() throws PersistentModelException {
+		for (Tradingday tradingday : this.tradingdays.getTradingdays()) {
+			this.tradePersistentModel.removeTradingdayTradeOrders(tradingday);
+		}
+	}
+
+	/**
+	 * Method getResults.
+	 * 
+	 * @return List<Result> the points ranked best first.
+	 */
+	public List<Result> getResults() {
+		return Collections.unmodifiableList(this.results);
+	}
+
+	/**
+	 * Method process.This method process the publish method from
+	 * doInBackground().
+	 * 
+	 * @param messages
+	 *            List<String>
+	 */
+	protected void process(List<String> messages) {
+		String message = messages.get(messages.size() - 1);
+		this.firePropertyChange("information", new String("OK"), message);
+	}
+
+	/**
+	 * Method getTotal.
+	 * 
+	 * @param tradelogReport
+	 *            TradelogReport
+	 * @return TradelogSummary the total for the report.
+	 */
+	private static TradelogSummary getTotal(TradelogReport tradelogReport) {
+		if (null != tradelogReport) {
+			for (TradelogSummary tradelogSummary : tradelogReport.getTradelogSummary()) {
+				if ("Total".equals(tradelogSummary.getPeriod()))
+					return tradelogSummary;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Method getTotalMessage.
+	 * 
+	 * @param total
+	 *            TradelogSummary
+	 * @return String
+	 */
+	private static String getTotalMessage(TradelogSummary total) {
+		if (null == total)
+			return " no trades.";
+		return " Net P/L: " + total.getNetProfitLoss() + " Batting Avg: " + total.getBattingAverage()
+				+ " Sharpe Ratio: " + total.getSimpleSharpeRatio();
+	}
+
+	/**
+	 * The tradelog totals for one point in the parameter space.
+	 */
+	public static class Result {
+
+		/**
+		 * Rank by net P/L then batting average then the Sharpe ratio highest
+		 * first.
+		 */
+		public static final Comparator<Result> RANK_ORDER = new Comparator<Result>() {
+			public int compare(Result o1, Result o2) {
+				int returnVal = compareDesc(o1.getTotal().getNetProfitLoss(), o2.getTotal().getNetProfitLoss());
+				if (returnVal == 0)
+					returnVal = compareDesc(o1.getTotal().getBattingAverage(), o2.getTotal().getBattingAverage());
+				if (returnVal == 0)
+					returnVal = compareDesc(o1.getTotal().getSimpleSharpeRatio(),
+							o2.getTotal().getSimpleSharpeRatio());
+				return returnVal;
+			}
+		};
+
+		private final Map<String, Object> point;
+		private final TradelogSummary total;
+
+		public Result(Map<String, Object> point, TradelogSummary total) {
+			this.point = point;
+			this.total = total;
+		}
+
+		/**
+		 * Method getPoint.
+		 * 
+		 * @return Map<String,Object>
+		 */
+		public Map<String, Object> getPoint() {
+			return this.point;
+		}
+
+		/**
+		 * Method getTotal.
+		 * 
+		 * @return TradelogSummary
+		 */
+		public TradelogSummary getTotal() {
+			return this.total;
+		}
+
+		private static int compareDesc(BigDecimal value1, BigDecimal value2) {
+			return CoreUtils.nullSafeComparator(value2, value1);
+		}
+	}
+}
@@ -0,0 +1,377 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.properties.ConfigProperties;
+import org.trade.core.util.TradingCalendar;
+import org.trade.persistent.CandleCache;
+import org.trade.persistent.CandleCoverage;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.PersistentModelException;
+import org.trade.persistent.dao.Candle;
+import org.trade.persistent.dao.Tradestrategy;
+
+/**
+ * Plans the historical data request for a tradestrategy so only the
+ * tradingdays missing from the database are requested from the broker. The
+ * tradingdays in the chart days window are checked against the CandleCoverage
+ * index, a tradingday not in the index is complete if it has closed and the
+ * database holds a candle for every bar between the open and the trading
+ * calendar close.
+ * 
+ * The request must end at the end date and use one of the ChartDays periods
+ * so the shortest period that reaches back to the oldest missing tradingday
+ * is requested and the complete tradingdays before it are read from the
+ * database. If no tradingday is missing nothing is requested.
+ * 
+ * The planner is only used for regular trading hours intra day bars and when
+ * trade.backfill.incremental is true, otherwise the whole chart days window is
+ * requested.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class BackfillPlanner {
+
+	private final static Logger _log = LoggerFactory.getLogger(BackfillPlanner.class);
+
+	/*
+	 * The ChartDays codes in order. 1 and 2 are trading days the others are
+	 * calendar days.
+	 */
+	private static final int[] CHART_DAYS = { 1, 2, 7, 15, 30, 60, 90, 180, 365 };
+
+	private static boolean _incremental = false;
+	private static Integer _useRTH = 1;
+
+	static {
+		try {
+			_incremental = ConfigProperties.getPropAsBoolean("trade.backfill.incremental");
+			_useRTH = ConfigProperties.getPropAsInt("trade.backfill.useRTH");
+		} catch (IOException ex) {
+			throw new IllegalArgumentException("Error initializing BackfillPlanner Msg: " + ex.getMessage());
+		}
+	}
+
+	private final PersistentModel persistentModel;
+
+	/**
+	 * Constructor for BackfillPlanner.
+	 * 
+	 * @param persistentModel
+	 *            PersistentModel
+	 */
+	public BackfillPlanner(PersistentModel persistentModel) {
+		this.persistentModel = persistentModel;
+	}
+
+	/**
+	 * Method getPlan.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @param endDate
+	 *            ZonedDateTime the end of the request.
+	 * @return BackfillPlan
+	 * @throws PersistentModelException
+	 */
+	public BackfillPlan getPlan(Tradestrategy tradestrategy, ZonedDateTime endDate)
+			throws PersistentModelException {
+
+		Integer chartDays = tradestrategy.getChartDays();
+		Integer barSize = tradestrategy.getBarSize();
+		Integer idContract = tradestrategy.getContract().getIdContract();
+
+		if (!_incremental || _useRTH != 1 || null == idContract || null == barSize || barSize > 3600
+				|| null == chartDays || indexOf(chartDays) < 0)
+			return new BackfillPlan(endDate, chartDays, null);
+
+		ZonedDateTime now = TradingCalendar.getDateTimeNowMarketTimeZone();
+		LocalDate endDay = toDay(endDate);
+		LocalDate startDay = getStartDay(endDay, chartDays);
+
+		List<Candle> candles = CandleCache.findCandlesByContractDateRangeBarSize(this.persistentModel, idContract,
+				startDay.atStartOfDay(TradingCalendar.MKT_TIMEZONE),
+				endDay.atTime(LocalTime.MAX).atZone(TradingCalendar.MKT_TIMEZONE), barSize);
+
+		Map<LocalDate, Integer> counts = new HashMap<LocalDate, Integer>();
+		for (Candle candle : candles) {
+			LocalDate day = toDay(candle.getStartPeriod());
+			Integer count = counts.get(day);
+			counts.put(day, (null == count ? 1 : count + 1));
+		}
+
+		/*
+		 * Find the oldest tradingday that is not complete.
+		 */
+		LocalDate missingDay = null;
+		for (LocalDate day = startDay; !day.isAfter(endDay); day = day.plusDays(1)) {
+			ZonedDateTime open = TradingCalendar.getDateAtTime(day.atStartOfDay(TradingCalendar.MKT_TIMEZONE),
+					tradestrategy.getTradingday().getOpen());
+			if (!TradingCalendar.isTradingDay(open) || CandleCoverage.isComplete(idContract, barSize, day))
+				continue;
+
+			ZonedDateTime close = TradingCalendar.getDateAtTime(open, tradestrategy.getTradingday().getClose());
+			if (CandleCoverage.hasAllCandles(open, close, barSize, counts.get(day), now)) {
+				CandleCoverage.setComplete(idContract, barSize, day);
+			} else {
+				missingDay = day;
+				break;
+			}
+		}
+
+		if (null == missingDay) {
+			_log.debug("getPlan all candles in database Symbol: " + tradestrategy.getContract().getSymbol()
+					+ " end Date: " + endDate + " Chart days: " + chartDays + " Bar size: " + barSize);
+			return new BackfillPlan(endDate, 0, candles);
+		}
+
+		int requestDays = chartDays;
+		for (int i = 0; i < indexOf(chartDays); i++) {
+			if (!getStartDay(endDay, CHART_DAYS[i]).isAfter(missingDay)) {
+				requestDays = CHART_DAYS[i];
+				break;
+			}
+		}
+		if (requestDays == chartDays)
+			return new BackfillPlan(endDate, chartDays, null);
+
+		LocalDate requestStartDay = getStartDay(endDay, requestDays);
+		List<Candle> loadCandles = new ArrayList<Candle>();
+		for (Candle candle : candles) {
+			if (toDay(candle.getStartPeriod()).isBefore(requestStartDay))
+				loadCandles.add(candle);
+		}
+		_log.debug("getPlan Symbol: " + tradestrategy.getContract().getSymbol() + " end Date: " + endDate
+				+ " Chart days: " + chartDays + " request days: " + requestDays + " candles in database: "
+				+ loadCandles.size());
+		return new BackfillPlan(endDate, requestDays, loadCandles);
+	}
+
+	/**
+	 * Method setComplete. Called when the broker has returned all the candles
+	 * for the plan. The tradingdays in the request that had closed when it was
+	 * sent are added to the CandleCoverage index.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @param plan
+	 *            BackfillPlan
+	 */
+	public void setComplete(Tradestrategy tradestrategy, BackfillPlan plan) {
+
+		Integer barSize = tradestrategy.getBarSize();
+		Integer idContract = tradestrategy.getContract().getIdContract();
+		if (!_incremental || _useRTH != 1 || null == idContract || null == barSize || barSize > 3600
+				|| !plan.isRequired() || indexOf(plan.getChartDays()) < 0)
+			return;
+
+		LocalDate endDay = toDay(plan.getEndDate());
+		for (LocalDate day = getStartDay(endDay, plan.getChartDays()); !day.isAfter(endDay); day = day.plusDays(1)) {
+			ZonedDateTime open = TradingCalendar.getDateAtTime(day.atStartOfDay(TradingCalendar.MKT_TIMEZONE),
+					tradestrategy.getTradingday().getOpen());
+			ZonedDateTime close = TradingCalendar
+					.getTradingDayClose(TradingCalendar.getDateAtTime(open, tradestrategy.getTradingday().getClose()));
+			if (TradingCalendar.isTradingDay(open) && !close.isAfter(plan.getEndDate())
+					&& close.isBefore(plan.getCreateDate()))
+				CandleCoverage.setComplete(idContract, barSize, day);
+		}
+	}
+
+	/**
+	 * Method getStartDay.
+	 * 
+	 * @param endDay
+	 *            LocalDate
+	 * @param chartDays
+	 *            int a ChartDays code.
+	 * @return LocalDate the first day covered by a request of chartDays that
+	 *         ends on the endDay.
+	 */
+	static LocalDate getStartDay(LocalDate endDay, int chartDays) {
+		if (chartDays > 2)
+			return endDay.minusDays(chartDays - 1);
+		return toDay(TradingCalendar.addTradingDays(endDay.atStartOfDay(TradingCalendar.MKT_TIMEZONE),
+				(-1 * (chartDays - 1))));
+	}
+
+	/**
+	 * Method getStartDay.
+	 * 
+	 * @param endDate
+	 *            ZonedDateTime
+	 * @param chartDays
+	 *            int a ChartDays code.
+	 * @return LocalDate the first day covered by a request of chartDays that
+	 *         ends on the endDate.
+	 */
+	static LocalDate getStartDay(ZonedDateTime endDate, int chartDays) {
+		return getStartDay(toDay(endDate), chartDays);
+	}
+
+	/**
+	 * Method indexOf.
+	 * 
+	 * @param chartDays
+	 *            int
+	 * @return int the index of the ChartDays code or -1.
+	 */
+	private static int indexOf(int chartDays) {
+		for (int i = 0; i < CHART_DAYS.length; i++) {
+			if (CHART_DAYS[i] == chartDays)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Method toDay.
+	 * 
+	 * @param date
+	 *            ZonedDateTime
+	 * @return LocalDate the date in the market time zone.
+	 */
+	private static LocalDate toDay(ZonedDateTime date) {
+		return date.withZoneSameInstant(TradingCalendar.MKT_TIMEZONE).toLocalDate();
+	}
+
+	/**
+	 * The request to send for a tradestrategy and the candles to read from the
+	 * database before it is sent.
+	 */
+	public static class BackfillPlan {
+
+		private final ZonedDateTime endDate;
+		private final int chartDays;
+		private final List<Candle> candles;
+		private final ZonedDateTime createDate = TradingCalendar.getDateTimeNowMarketTimeZone();
+
+		/**
+		 * Constructor for BackfillPlan.
+		 * 
+		 * @param endDate
+		 *            ZonedDateTime
+		 * @param chartDays
+		 *            int the chart days to request, zero if no request is
+		 *            needed.
+		 * @param candles
+		 *            List<Candle>
+		 */
+		BackfillPlan(ZonedDateTime endDate, int chartDays, List<Candle> candles) {
+			this.endDate = endDate;
+			this.chartDays = chartDays;
+			this.candles = (null == candles ? Collections.<Candle> emptyList() : candles);
+		}
+
+		/**
+		 * Method getEndDate.
+		 * 
+		 * @return ZonedDateTime
+		 */
+		public ZonedDateTime getEndDate() {
+			return this.endDate;
+		}
+
+		/**
+		 * Method getChartDays.
+		 * 
+		 * @return int
+		 */
+		public int getChartDays() {
+			return this.chartDays;
+		}
+
+		/**
+		 * Method getCandles.
+		 * 
+		 * @return List<Candle> the candles to read from the database in
+		 *         start period order.
+		 */
+		public List<Candle> getCandles() {
+			return this.candles;
+		}
+
+		/**
+		 * Method getCreateDate.
+		 * 
+		 * @return ZonedDateTime
+		 */
+		public ZonedDateTime getCreateDate() {
+			return this.createDate;
+		}
+
+		/**
+		 * Method isRequired.
+		 * 
+		 * @return boolean true if a request must be sent to the broker.
+		 */
+		public boolean isRequired() {
+			return this.chartDays > 0;
+		}
+
+		/**
+		 * Method isPartial.
+		 * 
+		 * @return boolean true if only the tradingdays from the start date are
+		 *         requested and the candles before it are read from the
+		 *         database.
+		 */
+		public boolean isPartial() {
+			return isRequired() && !this.candles.isEmpty();
+		}
+
+		/**
+		 * Method getStartDate.
+		 * 
+		 * @return ZonedDateTime the start of the first day requested.
+		 */
+		public ZonedDateTime getStartDate() {
+			return getStartDay(this.endDate, this.chartDays).atStartOfDay(TradingCalendar.MKT_TIMEZONE);
+		}
+	}
+}
@@ -1,19 +1,15 @@
 package org.trade.broker;
 
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.SwingWorker;
-import javax.swing.Timer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,13 +37,10 @@ public class BrokerDataRequestMonitor extends SwingWorker<Void, String> {
 	private int grandTotal = 0;
 	private long startTime = 0;
 	private Integer backTestBarSize = 0;
-	private final Integer TIME_BETWEEN_SUBMIT = new Integer(4);
-	private AtomicInteger timerRunning = null;
-	private final Object lockCoreUtilsTest = new Object();
-	private Timer timer = null;
-	private LinkedList<Long> submitTimes = new LinkedList<Long>();
+	private final RequestPacer requestPacer = new RequestPacer();
 	private final ConcurrentHashMap<String, Contract> contractRequests = new ConcurrentHashMap<String, Contract>();
 	private final ConcurrentHashMap<Integer, Tradestrategy> indicatorRequests = new ConcurrentHashMap<Integer, Tradestrategy>();
+	private final ConcurrentHashMap<Integer, List<Tradestrategy>> rollupRequests = new ConcurrentHashMap<Integer, List<Tradestrategy>>();
 
 	/**
 	 * Constructor for BrokerDataRequestProgressMonitor.
@@ -64,14 +57,6 @@ public class BrokerDataRequestMonitor extends SwingWorker<Void, String> {
 		this.tradePersistentModel = tradePersistentModel;
 		this.tradingdays = tradingdays;
 		this.backTestBarSize = ConfigProperties.getPropAsInt("trade.backtest.barSize");
-		this.timer = new Timer(250, new ActionListener() {
-			public void actionPerformed(ActionEvent e) {
-				synchronized (lockCoreUtilsTest) {
-					timerRunning.addAndGet(250);
-					lockCoreUtilsTest.notifyAll();
-				}
-			}
-		});
 	}
 
 	/**
@@ -85,7 +70,6 @@ public class BrokerDataRequestMonitor extends SwingWorker<Void, String> {
 		int totalSumbitted = 0;
 		int reSumbittedAt = 20;
 		this.startTime = System.currentTimeMillis();
-		this.submitTimes.clear();
 		ConcurrentHashMap<Integer, Tradingday> runningContractRequests = new ConcurrentHashMap<Integer, Tradingday>();
 
 		// Initialize the progress bar
@@ -95,6 +79,7 @@ public class BrokerDataRequestMonitor extends SwingWorker<Void, String> {
 			this.grandTotal = calculateTotalTradestrategiesToProcess(this.startTime);
 
 			Collections.sort(tradingdays.getTradingdays(), Tradingday.DATE_ORDER_ASC);
+			prioritizeToday(tradingdays.getTradingdays());
 
 			for (Tradingday tradingday : tradingdays.getTradingdays()) {
 
@@ -234,10 +219,33 @@ public class BrokerDataRequestMonitor extends SwingWorker<Void, String> {
 			contractRequests.remove(tradestrategy.getContract().getSymbol());
 		}
 
-		this.brokerModel.onBrokerData(tradestrategy, endDate);
+		/*
+		 * Wait until the request is within the TWS pacing limits. When
+		 * connected to TWS. Note only TWSManager return true for connected.
+		 * Requests that are read from the database do not count.
+		 */
+		String contractKey = null;
+		String requestKey = null;
+		if (this.brokerModel.isConnected() && this.brokerModel.isHistoricalDataRequired(tradestrategy, endDate)) {
+			contractKey = getContractKey(tradestrategy.getContract());
+			requestKey = contractKey + ":" + endDate + ":" + tradestrategy.getBarSize() + ":"
+					+ tradestrategy.getChartDays();
+			waitForPacing(contractKey, requestKey);
+			if (this.isCancelled())
+				return totalSumbitted;
+		}
 
-		totalSumbitted++;
-		hasSubmittedInSeconds();
+		List<Tradestrategy> rollupTradestrategies = this.rollupRequests.remove(tradestrategy.getId());
+		if (null == rollupTradestrategies) {
+			this.brokerModel.onBrokerData(tradestrategy, endDate);
+			totalSumbitted++;
+		} else {
+			this.brokerModel.onBrokerData(tradestrategy, endDate, rollupTradestrategies);
+			totalSumbitted = totalSumbitted + 1 + rollupTradestrategies.size();
+		}
+		if (null != contractKey) {
+			this.requestPacer.submitted(contractKey, requestKey, System.currentTimeMillis());
+		}
 
 		/*
 		 * This can happen if there is the same indicator contract but in
@@ -251,28 +259,13 @@ public class BrokerDataRequestMonitor extends SwingWorker<Void, String> {
 				* 100d);
 		setProgress(percent);
 
-		/*
-		 * Need to slow things down as limit is 60 including real time bars
-		 * requests. When connected to TWS. Note only TWSManager return true for
-		 * connected.
-		 */
-		if (((Math.floor(totalSumbitted / 58d) == (totalSumbitted / 58d)) && (totalSumbitted > 0))
-				&& this.brokerModel.isConnected()) {
-
-			timerRunning = new AtomicInteger(0);
-			timer.start();
-			synchronized (lockCoreUtilsTest) {
-				while (timerRunning.get() / 1000 < 601 && !this.isCancelled()) {
-					if ((timerRunning.get() % 60000) == 0) {
-						String message = "Please wait " + (10 - (timerRunning.get() / 1000 / 60))
-								+ " minutes as there are more than 60 data requests.";
-						publish(message);
-					}
-					lockCoreUtilsTest.wait();
-				}
+		if (null != contractKey) {
+			long estimatedMillis = this.requestPacer.getEstimatedMillis(getGrandTotal() - totalSumbitted,
+					System.currentTimeMillis());
+			if (estimatedMillis >= 60000) {
+				publish("Submitted " + totalSumbitted + " of " + getGrandTotal() + " data requests, estimated time remaining "
+						+ (estimatedMillis / 60000) + " minutes " + ((estimatedMillis % 60000) / 1000) + " seconds.");
 			}
-			timer.stop();
-			_log.debug("Finished wait 10min wait");
 		}
 
 		/*
@@ -333,47 +326,61 @@ public class BrokerDataRequestMonitor extends SwingWorker<Void, String> {
 	}
 
 	/**
-	 * Method hasSubmittedInSeconds. Make sure no more than six requests every 2
-	 * seconds.
-	 * 
-	 * 162 - Historical Market Data Service error message: Historical data
-	 * request pacing violation
-	 * 
-	 * The following conditions can cause a pacing violation:
-	 * 
-	 * Making identical historical data requests within 15 seconds;
+	 * Method waitForPacing. Waits until the request can be submitted without
+	 * causing a historical data request pacing violation, see RequestPacer.
 	 * 
-	 * Making six or more historical data requests for the same Contract,
-	 * Exchange and Tick Type within two seconds.
-	 * 
-	 * Also, observe the following limitation when requesting historical data:
+	 * @param contractKey
+	 *            String
+	 * @param requestKey
+	 *            String
+	 * @throws InterruptedException
+	 */
+	private void waitForPacing(String contractKey, String requestKey) throws InterruptedException {
+
+		long waitMillis = this.requestPacer.getWaitMillis(contractKey, requestKey, System.currentTimeMillis());
+		if (waitMillis >= 60000) {
+			publish("Please wait " + (waitMillis / 60000) + " minutes " + ((waitMillis % 60000) / 1000)
+					+ " seconds as there are more than 60 data requests in ten minutes.");
+		}
+		while (waitMillis > 0 && !this.isCancelled()) {
+			_log.debug("waitForPacing " + requestKey + " wait: " + (waitMillis / 1000d) + " seconds.");
+			Thread.sleep(Math.min(waitMillis, 1000));
+			waitMillis = this.requestPacer.getWaitMillis(contractKey, requestKey, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Method getContractKey. The pacing limits for the same contract apply to
+	 * the Contract, Exchange and Tick Type, all requests use the
+	 * trade.backfill.whatToShow Tick Type.
 	 * 
-	 * Do not make more than 60 historical data requests in any ten-minute
-	 * period.
+	 * @param contract
+	 *            Contract
+	 * @return String
+	 */
+	private String getContractKey(Contract contract) {
+		return contract.getSymbol() + ":" + contract.getSecType() + ":" + contract.getExchange();
+	}
+
+	/**
+	 * Method prioritizeToday. Moves today's tradingday to the front so the
+	 * contracts being traded today get their data ahead of the back fill
+	 * days. The other tradingdays keep their order.
 	 * 
-	 * @throws InterruptedException
+	 * @param tradingdays
+	 *            List<Tradingday>
 	 */
-	private void hasSubmittedInSeconds() throws InterruptedException {
-
-		this.submitTimes.addFirst(new Long(System.currentTimeMillis()));
-
-		if (this.submitTimes.size() == 5 && this.brokerModel.isConnected()) {
-
-			if ((this.submitTimes.getFirst() - this.submitTimes.getLast()) < (TIME_BETWEEN_SUBMIT * 1000)) {
-				_log.debug("hasSubmittedInSeconds 5 in: "
-						+ ((this.submitTimes.getFirst() - this.submitTimes.getLast()) / 1000d));
-				timerRunning = new AtomicInteger(0);
-				timer.start();
-				synchronized (lockCoreUtilsTest) {
-					while (((this.submitTimes.getFirst() - this.submitTimes.getLast())
-							+ timerRunning.get()) < (TIME_BETWEEN_SUBMIT * 1000) && !this.isCancelled()) {
-						_log.debug("Please wait " + (TIME_BETWEEN_SUBMIT - (timerRunning.get() / 1000)) + " seconds.");
-						lockCoreUtilsTest.wait();
-					}
-				}
-				timer.stop();
-			}
-			this.submitTimes.removeLast();
+	private void prioritizeToday(List<Tradingday> tradingdays) {
+
+		ZonedDateTime today = TradingCalendar.getZonedDateTimeFromMilli(this.startTime);
+		List<Tradingday> todays = new ArrayList<Tradingday>(1);
+		for (Tradingday tradingday : tradingdays) {
+			if (TradingCalendar.sameDay(tradingday.getOpen(), today))
+				todays.add(tradingday);
+		}
+		if (!todays.isEmpty()) {
+			tradingdays.removeAll(todays);
+			tradingdays.addAll(0, todays);
 		}
 	}
 
@@ -595,26 +602,32 @@ public class BrokerDataRequestMonitor extends SwingWorker<Void, String> {
 			reProcessTradingday = (Tradingday) tradingday.clone();
 		}
 		Tradingday toProcessTradingday = (Tradingday) tradingday.clone();
-		Contract currContract = null;
+		List<Tradestrategy> contractTradestrategies = new ArrayList<Tradestrategy>();
 
 		for (Tradestrategy tradestrategy : tradingday.getTradestrategies()) {
 			if (this.brokerModel.isHistoricalDataRunning(tradestrategy.getContract())) {
 				if (!reProcessTradingday.existTradestrategy(tradestrategy))
 					reProcessTradingday.addTradestrategy(tradestrategy);
 			} else {
-				if (tradestrategy.getContract().equals(currContract)) {
-					if (!reProcessTradingday.existTradestrategy(tradestrategy))
-						reProcessTradingday.addTradestrategy(tradestrategy);
-				} else {
-					currContract = tradestrategy.getContract();
-					toProcessTradingday.addTradestrategy(tradestrategy);
+				if (!contractTradestrategies.isEmpty()
+						&& !tradestrategy.getContract().equals(contractTradestrategies.get(0).getContract())) {
+					addContractTradestrategies(contractTradestrategies, toProcessTradingday, reProcessTradingday);
+					contractTradestrategies.clear();
 				}
+				contractTradestrategies.add(tradestrategy);
 			}
 		}
+		addContractTradestrategies(contractTradestrategies, toProcessTradingday, reProcessTradingday);
 
 		for (Tradestrategy tradestrategy : toProcessTradingday.getTradestrategies()) {
 			if (reProcessTradingday.existTradestrategy(tradestrategy))
 				reProcessTradingday.removeTradestrategy(tradestrategy);
+			if (this.rollupRequests.containsKey(tradestrategy.getId())) {
+				for (Tradestrategy rollupTradestrategy : this.rollupRequests.get(tradestrategy.getId())) {
+					if (reProcessTradingday.existTradestrategy(rollupTradestrategy))
+						reProcessTradingday.removeTradestrategy(rollupTradestrategy);
+				}
+			}
 		}
 		if (reProcessTradingday.getTradestrategies().isEmpty()) {
 			runningContractRequests.remove(reProcessTradingday.getIdTradingDay());
@@ -625,6 +638,74 @@ public class BrokerDataRequestMonitor extends SwingWorker<Void, String> {
 		return toProcessTradingday;
 	}
 
+	/**
+	 * Method addContractTradestrategies. Only one request per contract can be
+	 * running. When connected to TWS the tradestrategy with the smallest bar
+	 * size is processed and the tradestrategies whose candles can be rolled up
+	 * from it are added to its request, the others are processed later.
+	 * 
+	 * @param tradestrategies
+	 *            List<Tradestrategy> the tradestrategies for one contract.
+	 * @param toProcessTradingday
+	 *            Tradingday
+	 * @param reProcessTradingday
+	 *            Tradingday
+	 */
+	private void addContractTradestrategies(List<Tradestrategy> tradestrategies, Tradingday toProcessTradingday,
+			Tradingday reProcessTradingday) {
+
+		if (tradestrategies.isEmpty())
+			return;
+
+		Tradestrategy tradestrategy = tradestrategies.get(0);
+		boolean rollup = this.brokerModel.isConnected();
+		if (rollup) {
+			for (Tradestrategy item : tradestrategies) {
+				if (item.getBarSize() < tradestrategy.getBarSize() || (item.getBarSize().equals(
+						tradestrategy.getBarSize()) && item.getChartDays() > tradestrategy.getChartDays()))
+					tradestrategy = item;
+			}
+		}
+		toProcessTradingday.addTradestrategy(tradestrategy);
+
+		List<Tradestrategy> rollupTradestrategies = new ArrayList<Tradestrategy>();
+		for (Tradestrategy item : tradestrategies) {
+			if (item == tradestrategy)
+				continue;
+			if (rollup && isRollup(tradestrategy, item)) {
+				rollupTradestrategies.add(item);
+			} else {
+				if (!reProcessTradingday.existTradestrategy(item))
+					reProcessTradingday.addTradestrategy(item);
+			}
+		}
+		if (rollupTradestrategies.isEmpty()) {
+			this.rollupRequests.remove(tradestrategy.getId());
+		} else {
+			this.rollupRequests.put(tradestrategy.getId(), rollupTradestrategies);
+		}
+	}
+
+	/**
+	 * Method isRollup.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @param rollupTradestrategy
+	 *            Tradestrategy
+	 * @return boolean true if the rollupTradestrategy's candles can be built
+	 *         from the tradestrategy's. Both must be intra day bars and the
+	 *         rollupTradestrategy's bar size a multiple of the tradestrategy's
+	 *         with no more chart days.
+	 */
+	private boolean isRollup(Tradestrategy tradestrategy, Tradestrategy rollupTradestrategy) {
+		return tradestrategy.getBarSize() <= 3600 && rollupTradestrategy.getBarSize() <= 3600
+				&& (rollupTradestrategy.getBarSize() % tradestrategy.getBarSize()) == 0
+				&& rollupTradestrategy.getChartDays() <= tradestrategy.getChartDays()
+				&& TradingCalendar.sameDay(rollupTradestrategy.getTradingday().getOpen(),
+						tradestrategy.getTradingday().getOpen());
+	}
+
 	/**
 	 * Method Calculate the total number of tradestrategies to be processed.
 	 * This will be all the tradestrategies plus all the indicators that are of
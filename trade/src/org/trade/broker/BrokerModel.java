@@ -37,6 +37,7 @@ package org.trade.broker;
 
 import java.time.ZonedDateTime;
 import java.util.EventListener;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.trade.broker.client.Broker;
@@ -204,6 +205,38 @@ public interface BrokerModel {
 	 */
 	public void onBrokerData(Tradestrategy tradestrategy, ZonedDateTime endDate) throws BrokerModelException;
 
+	/**
+	 * Method onBrokerData. Request the data for the tradestrategy once and
+	 * build the candles for the rollup tradestrategies from it. The rollup
+	 * tradestrategies are for the same contract and tradingday with a bar
+	 * size that is a multiple of the tradestrategy's bar size.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @param endDate
+	 *            ZonedDateTime
+	 * @param rollupTradestrategies
+	 *            List<Tradestrategy>
+	 * 
+	 * @throws BrokerModelException
+	 */
+	public void onBrokerData(Tradestrategy tradestrategy, ZonedDateTime endDate,
+			List<Tradestrategy> rollupTradestrategies) throws BrokerModelException;
+
+	/**
+	 * Method isHistoricalDataRequired. Returns false when all the candles
+	 * onBrokerData needs are in the database and no request will be sent to
+	 * the broker.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @param endDate
+	 *            ZonedDateTime
+	 * @return boolean
+	 * @throws BrokerModelException
+	 */
+	boolean isHistoricalDataRequired(Tradestrategy tradestrategy, ZonedDateTime endDate) throws BrokerModelException;
+
 	/**
 	 * Method onReqRealTimeBars.
 	 * 
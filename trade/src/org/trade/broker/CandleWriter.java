@@ -0,0 +1,471 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.properties.ConfigProperties;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.PersistentModelException;
+import org.trade.persistent.dao.Candle;
+
+/**
+ * Saves the real time candles on its own thread so the thread that receives
+ * the broker messages is not held up by the database. Each candle is copied
+ * when it is queued and later updates to the same contract, bar size and
+ * period replace the queued copy so only the latest values are saved. The
+ * writer saves everything queued each time it runs in one transaction, if
+ * that fails the candles are saved one at a time.
+ * 
+ * The queue holds at most trade.candle.writeBehind.size candles. When it is
+ * full the caller waits until the writer takes the queue, this slows the
+ * caller down to the speed of the database but no candle is lost and every
+ * candle is saved on the writer thread in the order it was queued.
+ * 
+ * The queue is flushed when the application exits.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class CandleWriter implements Runnable {
+
+	private final static Logger _log = LoggerFactory.getLogger(CandleWriter.class);
+
+	private static final long SHUTDOWN_FLUSH_MILLIS = 30000;
+
+	private static int _queueSize = 0;
+
+	static {
+		try {
+			_queueSize = ConfigProperties.getPropAsInt("trade.candle.writeBehind.size");
+		} catch (IOException ex) {
+			throw new IllegalArgumentException("Error initializing CandleWriter Msg: " + ex.getMessage());
+		}
+	}
+
+	private final PersistentModel persistentModel;
+	private final LinkedHashMap<String, QueuedCandle> queue = new LinkedHashMap<String, QueuedCandle>();
+	private Thread writer = null;
+	private Thread shutdownHook = null;
+	private int flushing = 0;
+
+	private long queuedCount = 0;
+	private long coalescedCount = 0;
+	private long waitedCount = 0;
+	private long savedCount = 0;
+	private long errorCount = 0;
+	private long lastFlushLatency = 0;
+	private long maxFlushLatency = 0;
+
+	/**
+	 * Constructor for CandleWriter.
+	 * 
+	 * @param persistentModel
+	 *            PersistentModel
+	 */
+	public CandleWriter(PersistentModel persistentModel) {
+		this.persistentModel = persistentModel;
+	}
+
+	/**
+	 * Method isEnabled.
+	 * 
+	 * @return boolean true if candles are saved on the writer thread.
+	 */
+	public static boolean isEnabled() {
+		return _queueSize > 0;
+	}
+
+	/**
+	 * Method persistCandle. Queue the candle to be saved. If the writer is
+	 * not enabled the candle is saved now. If the queue is full wait until
+	 * the writer takes it.
+	 * 
+	 * @param candle
+	 *            Candle
+	 * @throws PersistentModelException
+	 */
+	public void persistCandle(final Candle candle) throws PersistentModelException {
+
+		if (!isEnabled()) {
+			this.persistentModel.persistCandle(candle);
+			return;
+		}
+
+		String key = candle.getContract().getIdContract() + ":" + candle.getBarSize() + ":"
+				+ candle.getStartPeriod().toInstant().toEpochMilli();
+		synchronized (this.queue) {
+			boolean waited = false;
+			while (true) {
+				QueuedCandle queuedCandle = this.queue.get(key);
+				if (null != queuedCandle) {
+					queuedCandle.copy = copyCandle(candle);
+					this.coalescedCount++;
+					return;
+				}
+				if (this.queue.size() < _queueSize) {
+					this.queue.put(key, new QueuedCandle(candle, copyCandle(candle)));
+					this.queuedCount++;
+					startWriter();
+					this.queue.notifyAll();
+					return;
+				}
+				if (!waited) {
+					waited = true;
+					this.waitedCount++;
+					if (this.waitedCount == 1 || (this.waitedCount % 100) == 0)
+						_log.warn("CandleWriter queue full waiting for the writer. " + getStatistics());
+				}
+				try {
+					this.queue.wait();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new PersistentModelException("CandleWriter interrupted queuing candle Symbol: "
+							+ candle.getContract().getSymbol() + " period: " + candle.getStartPeriod());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method flush. Wait until all the queued candles have been saved.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void flush() throws InterruptedException {
+		synchronized (this.queue) {
+			while (!this.queue.isEmpty() || this.flushing > 0) {
+				this.queue.wait();
+			}
+		}
+	}
+
+	/**
+	 * Method flush. Wait until all the queued candles have been saved or the
+	 * time has passed.
+	 * 
+	 * @param timeout
+	 *            long milliseconds.
+	 * @return boolean true if all the candles were saved.
+	 * @throws InterruptedException
+	 */
+	public boolean flush(long timeout) throws InterruptedException {
+		long endTime = System.currentTimeMillis() + timeout;
+		synchronized (this.queue) {
+			while (!this.queue.isEmpty() || this.flushing > 0) {
+				long wait = endTime - System.currentTimeMillis();
+				if (wait <= 0)
+					return false;
+				this.queue.wait(wait);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Method run. Save the queued candles until the thread is interrupted.
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		try {
+			while (true) {
+				List<QueuedCandle> candles = null;
+				synchronized (this.queue) {
+					while (this.queue.isEmpty()) {
+						this.queue.wait();
+					}
+					candles = new ArrayList<QueuedCandle>(this.queue.values());
+					this.queue.clear();
+					this.flushing = candles.size();
+					this.queue.notifyAll();
+				}
+
+				long startTime = System.nanoTime();
+				int errors = saveCandles(candles);
+				long latency = (System.nanoTime() - startTime) / 1000000;
+
+				synchronized (this.queue) {
+					this.flushing = 0;
+					this.savedCount = this.savedCount + candles.size() - errors;
+					this.errorCount = this.errorCount + errors;
+					this.lastFlushLatency = latency;
+					this.maxFlushLatency = Math.max(this.maxFlushLatency, latency);
+					this.queue.notifyAll();
+				}
+				if (_log.isDebugEnabled())
+					_log.debug("CandleWriter saved: " + candles.size() + " in: " + latency + "ms " + getStatistics());
+			}
+		} catch (InterruptedException ex) {
+			_log.debug("CandleWriter interrupted");
+		}
+	}
+
+	/**
+	 * Method getQueueDepth.
+	 * 
+	 * @return int the number of candles waiting to be saved.
+	 */
+	public int getQueueDepth() {
+		synchronized (this.queue) {
+			return this.queue.size();
+		}
+	}
+
+	/**
+	 * Method getLastFlushLatency.
+	 * 
+	 * @return long the milliseconds taken to save the last set of candles.
+	 */
+	public long getLastFlushLatency() {
+		synchronized (this.queue) {
+			return this.lastFlushLatency;
+		}
+	}
+
+	/**
+	 * Method getMaxFlushLatency.
+	 * 
+	 * @return long the most milliseconds taken to save a set of candles.
+	 */
+	public long getMaxFlushLatency() {
+		synchronized (this.queue) {
+			return this.maxFlushLatency;
+		}
+	}
+
+	/**
+	 * Method getQueuedCount.
+	 * 
+	 * @return long the number of candles added to the queue.
+	 */
+	public long getQueuedCount() {
+		synchronized (this.queue) {
+			return this.queuedCount;
+		}
+	}
+
+	/**
+	 * Method getCoalescedCount.
+	 * 
+	 * @return long the number of candles that replaced a queued copy.
+	 */
+	public long getCoalescedCount() {
+		synchronized (this.queue) {
+			return this.coalescedCount;
+		}
+	}
+
+	/**
+	 * Method getWaitedCount.
+	 * 
+	 * @return long the number of candles the caller waited to queue because
+	 *         the queue was full.
+	 */
+	public long getWaitedCount() {
+		synchronized (this.queue) {
+			return this.waitedCount;
+		}
+	}
+
+	/**
+	 * Method getStatistics.
+	 * 
+	 * @return String
+	 */
+	public String getStatistics() {
+		synchronized (this.queue) {
+			return "CandleWriter depth: " + this.queue.size() + " max: " + _queueSize + " queued: "
+					+ this.queuedCount + " coalesced: " + this.coalescedCount + " saved: " + this.savedCount
+					+ " errors: " + this.errorCount + " waited: " + this.waitedCount
+					+ " last flush ms: " + this.lastFlushLatency + " max flush ms: " + this.maxFlushLatency;
+		}
+	}
+
+	/**
+	 * Method startWriter. Start the writer thread if it is not running and
+	 * add the hook that flushes the queue when the application exits. Must be
+	 * called holding the queue lock.
+	 */
+	private void startWriter() {
+		if (null == this.writer || !this.writer.isAlive()) {
+			this.writer = new Thread(this, "CandleWriter");
+			this.writer.setDaemon(true);
+			this.writer.start();
+		}
+		if (null == this.shutdownHook) {
+			this.shutdownHook = new Thread(new Runnable() {
+				public void run() {
+					try {
+						if (!flush(SHUTDOWN_FLUSH_MILLIS))
+							_log.error("CandleWriter candles not saved on exit. " + getStatistics());
+					} catch (InterruptedException ex) {
+						_log.error("CandleWriter interrupted saving candles on exit Msg: " + ex.getMessage());
+					}
+				}
+			}, "CandleWriterShutdown");
+			Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+		}
+	}
+
+	/**
+	 * Method saveCandles. Save the candles in one transaction. The id and
+	 * version are taken from the candles in the series when they are saved
+	 * and the saved id and version are set back on the candles in the series
+	 * once the transaction commits. If the transaction fails each candle is
+	 * saved on its own so one bad candle does not lose the others.
+	 * 
+	 * @param candles
+	 *            List<QueuedCandle>
+	 * @return int the number of candles that could not be saved.
+	 */
+	private int saveCandles(List<QueuedCandle> candles) {
+		List<Candle> copies = new ArrayList<Candle>(candles.size());
+		for (QueuedCandle queuedCandle : candles) {
+			Candle candle = queuedCandle.candle;
+			Candle copy = null;
+			synchronized (this.queue) {
+				copy = queuedCandle.copy;
+			}
+			synchronized (candle) {
+				copy.setIdCandle(candle.getIdCandle());
+				copy.setVersion(candle.getVersion());
+				copy.setTradingday(candle.getTradingday());
+			}
+			copies.add(copy);
+		}
+
+		try {
+			List<Candle> items = this.persistentModel.persistCandles(copies);
+			for (int i = 0; i < candles.size(); i++) {
+				Candle candle = candles.get(i).candle;
+				synchronized (candle) {
+					candle.setIdCandle(items.get(i).getIdCandle());
+					candle.setVersion(items.get(i).getVersion());
+					if (null == candle.getTradingday().getIdTradingDay())
+						candle.setTradingday(copies.get(i).getTradingday());
+				}
+			}
+			return 0;
+		} catch (Exception ex) {
+			_log.warn("CandleWriter saving: " + candles.size() + " candles one at a time Msg: " + ex.getMessage());
+		}
+
+		int errors = 0;
+		for (QueuedCandle queuedCandle : candles) {
+			try {
+				saveCandle(queuedCandle);
+			} catch (Exception ex) {
+				errors++;
+				_log.error("Error CandleWriter saving candle Symbol: " + queuedCandle.candle.getContract().getSymbol()
+						+ " period: " + queuedCandle.copy.getStartPeriod() + " Msg: " + ex.getMessage());
+			}
+		}
+		return errors;
+	}
+
+	/**
+	 * Method saveCandle. The id and version are taken from the candle in the
+	 * series when it is saved as a previous save may have changed them. The
+	 * saved id and version are then set back on the candle in the series.
+	 * 
+	 * @param queuedCandle
+	 *            QueuedCandle
+	 * @throws PersistentModelException
+	 */
+	private void saveCandle(QueuedCandle queuedCandle) throws PersistentModelException {
+		Candle candle = queuedCandle.candle;
+		Candle copy = null;
+		synchronized (this.queue) {
+			copy = queuedCandle.copy;
+		}
+		synchronized (candle) {
+			copy.setIdCandle(candle.getIdCandle());
+			copy.setVersion(candle.getVersion());
+			copy.setTradingday(candle.getTradingday());
+			Candle item = this.persistentModel.persistCandle(copy);
+			candle.setIdCandle(item.getIdCandle());
+			candle.setVersion(item.getVersion());
+			if (null == candle.getTradingday().getIdTradingDay())
+				candle.setTradingday(copy.getTradingday());
+		}
+	}
+
+	/**
+	 * Method copyCandle.
+	 * 
+	 * @param candle
+	 *            Candle
+	 * @return Candle
+	 */
+	private static Candle copyCandle(Candle candle) {
+		Candle copy = new Candle();
+		copy.setContract(candle.getContract());
+		copy.setTradingday(candle.getTradingday());
+		copy.setPeriod(candle.getPeriod());
+		copy.setStartPeriod(candle.getStartPeriod());
+		copy.setEndPeriod(candle.getEndPeriod());
+		copy.setBarSize(candle.getBarSize());
+		copy.setOpen(candle.getOpen());
+		copy.setHigh(candle.getHigh());
+		copy.setLow(candle.getLow());
+		copy.setClose(candle.getClose());
+		copy.setVwap(candle.getVwap());
+		copy.setVolume(candle.getVolume());
+		copy.setTradeCount(candle.getTradeCount());
+		copy.setLastUpdateDate(candle.getLastUpdateDate());
+		return copy;
+	}
+
+	/**
+	 * The candle in the series and the copy of its values to be saved.
+	 */
+	private static class QueuedCandle {
+
+		private final Candle candle;
+		private Candle copy;
+
+		QueuedCandle(Candle candle, Candle copy) {
+			this.candle = candle;
+			this.copy = copy;
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.trade.core.properties.ConfigProperties;
+
+import com.ib.client.CommissionReport;
+import com.ib.client.Execution;
+
+/**
+ * Holds the executions and commission reports received from the broker for
+ * orders that do not exist in the TradeManager. The executions are grouped
+ * by the broker's permId i.e. one group per order so the orders can be
+ * rebuilt in one pass over the executions.
+ * 
+ * At most trade.execution.retain executions and commission reports are held,
+ * when this is exceeded the oldest order's executions and the oldest
+ * commission reports are dropped.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class ExecutionDetails {
+
+	private static int _retain = 0;
+
+	static {
+		try {
+			_retain = ConfigProperties.getPropAsInt("trade.execution.retain");
+		} catch (IOException ex) {
+			throw new IllegalArgumentException("Error initializing ExecutionDetails Msg: " + ex.getMessage());
+		}
+	}
+
+	private final int retain;
+
+	// Use execId as key
+	private final LinkedHashMap<String, Execution> executions = new LinkedHashMap<String, Execution>();
+	// Use permId as key
+	private final LinkedHashMap<Integer, List<Execution>> permIds = new LinkedHashMap<Integer, List<Execution>>();
+	// Use execId as key
+	private final LinkedHashMap<String, CommissionReport> commissions = new LinkedHashMap<String, CommissionReport>();
+
+	/**
+	 * Constructor for ExecutionDetails using trade.execution.retain.
+	 */
+	public ExecutionDetails() {
+		this(_retain);
+	}
+
+	/**
+	 * Constructor for ExecutionDetails.
+	 * 
+	 * @param retain
+	 *            int the maximum number of executions and commission reports
+	 *            held, zero for no limit.
+	 */
+	public ExecutionDetails(int retain) {
+		this.retain = retain;
+	}
+
+	/**
+	 * Method addExecution. An execution with the same execId replaces the one
+	 * held.
+	 * 
+	 * @param execution
+	 *            Execution
+	 */
+	public synchronized void addExecution(Execution execution) {
+
+		Execution previous = this.executions.put(execution.m_execId, execution);
+		if (null != previous) {
+			List<Execution> group = this.permIds.get(previous.m_permId);
+			if (null != group) {
+				group.remove(previous);
+				if (group.isEmpty()) {
+					this.permIds.remove(previous.m_permId);
+				}
+			}
+		}
+		List<Execution> group = this.permIds.get(execution.m_permId);
+		if (null == group) {
+			group = new ArrayList<Execution>(1);
+			this.permIds.put(execution.m_permId, group);
+		}
+		group.add(execution);
+
+		if (this.retain > 0) {
+			Iterator<Map.Entry<Integer, List<Execution>>> iter = this.permIds.entrySet().iterator();
+			while (this.executions.size() > this.retain && iter.hasNext()) {
+				List<Execution> oldest = iter.next().getValue();
+				if (oldest == group)
+					break;
+				for (Execution item : oldest) {
+					this.executions.remove(item.m_execId);
+				}
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Method addCommissionReport.
+	 * 
+	 * @param commsReport
+	 *            CommissionReport
+	 */
+	public synchronized void addCommissionReport(CommissionReport commsReport) {
+
+		this.commissions.put(commsReport.m_execId, commsReport);
+		if (this.retain > 0) {
+			Iterator<String> iter = this.commissions.keySet().iterator();
+			while (this.commissions.size() > this.retain && iter.hasNext()) {
+				iter.next();
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Method getCommissionReport.
+	 * 
+	 * @param execId
+	 *            String
+	 * @return CommissionReport or null if none was received.
+	 */
+	public synchronized CommissionReport getCommissionReport(String execId) {
+		return this.commissions.get(execId);
+	}
+
+	/**
+	 * Method getExecutions. Returns the executions grouped by permId in the
+	 * order the permId was first received.
+	 * 
+	 * @return List<List<Execution>> a copy of the groups.
+	 */
+	public synchronized List<List<Execution>> getExecutions() {
+		List<List<Execution>> groups = new ArrayList<List<Execution>>(this.permIds.size());
+		for (List<Execution> group : this.permIds.values()) {
+			groups.add(new ArrayList<Execution>(group));
+		}
+		return groups;
+	}
+
+	/**
+	 * Method isEmpty.
+	 * 
+	 * @return boolean true if there are no executions.
+	 */
+	public synchronized boolean isEmpty() {
+		return this.executions.isEmpty();
+	}
+
+	/**
+	 * Method size.
+	 * 
+	 * @return int the number of executions.
+	 */
+	public synchronized int size() {
+		return this.executions.size();
+	}
+
+	/**
+	 * Method clear. Clears the executions and the commission reports.
+	 */
+	public synchronized void clear() {
+		this.executions.clear();
+		this.permIds.clear();
+		this.commissions.clear();
+	}
+}
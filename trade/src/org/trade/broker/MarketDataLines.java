@@ -0,0 +1,326 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.trade.core.properties.ConfigProperties;
+import org.trade.persistent.dao.Contract;
+
+/**
+ * Keeps the market data and real time bars requests within the account's
+ * market data lines. Each streaming market data request and each real time
+ * bars request uses a line. When all the lines are in use a contract's market
+ * data is served by snapshots instead.
+ * 
+ * Contracts with an open position have priority, they take the line of the
+ * least recently used contract without an open position. Real time bars drive
+ * the strategies so they also take a market data line when needed. When a
+ * line is freed the snapshot contract with priority, or else the most
+ * recently used, is given it.
+ * 
+ * This class only keeps the accounting, the caller sends the requests to the
+ * broker.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class MarketDataLines {
+
+	private static int _lines = 0;
+
+	static {
+		try {
+			_lines = ConfigProperties.getPropAsInt("trade.marketdata.lines");
+		} catch (IOException ex) {
+			throw new IllegalArgumentException("Error initializing MarketDataLines Msg: " + ex.getMessage());
+		}
+	}
+
+	private final int lines;
+	private final LinkedHashMap<Integer, Contract> streaming = new LinkedHashMap<Integer, Contract>(16, 0.75f, true);
+	private final LinkedHashMap<Integer, Contract> snapshots = new LinkedHashMap<Integer, Contract>(16, 0.75f, true);
+	private final Set<Integer> realtimeBars = new HashSet<Integer>();
+
+	/**
+	 * Constructor for MarketDataLines using trade.marketdata.lines.
+	 */
+	public MarketDataLines() {
+		this(_lines);
+	}
+
+	/**
+	 * Constructor for MarketDataLines.
+	 * 
+	 * @param lines
+	 *            int the number of lines, zero for no limit.
+	 */
+	public MarketDataLines(int lines) {
+		this.lines = lines;
+	}
+
+	/**
+	 * Method addMarketData.
+	 * 
+	 * @param contract
+	 *            Contract
+	 * @param downgraded
+	 *            List<Contract> the contracts whose streaming market data must
+	 *            be cancelled and served by snapshots.
+	 * @return boolean true if the contract has a line for streaming market
+	 *         data, false if it is served by snapshots.
+	 */
+	public synchronized boolean addMarketData(Contract contract, List<Contract> downgraded) {
+
+		this.snapshots.remove(contract.getId());
+		if (this.streaming.containsKey(contract.getId()) || hasFreeLine()) {
+			this.streaming.put(contract.getId(), contract);
+			return true;
+		}
+		if (isPriority(contract)) {
+			Contract victim = downgrade();
+			if (null != victim) {
+				downgraded.add(victim);
+				this.streaming.put(contract.getId(), contract);
+				return true;
+			}
+		}
+		this.snapshots.put(contract.getId(), contract);
+		return false;
+	}
+
+	/**
+	 * Method addRealtimeBars.
+	 * 
+	 * @param contract
+	 *            Contract
+	 * @return Contract the contract whose streaming market data must be
+	 *         cancelled and served by snapshots to free a line, or null.
+	 */
+	public synchronized Contract addRealtimeBars(Contract contract) {
+
+		if (this.realtimeBars.contains(contract.getId()))
+			return null;
+		boolean free = hasFreeLine();
+		this.realtimeBars.add(contract.getId());
+		if (free)
+			return null;
+		return downgrade();
+	}
+
+	/**
+	 * Method removeMarketData.
+	 * 
+	 * @param contract
+	 *            Contract
+	 * @return Contract the snapshot contract to be given the freed line, or
+	 *         null.
+	 */
+	public synchronized Contract removeMarketData(Contract contract) {
+		this.snapshots.remove(contract.getId());
+		if (null == this.streaming.remove(contract.getId()))
+			return null;
+		return promote();
+	}
+
+	/**
+	 * Method removeRealtimeBars.
+	 * 
+	 * @param contract
+	 *            Contract
+	 * @return Contract the snapshot contract to be given the freed line, or
+	 *         null.
+	 */
+	public synchronized Contract removeRealtimeBars(Contract contract) {
+		if (!this.realtimeBars.remove(contract.getId()))
+			return null;
+		return promote();
+	}
+
+	/**
+	 * Method touch. Marks the contract's market data as used.
+	 * 
+	 * @param contract
+	 *            Contract
+	 */
+	public synchronized void touch(Contract contract) {
+		if (null == this.streaming.get(contract.getId()))
+			this.snapshots.get(contract.getId());
+	}
+
+	/**
+	 * Method rotate. Gives the snapshot contracts that now have an open
+	 * position the lines of the least recently used contracts without one.
+	 * 
+	 * @param downgraded
+	 *            List<Contract> the contracts whose streaming market data must
+	 *            be cancelled and served by snapshots.
+	 * @return List<Contract> the contracts to start streaming market data.
+	 */
+	public synchronized List<Contract> rotate(List<Contract> downgraded) {
+
+		List<Contract> promoted = new ArrayList<Contract>();
+		for (Contract contract : new ArrayList<Contract>(this.snapshots.values())) {
+			if (!isPriority(contract))
+				continue;
+			if (!hasFreeLine()) {
+				Contract victim = downgrade();
+				if (null == victim)
+					break;
+				downgraded.add(victim);
+			}
+			this.snapshots.remove(contract.getId());
+			this.streaming.put(contract.getId(), contract);
+			promoted.add(contract);
+		}
+		return promoted;
+	}
+
+	/**
+	 * Method getSnapshots.
+	 * 
+	 * @return List<Contract> the contracts served by snapshots.
+	 */
+	public synchronized List<Contract> getSnapshots() {
+		return new ArrayList<Contract>(this.snapshots.values());
+	}
+
+	/**
+	 * Method isStreaming.
+	 * 
+	 * @param contract
+	 *            Contract
+	 * @return boolean
+	 */
+	public synchronized boolean isStreaming(Contract contract) {
+		return this.streaming.containsKey(contract.getId());
+	}
+
+	/**
+	 * Method isSnapshot.
+	 * 
+	 * @param contract
+	 *            Contract
+	 * @return boolean true if the contract's market data is served by
+	 *         snapshots.
+	 */
+	public synchronized boolean isSnapshot(Contract contract) {
+		return this.snapshots.containsKey(contract.getId());
+	}
+
+	/**
+	 * Method getLinesInUse.
+	 * 
+	 * @return int
+	 */
+	public synchronized int getLinesInUse() {
+		return this.streaming.size() + this.realtimeBars.size();
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public synchronized void clear() {
+		this.streaming.clear();
+		this.snapshots.clear();
+		this.realtimeBars.clear();
+	}
+
+	/**
+	 * Method hasFreeLine.
+	 * 
+	 * @return boolean
+	 */
+	private boolean hasFreeLine() {
+		return this.lines < 1 || getLinesInUse() < this.lines;
+	}
+
+	/**
+	 * Method downgrade. Move the least recently used streaming contract
+	 * without an open position to snapshots.
+	 * 
+	 * @return Contract the contract moved or null if there is none.
+	 */
+	private Contract downgrade() {
+		for (Map.Entry<Integer, Contract> entry : this.streaming.entrySet()) {
+			if (!isPriority(entry.getValue())) {
+				this.streaming.remove(entry.getKey());
+				this.snapshots.put(entry.getKey(), entry.getValue());
+				return entry.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Method promote. Give a free line to the snapshot contract with an open
+	 * position or else the most recently used.
+	 * 
+	 * @return Contract the contract to start streaming market data or null.
+	 */
+	private Contract promote() {
+
+		if (this.snapshots.isEmpty() || !hasFreeLine())
+			return null;
+
+		Contract contract = null;
+		for (Contract item : this.snapshots.values()) {
+			contract = item;
+			if (isPriority(item))
+				break;
+		}
+		this.snapshots.remove(contract.getId());
+		this.streaming.put(contract.getId(), contract);
+		return contract;
+	}
+
+	/**
+	 * Method isPriority.
+	 * 
+	 * @param contract
+	 *            Contract
+	 * @return boolean true if the contract has an open position.
+	 */
+	private boolean isPriority(Contract contract) {
+		return null != contract.getTradePosition();
+	}
+}
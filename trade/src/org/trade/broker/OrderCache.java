@@ -0,0 +1,288 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.trade.core.properties.ConfigProperties;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.PersistentModelException;
+import org.trade.persistent.dao.TradeOrder;
+import org.trade.persistent.dao.TradeOrderfill;
+
+/**
+ * Holds the state of the live orders so the broker order callbacks do not
+ * read the order from the database each time they fire. The cache is loaded
+ * with the active and todays orders when the broker connects and holds the
+ * order as it was last saved. Orders are found by their orderKey or the
+ * execId of one of their fills.
+ * 
+ * The cache keeps its own copy of each order so a TradeOrder held by a
+ * strategy or the UI is never changed underneath them. An order that is not
+ * in the cache is read from the database and then held.
+ * 
+ * When trade.order.cache is false every lookup reads the database.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class OrderCache {
+
+	private static boolean _enabled = false;
+
+	static {
+		try {
+			_enabled = ConfigProperties.getPropAsBoolean("trade.order.cache");
+		} catch (IOException ex) {
+			throw new IllegalArgumentException("Error initializing OrderCache Msg: " + ex.getMessage());
+		}
+	}
+
+	private final PersistentModel persistentModel;
+	private final boolean enabled;
+
+	// Use orderKey as key
+	private final ConcurrentHashMap<Integer, TradeOrder> tradeOrders = new ConcurrentHashMap<Integer, TradeOrder>();
+	// Use execId as key
+	private final ConcurrentHashMap<String, Integer> execIds = new ConcurrentHashMap<String, Integer>();
+
+	private final AtomicLong hitCount = new AtomicLong(0);
+	private final AtomicLong missCount = new AtomicLong(0);
+
+	/**
+	 * Constructor for OrderCache using trade.order.cache.
+	 * 
+	 * @param persistentModel
+	 *            PersistentModel
+	 */
+	public OrderCache(PersistentModel persistentModel) {
+		this(persistentModel, _enabled);
+	}
+
+	/**
+	 * Constructor for OrderCache.
+	 * 
+	 * @param persistentModel
+	 *            PersistentModel
+	 * @param enabled
+	 *            boolean false to always read the database.
+	 */
+	public OrderCache(PersistentModel persistentModel, boolean enabled) {
+		this.persistentModel = persistentModel;
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Method isEnabled.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/**
+	 * Method load. Replace the contents of the cache with the orders.
+	 * 
+	 * @param orders
+	 *            List<TradeOrder> the orders as read from the database.
+	 */
+	public void load(List<TradeOrder> orders) {
+		clear();
+		if (!this.enabled)
+			return;
+		for (TradeOrder tradeOrder : orders) {
+			hold(tradeOrder);
+		}
+	}
+
+	/**
+	 * Method getTradeOrder. Returns the cached order for the orderKey, if the
+	 * order is not cached it is read from the database. The returned order
+	 * belongs to the cache, once it has been changed and saved the saved
+	 * order must be put back in the cache.
+	 * 
+	 * @param orderKey
+	 *            Integer
+	 * @return TradeOrder the order or null if it does not exist.
+	 * @throws PersistentModelException
+	 */
+	public TradeOrder getTradeOrder(Integer orderKey) throws PersistentModelException {
+		if (this.enabled) {
+			TradeOrder tradeOrder = this.tradeOrders.get(orderKey);
+			if (null != tradeOrder) {
+				this.hitCount.incrementAndGet();
+				return tradeOrder;
+			}
+		}
+		this.missCount.incrementAndGet();
+		TradeOrder tradeOrder = this.persistentModel.findTradeOrderByKey(orderKey);
+		if (null != tradeOrder && this.enabled) {
+			hold(tradeOrder);
+		}
+		return tradeOrder;
+	}
+
+	/**
+	 * Method getOrderKeyByExecId.
+	 * 
+	 * @param execId
+	 *            String
+	 * @return Integer the orderKey or null if no cached order has a fill with
+	 *         the execId.
+	 */
+	public Integer getOrderKeyByExecId(String execId) {
+		if (null == execId)
+			return null;
+		return this.execIds.get(execId);
+	}
+
+	/**
+	 * Method put. Hold a copy of the saved order.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 */
+	public void put(TradeOrder tradeOrder) {
+		if (!this.enabled || null == tradeOrder.getOrderKey())
+			return;
+		hold(copy(tradeOrder));
+	}
+
+	/**
+	 * Method remove. The order is read from the database the next time it is
+	 * needed, used when an order could not be saved.
+	 * 
+	 * @param orderKey
+	 *            Integer
+	 */
+	public void remove(Integer orderKey) {
+		if (null == orderKey)
+			return;
+		TradeOrder tradeOrder = this.tradeOrders.remove(orderKey);
+		if (null != tradeOrder) {
+			unindex(tradeOrder);
+		}
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public void clear() {
+		this.tradeOrders.clear();
+		this.execIds.clear();
+	}
+
+	/**
+	 * Method size.
+	 * 
+	 * @return int
+	 */
+	public int size() {
+		return this.tradeOrders.size();
+	}
+
+	/**
+	 * Method getHitCount.
+	 * 
+	 * @return long the lookups served from the cache.
+	 */
+	public long getHitCount() {
+		return this.hitCount.get();
+	}
+
+	/**
+	 * Method getMissCount.
+	 * 
+	 * @return long the lookups that read the database.
+	 */
+	public long getMissCount() {
+		return this.missCount.get();
+	}
+
+	/**
+	 * Method hold.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 */
+	private void hold(TradeOrder tradeOrder) {
+		TradeOrder previous = this.tradeOrders.put(tradeOrder.getOrderKey(), tradeOrder);
+		if (null != previous) {
+			unindex(previous);
+		}
+		for (TradeOrderfill tradeOrderfill : tradeOrder.getTradeOrderfills()) {
+			if (null != tradeOrderfill.getExecId()) {
+				this.execIds.put(tradeOrderfill.getExecId(), tradeOrder.getOrderKey());
+			}
+		}
+	}
+
+	/**
+	 * Method unindex.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 */
+	private void unindex(TradeOrder tradeOrder) {
+		for (TradeOrderfill tradeOrderfill : tradeOrder.getTradeOrderfills()) {
+			if (null != tradeOrderfill.getExecId()) {
+				this.execIds.remove(tradeOrderfill.getExecId(), tradeOrder.getOrderKey());
+			}
+		}
+	}
+
+	/**
+	 * Method copy. Copy the order and its fills, the TradePosition and
+	 * Tradestrategy are shared.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return TradeOrder
+	 */
+	static TradeOrder copy(TradeOrder tradeOrder) {
+		TradeOrder order = tradeOrder.clone();
+		for (TradeOrderfill tradeOrderfill : tradeOrder.getTradeOrderfills()) {
+			TradeOrderfill fill = tradeOrderfill.clone();
+			fill.setTradeOrder(order);
+			order.addTradeOrderfill(fill);
+		}
+		return order;
+	}
+}
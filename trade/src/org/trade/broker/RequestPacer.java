@@ -0,0 +1,277 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.trade.core.properties.ConfigProperties;
+
+/**
+ * Paces the historical data requests so they stay within the TWS limits.
+ * 
+ * 162 - Historical Market Data Service error message: Historical data request
+ * pacing violation
+ * 
+ * The following conditions can cause a pacing violation:
+ * 
+ * Making identical historical data requests within 15 seconds;
+ * 
+ * Making six or more historical data requests for the same Contract, Exchange
+ * and Tick Type within two seconds.
+ * 
+ * Do not make more than 60 historical data requests in any ten-minute period.
+ * 
+ * Each limit is a bucket of tokens, a request takes one token from every
+ * bucket it falls in and that token is returned to the bucket one period
+ * after it was taken. So a request can be submitted as soon as all of its
+ * buckets hold a token and the wait is never longer than it needs to be.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class RequestPacer {
+
+	private static int _requests = 0;
+	private static int _period = 0;
+	private static int _contractRequests = 0;
+	private static int _contractPeriod = 0;
+	private static int _identicalPeriod = 0;
+
+	static {
+		try {
+			_requests = ConfigProperties.getPropAsInt("trade.backfill.pacing.requests");
+			_period = ConfigProperties.getPropAsInt("trade.backfill.pacing.period");
+			_contractRequests = ConfigProperties.getPropAsInt("trade.backfill.pacing.contractRequests");
+			_contractPeriod = ConfigProperties.getPropAsInt("trade.backfill.pacing.contractPeriod");
+			_identicalPeriod = ConfigProperties.getPropAsInt("trade.backfill.pacing.identicalPeriod");
+		} catch (IOException ex) {
+			throw new IllegalArgumentException("Error initializing RequestPacer Msg: " + ex.getMessage());
+		}
+	}
+
+	private final int contractRequests;
+	private final long contractPeriod;
+	private final long identicalPeriod;
+	private final Bucket requests;
+	private final Map<String, Bucket> contracts = new HashMap<String, Bucket>();
+	private final Map<String, Bucket> identicals = new HashMap<String, Bucket>();
+
+	/**
+	 * Constructor for RequestPacer using the trade.backfill.pacing settings.
+	 */
+	public RequestPacer() {
+		this(_requests, _period * 1000L, _contractRequests, _contractPeriod * 1000L, _identicalPeriod * 1000L);
+	}
+
+	/**
+	 * Constructor for RequestPacer.
+	 * 
+	 * @param requests
+	 *            int the number of requests allowed in any period.
+	 * @param period
+	 *            long the period in milliseconds.
+	 * @param contractRequests
+	 *            int the number of requests allowed for one contract in any
+	 *            contractPeriod.
+	 * @param contractPeriod
+	 *            long the contract period in milliseconds.
+	 * @param identicalPeriod
+	 *            long the time in milliseconds between identical requests.
+	 */
+	public RequestPacer(int requests, long period, int contractRequests, long contractPeriod, long identicalPeriod) {
+		this.requests = new Bucket(requests, period);
+		this.contractRequests = contractRequests;
+		this.contractPeriod = contractPeriod;
+		this.identicalPeriod = identicalPeriod;
+	}
+
+	/**
+	 * Method getWaitMillis. Returns how long to wait before the request can be
+	 * submitted, zero if it can be submitted now.
+	 * 
+	 * @param contractKey
+	 *            String identifies the contract, exchange and tick type.
+	 * @param requestKey
+	 *            String identifies the request i.e. the contract, end date, bar
+	 *            size and duration.
+	 * @param now
+	 *            long the current time in milliseconds.
+	 * @return long
+	 */
+	public synchronized long getWaitMillis(String contractKey, String requestKey, long now) {
+
+		long waitMillis = this.requests.getWaitMillis(now);
+		Bucket contract = this.contracts.get(contractKey);
+		if (null != contract) {
+			waitMillis = Math.max(waitMillis, contract.getWaitMillis(now));
+		}
+		Bucket identical = this.identicals.get(requestKey);
+		if (null != identical) {
+			waitMillis = Math.max(waitMillis, identical.getWaitMillis(now));
+		}
+		return waitMillis;
+	}
+
+	/**
+	 * Method submitted. Takes a token from each bucket the request falls in.
+	 * 
+	 * @param contractKey
+	 *            String
+	 * @param requestKey
+	 *            String
+	 * @param now
+	 *            long the time the request was submitted.
+	 */
+	public synchronized void submitted(String contractKey, String requestKey, long now) {
+
+		this.requests.take(now);
+		getBucket(this.contracts, contractKey, this.contractRequests, this.contractPeriod, now).take(now);
+		getBucket(this.identicals, requestKey, 1, this.identicalPeriod, now).take(now);
+	}
+
+	/**
+	 * Method getEstimatedMillis. Returns how long it will take to submit the
+	 * number of requests if each one is submitted as soon as a token is
+	 * available. The contract and identical request limits are short and are
+	 * not included.
+	 * 
+	 * @param remaining
+	 *            int the number of requests still to submit.
+	 * @param now
+	 *            long the current time in milliseconds.
+	 * @return long
+	 */
+	public synchronized long getEstimatedMillis(int remaining, long now) {
+		return this.requests.getEstimatedMillis(remaining, now);
+	}
+
+	/**
+	 * Method getBucket. Finds the bucket for the key, buckets that hold all
+	 * their tokens are removed so the maps only hold recent requests.
+	 * 
+	 * @param buckets
+	 *            Map<String, Bucket>
+	 * @param key
+	 *            String
+	 * @param capacity
+	 *            int
+	 * @param period
+	 *            long
+	 * @param now
+	 *            long
+	 * @return Bucket
+	 */
+	private Bucket getBucket(Map<String, Bucket> buckets, String key, int capacity, long period, long now) {
+
+		for (Iterator<Bucket> iter = buckets.values().iterator(); iter.hasNext();) {
+			if (iter.next().isFull(now))
+				iter.remove();
+		}
+		Bucket bucket = buckets.get(key);
+		if (null == bucket) {
+			bucket = new Bucket(capacity, period);
+			buckets.put(key, bucket);
+		}
+		return bucket;
+	}
+
+	/**
+	 * A bucket of tokens. Holds the time each token was taken, the oldest
+	 * first, and a token is returned one period after it was taken.
+	 */
+	private static class Bucket {
+
+		private final int capacity;
+		private final long period;
+		private final LinkedList<Long> taken = new LinkedList<Long>();
+
+		Bucket(int capacity, long period) {
+			this.capacity = capacity;
+			this.period = period;
+		}
+
+		long getWaitMillis(long now) {
+			returnTokens(now);
+			if (this.capacity < 1 || this.taken.size() < this.capacity)
+				return 0;
+			return (this.taken.getFirst() + this.period) - now;
+		}
+
+		void take(long now) {
+			returnTokens(now);
+			this.taken.addLast(now);
+		}
+
+		boolean isFull(long now) {
+			returnTokens(now);
+			return this.taken.isEmpty();
+		}
+
+		/*
+		 * If every request is submitted as soon as a token is available the
+		 * n'th request takes the token returned by the (n - capacity)'th.
+		 * Tokens not yet taken are available now.
+		 */
+		long getEstimatedMillis(int remaining, long now) {
+			returnTokens(now);
+			if (this.capacity < 1 || remaining <= this.capacity - this.taken.size())
+				return 0;
+			long[] available = new long[this.capacity];
+			int index = 0;
+			for (int i = this.taken.size(); i < this.capacity; i++) {
+				available[index++] = now;
+			}
+			for (Long time : this.taken) {
+				available[index++] = time + this.period;
+			}
+			Arrays.sort(available);
+			int last = remaining - 1;
+			long time = available[last % this.capacity] + (this.period * (last / this.capacity));
+			return Math.max(0, time - now);
+		}
+
+		private void returnTokens(long now) {
+			while (!this.taken.isEmpty() && (this.taken.getFirst() + this.period) <= now) {
+				this.taken.removeFirst();
+			}
+		}
+	}
+}
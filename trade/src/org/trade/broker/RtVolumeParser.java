@@ -0,0 +1,210 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+/**
+ * Parses the fields of the TWS RT_VOLUME tick string without creating any
+ * objects. The string is last trade price;last trade size;last trade
+ * time;total volume;vwap;single trade flag e.g.
+ * 
+ * 701.28;1;1348075471534;67854;701.46918464;true
+ * 
+ * Any field that is empty or not a number is returned as NaN or -1.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public final class RtVolumeParser {
+
+	public static final int PRICE = 0;
+	public static final int SIZE = 1;
+	public static final int TIME = 2;
+	public static final int TOTAL_VOLUME = 3;
+	public static final int VWAP = 4;
+
+	private static final double[] POWERS_OF_TEN = { 1d, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18 };
+
+	private RtVolumeParser() {
+	}
+
+	/**
+	 * Method getPrice.
+	 * 
+	 * @param value
+	 *            String
+	 * @return double the last trade price or NaN.
+	 */
+	public static double getPrice(String value) {
+		return getDouble(value, PRICE);
+	}
+
+	/**
+	 * Method getSize.
+	 * 
+	 * @param value
+	 *            String
+	 * @return long the last trade size or -1.
+	 */
+	public static long getSize(String value) {
+		return getLong(value, SIZE);
+	}
+
+	/**
+	 * Method getTime.
+	 * 
+	 * @param value
+	 *            String
+	 * @return long the last trade time in milliseconds or -1.
+	 */
+	public static long getTime(String value) {
+		return getLong(value, TIME);
+	}
+
+	/**
+	 * Method getDouble. A field of digits with an optional decimal point is
+	 * parsed here, anything else is left to Double.parseDouble().
+	 * 
+	 * @param value
+	 *            String
+	 * @param field
+	 *            int the field number from 0.
+	 * @return double the field or NaN.
+	 */
+	public static double getDouble(String value, int field) {
+		int start = getFieldStart(value, field);
+		if (start < 0)
+			return Double.NaN;
+		int end = getFieldEnd(value, start);
+		if (start == end)
+			return Double.NaN;
+
+		long mantissa = 0;
+		int digits = 0;
+		int decimals = -1;
+		for (int i = start; i < end; i++) {
+			char c = value.charAt(i);
+			if (c >= '0' && c <= '9') {
+				mantissa = (mantissa * 10) + (c - '0');
+				digits++;
+				if (decimals > -1)
+					decimals++;
+			} else if (c == '.' && decimals < 0) {
+				decimals = 0;
+			} else {
+				digits = POWERS_OF_TEN.length;
+				break;
+			}
+		}
+		if (digits == 0)
+			return Double.NaN;
+		if (digits < 16 && decimals < POWERS_OF_TEN.length) {
+			/*
+			 * Both numbers are exact doubles so the division is rounded the
+			 * same as Double.parseDouble.
+			 */
+			return decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+		}
+		try {
+			return Double.parseDouble(value.substring(start, end));
+		} catch (NumberFormatException ex) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Method getLong.
+	 * 
+	 * @param value
+	 *            String
+	 * @param field
+	 *            int the field number from 0.
+	 * @return long the field or -1 if it is not a whole number.
+	 */
+	public static long getLong(String value, int field) {
+		int start = getFieldStart(value, field);
+		if (start < 0)
+			return -1;
+		int end = getFieldEnd(value, start);
+		if (start == end || (end - start) > 18)
+			return -1;
+
+		long result = 0;
+		for (int i = start; i < end; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+			result = (result * 10) + (c - '0');
+		}
+		return result;
+	}
+
+	/**
+	 * Method getFieldStart.
+	 * 
+	 * @param value
+	 *            String
+	 * @param field
+	 *            int
+	 * @return int the index of the first character of the field or -1.
+	 */
+	private static int getFieldStart(String value, int field) {
+		if (null == value)
+			return -1;
+		int index = 0;
+		for (int i = 0; i < field; i++) {
+			index = value.indexOf(';', index);
+			if (index < 0)
+				return -1;
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Method getFieldEnd.
+	 * 
+	 * @param value
+	 *            String
+	 * @param start
+	 *            int
+	 * @return int the index after the last character of the field.
+	 */
+	private static int getFieldEnd(String value, int start) {
+		int end = value.indexOf(';', start);
+		return end < 0 ? value.length() : end;
+	}
+}
@@ -40,17 +40,26 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.text.ParseException;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.trade.broker.BackfillPlanner.BackfillPlan;
 import org.trade.broker.client.Broker;
 import org.trade.broker.request.TWSAccountAliasRequest;
 import org.trade.broker.request.TWSAllocationRequest;
@@ -60,6 +69,7 @@ import org.trade.core.dao.Aspects;
 import org.trade.core.factory.ClassFactory;
 import org.trade.core.properties.ConfigProperties;
 import org.trade.core.util.CoreUtils;
+import org.trade.core.util.QuoteSnapshot;
 import org.trade.core.util.TradingCalendar;
 import org.trade.core.valuetype.Money;
 import org.trade.core.valuetype.Percent;
@@ -76,7 +86,9 @@ import org.trade.dictionary.valuetype.Side;
 import org.trade.dictionary.valuetype.TimeInForce;
 import org.trade.dictionary.valuetype.TriggerMethod;
 import org.trade.persistent.PersistentModel;
+import org.trade.persistent.PersistentModelException;
 import org.trade.persistent.dao.Account;
+import org.trade.persistent.dao.Candle;
 import org.trade.persistent.dao.Contract;
 import org.trade.persistent.dao.Portfolio;
 import org.trade.persistent.dao.TradeOrder;
@@ -104,6 +116,7 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	 * 
 	 */
 	private static final long serialVersionUID = 595280836716405557L;
+	private static final long ORDER_SHUTDOWN_SECONDS = 30;
 
 	private final static Logger _log = LoggerFactory.getLogger(TWSBrokerModel.class);
 
@@ -111,6 +124,7 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	private static final ConcurrentHashMap<Integer, Tradestrategy> m_historyDataRequests = new ConcurrentHashMap<Integer, Tradestrategy>();
 	private static final ConcurrentHashMap<Integer, Contract> m_realTimeBarsRequests = new ConcurrentHashMap<Integer, Contract>();
 	private static final ConcurrentHashMap<Integer, Contract> m_marketDataRequests = new ConcurrentHashMap<Integer, Contract>();
+	private static final MarketDataLines m_marketDataLines = new MarketDataLines();
 	private static final ConcurrentHashMap<Integer, Contract> m_contractRequests = new ConcurrentHashMap<Integer, Contract>();
 	// Use account number as key
 	private static final ConcurrentHashMap<String, Account> m_accountRequests = new ConcurrentHashMap<String, Account>();
@@ -118,13 +132,21 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	// All Use orderKey as key
 	private static final ConcurrentHashMap<Integer, TradeOrder> openOrders = new ConcurrentHashMap<Integer, TradeOrder>();
 	private static final ConcurrentHashMap<Integer, TradeOrder> tradeOrdersExecutions = new ConcurrentHashMap<Integer, TradeOrder>();
-	// Use execId as key
-	private static final ConcurrentHashMap<String, Execution> executionDetails = new ConcurrentHashMap<String, Execution>();
-	// Use commsReport.m_execId as key
-	private static final ConcurrentHashMap<String, CommissionReport> commissionDetails = new ConcurrentHashMap<String, CommissionReport>();
+	// Executions and commissions for orders that do not exist
+	private static final ExecutionDetails executionDetails = new ExecutionDetails();
 
 	private EClientSocket m_client = null;
 	private PersistentModel m_tradePersistentModel = null;
+	private CandleWriter m_candleWriter = null;
+	// Use reqId as key
+	private final ConcurrentHashMap<Integer, RealtimeBarTasks> m_realtimeBarTasks = new ConcurrentHashMap<Integer, RealtimeBarTasks>();
+	private OrderCache m_orderCache = null;
+	private ExecutorService m_orderExecutor = null;
+	private BackfillPlanner m_backfillPlanner = null;
+	private final ConcurrentHashMap<Integer, BackfillPlan> m_backfillPlans = new ConcurrentHashMap<Integer, BackfillPlan>();
+	private final ConcurrentHashMap<Integer, List<Tradestrategy>> m_rollupRequests = new ConcurrentHashMap<Integer, List<Tradestrategy>>();
+	// Only used by tickString on the thread that receives the ticks.
+	private final double[] m_quoteValues = new double[3];
 	private AtomicInteger reqId = null;
 	private AtomicInteger orderKey = null;
 	private Integer m_clientId = null;
@@ -161,6 +183,10 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	private static Integer backfillOffsetDays = 0;
 	private static String genericTicklist = "233";
 	private static boolean marketUpdateOnClose = false;
+	private static int realtimeBarThreads = 0;
+	private static ExecutorService realtimeBarExecutor = null;
+	private static int snapshotInterval = 0;
+	private ScheduledExecutorService m_snapshotExecutor = null;
 
 	static {
 		try {
@@ -169,6 +195,8 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 			backfillOffsetDays = ConfigProperties.getPropAsInt("trade.backfill.offsetDays");
 			genericTicklist = ConfigProperties.getPropAsString("trade.marketdata.genericTicklist");
 			marketUpdateOnClose = ConfigProperties.getPropAsBoolean("trade.marketdata.realtime.updateClose");
+			realtimeBarThreads = ConfigProperties.getPropAsInt("trade.marketdata.realtime.threads");
+			snapshotInterval = ConfigProperties.getPropAsInt("trade.marketdata.snapshotInterval");
 
 		} catch (Exception ex) {
 			throw new IllegalArgumentException("Error initializing BrokerModel Msg: " + ex.getMessage());
@@ -176,10 +204,26 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	}
 
 	public TWSBrokerModel() {
+		this(null);
+	}
+
+	/**
+	 * Constructor for TWSBrokerModel.
+	 * 
+	 * @param tradePersistentModel
+	 *            PersistentModel the model to use or null for the configured
+	 *            PersistentModel.
+	 */
+	TWSBrokerModel(PersistentModel tradePersistentModel) {
 		try {
 			m_client = new EClientSocket(this);
-			m_tradePersistentModel = (PersistentModel) ClassFactory
-					.getServiceForInterface(PersistentModel._persistentModel, this);
+			if (null == tradePersistentModel)
+				tradePersistentModel = (PersistentModel) ClassFactory
+						.getServiceForInterface(PersistentModel._persistentModel, this);
+			m_tradePersistentModel = tradePersistentModel;
+			m_candleWriter = new CandleWriter(m_tradePersistentModel);
+			m_orderCache = new OrderCache(m_tradePersistentModel);
+			m_backfillPlanner = new BackfillPlanner(m_tradePersistentModel);
 			reqId = new AtomicInteger((int) (System.currentTimeMillis() / 1000d));
 
 		} catch (Exception ex) {
@@ -233,6 +277,13 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	 */
 	public void onDisconnect() {
 		onCancelAllRealtimeData();
+		stopSnapshots();
+		try {
+			m_candleWriter.flush();
+		} catch (InterruptedException ex) {
+			_log.error("TWS Broker Model interrupted saving candles Msg: " + ex.getMessage());
+		}
+		stopOrderExecutor();
 		if (m_client.isConnected()) {
 			for (String accountNumber : m_accountRequests.keySet()) {
 				this.onCancelAccountUpdates(accountNumber);
@@ -395,7 +446,6 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 
 			if (m_client.isConnected()) {
 				tradeOrdersExecutions.clear();
-				commissionDetails.clear();
 				executionDetails.clear();
 				Integer reqId = this.getNextRequestId();
 				m_client.reqExecutions(reqId, TWSBrokerModel.getIBExecutionFilter(m_clientId, mktOpenDate, null, null));
@@ -427,7 +477,6 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 			Integer clientId = m_clientId;
 			if (m_client.isConnected()) {
 				tradeOrdersExecutions.clear();
-				commissionDetails.clear();
 				executionDetails.clear();
 				/*
 				 * This will get all orders i.e. those created by this client
@@ -470,6 +519,9 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 									+ " Please wait or cancel.");
 				}
 				m_realTimeBarsRequests.put(contract.getId(), contract);
+				Contract downgraded = m_marketDataLines.addRealtimeBars(contract);
+				if (null != downgraded)
+					downgradeMarketData(downgraded);
 
 				/*
 				 * Bar interval is set to 5= 5sec this is the only thing
@@ -515,7 +567,26 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 									+ " Please wait or cancel.");
 				}
 				List<TagValue> mktDataOptions = new ArrayList<TagValue>();
+				addQuote(contract);
 				m_marketDataRequests.put(contract.getId(), contract);
+
+				/*
+				 * When all the market data lines are in use the contract is
+				 * served by snapshots, these cannot have generic ticks.
+				 */
+				if (!snapshot) {
+					List<Contract> downgraded = new ArrayList<Contract>();
+					if (!m_marketDataLines.addMarketData(contract, downgraded)) {
+						_log.info("Market data lines in use: " + m_marketDataLines.getLinesInUse() + " Symbol: "
+								+ contract.getSymbol() + " using snapshots.");
+						startSnapshots();
+						snapshot = true;
+						genericTicklist = "";
+					}
+					for (Contract item : downgraded) {
+						downgradeMarketData(item);
+					}
+				}
 				m_client.reqMktData(contract.getId(), TWSBrokerModel.getIBContract(contract), genericTicklist, snapshot,
 						mktDataOptions);
 
@@ -595,8 +666,26 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 
 				m_historyDataRequests.put(tradestrategy.getId(), tradestrategy);
 
-				endDate = TradingCalendar.getDateAtTime(TradingCalendar.addTradingDays(endDate, backfillOffsetDays),
-						endDate);
+				endDate = getBackfillEndDate(endDate);
+
+				/*
+				 * Read the candles that are in the database and only request
+				 * the tradingdays that are missing. Use the plan from
+				 * isHistoricalDataRequired if it was for this end date.
+				 */
+				BackfillPlan plan = m_backfillPlans.get(tradestrategy.getId());
+				if (null == plan || !plan.getEndDate().equals(endDate)) {
+					plan = m_backfillPlanner.getPlan(tradestrategy, endDate);
+					m_backfillPlans.put(tradestrategy.getId(), plan);
+				}
+				loadCandles(tradestrategy, plan.getCandles());
+				if (!plan.isRequired()) {
+					_log.info("onBrokerData Req Id: " + tradestrategy.getId() + " Symbol: "
+							+ tradestrategy.getContract().getSymbol() + " all candles read from the database.");
+					m_backfillPlans.remove(tradestrategy.getId());
+					historicalDataComplete(tradestrategy.getId(), tradestrategy, false, null);
+					return;
+				}
 
 				String endDateTime = TradingCalendar.getFormattedDate(endDate, "yyyyMMdd HH:mm:ss");
 
@@ -604,9 +693,8 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 				 * TWS API data has a limit of one calendar year of data. So
 				 * apply this limit to the chartDays.
 				 */
-				Integer chartDays = tradestrategy.getChartDays();
-				if (TradingCalendar.getDurationInDays(
-						TradingCalendar.addTradingDays(endDate, (-1 * tradestrategy.getChartDays())),
+				Integer chartDays = plan.getChartDays();
+				if (TradingCalendar.getDurationInDays(TradingCalendar.addTradingDays(endDate, (-1 * chartDays)),
 						TradingCalendar.getDateTimeNowMarketTimeZone()) > 365) {
 					chartDays = 365;
 				}
@@ -635,6 +723,135 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 		}
 	}
 
+	/**
+	 * Method onBrokerData. Request the data for the tradestrategy and build the
+	 * candles for the rollup tradestrategies from it when it completes. The
+	 * rollup tradestrategies are for the same contract and tradingday with a
+	 * bar size that is a multiple of the tradestrategy's bar size and no more
+	 * chart days.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @param endDate
+	 *            ZonedDateTime
+	 * @param rollupTradestrategies
+	 *            List<Tradestrategy>
+	 * @throws BrokerModelException
+	 * @see org.trade.broker.BrokerModel#onBrokerData(Tradestrategy,
+	 *      ZonedDateTime, List)
+	 */
+	public void onBrokerData(Tradestrategy tradestrategy, ZonedDateTime endDate,
+			List<Tradestrategy> rollupTradestrategies) throws BrokerModelException {
+
+		if (null != rollupTradestrategies && !rollupTradestrategies.isEmpty()) {
+			for (Tradestrategy rollupTradestrategy : rollupTradestrategies) {
+				if (this.isHistoricalDataRunning(tradestrategy) || this.isHistoricalDataRunning(rollupTradestrategy)) {
+					throw new BrokerModelException(rollupTradestrategy.getIdTradeStrategy(), 3010,
+							"HistoricalData request is already in progress for: "
+									+ rollupTradestrategy.getContract().getSymbol() + " Please wait or cancel.");
+				}
+			}
+			for (Tradestrategy rollupTradestrategy : rollupTradestrategies) {
+				if (!rollupTradestrategy.getStrategyData().isRunning())
+					rollupTradestrategy.getStrategyData().execute();
+			}
+			addRollupRequests(tradestrategy, rollupTradestrategies);
+		}
+		try {
+			this.onBrokerData(tradestrategy, endDate);
+		} catch (BrokerModelException ex) {
+			List<Tradestrategy> rollups = m_rollupRequests.remove(tradestrategy.getId());
+			if (null != rollups) {
+				synchronized (m_historyDataRequests) {
+					for (Tradestrategy rollupTradestrategy : rollups) {
+						m_historyDataRequests.remove(rollupTradestrategy.getId());
+					}
+					m_historyDataRequests.notify();
+				}
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Method addRollupRequests. Add the rollup tradestrategies to the
+	 * processing vector and wait for the tradestrategy's request.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @param rollupTradestrategies
+	 *            List<Tradestrategy>
+	 */
+	void addRollupRequests(Tradestrategy tradestrategy, List<Tradestrategy> rollupTradestrategies) {
+		for (Tradestrategy rollupTradestrategy : rollupTradestrategies) {
+			m_historyDataRequests.put(rollupTradestrategy.getId(), rollupTradestrategy);
+		}
+		m_rollupRequests.put(tradestrategy.getId(), new ArrayList<Tradestrategy>(rollupTradestrategies));
+	}
+
+	/**
+	 * Method isHistoricalDataRequired.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @param endDate
+	 *            ZonedDateTime
+	 * @return boolean
+	 * @throws BrokerModelException
+	 * @see org.trade.broker.BrokerModel#isHistoricalDataRequired(Tradestrategy,
+	 *      ZonedDateTime)
+	 */
+	public boolean isHistoricalDataRequired(Tradestrategy tradestrategy, ZonedDateTime endDate)
+			throws BrokerModelException {
+		try {
+			BackfillPlan plan = m_backfillPlanner.getPlan(tradestrategy, getBackfillEndDate(endDate));
+			m_backfillPlans.put(tradestrategy.getId(), plan);
+			return plan.isRequired();
+		} catch (Exception ex) {
+			throw new BrokerModelException(tradestrategy.getId(), 3110, "Error broker data Symbol: "
+					+ tradestrategy.getContract().getSymbol() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Method getBackfillEndDate.
+	 * 
+	 * @param endDate
+	 *            ZonedDateTime
+	 * @return ZonedDateTime the end date moved by the
+	 *         trade.backfill.offsetDays.
+	 */
+	private ZonedDateTime getBackfillEndDate(ZonedDateTime endDate) {
+		return TradingCalendar.getDateAtTime(TradingCalendar.addTradingDays(endDate, backfillOffsetDays), endDate);
+	}
+
+	/**
+	 * Method loadCandles. Add the candles read from the database to the
+	 * tradestrategy's base candle series.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @param candles
+	 *            List<Candle>
+	 */
+	private void loadCandles(Tradestrategy tradestrategy, List<Candle> candles) {
+
+		if (candles.isEmpty())
+			return;
+
+		for (Candle candle : candles) {
+			tradestrategy.getStrategyData().buildCandle(candle.getStartPeriod(), candle.getOpen().doubleValue(),
+					candle.getHigh().doubleValue(), candle.getLow().doubleValue(), candle.getClose().doubleValue(),
+					(null == candle.getVolume() ? 0 : candle.getVolume()),
+					(null == candle.getVwap() ? 0 : candle.getVwap().doubleValue()),
+					(null == candle.getTradeCount() ? 0 : candle.getTradeCount()), 1, null);
+		}
+		BigDecimal price = candles.get(candles.size() - 1).getClose();
+		tradestrategy.getStrategyData().getBaseCandleSeries().getContract().setLastAskPrice(price);
+		tradestrategy.getStrategyData().getBaseCandleSeries().getContract().setLastBidPrice(price);
+		tradestrategy.getStrategyData().getBaseCandleSeries().getContract().setLastPrice(price);
+	}
+
 	/**
 	 * Method isAccountUpdatesRunning.
 	 * 
@@ -765,10 +982,10 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 				this.onCancelBrokerData(tradestrategy);
 			}
 			for (Contract contract : m_realTimeBarsRequests.values()) {
-				this.onCancelRealtimeBars(contract);
+				this.cancelRealtimeBars(contract, false);
 			}
 			for (Contract contract : m_marketDataRequests.values()) {
-				this.onCancelMarketData(contract);
+				this.cancelMarketData(contract, false);
 			}
 			for (Contract contract : m_contractRequests.values()) {
 				this.onCancelContractDetails(contract);
@@ -776,8 +993,15 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 		}
 		m_contractRequests.clear();
 		m_historyDataRequests.clear();
+		m_backfillPlans.clear();
+		m_rollupRequests.clear();
 		m_realTimeBarsRequests.clear();
+		m_realtimeBarTasks.clear();
+		for (Contract contract : m_marketDataRequests.values()) {
+			removeQuote(contract);
+		}
 		m_marketDataRequests.clear();
+		m_marketDataLines.clear();
 
 	}
 
@@ -825,12 +1049,9 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	public void onCancelBrokerData(Tradestrategy tradestrategy) {
 
 		if (m_historyDataRequests.containsKey(tradestrategy.getId())) {
-			if (m_client.isConnected())
+			if (m_client.isConnected() && !isRollupRequest(tradestrategy.getId()))
 				m_client.cancelHistoricalData(tradestrategy.getId());
-			synchronized (m_historyDataRequests) {
-				m_historyDataRequests.remove(tradestrategy.getId());
-				m_historyDataRequests.notify();
-			}
+			removeHistoricalDataRequest(tradestrategy.getId());
 		}
 	}
 
@@ -844,12 +1065,9 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	public void onCancelBrokerData(Contract contract) {
 		for (Tradestrategy tradestrategy : m_historyDataRequests.values()) {
 			if (contract.equals(tradestrategy.getContract())) {
-				if (m_client.isConnected())
+				if (m_client.isConnected() && !isRollupRequest(tradestrategy.getId()))
 					m_client.cancelHistoricalData(tradestrategy.getId());
-				synchronized (m_historyDataRequests) {
-					m_historyDataRequests.remove(tradestrategy.getId());
-					m_historyDataRequests.notify();
-				}
+				removeHistoricalDataRequest(tradestrategy.getId());
 			}
 		}
 	}
@@ -884,6 +1102,19 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	 * @see org.trade.broker.BrokerModel#onCancelRealtimeBars(Contract)
 	 */
 	public void onCancelRealtimeBars(Contract contract) {
+		cancelRealtimeBars(contract, true);
+	}
+
+	/**
+	 * Method cancelRealtimeBars.
+	 * 
+	 * @param contract
+	 *            Contract
+	 * @param promote
+	 *            boolean true if the freed market data line is to be given to
+	 *            a snapshot contract.
+	 */
+	private void cancelRealtimeBars(Contract contract, boolean promote) {
 
 		if (m_realTimeBarsRequests.containsKey(contract.getId())) {
 			if (m_client.isConnected())
@@ -891,6 +1122,10 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 			synchronized (m_realTimeBarsRequests) {
 				m_realTimeBarsRequests.remove(contract.getId());
 			}
+			m_realtimeBarTasks.remove(contract.getId());
+			Contract promoted = m_marketDataLines.removeRealtimeBars(contract);
+			if (promote && null != promoted)
+				promoteMarketData(promoted);
 		}
 	}
 
@@ -923,13 +1158,124 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	 * @see org.trade.broker.BrokerModel#onCancelRealtimeBars(Contract)
 	 */
 	public void onCancelMarketData(Contract contract) {
+		cancelMarketData(contract, true);
+	}
+
+	/**
+	 * Method cancelMarketData.
+	 * 
+	 * @param contract
+	 *            Contract
+	 * @param promote
+	 *            boolean true if the freed market data line is to be given to
+	 *            a snapshot contract.
+	 */
+	private void cancelMarketData(Contract contract, boolean promote) {
 
 		if (m_marketDataRequests.containsKey(contract.getId())) {
-			if (m_client.isConnected())
+			if (m_client.isConnected() && !m_marketDataLines.isSnapshot(contract))
 				m_client.cancelMktData(contract.getId());
 			synchronized (m_marketDataRequests) {
-				m_marketDataRequests.remove(contract.getId());
+				removeQuote(m_marketDataRequests.remove(contract.getId()));
+			}
+			Contract promoted = m_marketDataLines.removeMarketData(contract);
+			if (promote && null != promoted)
+				promoteMarketData(promoted);
+		}
+	}
+
+	/**
+	 * Method downgradeMarketData. Cancel the contract's streaming market data,
+	 * its line has been given to another contract and its market data is now
+	 * served by snapshots.
+	 * 
+	 * @param contract
+	 *            Contract
+	 */
+	private void downgradeMarketData(Contract contract) {
+		_log.info("Market data lines in use: " + m_marketDataLines.getLinesInUse() + " Symbol: "
+				+ contract.getSymbol() + " moved to snapshots.");
+		if (m_client.isConnected())
+			m_client.cancelMktData(contract.getId());
+		startSnapshots();
+	}
+
+	/**
+	 * Method promoteMarketData. Start streaming market data for a snapshot
+	 * contract that has been given a line.
+	 * 
+	 * @param contract
+	 *            Contract
+	 */
+	private void promoteMarketData(Contract contract) {
+		_log.info("Market data lines in use: " + m_marketDataLines.getLinesInUse() + " Symbol: "
+				+ contract.getSymbol() + " moved to streaming.");
+		try {
+			if (m_client.isConnected())
+				m_client.reqMktData(contract.getId(), TWSBrokerModel.getIBContract(contract), genericTicklist, false,
+						new ArrayList<TagValue>());
+		} catch (IOException ex) {
+			_log.error("Error promoting market data Symbol: " + contract.getSymbol() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Method startSnapshots. Start the thread that requests a snapshot every
+	 * trade.marketdata.snapshotInterval seconds for the contracts without a
+	 * market data line.
+	 */
+	private synchronized void startSnapshots() {
+
+		if (null != m_snapshotExecutor || snapshotInterval < 1)
+			return;
+
+		m_snapshotExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "MarketDataSnapshot");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		m_snapshotExecutor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				requestSnapshots();
+			}
+		}, snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Method stopSnapshots.
+	 */
+	private synchronized void stopSnapshots() {
+		if (null != m_snapshotExecutor) {
+			m_snapshotExecutor.shutdownNow();
+			m_snapshotExecutor = null;
+		}
+	}
+
+	/**
+	 * Method requestSnapshots. Give the snapshot contracts that now have an
+	 * open position a market data line and request a snapshot for the rest.
+	 */
+	private void requestSnapshots() {
+		try {
+			if (!m_client.isConnected())
+				return;
+
+			List<Contract> downgraded = new ArrayList<Contract>();
+			List<Contract> promoted = m_marketDataLines.rotate(downgraded);
+			for (Contract contract : downgraded) {
+				downgradeMarketData(contract);
 			}
+			for (Contract contract : promoted) {
+				promoteMarketData(contract);
+			}
+			for (Contract contract : m_marketDataLines.getSnapshots()) {
+				m_client.reqMktData(contract.getId(), TWSBrokerModel.getIBContract(contract), "", true,
+						new ArrayList<TagValue>());
+			}
+		} catch (Exception ex) {
+			_log.error("Error requesting market data snapshots Msg: " + ex.getMessage());
 		}
 	}
 
@@ -947,6 +1293,7 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	public TradeOrder onPlaceOrder(Contract contract, TradeOrder tradeOrder) throws BrokerModelException {
 		try {
 			if (m_client.isConnected()) {
+				m_marketDataLines.touch(contract);
 				synchronized (tradeOrder) {
 					if (null == tradeOrder.getOrderKey()) {
 						tradeOrder.setOrderKey(orderKey.getAndIncrement());
@@ -955,6 +1302,7 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 						tradeOrder.setClientId(this.m_clientId);
 					}
 					tradeOrder = m_tradePersistentModel.persistTradeOrder(tradeOrder);
+					m_orderCache.put(tradeOrder);
 
 					_log.debug("Order Placed Key: " + tradeOrder.getOrderKey());
 					com.ib.client.Contract IBContract = TWSBrokerModel.getIBContract(contract);
@@ -1014,12 +1362,30 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	 * @see com.ib.client.EWrapper#execDetails(int, com.ib.client.Contract,
 	 *      Execution)
 	 */
-	public void execDetails(int reqId, com.ib.client.Contract contractIB, Execution execution) {
+	public void execDetails(final int reqId, final com.ib.client.Contract contractIB, final Execution execution) {
+		executeOrderTask(new Runnable() {
+			public void run() {
+				processExecDetails(reqId, execution, true);
+			}
+		});
+	}
+
+	/**
+	 * Method processExecDetails. Runs on the order thread see execDetails().
+	 * 
+	 * @param reqId
+	 *            int
+	 * @param execution
+	 *            Execution
+	 * @param retry
+	 *            boolean true to read the order again and retry once if it
+	 *            was saved outside the OrderCache.
+	 */
+	private void processExecDetails(int reqId, Execution execution, boolean retry) {
 		try {
 			TWSBrokerModel.logExecution(execution);
 
-			TradeOrder transientInstance = m_tradePersistentModel
-					.findTradeOrderByKey(new Integer(Math.abs(execution.m_orderId)));
+			TradeOrder transientInstance = m_orderCache.getTradeOrder(new Integer(Math.abs(execution.m_orderId)));
 			if (null == transientInstance) {
 				/*
 				 * If the executionDetails is null and the order does not exist
@@ -1027,7 +1393,7 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 				 * different clientId than the one which created this order.
 				 */
 				if (null == m_tradePersistentModel.findTradeOrderfillByExecId(execution.m_execId)) {
-					executionDetails.put(execution.m_execId, execution);
+					executionDetails.addExecution(execution);
 				}
 				return;
 			}
@@ -1048,6 +1414,7 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 			transientInstance.setFilledDate(tradeOrderfill.getTime());
 			boolean isFilled = transientInstance.getIsFilled();
 			transientInstance = m_tradePersistentModel.persistTradeOrderfill(transientInstance);
+			m_orderCache.put(transientInstance);
 			// Let the controller know an order was filled
 			if (transientInstance.getIsFilled() && !isFilled)
 				this.fireTradeOrderFilled(transientInstance);
@@ -1056,6 +1423,11 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 			_log.error("execDetails tradeOrdersExecutions reqId: " + reqId);
 
 		} catch (Exception ex) {
+			m_orderCache.remove(new Integer(Math.abs(execution.m_orderId)));
+			if (retry && isVersionConflict(ex)) {
+				processExecDetails(reqId, execution, false);
+				return;
+			}
 			error(reqId, 3160, "Errors saving execution: " + ex.getMessage());
 		}
 	}
@@ -1069,7 +1441,22 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	 *            int
 	 * @see com.ib.client.EWrapper#execDetailsEnd(int)
 	 */
-	public void execDetailsEnd(int reqId) {
+	public void execDetailsEnd(final int reqId) {
+		executeOrderTask(new Runnable() {
+			public void run() {
+				processExecDetailsEnd(reqId);
+			}
+		});
+	}
+
+	/**
+	 * Method processExecDetailsEnd. Runs on the order thread see
+	 * execDetailsEnd().
+	 * 
+	 * @param reqId
+	 *            int
+	 */
+	private void processExecDetailsEnd(int reqId) {
 
 		try {
 
@@ -1089,41 +1476,39 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 				 * create the traderOrders and tradeOrderfills that have been
 				 * request and that do not already exist. Note executionDetails
 				 * only contains executions for tradeOrders that do not exist.
+				 * The executions are grouped by permId i.e. one group per
+				 * order.
 				 */
 
 				if (m_tradePersistentModel.existTradestrategyById(reqId)) {
 
 					Tradestrategy tradestrategy = m_tradePersistentModel.findTradestrategyById(reqId);
+					List<List<Execution>> executions = executionDetails.getExecutions();
+
 					/*
-					 * Internal created order have Integer.MAX_VALUE or are
-					 * negative as their value, so change the m_orderId to
-					 * nextOrderKey.
+					 * Create the tradeOrder for these executions. Internal
+					 * created order have Integer.MAX_VALUE or are negative as
+					 * their value, so change the m_orderId to nextOrderKey.
 					 */
-					int nextOrderKey = orderKey.getAndIncrement();
-					for (String key : executionDetails.keySet()) {
-						Execution execution = executionDetails.get(key);
-						if (execution.m_orderId == Integer.MAX_VALUE || execution.m_orderId < 0) {
-							execution.m_orderId = nextOrderKey;
-						} else {
-							continue;
+					HashMap<Integer, TradeOrder> tradeOrders = new HashMap<Integer, TradeOrder>();
+					HashMap<Integer, List<Execution>> orderExecutions = new HashMap<Integer, List<Execution>>();
+					for (List<Execution> permIdExecutions : executions) {
+
+						boolean internal = false;
+						for (Execution execution : permIdExecutions) {
+							if (execution.m_orderId == Integer.MAX_VALUE || execution.m_orderId < 0) {
+								internal = true;
+								break;
+							}
 						}
-						// Multiple executions for the same order.
-						for (String key1 : executionDetails.keySet()) {
-							Execution execution1 = executionDetails.get(key1);
-							if (execution1.m_permId == execution.m_permId) {
-								execution1.m_orderId = nextOrderKey;
+						if (internal) {
+							int nextOrderKey = orderKey.getAndIncrement();
+							for (Execution execution : permIdExecutions) {
+								execution.m_orderId = nextOrderKey;
 							}
 						}
-						nextOrderKey = orderKey.getAndIncrement();
-					}
-
-					/*
-					 * Create the tradeOrder for these executions.
-					 */
-					ConcurrentHashMap<Integer, TradeOrder> tradeOrders = new ConcurrentHashMap<Integer, TradeOrder>();
-					for (String key : executionDetails.keySet()) {
-						Execution execution = executionDetails.get(key);
 
+						Execution execution = permIdExecutions.get(0);
 						if (tradeOrders.containsKey(execution.m_orderId)) {
 							continue;
 						}
@@ -1142,65 +1527,51 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 						tradeOrder.setClientId(execution.m_clientId);
 						tradeOrder.setPermId(execution.m_permId);
 						tradeOrder.setOrderKey(execution.m_orderId);
-						for (String key1 : executionDetails.keySet()) {
-							Execution execution1 = executionDetails.get(key1);
-							if (execution1.m_permId == execution.m_permId
-									&& !execution1.m_execId.equals(execution.m_execId)) {
-								TradeOrderfill tradeOrderfill1 = new TradeOrderfill();
-								TWSBrokerModel.populateTradeOrderfill(execution1, tradeOrderfill1);
-								quantity = quantity + tradeOrderfill1.getQuantity();
-								/*
-								 * Make sure the create date for the order is
-								 * the earliest time.
-								 */
-								if (tradeOrder.getCreateDate().isAfter(tradeOrderfill1.getTime())) {
-									tradeOrder.setCreateDate(tradeOrderfill1.getTime());
-								}
+						for (int i = 1; i < permIdExecutions.size(); i++) {
+							TradeOrderfill tradeOrderfill1 = new TradeOrderfill();
+							TWSBrokerModel.populateTradeOrderfill(permIdExecutions.get(i), tradeOrderfill1);
+							quantity = quantity + tradeOrderfill1.getQuantity();
+							/*
+							 * Make sure the create date for the order is the
+							 * earliest time.
+							 */
+							if (tradeOrder.getCreateDate().isAfter(tradeOrderfill1.getTime())) {
+								tradeOrder.setCreateDate(tradeOrderfill1.getTime());
 							}
 						}
 						tradeOrder.setQuantity(quantity);
 						tradeOrders.put(tradeOrder.getOrderKey(), tradeOrder);
+						orderExecutions.put(tradeOrder.getOrderKey(), permIdExecutions);
 					}
 
-					List<TradeOrder> orders = new ArrayList<TradeOrder>();
-					for (Integer orderKey : tradeOrders.keySet()) {
-						TradeOrder tradeOrder = tradeOrders.get(orderKey);
-						orders.add(tradeOrder);
-					}
+					List<TradeOrder> orders = new ArrayList<TradeOrder>(tradeOrders.values());
 					Collections.sort(orders, TradeOrder.CREATE_ORDER);
 
 					for (TradeOrder tradeOrder : orders) {
-						// tradeOrder =
-						// m_tradePersistentModel.persistTradeOrder(tradeOrder);
 						double totalComms = 0;
-						for (String key : executionDetails.keySet()) {
-							Execution execution = executionDetails.get(key);
-							if (tradeOrder.getPermId().equals(execution.m_permId)) {
-								TradeOrderfill tradeOrderfill = new TradeOrderfill();
-								TWSBrokerModel.populateTradeOrderfill(execution, tradeOrderfill);
-								/*
-								 * Commissions are sent through via the
-								 * commissionReport call. This happens when an
-								 * order is executed or a call to
-								 * OnReqExecutions.
-								 */
-								CommissionReport comms = commissionDetails.get(key);
-
-								if (null != comms) {
-									totalComms = totalComms + comms.m_commission;
-									tradeOrderfill.setCommission(new BigDecimal(comms.m_commission));
-								}
-								tradeOrderfill.setTradeOrder(tradeOrder);
-								tradeOrder.addTradeOrderfill(tradeOrderfill);
+						for (Execution execution : orderExecutions.get(tradeOrder.getOrderKey())) {
+							TradeOrderfill tradeOrderfill = new TradeOrderfill();
+							TWSBrokerModel.populateTradeOrderfill(execution, tradeOrderfill);
+							/*
+							 * Commissions are sent through via the
+							 * commissionReport call. This happens when an
+							 * order is executed or a call to OnReqExecutions.
+							 */
+							CommissionReport comms = executionDetails.getCommissionReport(execution.m_execId);
+
+							if (null != comms) {
+								totalComms = totalComms + comms.m_commission;
+								tradeOrderfill.setCommission(new BigDecimal(comms.m_commission));
 							}
+							tradeOrderfill.setTradeOrder(tradeOrder);
+							tradeOrder.addTradeOrderfill(tradeOrderfill);
 						}
 						tradeOrder.setCommission(new BigDecimal(totalComms));
 						tradeOrder = m_tradePersistentModel.persistTradeOrderfill(tradeOrder);
-						TradeOrder transientInstance = m_tradePersistentModel
-								.findTradeOrderByKey(tradeOrder.getOrderKey());
+						m_orderCache.put(tradeOrder);
 						// Let the controller know an order was filled
 						if (tradeOrder.getIsFilled()) {
-							this.fireTradeOrderFilled(transientInstance);
+							this.fireTradeOrderFilled(tradeOrder);
 						}
 					}
 				}
@@ -1229,14 +1600,35 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	 *            OrderState
 	 * @see http://www.interactivebrokers.com/php/apiUsersGuide/apiguide.htm
 	 */
-	public void openOrder(int orderId, com.ib.client.Contract contractIB, com.ib.client.Order order,
-			OrderState orderState) {
+	public void openOrder(final int orderId, final com.ib.client.Contract contractIB, final com.ib.client.Order order,
+			final OrderState orderState) {
+		executeOrderTask(new Runnable() {
+			public void run() {
+				processOpenOrder(orderId, order, orderState, true);
+			}
+		});
+	}
+
+	/**
+	 * Method processOpenOrder. Runs on the order thread see openOrder().
+	 * 
+	 * @param orderId
+	 *            int
+	 * @param order
+	 *            com.ib.client.Order
+	 * @param orderState
+	 *            OrderState
+	 * @param retry
+	 *            boolean true to read the order again and retry once if it
+	 *            was saved outside the OrderCache.
+	 */
+	private void processOpenOrder(int orderId, com.ib.client.Order order, OrderState orderState, boolean retry) {
 		try {
 
 			TWSBrokerModel.logOrderState(orderState);
 			TWSBrokerModel.logTradeOrder(order);
 
-			TradeOrder transientInstance = m_tradePersistentModel.findTradeOrderByKey(new Integer(order.m_orderId));
+			TradeOrder transientInstance = m_orderCache.getTradeOrder(new Integer(order.m_orderId));
 
 			if (null == transientInstance) {
 				error(orderId, 3170,
@@ -1260,6 +1652,7 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 				if (OrderStatus.FILLED.equals(transientInstance.getStatus())) {
 					_log.debug("Open order filled Order Key:" + transientInstance.getOrderKey());
 					transientInstance = m_tradePersistentModel.persistTradeOrder(transientInstance);
+					m_orderCache.put(transientInstance);
 
 					if (transientInstance.hasTradePosition() && !transientInstance.getTradePosition().isOpen()) {
 						// Let the controller know a position was closed
@@ -1268,6 +1661,7 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 				} else {
 					_log.debug("Open order state changed. Status:" + orderState.m_status);
 					transientInstance = m_tradePersistentModel.persistTradeOrder(transientInstance);
+					m_orderCache.put(transientInstance);
 					if (OrderStatus.CANCELLED.equals(transientInstance.getStatus())) {
 						// Let the controller know a position was closed
 						this.fireTradeOrderCancelled(transientInstance);
@@ -1275,9 +1669,17 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 						this.fireTradeOrderStatusChanged(transientInstance);
 					}
 				}
+			} else {
+				// Nothing changed do not hand out the cached order.
+				transientInstance = OrderCache.copy(transientInstance);
 			}
 			openOrders.put(transientInstance.getOrderKey(), transientInstance);
 		} catch (Exception ex) {
+			m_orderCache.remove(new Integer(order.m_orderId));
+			if (retry && isVersionConflict(ex)) {
+				processOpenOrder(orderId, order, orderState, false);
+				return;
+			}
 			error(orderId, 3180, "Errors updating open order: " + ex.getMessage());
 		}
 	}
@@ -1291,6 +1693,17 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	 * @see com.ib.client.EWrapper#openOrderEnd()
 	 */
 	public void openOrderEnd() {
+		executeOrderTask(new Runnable() {
+			public void run() {
+				processOpenOrderEnd();
+			}
+		});
+	}
+
+	/**
+	 * Method processOpenOrderEnd. Runs on the order thread see openOrderEnd().
+	 */
+	private void processOpenOrderEnd() {
 		_log.debug("openOrderEnd");
 		// Let the controller know there are open orders
 		for (TradeOrder openOrder : openOrders.values()) {
@@ -1328,10 +1741,48 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	 *            String
 	 * @see http://www.interactivebrokers.com/php/apiUsersGuide/apiguide.htm
 	 */
-	public void orderStatus(int orderId, String status, int filled, int remaining, double avgFillPrice, int permId,
-			int parentId, double lastFillPrice, int clientId, String whyHeld) {
+	public void orderStatus(final int orderId, final String status, final int filled, final int remaining,
+			final double avgFillPrice, final int permId, final int parentId, final double lastFillPrice,
+			final int clientId, final String whyHeld) {
+		executeOrderTask(new Runnable() {
+			public void run() {
+				processOrderStatus(orderId, status, filled, remaining, avgFillPrice, permId, parentId, lastFillPrice,
+						clientId, whyHeld, true);
+			}
+		});
+	}
+
+	/**
+	 * Method processOrderStatus. Runs on the order thread see orderStatus().
+	 * 
+	 * @param orderId
+	 *            int
+	 * @param status
+	 *            String
+	 * @param filled
+	 *            int
+	 * @param remaining
+	 *            int
+	 * @param avgFillPrice
+	 *            double
+	 * @param permId
+	 *            int
+	 * @param parentId
+	 *            int
+	 * @param lastFillPrice
+	 *            double
+	 * @param clientId
+	 *            int
+	 * @param whyHeld
+	 *            String
+	 * @param retry
+	 *            boolean true to read the order again and retry once if it
+	 *            was saved outside the OrderCache.
+	 */
+	private void processOrderStatus(int orderId, String status, int filled, int remaining, double avgFillPrice,
+			int permId, int parentId, double lastFillPrice, int clientId, String whyHeld, boolean retry) {
 		try {
-			TradeOrder transientInstance = m_tradePersistentModel.findTradeOrderByKey(new Integer(orderId));
+			TradeOrder transientInstance = m_orderCache.getTradeOrder(new Integer(orderId));
 			if (null == transientInstance) {
 				error(orderId, 3170, "Warning Order not found for Order Key: " + orderId + " make sure Client ID: "
 						+ this.m_clientId + " is not the master in TWS. On orderStatus update.");
@@ -1372,6 +1823,7 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 
 				boolean isFilled = transientInstance.getIsFilled();
 				transientInstance = m_tradePersistentModel.persistTradeOrder(transientInstance);
+				m_orderCache.put(transientInstance);
 
 				if (OrderStatus.CANCELLED.equals(transientInstance.getStatus())) {
 					// Let the controller know a position was closed
@@ -1384,6 +1836,12 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 				}
 			}
 		} catch (Exception ex) {
+			m_orderCache.remove(new Integer(orderId));
+			if (retry && isVersionConflict(ex)) {
+				processOrderStatus(orderId, status, filled, remaining, avgFillPrice, permId, parentId, lastFillPrice,
+						clientId, whyHeld, false);
+				return;
+			}
 			error(orderId, 3200, "Errors updating open order status: " + ex.getMessage());
 		}
 	}
@@ -1446,10 +1904,7 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 						+ "2/ Making six or more historical data requests for the same Contract, Exchange and Tick Type within two seconds. \n"
 						+ "3/ Making more than 60 historical data requests in any ten-minute period.  \n";
 			}
-			synchronized (m_historyDataRequests) {
-				m_historyDataRequests.remove(id);
-				m_historyDataRequests.notify();
-			}
+			removeHistoricalDataRequest(id);
 		}
 		if (m_realTimeBarsRequests.containsKey(id)) {
 			symbol = m_realTimeBarsRequests.get(id).getSymbol();
@@ -1493,12 +1948,15 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 		} else {
 			if (m_realTimeBarsRequests.containsKey(id)) {
 				synchronized (m_realTimeBarsRequests) {
-					m_realTimeBarsRequests.remove(id);
+					m_marketDataLines.removeRealtimeBars(m_realTimeBarsRequests.remove(id));
 				}
+				m_realtimeBarTasks.remove(id);
 			}
 			if (m_marketDataRequests.containsKey(id)) {
 				synchronized (m_marketDataRequests) {
-					m_marketDataRequests.remove(id);
+					Contract contract = m_marketDataRequests.remove(id);
+					removeQuote(contract);
+					m_marketDataLines.removeMarketData(contract);
 				}
 			}
 
@@ -1534,47 +1992,93 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	public void tickPrice(int reqId, int field, double value, int canAutoExecute) {
 
 		try {
+			// _log.warn("tickPrice Field: " + field + " value :" + value
+			// + " time: " + System.currentTimeMillis());
+			Contract contract = m_marketDataRequests.get(reqId);
+			if (null == contract || null == contract.getQuote())
+				return;
 
-			BigDecimal price = (new BigDecimal(value)).setScale(SCALE, BigDecimal.ROUND_HALF_EVEN);
-			synchronized (price) {
-				// _log.warn("tickPrice Field: " + field + " value :" + value
-				// + " time: " + System.currentTimeMillis());
-				if (!m_marketDataRequests.containsKey(new Integer(reqId)))
-					return;
-				Contract contract = m_marketDataRequests.get(reqId);
-
-				/*
-				 * Make sure the lastPrice is between the current Bid/Ask as
-				 * prints can come in late in T/S i.e. bad ticks that are
-				 * outside the current Bid/Ask.
-				 */
-
-				for (Tradestrategy tradestrategy : contract.getTradestrategies()) {
-					Contract seriesContract = tradestrategy.getStrategyData().getBaseCandleSeries().getContract();
-
-					switch (field) {
-					case TickType.ASK: {
-						seriesContract.setLastAskPrice(price);
-						break;
-					}
-					case TickType.BID: {
-						seriesContract.setLastBidPrice(price);
-						break;
-					}
-					case TickType.LAST: {
-						seriesContract.setLastPrice(price);
-						break;
-					}
-					default: {
-						break;
-					}
-					}
-				}
+			/*
+			 * The prices are held in the contracts quote which is shared with
+			 * the series contracts. Nothing is created for each tick the
+			 * prices are converted to BigDecimal when they are read.
+			 */
+			switch (field) {
+			case TickType.ASK: {
+				contract.getQuote().setAsk(value);
+				break;
 			}
-		} catch (Exception ex) {
-			error(reqId, 3210, ex.getMessage());
-		}
-	}
+			case TickType.BID: {
+				contract.getQuote().setBid(value);
+				break;
+			}
+			case TickType.LAST: {
+				contract.getQuote().setLast(value);
+				break;
+			}
+			default: {
+				break;
+			}
+			}
+		} catch (Exception ex) {
+			error(reqId, 3210, ex.getMessage());
+		}
+	}
+
+	/**
+	 * Method addQuote. Create the quote for the market data contract and share
+	 * it with the contract of each tradestrategy series.
+	 * 
+	 * @param contract
+	 *            Contract
+	 */
+	private void addQuote(Contract contract) {
+		if (null == contract.getQuote())
+			contract.setQuote(new QuoteSnapshot());
+		synchronized (contract.getTradestrategies()) {
+			for (Tradestrategy tradestrategy : contract.getTradestrategies()) {
+				shareQuote(contract, tradestrategy);
+			}
+		}
+	}
+
+	/**
+	 * Method shareQuote. Share the market data contract's quote with the
+	 * contract of the tradestrategy series. Called when the quote is created
+	 * and when a tradestrategy is added to a contract that has market data.
+	 * 
+	 * @param contract
+	 *            Contract
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 */
+	private void shareQuote(Contract contract, Tradestrategy tradestrategy) {
+		QuoteSnapshot quote = contract.getQuote();
+		if (null == quote || null == tradestrategy.getStrategyData())
+			return;
+		Contract seriesContract = tradestrategy.getStrategyData().getBaseCandleSeries().getContract();
+		if (quote != seriesContract.getQuote())
+			seriesContract.setQuote(quote);
+	}
+
+	/**
+	 * Method removeQuote. Remove the quote from the contract and the contract
+	 * of each tradestrategy series. The series contracts keep the last prices.
+	 * 
+	 * @param contract
+	 *            Contract
+	 */
+	private void removeQuote(Contract contract) {
+		if (null == contract || null == contract.getQuote())
+			return;
+		QuoteSnapshot quote = contract.getQuote();
+		for (Tradestrategy tradestrategy : contract.getTradestrategies()) {
+			Contract seriesContract = tradestrategy.getStrategyData().getBaseCandleSeries().getContract();
+			if (quote == seriesContract.getQuote())
+				seriesContract.setQuote(null);
+		}
+		contract.setQuote(null);
+	}
 
 	/**
 	 * Method tickSize.
@@ -1655,146 +2159,129 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 			// _log.info("tickString reqId: " + reqId + " field: " + field
 			// + " value: " + value);
 
-			synchronized (value) {
+			Contract contract = m_marketDataRequests.get(reqId);
+			if (null == contract)
+				return;
 
-				if (!m_marketDataRequests.containsKey(new Integer(reqId)))
+			switch (field) {
+			case TickType.RT_VOLUME: {
+				/*
+				 * If there is no price ignore this value.
+				 */
+				double price = RtVolumeParser.getPrice(value);
+				if (!(price > 0))
 					return;
 
-				switch (field) {
-				case TickType.RT_VOLUME: {
-					/*
-					 * If there is no price ignore this value.
-					 */
-					if (value.startsWith(";"))
+				QuoteSnapshot quote = contract.getQuote();
+				if (null == quote)
+					return;
+				quote.read(m_quoteValues);
+				long timeMillis = RtVolumeParser.getTime(value);
+				ZonedDateTime time = null;
+				boolean lastRecorded = false;
+
+				// _log.warn("TickString ReqId: " + reqId + " Field: "
+				// + field + " String: " + value);
+				for (Tradestrategy tradestrategy : contract.getTradestrategies()) {
+
+					Contract seriesContract = tradestrategy.getStrategyData().getBaseCandleSeries().getContract();
+					int index = tradestrategy.getStrategyData().getBaseCandleSeries().indexOf(timeMillis);
+					if (index < 0)
 						return;
 
-					StringTokenizer st = new StringTokenizer(value, ";");
-					int tokenNumber = 0;
-					BigDecimal price = new BigDecimal(0);
-					ZonedDateTime time = null;
-					while (st.hasMoreTokens()) {
-						tokenNumber++;
-						String token = st.nextToken();
-						switch (tokenNumber) {
-						case 1: {
-							price = (new BigDecimal(Double.parseDouble(token))).setScale(SCALE,
-									BigDecimal.ROUND_HALF_EVEN);
-							break;
-						}
-						case 2: {
-							_log.debug("TickString Trade Size: " + Integer.parseInt(token));
-							break;
-						}
-						case 3: {
-							time = TradingCalendar.getZonedDateTimeFromMilli(Long.parseLong(token));
-							break;
-						}
-						case 4: {
-							_log.debug("TickString Total Volume: " + Integer.parseInt(token) * 100);
-							break;
-						}
-						case 5: {
-							_log.debug("TickString Total Vwap: " + token);
-							break;
-						}
-						case 6: {
-							break;
-						}
-						default: {
-							break;
-						}
+					/*
+					 * Until the bid/ask ticks arrive use the last bid/ask set
+					 * on the series contract by the bars.
+					 */
+					double bid = m_quoteValues[QuoteSnapshot.BID] > 0 ? m_quoteValues[QuoteSnapshot.BID]
+							: seriesContract.getLastBidPrice().doubleValue();
+					double ask = m_quoteValues[QuoteSnapshot.ASK] > 0 ? m_quoteValues[QuoteSnapshot.ASK]
+							: seriesContract.getLastAskPrice().doubleValue();
+
+					CandleItem candleItem = (CandleItem) tradestrategy.getStrategyData().getBaseCandleSeries()
+							.getDataItem(index);
+					if (ask > 0 && bid > 0 && (price <= ask && price >= bid)) {
+
+						/*
+						 * The print is inside the Bid/Ask so it is the last
+						 * trade.
+						 */
+						if (!lastRecorded) {
+							quote.setLast(price);
+							lastRecorded = true;
 						}
-					}
 
-					if (price.doubleValue() > 0) {
-
-						Contract contract = m_marketDataRequests.get(reqId);
-						// _log.warn("TickString ReqId: " + reqId + " Field: "
-						// + field + " String: " + value);
-						for (Tradestrategy tradestrategy : contract.getTradestrategies()) {
-
-							Contract seriesContract = tradestrategy.getStrategyData().getBaseCandleSeries()
-									.getContract();
-							int index = tradestrategy.getStrategyData().getBaseCandleSeries().indexOf(time);
-							if (index < 0)
-								return;
-
-							CandleItem candleItem = (CandleItem) tradestrategy.getStrategyData().getBaseCandleSeries()
-									.getDataItem(index);
-							if (seriesContract.getLastAskPrice().doubleValue() > 0
-									&& seriesContract.getLastBidPrice().doubleValue() > 0
-									&& (price.doubleValue() <= seriesContract.getLastAskPrice().doubleValue()
-											&& price.doubleValue() >= seriesContract.getLastBidPrice().doubleValue())) {
-
-								if (marketUpdateOnClose && (price.doubleValue() != candleItem.getClose())) {
-
-									candleItem.setClose(price.doubleValue());
-									candleItem.setLastUpdateDate(time);
-									/*
-									 * Note if you want you can fire the series
-									 * change here this will fire runStrategy.
-									 * Could cause problems if the method is not
-									 * synchronized in the strategy when the
-									 * stock is fast running.
-									 */
-									tradestrategy.getStrategyData().getBaseCandleSeries().fireSeriesChanged();
-									/*
-									 * This can be used to update the charts.
-									 * NOTE not recommended for performance
-									 * reasons chart events are slow to update..
-									 */
-									// tradestrategy.getStrategyData()
-									// .getCandleDataset().getSeries(0)
-									// .fireSeriesChanged();
-									// _log.info("TickString Symbol: "
-									// + seriesContract.getSymbol()
-									// + " Trade Time: " + time
-									// + " Price: " + price + " Bid: "
-									// + seriesContract.getLastBidPrice()
-									// + " Ask: "
-									// + seriesContract.getLastAskPrice());
-								} else {
-									if (price.doubleValue() > candleItem.getHigh()
-											|| price.doubleValue() < candleItem.getLow()) {
-										candleItem.setClose(price.doubleValue());
-										candleItem.setLastUpdateDate(time);
-										/*
-										 * Note if you want you can fire the
-										 * series change here this will fire
-										 * runStrategy. Could cause problems if
-										 * the method is not synchronized in the
-										 * strategy when the stock is fast
-										 * running.
-										 */
-										tradestrategy.getStrategyData().getBaseCandleSeries().fireSeriesChanged();
-										/*
-										 * This can be used to update the
-										 * charts. NOTE not recommended for
-										 * performance reasons chart events are
-										 * slow to update..
-										 */
-										// tradestrategy.getStrategyData()
-										// .getCandleDataset().getSeries(0)
-										// .fireSeriesChanged();
-										//
-										// _log.info("TickString Symbol: "
-										// + seriesContract.getSymbol()
-										// + " Trade Time: " + time
-										// + " Price: " + price + " Bid: "
-										// + seriesContract.getLastBidPrice()
-										// + " Ask: "
-										// + seriesContract.getLastAskPrice());
-									}
-								}
+						if (marketUpdateOnClose && (price != candleItem.getClose())) {
+
+							if (null == time)
+								time = TradingCalendar.getZonedDateTimeFromMilli(timeMillis);
+							candleItem.setClose(price);
+							candleItem.setLastUpdateDate(time);
+							/*
+							 * Note if you want you can fire the series
+							 * change here this will fire runStrategy.
+							 * Could cause problems if the method is not
+							 * synchronized in the strategy when the
+							 * stock is fast running.
+							 */
+							tradestrategy.getStrategyData().getBaseCandleSeries().fireSeriesChanged();
+							/*
+							 * This can be used to update the charts.
+							 * NOTE not recommended for performance
+							 * reasons chart events are slow to update..
+							 */
+							// tradestrategy.getStrategyData()
+							// .getCandleDataset().getSeries(0)
+							// .fireSeriesChanged();
+							// _log.info("TickString Symbol: "
+							// + seriesContract.getSymbol()
+							// + " Trade Time: " + time
+							// + " Price: " + price + " Bid: "
+							// + seriesContract.getLastBidPrice()
+							// + " Ask: "
+							// + seriesContract.getLastAskPrice());
+						} else {
+							if (price > candleItem.getHigh()
+									|| price < candleItem.getLow()) {
+								if (null == time)
+									time = TradingCalendar.getZonedDateTimeFromMilli(timeMillis);
+								candleItem.setClose(price);
+								candleItem.setLastUpdateDate(time);
+								/*
+								 * Note if you want you can fire the
+								 * series change here this will fire
+								 * runStrategy. Could cause problems if
+								 * the method is not synchronized in the
+								 * strategy when the stock is fast
+								 * running.
+								 */
+								tradestrategy.getStrategyData().getBaseCandleSeries().fireSeriesChanged();
+								/*
+								 * This can be used to update the
+								 * charts. NOTE not recommended for
+								 * performance reasons chart events are
+								 * slow to update..
+								 */
+								// tradestrategy.getStrategyData()
+								// .getCandleDataset().getSeries(0)
+								// .fireSeriesChanged();
+								//
+								// _log.info("TickString Symbol: "
+								// + seriesContract.getSymbol()
+								// + " Trade Time: " + time
+								// + " Price: " + price + " Bid: "
+								// + seriesContract.getLastBidPrice()
+								// + " Ask: "
+								// + seriesContract.getLastAskPrice());
 							}
 						}
 					}
-					break;
-				}
-				default: {
-					break;
-				}
 				}
+				break;
+			}
+			default: {
+				break;
+			}
 			}
 		} catch (Exception ex) {
 			error(reqId, 3210, ex.getMessage());
@@ -2037,6 +2524,7 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 			} else {
 				orderKey = new AtomicInteger(maxKey + 1);
 			}
+			loadOrderCache();
 			this.fireConnectionOpened();
 
 		} catch (Exception ex) {
@@ -2304,45 +2792,14 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 
 				if (dateString.contains("finished-")) {
 
-					CandleSeries candleSeries = tradestrategy.getStrategyData().getBaseCandleSeries();
-
-					_log.debug("HistoricalData complete Req Id: " + reqId + " Symbol: "
-							+ tradestrategy.getContract().getSymbol() + " Tradingday: "
-							+ tradestrategy.getTradingday().getOpen() + " candles to saved: "
-							+ candleSeries.getItemCount() + " Contract Tradestrategies size:: "
-							+ tradestrategy.getContract().getTradestrategies().size());
-
-					m_tradePersistentModel.persistCandleSeries(candleSeries);
-
-					/*
-					 * The last one has arrived the reqId is the
-					 * tradeStrategyId. Remove this from the processing vector.
-					 */
-
-					synchronized (m_historyDataRequests) {
-						m_historyDataRequests.remove(reqId);
-						m_historyDataRequests.notify();
-					}
-
-					/*
-					 * Check to see if the trading day is today and this
-					 * strategy is selected to trade and that the market is open
-					 */
-					synchronized (tradestrategy.getContract().getTradestrategies()) {
-
-						this.fireHistoricalDataComplete(tradestrategy);
-						if (tradestrategy.getTradingday().getClose()
-								.isAfter(TradingCalendar.getDateTimeNowMarketTimeZone())) {
-							if (!this.isRealtimeBarsRunning(tradestrategy.getContract())) {
-								tradestrategy.getContract().addTradestrategy(tradestrategy);
-								this.onReqRealTimeBars(tradestrategy.getContract(),
-										tradestrategy.getStrategy().getMarketData());
-							} else {
-								Contract contract = m_realTimeBarsRequests.get(tradestrategy.getContract().getId());
-								contract.addTradestrategy(tradestrategy);
-							}
-						}
+					BackfillPlan plan = m_backfillPlans.remove(reqId);
+					ZonedDateTime persistStartDate = null;
+					if (null != plan) {
+						m_backfillPlanner.setComplete(tradestrategy, plan);
+						if (plan.isPartial())
+							persistStartDate = plan.getStartDate();
 					}
+					historicalDataComplete(reqId, tradestrategy, true, persistStartDate);
 
 				} else {
 
@@ -2385,6 +2842,207 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 		}
 	}
 
+	/**
+	 * Method historicalDataComplete. Called when all the candles for the
+	 * request have arrived or have been read from the database.
+	 * 
+	 * @param reqId
+	 *            int
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @param persist
+	 *            boolean true if the candles came from the broker and need to
+	 *            be saved.
+	 * @param persistStartDate
+	 *            ZonedDateTime the start of the candles that came from the
+	 *            broker when the candles before it were read from the
+	 *            database, null to save all the candles.
+	 * @throws PersistentModelException
+	 * @throws BrokerModelException
+	 */
+	private void historicalDataComplete(int reqId, Tradestrategy tradestrategy, boolean persist,
+			ZonedDateTime persistStartDate) throws PersistentModelException, BrokerModelException {
+
+		CandleSeries candleSeries = tradestrategy.getStrategyData().getBaseCandleSeries();
+
+		_log.debug("HistoricalData complete Req Id: " + reqId + " Symbol: "
+				+ tradestrategy.getContract().getSymbol() + " Tradingday: "
+				+ tradestrategy.getTradingday().getOpen() + " candles to saved: "
+				+ candleSeries.getItemCount() + " Contract Tradestrategies size:: "
+				+ tradestrategy.getContract().getTradestrategies().size());
+
+		if (persist) {
+			if (null == persistStartDate) {
+				m_tradePersistentModel.persistCandleSeries(candleSeries);
+			} else {
+				m_tradePersistentModel.persistCandleSeries(getCandleSeries(candleSeries, persistStartDate));
+			}
+		}
+
+		/*
+		 * Build the candles for the rollup tradestrategies from this
+		 * tradestrategy's candles.
+		 */
+		List<Tradestrategy> rollupTradestrategies = m_rollupRequests.remove(reqId);
+		if (null != rollupTradestrategies) {
+			for (Tradestrategy rollupTradestrategy : rollupTradestrategies) {
+				if (m_historyDataRequests.containsKey(rollupTradestrategy.getId())) {
+					rollupCandles(tradestrategy, rollupTradestrategy);
+					historicalDataComplete(rollupTradestrategy.getId(), rollupTradestrategy, true, null);
+				}
+			}
+		}
+
+		/*
+		 * The last one has arrived the reqId is the tradeStrategyId. Remove
+		 * this from the processing vector.
+		 */
+
+		synchronized (m_historyDataRequests) {
+			m_historyDataRequests.remove(reqId);
+			m_historyDataRequests.notify();
+		}
+
+		/*
+		 * Check to see if the trading day is today and this strategy is
+		 * selected to trade and that the market is open
+		 */
+		synchronized (tradestrategy.getContract().getTradestrategies()) {
+
+			this.fireHistoricalDataComplete(tradestrategy);
+			if (tradestrategy.getTradingday().getClose().isAfter(TradingCalendar.getDateTimeNowMarketTimeZone())) {
+				if (!this.isRealtimeBarsRunning(tradestrategy.getContract())) {
+					tradestrategy.getContract().addTradestrategy(tradestrategy);
+					this.onReqRealTimeBars(tradestrategy.getContract(), tradestrategy.getStrategy().getMarketData());
+				} else {
+					Contract contract = m_realTimeBarsRequests.get(tradestrategy.getContract().getId());
+					contract.addTradestrategy(tradestrategy);
+					shareQuote(contract, tradestrategy);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method getCandleSeries.
+	 * 
+	 * @param candleSeries
+	 *            CandleSeries
+	 * @param startDate
+	 *            ZonedDateTime
+	 * @return CandleSeries the candles that start on or after the start date.
+	 */
+	static CandleSeries getCandleSeries(CandleSeries candleSeries, ZonedDateTime startDate) {
+		CandleSeries series = new CandleSeries(candleSeries, candleSeries.getBarSize(), startDate,
+				candleSeries.getEndTime());
+		for (int i = 0; i < candleSeries.getItemCount(); i++) {
+			CandleItem candleItem = (CandleItem) candleSeries.getDataItem(i);
+			if (!candleItem.getPeriod().getStart().isBefore(startDate))
+				series.add(candleItem, false);
+		}
+		return series;
+	}
+
+	/**
+	 * Method rollupCandles. Build the rollup tradestrategy's candles from the
+	 * tradestrategy's candles that are in the rollup tradestrategy's chart
+	 * days. Each rollup candle is built from the candles in its period and
+	 * added whole so the last candle is correct when its period is not
+	 * complete.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @param rollupTradestrategy
+	 *            Tradestrategy
+	 */
+	void rollupCandles(Tradestrategy tradestrategy, Tradestrategy rollupTradestrategy) {
+
+		ZonedDateTime startDate = BackfillPlanner
+				.getStartDay(getBackfillEndDate(rollupTradestrategy.getTradingday().getClose()),
+						rollupTradestrategy.getChartDays())
+				.atStartOfDay(TradingCalendar.MKT_TIMEZONE);
+		CandleSeries candleSeries = tradestrategy.getStrategyData().getBaseCandleSeries();
+		CandleSeries rollupSeries = rollupTradestrategy.getStrategyData().getBaseCandleSeries();
+
+		ZonedDateTime periodStart = null;
+		double open = 0;
+		double high = 0;
+		double low = 0;
+		double close = 0;
+		double vwapVolume = 0;
+		long volume = 0;
+		int tradeCount = 0;
+		for (int i = 0; i < candleSeries.getItemCount(); i++) {
+			CandleItem candleItem = (CandleItem) candleSeries.getDataItem(i);
+			if (candleItem.getPeriod().getStart().isBefore(startDate))
+				continue;
+			ZonedDateTime start = rollupSeries
+					.getPeriodStart(candleItem.getPeriod().getStart(), rollupTradestrategy.getBarSize()).getStart();
+			if (!start.equals(periodStart)) {
+				if (null != periodStart) {
+					rollupTradestrategy.getStrategyData().buildCandle(periodStart, open, high, low, close, volume,
+							(volume > 0 ? vwapVolume / volume : close), tradeCount, 1, null);
+				}
+				periodStart = start;
+				open = candleItem.getOpen();
+				high = candleItem.getHigh();
+				low = candleItem.getLow();
+				vwapVolume = 0;
+				volume = 0;
+				tradeCount = 0;
+			}
+			high = Math.max(high, candleItem.getHigh());
+			low = Math.min(low, candleItem.getLow());
+			close = candleItem.getClose();
+			vwapVolume = vwapVolume + (candleItem.getVwap() * candleItem.getVolume());
+			volume = volume + candleItem.getVolume();
+			tradeCount = tradeCount + candleItem.getCount();
+		}
+		if (null != periodStart) {
+			rollupTradestrategy.getStrategyData().buildCandle(periodStart, open, high, low, close, volume,
+					(volume > 0 ? vwapVolume / volume : close), tradeCount, 1, null);
+		}
+	}
+
+	/**
+	 * Method isRollupRequest.
+	 * 
+	 * @param id
+	 *            Integer
+	 * @return boolean true if the tradestrategy's candles are built from
+	 *         another request.
+	 */
+	boolean isRollupRequest(Integer id) {
+		for (List<Tradestrategy> rollupTradestrategies : m_rollupRequests.values()) {
+			for (Tradestrategy rollupTradestrategy : rollupTradestrategies) {
+				if (id.equals(rollupTradestrategy.getId()))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Method removeHistoricalDataRequest. Remove the request and the rollup
+	 * tradestrategies waiting on it from the processing vector.
+	 * 
+	 * @param reqId
+	 *            Integer
+	 */
+	private void removeHistoricalDataRequest(Integer reqId) {
+		m_backfillPlans.remove(reqId);
+		List<Tradestrategy> rollupTradestrategies = m_rollupRequests.remove(reqId);
+		synchronized (m_historyDataRequests) {
+			m_historyDataRequests.remove(reqId);
+			if (null != rollupTradestrategies) {
+				for (Tradestrategy rollupTradestrategy : rollupTradestrategies) {
+					m_historyDataRequests.remove(rollupTradestrategy.getId());
+				}
+			}
+			m_historyDataRequests.notify();
+		}
+	}
+
 	/**
 	 * Method scannerParameters.
 	 * 
@@ -2466,38 +3124,46 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 			ZonedDateTime date = TradingCalendar.getZonedDateTimeFromMilli(time * 1000);
 
 			// Only store data that is during mkt hours
-			if (m_realTimeBarsRequests.containsKey(reqId)) {
-				Contract contract = m_realTimeBarsRequests.get(reqId);
-
-				synchronized (contract) {
-					Collections.sort(contract.getTradestrategies(), Tradestrategy.TRADINGDAY_CONTRACT);
-					boolean updateCandleDB = true;
-					for (Tradestrategy tradestrategy : contract.getTradestrategies()) {
-						StrategyData strategyData = tradestrategy.getStrategyData();
-
-						if (TradingCalendar.isMarketHours(tradestrategy.getTradingday().getOpen(),
-								tradestrategy.getTradingday().getClose(), date)) {
-
-							if (!this.isMarketDataRunning(contract)) {
-								BigDecimal price = (new BigDecimal(close)).setScale(SCALE, BigDecimal.ROUND_HALF_EVEN);
-								strategyData.getBaseCandleSeries().getContract().setLastAskPrice(price);
-								strategyData.getBaseCandleSeries().getContract().setLastBidPrice(price);
-								strategyData.getBaseCandleSeries().getContract().setLastPrice(price);
-							}
-							ZonedDateTime lastUpdateDate = date.plusNanos(4999);
-
-							strategyData.buildCandle(date, open, high, low, close, volume, vwap, tradeCount,
-									(tradestrategy.getBarSize() / 5), lastUpdateDate);
-
-							if (!strategyData.getBaseCandleSeries().isEmpty()) {
-								CandleItem candleItem = (CandleItem) strategyData.getBaseCandleSeries()
-										.getDataItem(strategyData.getBaseCandleSeries().getItemCount() - 1);
-								if (updateCandleDB) {
-									m_tradePersistentModel.persistCandle(candleItem.getCandle());
-									updateCandleDB = false;
-								}
-							}
-						}
+			Contract contract = m_realTimeBarsRequests.get(reqId);
+			if (null == contract)
+				return;
+
+			synchronized (contract) {
+				/*
+				 * The tasks are only made again when a tradestrategy is added
+				 * to or removed from the contract. Each bar sets its values on
+				 * the tasks and marks those in market hours.
+				 */
+				List<RealtimeBarTask> tasks = getRealtimeBarTasks(reqId, contract);
+				int marketHoursCount = 0;
+				for (RealtimeBarTask task : tasks) {
+					if (task.setBar(date, open, high, low, close, volume, vwap, tradeCount))
+						marketHoursCount++;
+				}
+
+				if (realtimeBarThreads > 0 && marketHoursCount > 1) {
+					/*
+					 * Each tradestrategy has its own StrategyData so they can
+					 * be built at the same time. This waits until all are built
+					 * so the bars for this contract stay in order.
+					 */
+					for (Future<Void> future : getRealtimeBarExecutor().invokeAll(tasks)) {
+						future.get();
+					}
+				} else if (marketHoursCount > 0) {
+					for (RealtimeBarTask task : tasks) {
+						task.call();
+					}
+				}
+
+				for (RealtimeBarTask task : tasks) {
+					if (!task.marketHours)
+						continue;
+					CandleSeries candleSeries = task.tradestrategy.getStrategyData().getBaseCandleSeries();
+					if (!candleSeries.isEmpty()) {
+						CandleItem candleItem = (CandleItem) candleSeries.getDataItem(candleSeries.getItemCount() - 1);
+						m_candleWriter.persistCandle(candleItem.getCandle());
+						break;
 					}
 				}
 			}
@@ -2506,6 +3172,262 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 		}
 	}
 
+	/**
+	 * Method buildRealtimeCandle. Add the real time bar to the tradestrategies
+	 * base candle series.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @param date
+	 *            ZonedDateTime
+	 * @param open
+	 *            double
+	 * @param high
+	 *            double
+	 * @param low
+	 *            double
+	 * @param close
+	 *            double
+	 * @param volume
+	 *            long
+	 * @param vwap
+	 *            double
+	 * @param tradeCount
+	 *            int
+	 */
+	private void buildRealtimeCandle(Tradestrategy tradestrategy, ZonedDateTime date, double open, double high,
+			double low, double close, long volume, double vwap, int tradeCount) {
+
+		StrategyData strategyData = tradestrategy.getStrategyData();
+		if (!this.isMarketDataRunning(tradestrategy.getContract())) {
+			BigDecimal price = (new BigDecimal(close)).setScale(SCALE, BigDecimal.ROUND_HALF_EVEN);
+			strategyData.getBaseCandleSeries().getContract().setLastAskPrice(price);
+			strategyData.getBaseCandleSeries().getContract().setLastBidPrice(price);
+			strategyData.getBaseCandleSeries().getContract().setLastPrice(price);
+		}
+		ZonedDateTime lastUpdateDate = date.plusNanos(4999);
+
+		strategyData.buildCandle(date, open, high, low, close, volume, vwap, tradeCount,
+				(tradestrategy.getBarSize() / 5), lastUpdateDate);
+	}
+
+	/**
+	 * Method loadOrderCache. Load the active orders and those updated today
+	 * into the order cache. This is done on the order thread so it completes
+	 * before the order callbacks that follow the connection are processed.
+	 */
+	private void loadOrderCache() {
+		if (!m_orderCache.isEnabled())
+			return;
+		executeOrderTask(new Runnable() {
+			public void run() {
+				try {
+					ZonedDateTime lastUpdateDate = TradingCalendar.getDateTimeNowMarketTimeZone()
+							.truncatedTo(ChronoUnit.DAYS);
+					m_orderCache.load(m_tradePersistentModel.findActiveTradeOrders(lastUpdateDate));
+					_log.info("Order cache loaded with: " + m_orderCache.size() + " orders.");
+				} catch (Exception ex) {
+					m_orderCache.clear();
+					error(1, 3300, "Error loading the order cache: " + ex.getMessage());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Method executeOrderTask. When the order cache is enabled the order
+	 * callbacks are processed in the order they arrive on one order thread,
+	 * so the thread that reads the broker messages does not wait on the
+	 * database. Otherwise the task is run now.
+	 * 
+	 * @param task
+	 *            Runnable
+	 */
+	private void executeOrderTask(Runnable task) {
+		if (!m_orderCache.isEnabled()) {
+			task.run();
+			return;
+		}
+		synchronized (m_orderCache) {
+			if (null == m_orderExecutor) {
+				m_orderExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "TradeOrder");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+			m_orderExecutor.execute(task);
+		}
+	}
+
+	/**
+	 * Method stopOrderExecutor. Wait for the order callbacks that are queued
+	 * to be processed and stop the order thread. A new order thread is
+	 * started for the next callback.
+	 */
+	private void stopOrderExecutor() {
+		ExecutorService orderExecutor = null;
+		synchronized (m_orderCache) {
+			orderExecutor = m_orderExecutor;
+			m_orderExecutor = null;
+		}
+		if (null == orderExecutor)
+			return;
+		orderExecutor.shutdown();
+		try {
+			if (!orderExecutor.awaitTermination(ORDER_SHUTDOWN_SECONDS, TimeUnit.SECONDS))
+				_log.error("TWS Broker Model order callbacks not processed after: " + ORDER_SHUTDOWN_SECONDS
+						+ " seconds.");
+		} catch (InterruptedException ex) {
+			_log.error("TWS Broker Model interrupted processing order callbacks Msg: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Method getRealtimeBarExecutor.
+	 * 
+	 * @return ExecutorService the pool used to build the real time bars.
+	 */
+	private static synchronized ExecutorService getRealtimeBarExecutor() {
+		if (null == realtimeBarExecutor) {
+			realtimeBarExecutor = Executors.newFixedThreadPool(realtimeBarThreads, new ThreadFactory() {
+				private final AtomicInteger threadCount = new AtomicInteger(0);
+
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "RealtimeBar" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return realtimeBarExecutor;
+	}
+
+	/**
+	 * Method getRealtimeBarTasks. Must be called holding the contract lock.
+	 * 
+	 * @param reqId
+	 *            int
+	 * @param contract
+	 *            Contract
+	 * @return List<RealtimeBarTask> one task for each of the contract's
+	 *         sorted tradestrategies.
+	 */
+	private List<RealtimeBarTask> getRealtimeBarTasks(int reqId, Contract contract) {
+		List<Tradestrategy> tradestrategies = contract.getSortedTradestrategies();
+		RealtimeBarTasks realtimeBarTasks = m_realtimeBarTasks.get(reqId);
+		if (null == realtimeBarTasks || realtimeBarTasks.tradestrategies != tradestrategies) {
+			realtimeBarTasks = new RealtimeBarTasks(tradestrategies);
+			m_realtimeBarTasks.put(reqId, realtimeBarTasks);
+		}
+		return realtimeBarTasks.tasks;
+	}
+
+	/**
+	 * Method getCandleWriter.
+	 * 
+	 * @return CandleWriter
+	 */
+	CandleWriter getCandleWriter() {
+		return m_candleWriter;
+	}
+
+	/**
+	 * Method addRealtimeBarsRequest. Add the contract to the real time bar
+	 * requests without asking the broker.
+	 * 
+	 * @param contract
+	 *            Contract
+	 */
+	void addRealtimeBarsRequest(Contract contract) {
+		m_realTimeBarsRequests.put(contract.getId(), contract);
+	}
+
+	/**
+	 * The real time bar tasks for a contract's sorted tradestrategies.
+	 */
+	private class RealtimeBarTasks {
+
+		private final List<Tradestrategy> tradestrategies;
+		private final List<RealtimeBarTask> tasks;
+
+		RealtimeBarTasks(List<Tradestrategy> tradestrategies) {
+			this.tradestrategies = tradestrategies;
+			this.tasks = new ArrayList<RealtimeBarTask>(tradestrategies.size());
+			for (Tradestrategy tradestrategy : tradestrategies) {
+				this.tasks.add(new RealtimeBarTask(tradestrategy));
+			}
+		}
+	}
+
+	/**
+	 * Builds each real time bar for one tradestrategy on the real time bar
+	 * pool. The bar is set on the task while holding the contract lock.
+	 */
+	private class RealtimeBarTask implements Callable<Void> {
+
+		private final Tradestrategy tradestrategy;
+		private boolean marketHours = false;
+		private ZonedDateTime date = null;
+		private double open = 0;
+		private double high = 0;
+		private double low = 0;
+		private double close = 0;
+		private long volume = 0;
+		private double vwap = 0;
+		private int tradeCount = 0;
+
+		RealtimeBarTask(Tradestrategy tradestrategy) {
+			this.tradestrategy = tradestrategy;
+		}
+
+		/**
+		 * Method setBar.
+		 * 
+		 * @param date
+		 *            ZonedDateTime
+		 * @param open
+		 *            double
+		 * @param high
+		 *            double
+		 * @param low
+		 *            double
+		 * @param close
+		 *            double
+		 * @param volume
+		 *            long
+		 * @param vwap
+		 *            double
+		 * @param tradeCount
+		 *            int
+		 * @return boolean true if the bar is in the tradestrategy's market
+		 *         hours.
+		 */
+		boolean setBar(ZonedDateTime date, double open, double high, double low, double close, long volume,
+				double vwap, int tradeCount) {
+			this.marketHours = TradingCalendar.isMarketHours(this.tradestrategy.getTradingday().getOpen(),
+					this.tradestrategy.getTradingday().getClose(), date);
+			this.date = date;
+			this.open = open;
+			this.high = high;
+			this.low = low;
+			this.close = close;
+			this.volume = volume;
+			this.vwap = vwap;
+			this.tradeCount = tradeCount;
+			return this.marketHours;
+		}
+
+		public Void call() {
+			if (this.marketHours)
+				buildRealtimeCandle(this.tradestrategy, this.date, this.open, this.high, this.low, this.close,
+						this.volume, this.vwap, this.tradeCount);
+			return null;
+		}
+	}
+
 	/**
 	 * Method currentTime.
 	 * 
@@ -2561,32 +3483,79 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	 * @param commsReport
 	 *            com.ib.client.CommissionReport
 	 */
-	public void commissionReport(CommissionReport commsReport) {
+	public void commissionReport(final CommissionReport commsReport) {
+		executeOrderTask(new Runnable() {
+			public void run() {
+				processCommissionReport(commsReport, true);
+			}
+		});
+	}
+
+	/**
+	 * Method processCommissionReport. Runs on the order thread see
+	 * commissionReport().
+	 * 
+	 * @param commsReport
+	 *            com.ib.client.CommissionReport
+	 * @param retry
+	 *            boolean true to read the order again and retry once if it
+	 *            was saved outside the OrderCache.
+	 */
+	private void processCommissionReport(CommissionReport commsReport, boolean retry) {
 
+		Integer orderKey = null;
 		try {
 			TWSBrokerModel.logCommissionReport(commsReport);
 
-			TradeOrderfill transientInstance = m_tradePersistentModel.findTradeOrderfillByExecId(commsReport.m_execId);
-			if (null != transientInstance) {
-				TradeOrder tradeOrder = m_tradePersistentModel
-						.findTradeOrderByKey(transientInstance.getTradeOrder().getOrderKey());
+			orderKey = m_orderCache.getOrderKeyByExecId(commsReport.m_execId);
+			if (null == orderKey) {
+				TradeOrderfill transientInstance = m_tradePersistentModel
+						.findTradeOrderfillByExecId(commsReport.m_execId);
+				if (null != transientInstance) {
+					orderKey = transientInstance.getTradeOrder().getOrderKey();
+				}
+			}
+			TradeOrder tradeOrder = null;
+			if (null != orderKey) {
+				tradeOrder = m_orderCache.getTradeOrder(orderKey);
+			}
+			if (null != tradeOrder) {
 				for (TradeOrderfill tradeOrderfill : tradeOrder.getTradeOrderfills()) {
 					if (tradeOrderfill.getExecId().equals(commsReport.m_execId)) {
 						tradeOrderfill.setCommission(new BigDecimal(commsReport.m_commission));
-						m_tradePersistentModel.persistTradeOrderfill(tradeOrderfill.getTradeOrder());
+						tradeOrder = m_tradePersistentModel.persistTradeOrderfill(tradeOrderfill.getTradeOrder());
+						m_orderCache.put(tradeOrder);
 						return;
 					}
 				}
 
 			} else {
-				commissionDetails.put(commsReport.m_execId, commsReport);
+				executionDetails.addCommissionReport(commsReport);
 			}
 
 		} catch (Exception ex) {
+			m_orderCache.remove(orderKey);
+			if (retry && isVersionConflict(ex)) {
+				processCommissionReport(commsReport, false);
+				return;
+			}
 			error(1, 3280, "Errors saving execution: " + ex.getMessage());
 		}
 	}
 
+	/**
+	 * Method isVersionConflict. An order saved outside the OrderCache i.e.
+	 * from the UI leaves the cached order with an old version, the order
+	 * must be read again before it can be saved.
+	 * 
+	 * @param ex
+	 *            Exception
+	 * @return boolean
+	 */
+	private static boolean isVersionConflict(Exception ex) {
+		return ex instanceof PersistentModelException && ((PersistentModelException) ex).isVersionConflict();
+	}
+
 	/**
 	 * Method accountSummary.
 	 * 
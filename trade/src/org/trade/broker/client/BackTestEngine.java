@@ -0,0 +1,135 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker.client;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.trade.core.properties.ConfigProperties;
+
+/**
+ * The back test engine runs each back test broker on a bounded pool of
+ * threads. When the event loop is on the back test broker replays the candles
+ * for its tradestrategy and calls the strategies directly for each candle
+ * rather than waiting on the strategy worker threads. As each tradestrategy is
+ * replayed on one thread the results do not depend on thread scheduling.
+ */
+public class BackTestEngine {
+
+	private static volatile boolean _eventLoop = false;
+	private static int _threads = 0;
+	private static ExecutorService _executor = null;
+
+	static {
+		try {
+			_eventLoop = ConfigProperties.getPropAsBoolean("trade.backtest.eventLoop");
+			_threads = ConfigProperties.getPropAsInt("trade.backtest.threads");
+		} catch (IOException ex) {
+			throw new IllegalArgumentException("Error initializing BackTestEngine Msg: " + ex.getMessage());
+		}
+	}
+
+	private BackTestEngine() {
+	}
+
+	/**
+	 * Method isEventLoop.
+	 * 
+	 * @return boolean true if the back test brokers run the strategies.
+	 */
+	public static boolean isEventLoop() {
+		return _eventLoop;
+	}
+
+	/**
+	 * Method setEventLoop. Brokers started after this call use the new
+	 * setting.
+	 * 
+	 * @param eventLoop
+	 *            boolean true if the back test brokers run the strategies.
+	 */
+	public static void setEventLoop(boolean eventLoop) {
+		_eventLoop = eventLoop;
+	}
+
+	/**
+	 * Method getThreads.
+	 * 
+	 * @return int the number of threads used to back test.
+	 */
+	public static int getThreads() {
+		if (_threads < 1) {
+			return Runtime.getRuntime().availableProcessors();
+		}
+		return _threads;
+	}
+
+	/**
+	 * Method execute. Run the back test broker on the engine thread pool. The
+	 * brokers are not run as swing workers as that pool is limited to ten
+	 * threads and a broker holds its thread until the tradestrategy has been
+	 * replayed.
+	 * 
+	 * @param broker
+	 *            Broker
+	 */
+	public static void execute(Broker broker) {
+		getExecutor().execute(broker);
+	}
+
+	/**
+	 * Method getExecutor.
+	 * 
+	 * @return ExecutorService
+	 */
+	private static synchronized ExecutorService getExecutor() {
+		if (null == _executor) {
+			_executor = Executors.newFixedThreadPool(getThreads(), new ThreadFactory() {
+				private final AtomicInteger threadCount = new AtomicInteger(0);
+
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "BackTestEngine" + threadCount.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return _executor;
+	}
+}
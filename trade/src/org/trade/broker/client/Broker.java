@@ -5,6 +5,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import javax.swing.SwingWorker;
 
 import org.trade.persistent.dao.Tradestrategy;
+import org.trade.strategy.AbstractStrategyRule;
 import org.trade.strategy.StrategyChangeListener;
 import org.trade.strategy.StrategyRuleException;
 
@@ -64,6 +65,19 @@ public abstract class Broker extends SwingWorker<Void, Void> implements Strategy
 		}
 	}
 
+	/**
+	 * Method addStrategy. Brokers that run the strategies on their own thread
+	 * accept the strategy here. The default is to let the strategy run in its
+	 * own worker thread.
+	 * 
+	 * @param strategy
+	 *            AbstractStrategyRule
+	 * @return boolean true if this broker will run the strategy.
+	 */
+	public boolean addStrategy(AbstractStrategyRule strategy) {
+		return false;
+	}
+
 	/**
 	 * Method strategyError.
 	 * 
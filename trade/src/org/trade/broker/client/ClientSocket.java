@@ -88,7 +88,7 @@ public class ClientSocket {
 					DBBroker backTestBroker = new DBBroker(tradestrategy.getStrategyData(),
 							tradestrategy.getIdTradeStrategy(), m_client);
 					m_backTestBroker.put(reqId, backTestBroker);
-					backTestBroker.execute();
+					BackTestEngine.execute(backTestBroker);
 				}
 				m_client.historicalData(reqId, "finished- at yyyyMMdd HH:mm:ss", 0, 0, 0, 0, 0, 0, 0, false);
 			}
@@ -43,6 +43,7 @@ import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.trade.broker.BackTestOrderBook;
 import org.trade.core.factory.ClassFactory;
 import org.trade.core.properties.ConfigProperties;
 import org.trade.core.util.CoreUtils;
@@ -51,6 +52,7 @@ import org.trade.dictionary.valuetype.Action;
 import org.trade.dictionary.valuetype.OrderStatus;
 import org.trade.dictionary.valuetype.OrderType;
 import org.trade.dictionary.valuetype.Side;
+import org.trade.persistent.CandleCache;
 import org.trade.persistent.PersistentModel;
 import org.trade.persistent.PersistentModelException;
 import org.trade.persistent.dao.Candle;
@@ -60,6 +62,7 @@ import org.trade.persistent.dao.Strategy;
 import org.trade.persistent.dao.TradeOrder;
 import org.trade.persistent.dao.TradeOrderfill;
 import org.trade.persistent.dao.Tradestrategy;
+import org.trade.strategy.AbstractStrategyRule;
 import org.trade.strategy.data.CandleDataset;
 import org.trade.strategy.data.CandleSeries;
 import org.trade.strategy.data.IndicatorSeries;
@@ -79,14 +82,21 @@ public class DBBroker extends Broker {
 	private ClientWrapper brokerModel = null;
 	private BigDecimal trailAmount = null;
 	private BigDecimal trailLimitOffsetAmount = null;
+	private BackTestOrderBook orderBook = null;
+	private final List<AbstractStrategyRule> pendingStrategies = new ArrayList<AbstractStrategyRule>();
+	private final List<AbstractStrategyRule> activeStrategies = new ArrayList<AbstractStrategyRule>();
+	private boolean replayComplete = false;
+	private final boolean eventLoop = BackTestEngine.isEventLoop();
 
 	private long execId = TradingCalendar.geMillisFromZonedDateTime(TradingCalendar.getDateTimeNowMarketTimeZone());
 
 	private static Integer _backTestBarSize = 0;
+	private static boolean _backTestOrderBook = false;
 
 	static {
 		try {
 			_backTestBarSize = ConfigProperties.getPropAsInt("trade.backtest.barSize");
+			_backTestOrderBook = ConfigProperties.getPropAsBoolean("trade.backtest.orderBook");
 		} catch (IOException ex) {
 			throw new IllegalArgumentException("Error initializing BackTestBroker Msg: " + ex.getMessage());
 		}
@@ -122,6 +132,9 @@ public class DBBroker extends Broker {
 			this.tradestrategy = this.tradePersistentModel.findTradestrategyById(this.idTradestrategy);
 			this.strategyData.clearBaseCandleDataset();
 			this.tradestrategy.setStrategyData(this.strategyData);
+			if (_backTestOrderBook) {
+				this.orderBook = BackTestOrderBook.open(this.tradePersistentModel, this.idTradestrategy);
+			}
 
 			ZonedDateTime endDate = TradingCalendar.getDateAtTime(
 					TradingCalendar.getPrevTradingDay(tradestrategy.getTradingday().getClose()),
@@ -133,7 +146,7 @@ public class DBBroker extends Broker {
 
 			List<Candle> candles = new ArrayList<>();
 			List<Candle> candlesTradingday = new ArrayList<>();
-			candles = this.getCandles(this.tradestrategy, startDate, endDate, this.tradestrategy.getBarSize());
+			candles.addAll(this.getCandles(this.tradestrategy, startDate, endDate, this.tradestrategy.getBarSize()));
 
 			if (_backTestBarSize > 0) {
 
@@ -160,13 +173,17 @@ public class DBBroker extends Broker {
 			}
 
 			/*
-			 * Wait for the strategy to start.
+			 * Wait for the strategy to start. This is the only wait when the
+			 * event loop is on. The strategy is added by the listener for
+			 * historicalDataComplete which the broker model fires after this
+			 * broker is started and addStrategy notifies the lock.
 			 */
 			synchronized (lockBackTestWorker) {
-				while (strategiesRunning.get() < 1) {
+				while (eventLoop ? pendingStrategies.isEmpty() : strategiesRunning.get() < 1) {
 					lockBackTestWorker.wait();
 				}
 			}
+			runStrategies();
 			if (candlesTradingday.isEmpty()) {
 				_log.warn("No data available to run a backtest for Symbol: "
 						+ this.tradestrategy.getContract().getSymbol() + " and Tradingday: "
@@ -175,11 +192,11 @@ public class DBBroker extends Broker {
 				 * Poke the strategy this will kill it as there is no data.
 				 */
 				this.tradestrategy.getStrategyData().getBaseCandleSeries().fireSeriesChanged();
+				runStrategies();
 			} else {
 				for (Candle candle : candlesTradingday) {
 					candles.add(candle);
 				}
-				candlesTradingday.clear();
 				/*
 				 * Populate any child datasets.
 				 */
@@ -214,21 +231,26 @@ public class DBBroker extends Broker {
 						candle.getLastUpdateDate());
 
 				/*
-				 * Wait for the candle to be processed by the strategy.
+				 * Wait for the candle to be processed by the strategy. With
+				 * the event loop the rules are fired on this thread.
 				 */
-				synchronized (lockBackTestWorker) {
-					/*
-					 * Wait for the rule to be completed by the strategy. note
-					 * this worker is listening to the strategy worker.
-					 */
-					while ((strategiesRunning.get() > 0) && (ruleComplete.get() < 1)) {
-						lockBackTestWorker.wait();
+				if (eventLoop) {
+					runStrategies();
+				} else {
+					synchronized (lockBackTestWorker) {
+						/*
+						 * Wait for the rule to be completed by the strategy.
+						 * note this worker is listening to the strategy worker.
+						 */
+						while ((strategiesRunning.get() > 0) && (ruleComplete.get() < 1)) {
+							lockBackTestWorker.wait();
+						}
 					}
 				}
 				if (candle.getStartPeriod().isBefore(this.tradestrategy.getTradingday().getOpen()))
 					continue;
 
-				positionOrders = this.tradePersistentModel.findPositionOrdersByTradestrategyId(this.idTradestrategy);
+				positionOrders = getPositionOrders();
 
 				/*
 				 * The new candle may create an order so this call fills it and
@@ -255,10 +277,15 @@ public class DBBroker extends Broker {
 					 * the trade that we weren't stopped out on the entry
 					 * candle.
 					 */
-					positionOrders = this.tradePersistentModel
-							.findPositionOrdersByTradestrategyId(this.idTradestrategy);
+					positionOrders = getPositionOrders();
 
-					if (this.tradestrategy.getStrategy().hasStrategyManager()) {
+					/*
+					 * With the event loop the position manager was added when
+					 * the order was filled and is started here.
+					 */
+					if (eventLoop) {
+						runStrategies();
+					} else if (this.tradestrategy.getStrategy().hasStrategyManager()) {
 						synchronized (lockBackTestWorker) {
 							while (strategiesRunning.get() < 1 && positionOrders.hasOpenTradePosition()) {
 								lockBackTestWorker.wait();
@@ -276,8 +303,7 @@ public class DBBroker extends Broker {
 								 * Refresh the orders as the other thread may
 								 * have added orders that need to be filled.
 								 */
-								positionOrders = this.tradePersistentModel
-										.findPositionOrdersByTradestrategyId(this.idTradestrategy);
+								positionOrders = getPositionOrders();
 								filledOrders(this.tradestrategy.getContract(), positionOrders, candle);
 							}
 						}
@@ -287,13 +313,17 @@ public class DBBroker extends Broker {
 					 * We now have an open position so we wait for the strategy
 					 * that got us into this position to close.
 					 */
-					synchronized (lockBackTestWorker) {
-						while (strategiesRunning.get() > 1) {
-							lockBackTestWorker.wait();
+					if (eventLoop) {
+						runStrategies();
+					} else {
+						synchronized (lockBackTestWorker) {
+							while (strategiesRunning.get() > 1) {
+								lockBackTestWorker.wait();
+							}
 						}
 					}
 				}
-				if (strategiesRunning.get() == 0 && !positionOrders.hasOpenTradePosition())
+				if (!isStrategyRunning() && !positionOrders.hasOpenTradePosition())
 					break;
 			}
 			candles.clear();
@@ -303,6 +333,24 @@ public class DBBroker extends Broker {
 		} catch (Exception ex) {
 			_log.error("Error BackTestBroker Symbol: " + this.tradestrategy.getContract().getSymbol() + " Msg: "
 					+ ex.getMessage(), ex);
+		} finally {
+			/*
+			 * Any strategies still running on this thread are done as there
+			 * are no more candles.
+			 */
+			completeStrategies();
+			/*
+			 * Write the order book to the database now the tradestrategy is
+			 * complete.
+			 */
+			if (null != this.orderBook) {
+				try {
+					this.orderBook.close();
+				} catch (Exception ex) {
+					_log.error("Error saving BackTestOrderBook idTradestrategy: " + this.idTradestrategy + " Msg: "
+							+ ex.getMessage(), ex);
+				}
+			}
 		}
 		return null;
 	}
@@ -316,6 +364,111 @@ public class DBBroker extends Broker {
 				+ this.tradestrategy.getIdTradeStrategy());
 	}
 
+	/**
+	 * Method addStrategy. When the back test event loop is on the strategy is
+	 * run on this thread for each candle.
+	 * 
+	 * @param strategy
+	 *            AbstractStrategyRule
+	 * @return boolean true if this broker will run the strategy.
+	 * @see org.trade.broker.client.Broker#addStrategy(AbstractStrategyRule)
+	 */
+	public boolean addStrategy(AbstractStrategyRule strategy) {
+		if (!eventLoop)
+			return false;
+
+		synchronized (lockBackTestWorker) {
+			if (replayComplete)
+				return false;
+			pendingStrategies.add(strategy);
+			lockBackTestWorker.notifyAll();
+		}
+		return true;
+	}
+
+	/**
+	 * Method isStrategyRunning. With the event loop the strategies run on this
+	 * thread so the active strategies are used. Otherwise the count of
+	 * strategy workers that have started and not completed.
+	 * 
+	 * @return boolean true if a strategy is still running.
+	 */
+	private boolean isStrategyRunning() {
+		if (eventLoop) {
+			return !activeStrategies.isEmpty();
+		}
+		return strategiesRunning.get() > 0;
+	}
+
+	/**
+	 * Method runStrategies. Start any strategies that have been added and fire
+	 * the rules for the strategies that have a candle waiting. Strategies that
+	 * are cancelled or finished are completed. Starting a strategy or firing
+	 * its rules may add a new strategy i.e. a position manager, so this
+	 * continues until there are none waiting to start.
+	 */
+	private void runStrategies() {
+
+		while (true) {
+			List<AbstractStrategyRule> started = new ArrayList<AbstractStrategyRule>();
+			synchronized (lockBackTestWorker) {
+				started.addAll(pendingStrategies);
+				pendingStrategies.clear();
+			}
+			for (AbstractStrategyRule strategy : started) {
+				if (strategy.startStrategy()) {
+					activeStrategies.add(strategy);
+				} else {
+					strategy.completeStrategy();
+				}
+			}
+			for (AbstractStrategyRule strategy : new ArrayList<AbstractStrategyRule>(activeStrategies)) {
+				if (strategy.isCancelled() || !strategy.runSeriesChanged()) {
+					activeStrategies.remove(strategy);
+					strategy.completeStrategy();
+				}
+			}
+			synchronized (lockBackTestWorker) {
+				if (pendingStrategies.isEmpty())
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Method completeStrategies. Complete any strategies that are running on
+	 * this thread and stop any more from being added. Strategies that were
+	 * added but never started are run in their own thread.
+	 */
+	private void completeStrategies() {
+		List<AbstractStrategyRule> notStarted = new ArrayList<AbstractStrategyRule>();
+		synchronized (lockBackTestWorker) {
+			replayComplete = true;
+			notStarted.addAll(pendingStrategies);
+			pendingStrategies.clear();
+		}
+		for (AbstractStrategyRule strategy : activeStrategies) {
+			strategy.completeStrategy();
+		}
+		activeStrategies.clear();
+		for (AbstractStrategyRule strategy : notStarted) {
+			strategy.execute();
+		}
+	}
+
+	/**
+	 * Method getPositionOrders. Get the orders for this tradestrategy from the
+	 * order book if one is open otherwise from the database.
+	 * 
+	 * @return TradestrategyOrders
+	 * @throws PersistentModelException
+	 */
+	private TradestrategyOrders getPositionOrders() throws PersistentModelException {
+		if (null == this.orderBook)
+			return this.tradePersistentModel.findPositionOrdersByTradestrategyId(this.idTradestrategy);
+		return this.orderBook.getPositionOrders();
+	}
+
 	/**
 	 * Method filledOrders.
 	 * 
@@ -692,9 +845,8 @@ public class DBBroker extends Broker {
 						tradestrategy.getChartDays(), tradestrategy.getBarSize());
 				childTradestrategy.setDirty(false);
 
-				List<Candle> indicatorCandles = this.tradePersistentModel.findCandlesByContractDateRangeBarSize(
-						childTradestrategy.getContract().getIdContract(), startDate, endDate,
-						childTradestrategy.getBarSize());
+				List<Candle> indicatorCandles = findCandles(childTradestrategy.getContract().getIdContract(), startDate,
+						endDate, childTradestrategy.getBarSize());
 				if (indicatorCandles.isEmpty()) {
 					_log.warn("No data available for " + childTradestrategy.getContract().getSymbol()
 							+ " and Tradingday: " + startDate + " to " + endDate + " and barSize: "
@@ -703,7 +855,6 @@ public class DBBroker extends Broker {
 
 					StrategyData strategyData = StrategyData.create(childTradestrategy);
 					CandleDataset.populateSeries(strategyData, indicatorCandles);
-					indicatorCandles.clear();
 
 					CandleSeries childSeries = strategyData.getBaseCandleSeries();
 					childSeries.setDisplaySeries(series.getDisplaySeries());
@@ -746,8 +897,7 @@ public class DBBroker extends Broker {
 				 */
 				if ((Math.floor(
 						tradestrategy.getBarSize() / (double) size) == (tradestrategy.getBarSize() / (double) size))) {
-					candles = tradePersistentModel.findCandlesByContractDateRangeBarSize(
-							tradestrategy.getContract().getIdContract(), startDate, endDate, size);
+					candles = findCandles(tradestrategy.getContract().getIdContract(), startDate, endDate, size);
 					if (!candles.isEmpty()) {
 						break;
 					}
@@ -756,4 +906,25 @@ public class DBBroker extends Broker {
 		}
 		return candles;
 	}
+
+	/**
+	 * Method findCandles. Get the candles from the candle cache which is
+	 * shared by all the back test brokers.
+	 * 
+	 * @param idContract
+	 *            Integer
+	 * @param startDate
+	 *            ZonedDateTime
+	 * @param endDate
+	 *            ZonedDateTime
+	 * @param barSize
+	 *            int
+	 * @return List<Candle>
+	 * @throws PersistentModelException
+	 */
+	private List<Candle> findCandles(Integer idContract, ZonedDateTime startDate, ZonedDateTime endDate, int barSize)
+			throws PersistentModelException {
+		return CandleCache.findCandlesByContractDateRangeBarSize(this.tradePersistentModel, idContract, startDate,
+				endDate, barSize);
+	}
 }
@@ -0,0 +1,591 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.persistent;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.properties.ConfigProperties;
+import org.trade.core.util.TradingCalendar;
+import org.trade.persistent.dao.Candle;
+import org.trade.persistent.dao.Contract;
+import org.trade.persistent.dao.Tradingday;
+
+/**
+ * A process wide cache of the candles read from the database. The candles are
+ * held for each contract, bar size and tradingday as arrays of primitives and
+ * a new Candle is created each time one is read so the cached values cannot be
+ * changed. The least recently used tradingdays are removed when the cache holds
+ * more than trade.candle.cache.size candles.
+ * 
+ * Each invalidate or clear increments the version of the cache. The version
+ * is read before the database and the days read are not added if it has
+ * changed, so a candle saved while the days were being read is not lost.
+ * 
+ * The candles returned reference the contract and tradingday they were read
+ * with. These are shared by every read so must not be changed and the candles
+ * must not be saved or removed.
+ */
+public class CandleCache {
+
+	private final static Logger _log = LoggerFactory.getLogger(CandleCache.class);
+
+	private static int _maxCandles = 0;
+
+	private static final LinkedHashMap<Key, DayCandles> _days = new LinkedHashMap<Key, DayCandles>(1024, 0.75f, true);
+	private static long _candleCount = 0;
+	private static long _version = 0;
+	private static final AtomicLong _hits = new AtomicLong(0);
+	private static final AtomicLong _misses = new AtomicLong(0);
+	private static final AtomicLong _evictions = new AtomicLong(0);
+
+	static {
+		try {
+			_maxCandles = ConfigProperties.getPropAsInt("trade.candle.cache.size");
+		} catch (IOException ex) {
+			throw new IllegalArgumentException("Error initializing CandleCache Msg: " + ex.getMessage());
+		}
+	}
+
+	private CandleCache() {
+	}
+
+	/**
+	 * Method findCandlesByContractDateRangeBarSize. Get the candles for the
+	 * tradingdays that open between the start and end dates. Only the trading
+	 * days that are not in the cache are read from the database and added to
+	 * the cache.
+	 * 
+	 * @param persistentModel
+	 *            PersistentModel
+	 * @param idContract
+	 *            Integer
+	 * @param startOpenDate
+	 *            ZonedDateTime
+	 * @param endOpenDate
+	 *            ZonedDateTime
+	 * @param barSize
+	 *            Integer
+	 * @return List<Candle>
+	 * @throws PersistentModelException
+	 */
+	public static List<Candle> findCandlesByContractDateRangeBarSize(PersistentModel persistentModel,
+			Integer idContract, ZonedDateTime startOpenDate, ZonedDateTime endOpenDate, Integer barSize)
+			throws PersistentModelException {
+
+		if (_maxCandles < 1 || null == idContract || null == startOpenDate || null == endOpenDate || null == barSize
+				|| endOpenDate.isBefore(startOpenDate))
+			return persistentModel.findCandlesByContractDateRangeBarSize(idContract, startOpenDate, endOpenDate,
+					barSize);
+
+		long startOpen = startOpenDate.toInstant().toEpochMilli();
+		long endOpen = endOpenDate.toInstant().toEpochMilli();
+
+		/*
+		 * Only the trading days are held in the cache so weekends and holidays
+		 * are not looked up.
+		 */
+		List<LocalDate> tradingDays = getTradingDays(startOpenDate, endOpenDate);
+		DayCandles[] days = new DayCandles[tradingDays.size()];
+		boolean hit = true;
+		synchronized (_days) {
+			for (int i = 0; i < days.length; i++) {
+				days[i] = _days.get(new Key(idContract, barSize, tradingDays.get(i)));
+				if (null == days[i])
+					hit = false;
+			}
+		}
+
+		List<Candle> candles = new ArrayList<Candle>();
+		if (hit) {
+			_hits.incrementAndGet();
+			for (DayCandles dayCandles : days) {
+				dayCandles.addCandles(candles, startOpen, endOpen);
+			}
+			return candles;
+		}
+
+		/*
+		 * Read each run of consecutive days that are not in the cache and add
+		 * the candles in the order of the days.
+		 */
+		_misses.incrementAndGet();
+		int i = 0;
+		while (i < days.length) {
+			if (null != days[i]) {
+				days[i].addCandles(candles, startOpen, endOpen);
+				i++;
+				continue;
+			}
+			int runEnd = i;
+			while (runEnd + 1 < days.length && null == days[runEnd + 1]) {
+				runEnd++;
+			}
+			loadDays(persistentModel, idContract, barSize, tradingDays.subList(i, runEnd + 1), candles, startOpen,
+					endOpen);
+			i = runEnd + 1;
+		}
+		return candles;
+	}
+
+	/**
+	 * Method loadDays. Read the whole of each day from the database and add
+	 * the days to the cache. Days with no candles are added so they are not
+	 * read again. If any candles are for a day that is not a trading day, or
+	 * the cache was invalidated while reading, the days are not added to the
+	 * cache.
+	 * 
+	 * @param persistentModel
+	 *            PersistentModel
+	 * @param idContract
+	 *            Integer
+	 * @param barSize
+	 *            Integer
+	 * @param tradingDays
+	 *            List<LocalDate> consecutive trading days.
+	 * @param candles
+	 *            List<Candle> the candles that open between the start and end
+	 *            are added to this list.
+	 * @param startOpen
+	 *            long
+	 * @param endOpen
+	 *            long
+	 * @throws PersistentModelException
+	 */
+	private static void loadDays(PersistentModel persistentModel, Integer idContract, Integer barSize,
+			List<LocalDate> tradingDays, List<Candle> candles, long startOpen, long endOpen)
+			throws PersistentModelException {
+
+		long version = getVersion();
+		LocalDate startDay = tradingDays.get(0);
+		LocalDate endDay = tradingDays.get(tradingDays.size() - 1);
+		List<Candle> items = persistentModel.findCandlesByContractDateRangeBarSize(idContract,
+				startDay.atStartOfDay(TradingCalendar.MKT_TIMEZONE),
+				endDay.atTime(LocalTime.MAX).atZone(TradingCalendar.MKT_TIMEZONE), barSize);
+
+		boolean cacheable = true;
+		LinkedHashMap<LocalDate, List<Candle>> itemsByDay = new LinkedHashMap<LocalDate, List<Candle>>();
+		for (Candle item : items) {
+			ZonedDateTime open = item.getTradingday().getOpen();
+			LocalDate day = open.withZoneSameInstant(TradingCalendar.MKT_TIMEZONE).toLocalDate();
+			if (!tradingDays.contains(day))
+				cacheable = false;
+			List<Candle> dayItems = itemsByDay.get(day);
+			if (null == dayItems) {
+				dayItems = new ArrayList<Candle>();
+				itemsByDay.put(day, dayItems);
+			}
+			dayItems.add(item);
+			long openMillis = open.toInstant().toEpochMilli();
+			if (openMillis >= startOpen && openMillis <= endOpen)
+				candles.add(item);
+		}
+
+		if (!cacheable) {
+			_log.debug("CandleCache not caching idContract: " + idContract + " barSize: " + barSize + " from: "
+					+ startDay + " to: " + endDay + " as candles are not on a trading day.");
+			return;
+		}
+
+		synchronized (_days) {
+			if (_version != version) {
+				_log.debug("CandleCache not caching idContract: " + idContract + " barSize: " + barSize + " from: "
+						+ startDay + " to: " + endDay + " as the cache was invalidated while reading.");
+				return;
+			}
+			for (LocalDate day : tradingDays) {
+				List<Candle> dayItems = itemsByDay.get(day);
+				DayCandles dayCandles = (null == dayItems ? DayCandles.EMPTY : new DayCandles(dayItems));
+				DayCandles prevDayCandles = _days.put(new Key(idContract, barSize, day), dayCandles);
+				if (null != prevDayCandles)
+					_candleCount = _candleCount - prevDayCandles.getWeight();
+				_candleCount = _candleCount + dayCandles.getWeight();
+			}
+			evict();
+		}
+	}
+
+	/**
+	 * Method getTradingDays.
+	 * 
+	 * @param startOpenDate
+	 *            ZonedDateTime
+	 * @param endOpenDate
+	 *            ZonedDateTime
+	 * @return List<LocalDate> the trading days in the market time zone from
+	 *         the start to the end.
+	 */
+	private static List<LocalDate> getTradingDays(ZonedDateTime startOpenDate, ZonedDateTime endOpenDate) {
+		LocalDate endDay = endOpenDate.withZoneSameInstant(TradingCalendar.MKT_TIMEZONE).toLocalDate();
+		ZonedDateTime date = TradingCalendar
+				.getTradingDayStart(startOpenDate.withZoneSameInstant(TradingCalendar.MKT_TIMEZONE));
+		if (!TradingCalendar.isTradingDay(date))
+			date = TradingCalendar.getNextTradingDay(date);
+		List<LocalDate> tradingDays = new ArrayList<LocalDate>();
+		while (!date.toLocalDate().isAfter(endDay)) {
+			tradingDays.add(date.toLocalDate());
+			date = TradingCalendar.getNextTradingDay(date);
+		}
+		return tradingDays;
+	}
+
+	/**
+	 * Method invalidate. Remove all the tradingdays for the contract. Called
+	 * when candles for the contract are saved or removed.
+	 * 
+	 * @param idContract
+	 *            Integer
+	 */
+	public static void invalidate(Integer idContract) {
+		if (_maxCandles < 1 || null == idContract)
+			return;
+
+		synchronized (_days) {
+			_version++;
+			for (Iterator<Map.Entry<Key, DayCandles>> iter = _days.entrySet().iterator(); iter.hasNext();) {
+				Map.Entry<Key, DayCandles> entry = iter.next();
+				if (idContract.equals(entry.getKey().idContract)) {
+					_candleCount = _candleCount - entry.getValue().getWeight();
+					iter.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method invalidate. Remove the tradingday for the contract and bar size.
+	 * Called when a candle for the contract is saved.
+	 * 
+	 * @param idContract
+	 *            Integer
+	 * @param barSize
+	 *            Integer
+	 * @param open
+	 *            ZonedDateTime the open of the tradingday.
+	 */
+	public static void invalidate(Integer idContract, Integer barSize, ZonedDateTime open) {
+		if (_maxCandles < 1 || null == idContract || null == barSize || null == open)
+			return;
+
+		LocalDate day = open.withZoneSameInstant(TradingCalendar.MKT_TIMEZONE).toLocalDate();
+		synchronized (_days) {
+			_version++;
+			DayCandles dayCandles = _days.remove(new Key(idContract, barSize, day));
+			if (null != dayCandles)
+				_candleCount = _candleCount - dayCandles.getWeight();
+		}
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public static void clear() {
+		synchronized (_days) {
+			_version++;
+			_days.clear();
+			_candleCount = 0;
+		}
+	}
+
+	/**
+	 * Method getVersion.
+	 * 
+	 * @return long the number of times the cache has been invalidated or
+	 *         cleared.
+	 */
+	public static long getVersion() {
+		synchronized (_days) {
+			return _version;
+		}
+	}
+
+	/**
+	 * Method getHits.
+	 * 
+	 * @return long the number of reads found in the cache.
+	 */
+	public static long getHits() {
+		return _hits.get();
+	}
+
+	/**
+	 * Method getMisses.
+	 * 
+	 * @return long the number of reads from the database.
+	 */
+	public static long getMisses() {
+		return _misses.get();
+	}
+
+	/**
+	 * Method getEvictions.
+	 * 
+	 * @return long the number of tradingdays removed to make room.
+	 */
+	public static long getEvictions() {
+		return _evictions.get();
+	}
+
+	/**
+	 * Method getCandleCount.
+	 * 
+	 * @return long the number of candles held.
+	 */
+	public static long getCandleCount() {
+		synchronized (_days) {
+			return _candleCount;
+		}
+	}
+
+	/**
+	 * Method getStatistics.
+	 * 
+	 * @return String
+	 */
+	public static String getStatistics() {
+		return "CandleCache hits: " + getHits() + " misses: " + getMisses() + " evictions: " + getEvictions()
+				+ " candles: " + getCandleCount() + " max: " + _maxCandles;
+	}
+
+	/**
+	 * Method evict. Remove the least recently used tradingdays until the cache
+	 * is within its size.
+	 */
+	private static void evict() {
+		Iterator<Map.Entry<Key, DayCandles>> iter = _days.entrySet().iterator();
+		while (_candleCount > _maxCandles && iter.hasNext()) {
+			Map.Entry<Key, DayCandles> entry = iter.next();
+			_candleCount = _candleCount - entry.getValue().getWeight();
+			iter.remove();
+			_evictions.incrementAndGet();
+		}
+		if (_log.isDebugEnabled() && _evictions.get() > 0)
+			_log.debug(getStatistics());
+	}
+
+	/**
+	 * The key for a contract, bar size and tradingday.
+	 */
+	private static final class Key {
+
+		private final Integer idContract;
+		private final Integer barSize;
+		private final LocalDate day;
+
+		Key(Integer idContract, Integer barSize, LocalDate day) {
+			this.idContract = idContract;
+			this.barSize = barSize;
+			this.day = day;
+		}
+
+		public int hashCode() {
+			return (31 * ((31 * idContract.hashCode()) + barSize.hashCode())) + day.hashCode();
+		}
+
+		public boolean equals(Object objectToCompare) {
+			if (this == objectToCompare)
+				return true;
+			if (!(objectToCompare instanceof Key))
+				return false;
+			Key key = (Key) objectToCompare;
+			return this.idContract.equals(key.idContract) && this.barSize.equals(key.barSize)
+					&& this.day.equals(key.day);
+		}
+	}
+
+	/**
+	 * The candles for one tradingday held as arrays. Null values are held as
+	 * MIN_VALUE. Prices are held as the unscaled value and scale so the
+	 * candles are returned with the scale they were read with.
+	 */
+	private static final class DayCandles {
+
+		private static final DayCandles EMPTY = new DayCandles(new ArrayList<Candle>(0));
+
+		private final ZoneId zone;
+		private final Contract contract;
+		private final Tradingday tradingday;
+		private final int[] idCandle;
+		private final int[] version;
+		private final int[] barSize;
+		private final long[] tradingdayOpen;
+		private final long[] startPeriod;
+		private final long[] endPeriod;
+		private final long[] lastUpdateDate;
+		private final Prices open;
+		private final Prices high;
+		private final Prices low;
+		private final Prices close;
+		private final Prices vwap;
+		private final long[] volume;
+		private final int[] tradeCount;
+
+		DayCandles(List<Candle> candles) {
+			int size = candles.size();
+			this.zone = size == 0 ? TradingCalendar.MKT_TIMEZONE : candles.get(0).getStartPeriod().getZone();
+			this.contract = size == 0 ? null : candles.get(0).getContract();
+			this.tradingday = size == 0 ? null : candles.get(0).getTradingday();
+			this.idCandle = new int[size];
+			this.version = new int[size];
+			this.barSize = new int[size];
+			this.tradingdayOpen = new long[size];
+			this.startPeriod = new long[size];
+			this.endPeriod = new long[size];
+			this.lastUpdateDate = new long[size];
+			this.open = new Prices(size);
+			this.high = new Prices(size);
+			this.low = new Prices(size);
+			this.close = new Prices(size);
+			this.vwap = new Prices(size);
+			this.volume = new long[size];
+			this.tradeCount = new int[size];
+			for (int i = 0; i < size; i++) {
+				Candle candle = candles.get(i);
+				this.idCandle[i] = toInt(candle.getIdCandle());
+				this.version[i] = toInt(candle.getVersion());
+				this.barSize[i] = toInt(candle.getBarSize());
+				this.tradingdayOpen[i] = candle.getTradingday().getOpen().toInstant().toEpochMilli();
+				this.startPeriod[i] = toMillis(candle.getStartPeriod());
+				this.endPeriod[i] = toMillis(candle.getEndPeriod());
+				this.lastUpdateDate[i] = toMillis(candle.getLastUpdateDate());
+				this.open.set(i, candle.getOpen());
+				this.high.set(i, candle.getHigh());
+				this.low.set(i, candle.getLow());
+				this.close.set(i, candle.getClose());
+				this.vwap.set(i, candle.getVwap());
+				this.volume[i] = null == candle.getVolume() ? Long.MIN_VALUE : candle.getVolume();
+				this.tradeCount[i] = toInt(candle.getTradeCount());
+			}
+		}
+
+		/**
+		 * Method getWeight.
+		 * 
+		 * @return int the number of candles or one for an empty day.
+		 */
+		int getWeight() {
+			return Math.max(1, this.startPeriod.length);
+		}
+
+		/**
+		 * Method addCandles. Add a new candle for each candle whose
+		 * tradingday opens between the start and end.
+		 */
+		void addCandles(List<Candle> candles, long startOpen, long endOpen) {
+			for (int i = 0; i < this.startPeriod.length; i++) {
+				if (this.tradingdayOpen[i] >= startOpen && this.tradingdayOpen[i] <= endOpen)
+					candles.add(getCandle(i));
+			}
+		}
+
+		private Candle getCandle(int i) {
+			Candle candle = new Candle();
+			candle.setContract(this.contract);
+			candle.setTradingday(this.tradingday);
+			candle.setIdCandle(toInteger(this.idCandle[i]));
+			candle.setVersion(toInteger(this.version[i]));
+			candle.setBarSize(toInteger(this.barSize[i]));
+			candle.setStartPeriod(toDateTime(this.startPeriod[i]));
+			candle.setEndPeriod(toDateTime(this.endPeriod[i]));
+			candle.setLastUpdateDate(toDateTime(this.lastUpdateDate[i]));
+			candle.setOpen(this.open.get(i));
+			candle.setHigh(this.high.get(i));
+			candle.setLow(this.low.get(i));
+			candle.setClose(this.close.get(i));
+			candle.setVwap(this.vwap.get(i));
+			candle.setVolume(this.volume[i] == Long.MIN_VALUE ? null : new Long(this.volume[i]));
+			candle.setTradeCount(toInteger(this.tradeCount[i]));
+			candle.setDirty(false);
+			return candle;
+		}
+
+		private ZonedDateTime toDateTime(long millis) {
+			return millis == Long.MIN_VALUE ? null : ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), this.zone);
+		}
+
+		private static long toMillis(ZonedDateTime dateTime) {
+			return null == dateTime ? Long.MIN_VALUE : dateTime.toInstant().toEpochMilli();
+		}
+
+		private static int toInt(Integer value) {
+			return null == value ? Integer.MIN_VALUE : value;
+		}
+
+		private static Integer toInteger(int value) {
+			return value == Integer.MIN_VALUE ? null : new Integer(value);
+		}
+	}
+
+	/**
+	 * A column of prices held as the unscaled value and the scale.
+	 */
+	private static final class Prices {
+
+		private final long[] unscaled;
+		private final byte[] scale;
+
+		Prices(int size) {
+			this.unscaled = new long[size];
+			this.scale = new byte[size];
+		}
+
+		void set(int i, BigDecimal value) {
+			if (null == value) {
+				this.unscaled[i] = Long.MIN_VALUE;
+			} else {
+				this.unscaled[i] = value.unscaledValue().longValueExact();
+				this.scale[i] = (byte) value.scale();
+			}
+		}
+
+		BigDecimal get(int i) {
+			return this.unscaled[i] == Long.MIN_VALUE ? null : BigDecimal.valueOf(this.unscaled[i], this.scale[i]);
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.persistent;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.trade.core.util.TradingCalendar;
+
+/**
+ * A process wide index of the tradingdays that have all their candles in the
+ * database. The tradingdays are held for each contract and bar size in date
+ * order. A tradingday is added once all its candles have been saved or found
+ * in the database after the day closed, the tradingdays for a contract are
+ * removed when any of its candles are removed.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class CandleCoverage {
+
+	private static final HashMap<Key, TreeSet<LocalDate>> _complete = new HashMap<Key, TreeSet<LocalDate>>();
+
+	private CandleCoverage() {
+	}
+
+	/**
+	 * Method isComplete.
+	 * 
+	 * @param idContract
+	 *            Integer
+	 * @param barSize
+	 *            Integer
+	 * @param day
+	 *            LocalDate the tradingday in the market time zone.
+	 * @return boolean true if all the candles for the tradingday are in the
+	 *         database.
+	 */
+	public static boolean isComplete(Integer idContract, Integer barSize, LocalDate day) {
+		if (null == idContract || null == barSize || null == day)
+			return false;
+
+		synchronized (_complete) {
+			TreeSet<LocalDate> days = _complete.get(new Key(idContract, barSize));
+			return (null != days && days.contains(day));
+		}
+	}
+
+	/**
+	 * Method hasAllCandles. The tradingday has all its candles if it has closed
+	 * and there is a candle for every bar between the open and the trading
+	 * calendar close, which is earlier on a half day.
+	 * 
+	 * @param open
+	 *            ZonedDateTime the tradingday open.
+	 * @param close
+	 *            ZonedDateTime the tradingday close.
+	 * @param barSize
+	 *            Integer
+	 * @param count
+	 *            Integer the number of candles in the database.
+	 * @param now
+	 *            ZonedDateTime
+	 * @return boolean
+	 */
+	public static boolean hasAllCandles(ZonedDateTime open, ZonedDateTime close, Integer barSize, Integer count,
+			ZonedDateTime now) {
+		if (null == barSize || null == count)
+			return false;
+		ZonedDateTime marketClose = TradingCalendar.getTradingDayClose(close);
+		return marketClose.isBefore(now)
+				&& count >= (TradingCalendar.getDurationInSeconds(open, marketClose) / barSize);
+	}
+
+	/**
+	 * Method setComplete. Record that all the candles for the tradingday are
+	 * in the database.
+	 * 
+	 * @param idContract
+	 *            Integer
+	 * @param barSize
+	 *            Integer
+	 * @param day
+	 *            LocalDate the tradingday in the market time zone.
+	 */
+	public static void setComplete(Integer idContract, Integer barSize, LocalDate day) {
+		if (null == idContract || null == barSize || null == day)
+			return;
+
+		synchronized (_complete) {
+			Key key = new Key(idContract, barSize);
+			TreeSet<LocalDate> days = _complete.get(key);
+			if (null == days) {
+				days = new TreeSet<LocalDate>();
+				_complete.put(key, days);
+			}
+			days.add(day);
+		}
+	}
+
+	/**
+	 * Method invalidate. Remove all the tradingdays for the contract. Called
+	 * when candles for the contract are removed.
+	 * 
+	 * @param idContract
+	 *            Integer
+	 */
+	public static void invalidate(Integer idContract) {
+		if (null == idContract)
+			return;
+
+		synchronized (_complete) {
+			for (Iterator<Key> iter = _complete.keySet().iterator(); iter.hasNext();) {
+				if (idContract.equals(iter.next().idContract))
+					iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public static void clear() {
+		synchronized (_complete) {
+			_complete.clear();
+		}
+	}
+
+	/**
+	 * Method getDayCount.
+	 * 
+	 * @return int the number of complete tradingdays held.
+	 */
+	public static int getDayCount() {
+		int count = 0;
+		synchronized (_complete) {
+			for (Map.Entry<Key, TreeSet<LocalDate>> entry : _complete.entrySet()) {
+				count = count + entry.getValue().size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The key for a contract and bar size.
+	 */
+	private static final class Key {
+
+		private final Integer idContract;
+		private final Integer barSize;
+
+		Key(Integer idContract, Integer barSize) {
+			this.idContract = idContract;
+			this.barSize = barSize;
+		}
+
+		public int hashCode() {
+			return (31 * idContract.hashCode()) + barSize.hashCode();
+		}
+
+		public boolean equals(Object objectToCompare) {
+			if (this == objectToCompare)
+				return true;
+			if (!(objectToCompare instanceof Key))
+				return false;
+			Key key = (Key) objectToCompare;
+			return this.idContract.equals(key.idContract) && this.barSize.equals(key.barSize);
+		}
+	}
+}
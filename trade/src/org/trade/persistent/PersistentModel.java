@@ -134,6 +134,16 @@ public interface PersistentModel {
 	 */
 	Candle persistCandle(Candle candle) throws PersistentModelException;
 
+	/**
+	 * Method persistCandles. Save the candles in one transaction.
+	 * 
+	 * @param candles
+	 *            List<Candle>
+	 * @return List<Candle> the saved candles in the same order.
+	 * @throws PersistentModelException
+	 */
+	List<Candle> persistCandles(List<Candle> candles) throws PersistentModelException;
+
 	/**
 	 * Method findAccountById.
 	 * 
@@ -377,6 +387,16 @@ public interface PersistentModel {
 	 */
 	TradeOrder findTradeOrderByKey(Integer orderKey) throws PersistentModelException;
 
+	/**
+	 * Method findActiveTradeOrders.
+	 * 
+	 * @param lastUpdateDate
+	 *            ZonedDateTime
+	 * @return List<TradeOrder>
+	 * @throws PersistentModelException
+	 */
+	List<TradeOrder> findActiveTradeOrders(ZonedDateTime lastUpdateDate) throws PersistentModelException;
+
 	/**
 	 * Method findTradeOrderfillByExecId.
 	 * 
@@ -431,6 +451,23 @@ public interface PersistentModel {
 	Tradingdays findTradingdaysByDateRange(ZonedDateTime startDate, ZonedDateTime endDate)
 			throws PersistentModelException;
 
+	/**
+	 * Method findTradingdaysByDateRange.
+	 * 
+	 * @param startDate
+	 *            ZonedDateTime
+	 * @param endDate
+	 *            ZonedDateTime
+	 * @param strategyData
+	 *            boolean false to load only what the Tradingday grid shows,
+	 *            true to also load the portfolio accounts and indicator
+	 *            series.
+	 * @return Tradingdays
+	 * @throws PersistentModelException
+	 */
+	Tradingdays findTradingdaysByDateRange(ZonedDateTime startDate, ZonedDateTime endDate, boolean strategyData)
+			throws PersistentModelException;
+
 	/**
 	 * Method findTradelogReport.
 	 * 
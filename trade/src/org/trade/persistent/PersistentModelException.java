@@ -50,6 +50,8 @@ public class PersistentModelException extends ModelException {
 	 */
 	private static final long serialVersionUID = -1955474015909463964L;
 
+	private boolean versionConflict = false;
+
 	public PersistentModelException() {
 		super();
 	}
@@ -78,4 +80,28 @@ public class PersistentModelException extends ModelException {
 	public PersistentModelException(String message) {
 		super(message);
 	}
+
+	/**
+	 * Constructor that allows the user to set the exception message.
+	 * 
+	 * @param message
+	 *            The desired message text.
+	 * @param versionConflict
+	 *            boolean true if the save failed because the row was saved
+	 *            by someone else since it was read.
+	 */
+	public PersistentModelException(String message, boolean versionConflict) {
+		super(message);
+		this.versionConflict = versionConflict;
+	}
+
+	/**
+	 * Method isVersionConflict.
+	 * 
+	 * @return boolean true if the entity must be read again before it can be
+	 *         saved.
+	 */
+	public boolean isVersionConflict() {
+		return this.versionConflict;
+	}
 }
@@ -35,32 +35,37 @@
  */
 package org.trade.persistent;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 import javax.persistence.OptimisticLockException;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
 
 import org.trade.core.dao.Aspect;
+import org.trade.core.dao.AspectCache;
 import org.trade.core.dao.AspectHome;
 import org.trade.core.dao.Aspects;
-import org.trade.core.util.CoreUtils;
-import org.trade.core.util.TradingCalendar;
-import org.trade.core.valuetype.Money;
-import org.trade.dictionary.valuetype.Action;
-import org.trade.dictionary.valuetype.OrderStatus;
-import org.trade.dictionary.valuetype.Side;
-import org.trade.dictionary.valuetype.TradestrategyStatus;
+import org.trade.core.dao.UnitOfWork;
+import org.trade.core.properties.ConfigProperties;
 import org.trade.persistent.dao.Account;
 import org.trade.persistent.dao.AccountHome;
 import org.trade.persistent.dao.Candle;
 import org.trade.persistent.dao.CandleHome;
+import org.trade.persistent.dao.CodeAttribute;
 import org.trade.persistent.dao.CodeType;
 import org.trade.persistent.dao.CodeTypeHome;
+import org.trade.persistent.dao.CodeValue;
 import org.trade.persistent.dao.Contract;
 import org.trade.persistent.dao.ContractHome;
+import org.trade.persistent.dao.ContractLite;
 import org.trade.persistent.dao.Portfolio;
+import org.trade.persistent.dao.PortfolioAccount;
 import org.trade.persistent.dao.PortfolioHome;
 import org.trade.persistent.dao.Rule;
 import org.trade.persistent.dao.RuleHome;
@@ -88,6 +93,51 @@ import org.trade.strategy.data.candle.CandleItem;
  */
 public class TradePersistentModel implements PersistentModel {
 
+	/*
+	 * Orders are saved one at a time per Contract as Tradestrategies on the
+	 * same contract share the open TradePosition. Orders for other contracts
+	 * are saved in parallel. The locks are striped by idContract so the number
+	 * of locks does not grow with the contracts traded.
+	 */
+	private static final Object[] _contractLocks = new Object[64];
+
+	private static boolean _unitOfWork = false;
+
+	static {
+		for (int i = 0; i < _contractLocks.length; i++) {
+			_contractLocks[i] = new Object();
+		}
+		try {
+			_unitOfWork = ConfigProperties.getPropAsBoolean("trade.persistent.unitOfWork");
+		} catch (IOException ex) {
+			throw new IllegalArgumentException("Error initializing TradePersistentModel Msg: " + ex.getMessage());
+		}
+	}
+
+	/*
+	 * Reference data is read far more often than it changes. Each region is
+	 * cleared when an Aspect it depends on is saved or removed. A saved
+	 * TradePosition only removes its own Contract.
+	 */
+	private static final AspectCache _contractCache = AspectCache.create("Contract", Contract.class)
+			.addOwner(TradePosition.class, new AspectCache.Owner() {
+				public Integer getOwnerId(Aspect aspect) {
+					TradePosition tradePosition = (TradePosition) aspect;
+					if (null == tradePosition.getContract())
+						return null;
+					return tradePosition.getContract().getIdContract();
+				}
+			});
+	private static final AspectCache _strategyCache = AspectCache.create("Strategy", Strategy.class, Rule.class,
+			Tradestrategy.class, Tradingday.class);
+	private static final AspectCache _ruleCache = AspectCache.create("Rule", Rule.class, Strategy.class);
+	private static final AspectCache _portfolioCache = AspectCache.create("Portfolio", Portfolio.class,
+			PortfolioAccount.class, Account.class, Tradestrategy.class, Tradingday.class);
+	private static final AspectCache _accountCache = AspectCache.create("Account", Account.class,
+			PortfolioAccount.class, Portfolio.class);
+	private static final AspectCache _codeTypeCache = AspectCache.create("CodeType", CodeType.class,
+			CodeValue.class, CodeAttribute.class);
+
 	private CodeTypeHome m_codeTypeHome = null;
 	private ContractHome m_contractHome = null;
 	private StrategyHome m_strategyHome = null;
@@ -102,9 +152,7 @@ public class TradePersistentModel implements PersistentModel {
 	private CandleHome m_candleHome = null;
 	private AspectHome m_aspectHome = null;
 	private RuleHome m_ruleHome = null;
-
-	private static final int SCALE_5 = 5;
-	private static final int SCALE_2 = 2;
+	private TradePositionAccounting m_positionAccounting = null;
 
 	public TradePersistentModel() {
 		m_codeTypeHome = new CodeTypeHome();
@@ -121,6 +169,7 @@ public class TradePersistentModel implements PersistentModel {
 		m_candleHome = new CandleHome();
 		m_aspectHome = new AspectHome();
 		m_ruleHome = new RuleHome();
+		m_positionAccounting = new PersistentPositionAccounting();
 	}
 
 	/**
@@ -174,7 +223,14 @@ public class TradePersistentModel implements PersistentModel {
 	 * @see org.trade.persistent.PersistentModel#findAccountByNumber(String)
 	 */
 	public Account findAccountByNumber(String accountNumber) throws PersistentModelException {
-		return m_accountHome.findByAccountNumber(accountNumber);
+		String key = "accountNumber:" + accountNumber;
+		Account instance = (Account) _accountCache.get(key);
+		if (null == instance) {
+			long version = _accountCache.getVersion();
+			instance = m_accountHome.findByAccountNumber(accountNumber);
+			_accountCache.put(key, instance, version);
+		}
+		return instance;
 	}
 
 	/**
@@ -220,6 +276,9 @@ public class TradePersistentModel implements PersistentModel {
 	 * @see org.trade.persistent.PersistentModel#findContractById(Integer)
 	 */
 	public Contract findContractById(final Integer id) throws PersistentModelException {
+		/*
+		 * Not cached as the Contract is read with its TradePositions.
+		 */
 		Contract instance = m_contractHome.findById(id);
 		if (null == instance)
 			throw new PersistentModelException("Contract not found for id: " + id);
@@ -260,7 +319,14 @@ public class TradePersistentModel implements PersistentModel {
 	 */
 	public Contract findContractByUniqueKey(String SECType, String symbol, String exchange, String currency,
 			ZonedDateTime expiry) throws PersistentModelException {
-		return m_contractHome.findByUniqueKey(SECType, symbol, exchange, currency, expiry);
+		String key = "uniqueKey:" + SECType + "|" + symbol + "|" + exchange + "|" + currency + "|" + expiry;
+		Contract instance = (Contract) _contractCache.get(key);
+		if (null == instance) {
+			long version = _contractCache.getVersion();
+			instance = m_contractHome.findByUniqueKey(SECType, symbol, exchange, currency, expiry);
+			_contractCache.put(key, instance, version);
+		}
+		return instance;
 	}
 
 	/**
@@ -403,7 +469,13 @@ public class TradePersistentModel implements PersistentModel {
 	 * @throws PersistentModelException
 	 */
 	public Portfolio findPortfolioById(final Integer id) throws PersistentModelException {
-		Portfolio instance = m_portfolioHome.findById(id);
+		String key = "id:" + id;
+		Portfolio instance = (Portfolio) _portfolioCache.get(key);
+		if (null == instance) {
+			long version = _portfolioCache.getVersion();
+			instance = m_portfolioHome.findById(id);
+			_portfolioCache.put(key, instance, version);
+		}
 		if (null == instance)
 			throw new PersistentModelException("Portfolio not found for id: " + id);
 		return instance;
@@ -418,7 +490,14 @@ public class TradePersistentModel implements PersistentModel {
 	 * @throws PersistentModelException
 	 */
 	public Portfolio findPortfolioByName(String name) throws PersistentModelException {
-		return m_portfolioHome.findByName(name);
+		String key = "name:" + name;
+		Portfolio instance = (Portfolio) _portfolioCache.get(key);
+		if (null == instance) {
+			long version = _portfolioCache.getVersion();
+			instance = m_portfolioHome.findByName(name);
+			_portfolioCache.put(key, instance, version);
+		}
+		return instance;
 	}
 
 	/**
@@ -428,7 +507,14 @@ public class TradePersistentModel implements PersistentModel {
 	 * @throws PersistentModelException
 	 */
 	public Portfolio findPortfolioDefault() throws PersistentModelException {
-		return m_portfolioHome.findDefault();
+		String key = "default";
+		Portfolio instance = (Portfolio) _portfolioCache.get(key);
+		if (null == instance) {
+			long version = _portfolioCache.getVersion();
+			instance = m_portfolioHome.findDefault();
+			_portfolioCache.put(key, instance, version);
+		}
+		return instance;
 	}
 
 	/**
@@ -607,6 +693,20 @@ public class TradePersistentModel implements PersistentModel {
 		return m_tradeOrderHome.findTradeOrderByKey(orderKey);
 	}
 
+	/**
+	 * Method findActiveTradeOrders.
+	 * 
+	 * @param lastUpdateDate
+	 *            ZonedDateTime
+	 * @return List<TradeOrder>
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#findActiveTradeOrders(ZonedDateTime)
+	 */
+	public List<TradeOrder> findActiveTradeOrders(final ZonedDateTime lastUpdateDate)
+			throws PersistentModelException {
+		return m_tradeOrderHome.findActiveTradeOrders(lastUpdateDate);
+	}
+
 	/**
 	 * Method findTradeOrderfillByExecId.
 	 * 
@@ -648,6 +748,25 @@ public class TradePersistentModel implements PersistentModel {
 		return m_tradingdayHome.findTradingdaysByDateRange(startDate, endDate);
 	}
 
+	/**
+	 * Method findTradingdaysByDateRange.
+	 * 
+	 * @param startDate
+	 *            ZonedDateTime
+	 * @param endDate
+	 *            ZonedDateTime
+	 * @param strategyData
+	 *            boolean
+	 * @return Tradingdays
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#findTradingdaysByDateRange(ZonedDateTime,
+	 *      ZonedDateTime, boolean)
+	 */
+	public Tradingdays findTradingdaysByDateRange(final ZonedDateTime startDate, final ZonedDateTime endDate,
+			boolean strategyData) throws PersistentModelException {
+		return m_tradingdayHome.findTradingdaysByDateRange(startDate, endDate, strategyData);
+	}
+
 	/**
 	 * Method findCandlesByContractDateRangeBarSize.
 	 * 
@@ -733,6 +852,7 @@ public class TradePersistentModel implements PersistentModel {
 				candleSeries.getContract().setVersion(contract.getVersion());
 			}
 			m_candleHome.persistCandleSeries(candleSeries);
+			CandleCache.invalidate(candleSeries.getContract().getIdContract());
 		} catch (OptimisticLockException ex1) {
 			throw new PersistentModelException("Error saving CandleSeries please refresh before save.");
 		} catch (Exception e) {
@@ -778,6 +898,8 @@ public class TradePersistentModel implements PersistentModel {
 				}
 				Candle item = m_aspectHome.persist(candle);
 				candle.setVersion(item.getVersion());
+				CandleCache.invalidate(candle.getContract().getIdContract(), candle.getBarSize(),
+						candle.getTradingday().getOpen());
 				return item;
 			}
 		} catch (OptimisticLockException ex1) {
@@ -788,6 +910,48 @@ public class TradePersistentModel implements PersistentModel {
 		}
 	}
 
+	/**
+	 * Method persistCandles. Save the candles in one UnitOfWork. If the save
+	 * fails the ids of the tradingdays that were added are removed again as
+	 * they were rolled back.
+	 * 
+	 * @param candles
+	 *            List<Candle>
+	 * @return List<Candle>
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#persistCandles(List<Candle>)
+	 */
+	public List<Candle> persistCandles(final List<Candle> candles) throws PersistentModelException {
+		IdentityHashMap<Tradingday, Tradingday> newTradingdays = new IdentityHashMap<Tradingday, Tradingday>();
+		UnitOfWork unitOfWork = UnitOfWork.begin();
+		try {
+			List<Candle> items = new ArrayList<Candle>(candles.size());
+			for (Candle candle : candles) {
+				if (null == candle.getTradingday().getIdTradingDay())
+					newTradingdays.put(candle.getTradingday(), candle.getTradingday());
+				items.add(persistCandle(candle));
+			}
+			unitOfWork.commit();
+			/*
+			 * Invalidate again as the cache may have read the days before the
+			 * commit.
+			 */
+			for (Candle candle : candles) {
+				CandleCache.invalidate(candle.getContract().getIdContract(), candle.getBarSize(),
+						candle.getTradingday().getOpen());
+			}
+			return items;
+		} catch (Exception e) {
+			for (Tradingday tradingday : newTradingdays.keySet()) {
+				tradingday.setIdTradingDay(null);
+				tradingday.setVersion(null);
+			}
+			throw new PersistentModelException("Error saving Candles: " + candles.size() + "\n Msg: " + e.getMessage());
+		} finally {
+			unitOfWork.close();
+		}
+	}
+
 	/**
 	 * Method persistTradingday.
 	 * 
@@ -818,233 +982,31 @@ public class TradePersistentModel implements PersistentModel {
 	 * @see org.trade.persistent.PersistentModel#persistTradeOrder(TradeOrder)
 	 */
 
-	public synchronized TradeOrder persistTradeOrder(final TradeOrder tradeOrder) throws PersistentModelException {
-		try {
-
-			if (null == tradeOrder.getOrderKey()) {
-				throw new PersistentModelException("Order key cannot be null.");
-			}
-
-			/*
-			 * This is a new order set the status to UNSUBMIT
-			 */
-			if (null == tradeOrder.getIdTradeOrder() && null == tradeOrder.getStatus()) {
-				tradeOrder.setStatus(OrderStatus.UNSUBMIT);
-			}
-
-			if (!tradeOrder.getIsFilled()
-					&& CoreUtils.nullSafeComparator(tradeOrder.getQuantity(), tradeOrder.getFilledQuantity()) == 0) {
-				tradeOrder.setIsFilled(true);
-				tradeOrder.setStatus(OrderStatus.FILLED);
-			}
-
-			/*
-			 * If a partial filled order is cancelled mark the order as filled.
-			 */
-			if (OrderStatus.CANCELLED.equals(tradeOrder.getStatus()) && !tradeOrder.getIsFilled()
-					&& CoreUtils.nullSafeComparator(tradeOrder.getFilledQuantity(), new Integer(0)) == 1) {
-				tradeOrder.setIsFilled(true);
-				tradeOrder.setStatus(OrderStatus.FILLED);
-			}
-
-			Integer tradestrategyId = null;
-			if (null == tradeOrder.getTradestrategyId()) {
-				tradestrategyId = tradeOrder.getTradestrategy().getIdTradeStrategy();
-				tradeOrder.setTradestrategyId(this.findTradestrategyLiteById(tradestrategyId));
-			} else {
-				tradestrategyId = tradeOrder.getTradestrategyId().getIdTradeStrategy();
-			}
-
-			/*
-			 * If the filled qty is > 0 and we have no TradePosition then create
-			 * one.
-			 */
-			TradePosition tradePosition = null;
-			TradestrategyOrders tradestrategyOrders = null;
-
-			if (!tradeOrder.hasTradePosition()) {
-				if (CoreUtils.nullSafeComparator(tradeOrder.getFilledQuantity(), new Integer(0)) == 1) {
-
-					tradestrategyOrders = this.findPositionOrdersByTradestrategyId(tradestrategyId);
-
-					if (tradestrategyOrders.hasOpenTradePosition()) {
-						tradePosition = this.findTradePositionById(
-								tradestrategyOrders.getContract().getTradePosition().getIdTradePosition());
-						if (!tradePosition.containsTradeOrder(tradeOrder)) {
-							tradePosition.addTradeOrder(tradeOrder);
-						}
-
-					} else {
-						/*
-						 * Note Order status can be fired before execDetails
-						 * this could result in a new tradeposition. OrderStatus
-						 * does not contain the filled date so we must set it
-						 * here.
-						 */
-						ZonedDateTime positionOpenDate = tradeOrder.getFilledDate();
-						if (null == positionOpenDate) {
-							positionOpenDate = TradingCalendar.getDateTimeNowMarketTimeZone();
-						}
-
-						tradePosition = new TradePosition(tradestrategyOrders.getContract(), positionOpenDate,
-								(Action.BUY.equals(tradeOrder.getAction()) ? Side.BOT : Side.SLD));
-						tradeOrder.setIsOpenPosition(true);
-						tradestrategyOrders.setStatus(TradestrategyStatus.OPEN);
-						tradestrategyOrders.setLastUpdateDate(TradingCalendar.getDateTimeNowMarketTimeZone());
-						this.persistAspect(tradestrategyOrders);
-						tradePosition.addTradeOrder(tradeOrder);
-						tradePosition = this.persistAspect(tradePosition);
-					}
-					tradeOrder.setTradePosition(tradePosition);
-				} else {
-					/*
-					 * If the order has not been filled and it has no
-					 * TradePosition this is the first order that has just been
-					 * update.
-					 */
-					return this.persistAspect(tradeOrder);
-				}
-			} else {
-				tradePosition = this.findTradePositionById(tradeOrder.getTradePosition().getIdTradePosition());
-				tradeOrder.setTradePosition(tradePosition);
-			}
-
-			boolean allOrdersCancelled = true;
-			int totalBuyQuantity = 0;
-			int totalSellQuantity = 0;
-			double totalCommission = 0;
-			double totalBuyValue = 0;
-			double totalSellValue = 0;
-
-			for (TradeOrder order : tradePosition.getTradeOrders()) {
-
-				if (order.getOrderKey().equals(tradeOrder.getOrderKey())) {
-					order = tradeOrder;
-				}
-
-				/*
-				 * If all orders are cancelled and not filled then we need to
-				 * update the tradestrategy status to cancelled.
-				 */
-				if (!OrderStatus.CANCELLED.equals(order.getStatus())) {
-					allOrdersCancelled = false;
-				}
-
-				if (null != order.getFilledQuantity()) {
-
-					if (Action.BUY.equals(order.getAction())) {
-						totalBuyQuantity = totalBuyQuantity + order.getFilledQuantity();
-						totalBuyValue = totalBuyValue + (order.getAverageFilledPrice().doubleValue()
-								* order.getFilledQuantity().doubleValue());
-					} else {
-						totalSellQuantity = totalSellQuantity + order.getFilledQuantity();
-						totalSellValue = totalSellValue + (order.getAverageFilledPrice().doubleValue()
-								* order.getFilledQuantity().doubleValue());
-					}
-					if (null != order.getCommission()) {
-						totalCommission = totalCommission + order.getCommission().doubleValue();
-					}
-				}
-			}
-			/*
-			 * totalFilledQuantity has changed for the trade update the trade
-			 * values.
-			 */
-			Money comms = new Money(totalCommission);
-			if (CoreUtils.nullSafeComparator(new Integer(totalBuyQuantity), tradePosition.getTotalBuyQuantity()) != 0
-					|| CoreUtils.nullSafeComparator(new Integer(totalSellQuantity),
-							tradePosition.getTotalSellQuantity()) != 0) {
-
-				int openQuantity = totalBuyQuantity - totalSellQuantity;
-				tradePosition.setOpenQuantity(openQuantity);
-				tradePosition.setTotalBuyQuantity(totalBuyQuantity);
-				tradePosition.setTotalBuyValue(
-						(new BigDecimal(totalBuyValue)).setScale(SCALE_5, BigDecimal.ROUND_HALF_EVEN));
-				tradePosition.setTotalSellQuantity(totalSellQuantity);
-				tradePosition.setTotalSellValue(
-						(new BigDecimal(totalSellValue)).setScale(SCALE_5, BigDecimal.ROUND_HALF_EVEN));
-				tradePosition.setTotalNetValue(
-						(new BigDecimal(totalSellValue - totalBuyValue)).setScale(SCALE_5, BigDecimal.ROUND_HALF_EVEN));
-				tradePosition.setTotalCommission(comms.getBigDecimalValue());
-				if (openQuantity > 0) {
-					tradePosition.setSide(Side.BOT);
-				}
-				if (openQuantity < 0) {
-					tradePosition.setSide(Side.SLD);
-				}
-
-				/*
-				 * Position should be closed if openQuantity = 0
-				 */
-				if (tradePosition.equals(tradePosition.getContract().getTradePosition())) {
-					if (openQuantity == 0) {
-						tradePosition.setPositionCloseDate(tradeOrder.getFilledDate());
-						tradePosition.getContract().setTradePosition(null);
-						this.persistAspect(tradePosition.getContract());
-					}
-				} else {
-					tradePosition.getContract().setTradePosition(tradePosition);
-					this.persistAspect(tradePosition.getContract());
-				}
-
-				// Partial fills case.
-				if (null == tradestrategyOrders) {
-					tradestrategyOrders = this.findPositionOrdersByTradestrategyId(tradestrategyId);
-				}
-
-				if (!tradePosition.isOpen() && !TradestrategyStatus.CLOSED.equals(tradestrategyOrders.getStatus())) {
-					/*
-					 * Now update all the tradestrategies as there could be many
-					 * if the position is across multiple days.
-					 */
-					for (TradeOrder item : tradePosition.getTradeOrders()) {
-						if (!item.getTradestrategyId().getIdTradeStrategy()
-								.equals(tradestrategyOrders.getIdTradeStrategy())) {
-							item.getTradestrategyId().setStatus(TradestrategyStatus.CLOSED);
-							item.getTradestrategyId().setLastUpdateDate(TradingCalendar.getDateTimeNowMarketTimeZone());
-							this.persistAspect(item.getTradestrategyId());
-						}
-					}
-					tradestrategyOrders.setStatus(TradestrategyStatus.CLOSED);
-					tradestrategyOrders.setLastUpdateDate(TradingCalendar.getDateTimeNowMarketTimeZone());
-					this.persistAspect(tradestrategyOrders);
-				}
-
-				tradePosition.setLastUpdateDate(TradingCalendar.getDateTimeNowMarketTimeZone());
-				tradePosition = this.persistAspect(tradePosition);
-
-			} else {
-				if (allOrdersCancelled) {
-					if (null == tradestrategyOrders) {
-						tradestrategyOrders = this.findPositionOrdersByTradestrategyId(tradestrategyId);
-					}
-					if (!TradestrategyStatus.CANCELLED.equals(tradestrategyOrders.getStatus())) {
-						if (null == tradestrategyOrders.getStatus()) {
-							tradestrategyOrders.setStatus(TradestrategyStatus.CANCELLED);
-							tradestrategyOrders.setLastUpdateDate(TradingCalendar.getDateTimeNowMarketTimeZone());
-							this.persistAspect(tradestrategyOrders);
-						}
-					}
-				}
-				/*
-				 * If the commissions (note these are updated by the orderState
-				 * event after the order may have been filled) have changed
-				 * update the trade.
-				 */
-				if (CoreUtils.nullSafeComparator(comms.getBigDecimalValue(), tradePosition.getTotalCommission()) == 1) {
-					tradePosition.setTotalCommission(comms.getBigDecimalValue());
-					tradePosition.setLastUpdateDate(TradingCalendar.getDateTimeNowMarketTimeZone());
-					tradePosition = this.persistAspect(tradePosition);
-				}
-			}
-
-			return this.persistAspect(tradeOrder);
+	public TradeOrder persistTradeOrder(final TradeOrder tradeOrder) throws PersistentModelException {
+		synchronized (getContractLock(tradeOrder)) {
+			if (!_unitOfWork)
+				return saveTradeOrder(tradeOrder);
+			return saveInUnitOfWork(tradeOrder, false);
+		}
+	}
 
+	/**
+	 * Method saveTradeOrder. The caller holds the Contract lock.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return TradeOrder
+	 * @throws PersistentModelException
+	 */
+	private TradeOrder saveTradeOrder(final TradeOrder tradeOrder) throws PersistentModelException {
+		try {
+			return m_positionAccounting.persistTradeOrder(tradeOrder);
 		} catch (OptimisticLockException ex1) {
-			throw new PersistentModelException("Error saving TradeOrder please refresh before save.");
+			throw new PersistentModelException("Error saving TradeOrder please refresh before save.", true);
 		} catch (Exception e) {
 			throw new PersistentModelException(
-					"Error saving TradeOrder: " + tradeOrder.getOrderKey() + "\n Msg: " + e.getMessage());
+					"Error saving TradeOrder: " + tradeOrder.getOrderKey() + "\n Msg: " + e.getMessage(),
+					isVersionConflict(e));
 		}
 	}
 
@@ -1057,62 +1019,121 @@ public class TradePersistentModel implements PersistentModel {
 	 * @throws PersistentModelException
 	 * @see org.trade.persistent.PersistentModel#persistTradeOrderfill(TradeOrder)
 	 */
-	public synchronized TradeOrder persistTradeOrderfill(final TradeOrder tradeOrder) throws PersistentModelException {
-		try {
-
-			ZonedDateTime filledDate = null;
-			double filledValue = 0;
-			double commission = 0;
-			int filledQuantity = 0;
-			for (TradeOrderfill tradeOrderfill : tradeOrder.getTradeOrderfills()) {
-
-				if (null != tradeOrderfill.getCommission())
-					commission = commission + tradeOrderfill.getCommission().doubleValue();
+	public TradeOrder persistTradeOrderfill(final TradeOrder tradeOrder) throws PersistentModelException {
+		synchronized (getContractLock(tradeOrder)) {
+			if (!_unitOfWork)
+				return saveTradeOrderfill(tradeOrder);
+			return saveInUnitOfWork(tradeOrder, true);
+		}
+	}
 
-				filledQuantity = filledQuantity + tradeOrderfill.getQuantity();
-				filledValue = filledValue + (tradeOrderfill.getPrice().doubleValue() * tradeOrderfill.getQuantity());
-				if (null == filledDate)
-					filledDate = tradeOrderfill.getTime();
+	/**
+	 * Method saveTradeOrderfill. The caller holds the Contract lock.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return TradeOrder
+	 * @throws PersistentModelException
+	 */
+	private TradeOrder saveTradeOrderfill(final TradeOrder tradeOrder) throws PersistentModelException {
+		try {
+			return m_positionAccounting.persistTradeOrderfill(tradeOrder);
+		} catch (OptimisticLockException ex1) {
+			throw new PersistentModelException("Error saving TradeOrderfill please refresh before save.", true);
+		} catch (Exception e) {
+			throw new PersistentModelException(
+					"Error saving TradeOrderfill: " + tradeOrder.getOrderKey() + "\n Msg: " + e.getMessage(),
+					isVersionConflict(e));
+		}
+	}
 
-				if (filledDate.isBefore(tradeOrderfill.getTime()))
-					filledDate = tradeOrderfill.getTime();
+	/**
+	 * Method saveInUnitOfWork. Save the order and its position in one
+	 * UnitOfWork so the reads and writes share one EntityManager and
+	 * transaction. The caller holds the Contract lock.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @param orderfills
+	 *            boolean true to save the order fills see
+	 *            persistTradeOrderfill().
+	 * @return TradeOrder
+	 * @throws PersistentModelException
+	 */
+	private TradeOrder saveInUnitOfWork(final TradeOrder tradeOrder, boolean orderfills)
+			throws PersistentModelException {
+		UnitOfWork unitOfWork = UnitOfWork.begin();
+		try {
+			TradeOrder instance = null;
+			if (orderfills) {
+				instance = saveTradeOrderfill(tradeOrder);
+			} else {
+				instance = saveTradeOrder(tradeOrder);
 			}
+			unitOfWork.commit();
+			return instance;
+		} catch (OptimisticLockException ex1) {
+			throw new PersistentModelException("Error saving TradeOrder please refresh before save.", true);
+		} catch (PersistenceException e) {
+			throw new PersistentModelException(
+					"Error saving TradeOrder: " + tradeOrder.getOrderKey() + "\n Msg: " + e.getMessage(),
+					isVersionConflict(e));
+		} finally {
+			unitOfWork.close();
+		}
+	}
 
-			if (filledQuantity > 0) {
-				BigDecimal avgFillPrice = (new BigDecimal(filledValue / filledQuantity)).setScale(SCALE_5,
-						BigDecimal.ROUND_HALF_EVEN);
-				BigDecimal commissionAmount = (new BigDecimal(commission)).setScale(SCALE_2,
-						BigDecimal.ROUND_HALF_EVEN);
-
-				/*
-				 * If filled qty is greater than current filled qty set the new
-				 * value. Note openOrder can update the filled order quantity
-				 * before the orderFills have arrived.
-				 */
-				if (CoreUtils.nullSafeComparator(new Integer(filledQuantity), tradeOrder.getFilledQuantity()) == 1) {
-					tradeOrder.setAverageFilledPrice(avgFillPrice);
-					tradeOrder.setFilledQuantity(filledQuantity);
-					tradeOrder.setFilledDate(filledDate);
-					/*
-					 * If the commission amount is greater than the TradeOrder
-					 * commission set this amount. Note tradeOrder commission
-					 * can be set via the commissionReport event i.e each
-					 * execution or by the openOrder event.
-					 */
-					if (CoreUtils.nullSafeComparator(commissionAmount, tradeOrder.getCommission()) == 1)
-						tradeOrder.setCommission(commissionAmount);
+	/**
+	 * Method isVersionConflict. The commit wraps the OptimisticLockException
+	 * so look through the causes.
+	 * 
+	 * @param ex
+	 *            Throwable
+	 * @return boolean true if the save failed on the version.
+	 */
+	private static boolean isVersionConflict(Throwable ex) {
+		while (null != ex) {
+			if (ex instanceof OptimisticLockException)
+				return true;
+			ex = ex.getCause();
+		}
+		return false;
+	}
 
-					tradeOrder.setLastUpdateDate(TradingCalendar.getDateTimeNowMarketTimeZone());
-				}
+	/**
+	 * Method getContractLock. The lock for the contract of the order's
+	 * Tradestrategy. The contract is read from the database when the order's
+	 * Tradestrategy is not loaded.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return Object
+	 * @throws PersistentModelException
+	 */
+	private Object getContractLock(final TradeOrder tradeOrder) throws PersistentModelException {
+		Integer idContract = null;
+		Integer idTradestrategy = null;
+		Tradestrategy tradestrategy = tradeOrder.getTradestrategy();
+		if (null != tradestrategy && Persistence.getPersistenceUtil().isLoaded(tradestrategy)
+				&& null != tradestrategy.getContract()) {
+			idContract = tradestrategy.getContract().getIdContract();
+		}
+		if (null == idContract) {
+			if (null != tradeOrder.getTradestrategyId()) {
+				idTradestrategy = tradeOrder.getTradestrategyId().getIdTradeStrategy();
+			} else if (null != tradestrategy) {
+				idTradestrategy = tradestrategy.getIdTradeStrategy();
+			}
+			if (null == idTradestrategy) {
+				throw new PersistentModelException(
+						"Tradestrategy cannot be null for TradeOrder: " + tradeOrder.getOrderKey());
+			}
+			idContract = m_tradestrategyHome.findContractIdById(idTradestrategy);
+			if (null == idContract) {
+				throw new PersistentModelException("Tradestrategy not found for id: " + idTradestrategy);
 			}
-			return persistTradeOrder(tradeOrder);
-
-		} catch (OptimisticLockException ex1) {
-			throw new PersistentModelException("Error saving TradeOrderfill please refresh before save.");
-		} catch (Exception e) {
-			throw new PersistentModelException(
-					"Error saving TradeOrderfill: " + tradeOrder.getOrderKey() + "\n Msg: " + e.getMessage());
 		}
+		return _contractLocks[Math.abs(idContract.intValue() % _contractLocks.length)];
 	}
 
 	/**
@@ -1125,7 +1146,13 @@ public class TradePersistentModel implements PersistentModel {
 	 * @see org.trade.persistent.PersistentModel#findRuleById(Integer)
 	 */
 	public Rule findRuleById(final Integer id) throws PersistentModelException {
-		Rule instance = m_ruleHome.findById(id);
+		String key = "id:" + id;
+		Rule instance = (Rule) _ruleCache.get(key);
+		if (null == instance) {
+			long version = _ruleCache.getVersion();
+			instance = m_ruleHome.findById(id);
+			_ruleCache.put(key, instance, version);
+		}
 		if (null == instance)
 			throw new PersistentModelException("Rule not found for Id: " + id);
 		return instance;
@@ -1154,7 +1181,13 @@ public class TradePersistentModel implements PersistentModel {
 	 * @see org.trade.persistent.PersistentModel#findStrategyById(Integer)
 	 */
 	public Strategy findStrategyById(final Integer id) throws PersistentModelException {
-		Strategy instance = m_strategyHome.findById(id);
+		String key = "id:" + id;
+		Strategy instance = (Strategy) _strategyCache.get(key);
+		if (null == instance) {
+			long version = _strategyCache.getVersion();
+			instance = m_strategyHome.findById(id);
+			_strategyCache.put(key, instance, version);
+		}
 		if (null == instance)
 			throw new PersistentModelException("Strategy not found for Id: " + id);
 		return instance;
@@ -1170,7 +1203,14 @@ public class TradePersistentModel implements PersistentModel {
 	 * @see org.trade.persistent.PersistentModel#findStrategyByName(String)
 	 */
 	public Strategy findStrategyByName(String name) throws PersistentModelException {
-		return m_strategyHome.findByName(name);
+		String key = "name:" + name;
+		Strategy instance = (Strategy) _strategyCache.get(key);
+		if (null == instance) {
+			long version = _strategyCache.getVersion();
+			instance = m_strategyHome.findByName(name);
+			_strategyCache.put(key, instance, version);
+		}
+		return instance;
 	}
 
 	/**
@@ -1180,8 +1220,16 @@ public class TradePersistentModel implements PersistentModel {
 	 * @throws PersistentModelException
 	 * @see org.trade.persistent.PersistentModel#findStrategies()
 	 */
+	@SuppressWarnings("unchecked")
 	public List<Strategy> findStrategies() throws PersistentModelException {
-		return m_strategyHome.findAll();
+		String key = "all";
+		List<Strategy> instances = (List<Strategy>) _strategyCache.get(key);
+		if (null == instances) {
+			long version = _strategyCache.getVersion();
+			instances = m_strategyHome.findAll();
+			_strategyCache.put(key, instances, version);
+		}
+		return instances;
 	}
 
 	/**
@@ -1325,6 +1373,10 @@ public class TradePersistentModel implements PersistentModel {
 	public void removeAspect(final Aspect transientInstance) throws PersistentModelException {
 		try {
 			m_aspectHome.remove(transientInstance);
+			if (transientInstance instanceof Candle && null != ((Candle) transientInstance).getContract()) {
+				CandleCache.invalidate(((Candle) transientInstance).getContract().getIdContract());
+				CandleCoverage.invalidate(((Candle) transientInstance).getContract().getIdContract());
+			}
 		} catch (OptimisticLockException ex1) {
 			throw new PersistentModelException(
 					"Error removing " + transientInstance.getClass().getSimpleName() + " please refresh before save.");
@@ -1377,9 +1429,58 @@ public class TradePersistentModel implements PersistentModel {
 	 */
 	public CodeType findCodeTypeByNameType(String name, String type) throws PersistentModelException {
 		try {
-			return m_codeTypeHome.findByNameAndType(name, type);
+			String key = "nameType:" + name + "|" + type;
+			CodeType instance = (CodeType) _codeTypeCache.get(key);
+			if (null == instance) {
+				long version = _codeTypeCache.getVersion();
+				instance = m_codeTypeHome.findByNameAndType(name, type);
+				_codeTypeCache.put(key, instance, version);
+			}
+			return instance;
 		} catch (Exception ex) {
 			throw new PersistentModelException("Error finding CodeType: " + ex.getMessage());
 		}
 	}
+
+	/**
+	 * The order and position accounting against the database.
+	 */
+	private class PersistentPositionAccounting extends TradePositionAccounting {
+
+		protected TradestrategyLite findTradestrategyLite(Integer idTradestrategy) throws PersistentModelException {
+			return findTradestrategyLiteById(idTradestrategy);
+		}
+
+		protected TradestrategyOrders findTradestrategyOrders(Integer idTradestrategy)
+				throws PersistentModelException {
+			return findPositionOrdersByTradestrategyId(idTradestrategy);
+		}
+
+		protected TradePosition findTradePosition(TradePosition tradePosition, TradeOrder tradeOrder)
+				throws PersistentModelException {
+			return findTradePositionById(tradePosition.getIdTradePosition());
+		}
+
+		protected void persistTradestrategyOrders(TradestrategyOrders tradestrategyOrders)
+				throws PersistentModelException {
+			persistAspect(tradestrategyOrders);
+		}
+
+		protected void persistTradestrategyLite(TradestrategyLite tradestrategyLite)
+				throws PersistentModelException {
+			persistAspect(tradestrategyLite);
+		}
+
+		protected TradePosition persistTradePosition(TradePosition tradePosition) throws PersistentModelException {
+			return persistAspect(tradePosition);
+		}
+
+		protected void persistContract(ContractLite contract) throws PersistentModelException {
+			persistAspect(contract);
+		}
+
+		protected TradeOrder persistTradeOrderOnly(TradeOrder tradeOrder) throws PersistentModelException {
+			return persistAspect(tradeOrder);
+		}
+	}
 }
@@ -0,0 +1,446 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.persistent;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+
+import org.trade.core.util.CoreUtils;
+import org.trade.core.util.TradingCalendar;
+import org.trade.core.valuetype.Money;
+import org.trade.dictionary.valuetype.Action;
+import org.trade.dictionary.valuetype.OrderStatus;
+import org.trade.dictionary.valuetype.Side;
+import org.trade.dictionary.valuetype.TradestrategyStatus;
+import org.trade.persistent.dao.ContractLite;
+import org.trade.persistent.dao.TradeOrder;
+import org.trade.persistent.dao.TradeOrderfill;
+import org.trade.persistent.dao.TradePosition;
+import org.trade.persistent.dao.TradestrategyLite;
+import org.trade.persistent.dao.TradestrategyOrders;
+
+/**
+ * The order fill and position accounting done when a TradeOrder is saved.
+ * Orders with a filled quantity open or are added to the contracts open
+ * TradePosition, the position totals are then re-calculated from all its
+ * orders and the position is closed when the open quantity goes to zero.
+ * 
+ * Sub classes supply where the Tradestrategies and TradePositions are read
+ * from and saved to i.e. the database for the TradePersistentModel or the
+ * in memory BackTestOrderBook.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public abstract class TradePositionAccounting {
+
+	private static final int SCALE_5 = 5;
+	private static final int SCALE_2 = 2;
+
+	/**
+	 * Method persistTradeOrder. Set the order status, open or update the
+	 * orders TradePosition and the Tradestrategy status and save the order.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return TradeOrder
+	 * @throws PersistentModelException
+	 */
+	public TradeOrder persistTradeOrder(final TradeOrder tradeOrder) throws PersistentModelException {
+
+		if (null == tradeOrder.getOrderKey()) {
+			throw new PersistentModelException("Order key cannot be null.");
+		}
+
+		/*
+		 * This is a new order set the status to UNSUBMIT
+		 */
+		if (null == tradeOrder.getIdTradeOrder() && null == tradeOrder.getStatus()) {
+			tradeOrder.setStatus(OrderStatus.UNSUBMIT);
+		}
+
+		if (!tradeOrder.getIsFilled()
+				&& CoreUtils.nullSafeComparator(tradeOrder.getQuantity(), tradeOrder.getFilledQuantity()) == 0) {
+			tradeOrder.setIsFilled(true);
+			tradeOrder.setStatus(OrderStatus.FILLED);
+		}
+
+		/*
+		 * If a partial filled order is cancelled mark the order as filled.
+		 */
+		if (OrderStatus.CANCELLED.equals(tradeOrder.getStatus()) && !tradeOrder.getIsFilled()
+				&& CoreUtils.nullSafeComparator(tradeOrder.getFilledQuantity(), new Integer(0)) == 1) {
+			tradeOrder.setIsFilled(true);
+			tradeOrder.setStatus(OrderStatus.FILLED);
+		}
+
+		Integer tradestrategyId = null;
+		if (null == tradeOrder.getTradestrategyId()) {
+			tradestrategyId = tradeOrder.getTradestrategy().getIdTradeStrategy();
+			tradeOrder.setTradestrategyId(this.findTradestrategyLite(tradestrategyId));
+		} else {
+			tradestrategyId = tradeOrder.getTradestrategyId().getIdTradeStrategy();
+		}
+
+		/*
+		 * If the filled qty is > 0 and we have no TradePosition then create
+		 * one.
+		 */
+		TradePosition tradePosition = null;
+		TradestrategyOrders tradestrategyOrders = null;
+
+		if (!tradeOrder.hasTradePosition()) {
+			if (CoreUtils.nullSafeComparator(tradeOrder.getFilledQuantity(), new Integer(0)) == 1) {
+
+				tradestrategyOrders = this.findTradestrategyOrders(tradestrategyId);
+
+				if (tradestrategyOrders.hasOpenTradePosition()) {
+					tradePosition = this.findTradePosition(tradestrategyOrders.getOpenTradePosition(), tradeOrder);
+					if (!tradePosition.containsTradeOrder(tradeOrder)) {
+						tradePosition.addTradeOrder(tradeOrder);
+					}
+
+				} else {
+					/*
+					 * Note Order status can be fired before execDetails this
+					 * could result in a new tradeposition. OrderStatus does
+					 * not contain the filled date so we must set it here.
+					 */
+					ZonedDateTime positionOpenDate = tradeOrder.getFilledDate();
+					if (null == positionOpenDate) {
+						positionOpenDate = TradingCalendar.getDateTimeNowMarketTimeZone();
+					}
+
+					tradePosition = new TradePosition(tradestrategyOrders.getContract(), positionOpenDate,
+							(Action.BUY.equals(tradeOrder.getAction()) ? Side.BOT : Side.SLD));
+					tradeOrder.setIsOpenPosition(true);
+					tradestrategyOrders.setStatus(TradestrategyStatus.OPEN);
+					tradestrategyOrders.setLastUpdateDate(TradingCalendar.getDateTimeNowMarketTimeZone());
+					this.persistTradestrategyOrders(tradestrategyOrders);
+					tradePosition.addTradeOrder(tradeOrder);
+					tradePosition = this.persistTradePosition(tradePosition);
+				}
+				tradeOrder.setTradePosition(tradePosition);
+			} else {
+				/*
+				 * If the order has not been filled and it has no TradePosition
+				 * this is the first order that has just been update.
+				 */
+				return this.persistTradeOrderOnly(tradeOrder);
+			}
+		} else {
+			tradePosition = this.findTradePosition(tradeOrder.getTradePosition(), tradeOrder);
+			tradeOrder.setTradePosition(tradePosition);
+		}
+
+		boolean allOrdersCancelled = true;
+		int totalBuyQuantity = 0;
+		int totalSellQuantity = 0;
+		double totalCommission = 0;
+		double totalBuyValue = 0;
+		double totalSellValue = 0;
+
+		for (TradeOrder order : tradePosition.getTradeOrders()) {
+
+			if (order.getOrderKey().equals(tradeOrder.getOrderKey())) {
+				order = tradeOrder;
+			}
+
+			/*
+			 * If all orders are cancelled and not filled then we need to
+			 * update the tradestrategy status to cancelled.
+			 */
+			if (!OrderStatus.CANCELLED.equals(order.getStatus())) {
+				allOrdersCancelled = false;
+			}
+
+			if (null != order.getFilledQuantity()) {
+
+				if (Action.BUY.equals(order.getAction())) {
+					totalBuyQuantity = totalBuyQuantity + order.getFilledQuantity();
+					totalBuyValue = totalBuyValue
+							+ (order.getAverageFilledPrice().doubleValue() * order.getFilledQuantity().doubleValue());
+				} else {
+					totalSellQuantity = totalSellQuantity + order.getFilledQuantity();
+					totalSellValue = totalSellValue
+							+ (order.getAverageFilledPrice().doubleValue() * order.getFilledQuantity().doubleValue());
+				}
+				if (null != order.getCommission()) {
+					totalCommission = totalCommission + order.getCommission().doubleValue();
+				}
+			}
+		}
+		/*
+		 * totalFilledQuantity has changed for the trade update the trade
+		 * values.
+		 */
+		Money comms = new Money(totalCommission);
+		if (CoreUtils.nullSafeComparator(new Integer(totalBuyQuantity), tradePosition.getTotalBuyQuantity()) != 0
+				|| CoreUtils.nullSafeComparator(new Integer(totalSellQuantity),
+						tradePosition.getTotalSellQuantity()) != 0) {
+
+			int openQuantity = totalBuyQuantity - totalSellQuantity;
+			tradePosition.setOpenQuantity(openQuantity);
+			tradePosition.setTotalBuyQuantity(totalBuyQuantity);
+			tradePosition
+					.setTotalBuyValue((new BigDecimal(totalBuyValue)).setScale(SCALE_5, BigDecimal.ROUND_HALF_EVEN));
+			tradePosition.setTotalSellQuantity(totalSellQuantity);
+			tradePosition.setTotalSellValue(
+					(new BigDecimal(totalSellValue)).setScale(SCALE_5, BigDecimal.ROUND_HALF_EVEN));
+			tradePosition.setTotalNetValue(
+					(new BigDecimal(totalSellValue - totalBuyValue)).setScale(SCALE_5, BigDecimal.ROUND_HALF_EVEN));
+			tradePosition.setTotalCommission(comms.getBigDecimalValue());
+			if (openQuantity > 0) {
+				tradePosition.setSide(Side.BOT);
+			}
+			if (openQuantity < 0) {
+				tradePosition.setSide(Side.SLD);
+			}
+
+			/*
+			 * Position should be closed if openQuantity = 0
+			 */
+			if (tradePosition.isOpen()) {
+				if (openQuantity == 0) {
+					tradePosition.setPositionCloseDate(tradeOrder.getFilledDate());
+					tradePosition.getContract().setTradePosition(null);
+					this.persistContract(tradePosition.getContract());
+				}
+			} else {
+				tradePosition.getContract().setTradePosition(tradePosition);
+				this.persistContract(tradePosition.getContract());
+			}
+
+			// Partial fills case.
+			if (null == tradestrategyOrders) {
+				tradestrategyOrders = this.findTradestrategyOrders(tradestrategyId);
+			}
+
+			if (!tradePosition.isOpen() && !TradestrategyStatus.CLOSED.equals(tradestrategyOrders.getStatus())) {
+				/*
+				 * Now update all the tradestrategies as there could be many if
+				 * the position is across multiple days.
+				 */
+				for (TradeOrder item : tradePosition.getTradeOrders()) {
+					if (!item.getTradestrategyId().getIdTradeStrategy()
+							.equals(tradestrategyOrders.getIdTradeStrategy())) {
+						item.getTradestrategyId().setStatus(TradestrategyStatus.CLOSED);
+						item.getTradestrategyId().setLastUpdateDate(TradingCalendar.getDateTimeNowMarketTimeZone());
+						this.persistTradestrategyLite(item.getTradestrategyId());
+					}
+				}
+				tradestrategyOrders.setStatus(TradestrategyStatus.CLOSED);
+				tradestrategyOrders.setLastUpdateDate(TradingCalendar.getDateTimeNowMarketTimeZone());
+				this.persistTradestrategyOrders(tradestrategyOrders);
+			}
+
+			tradePosition.setLastUpdateDate(TradingCalendar.getDateTimeNowMarketTimeZone());
+			tradePosition = this.persistTradePosition(tradePosition);
+
+		} else {
+			if (allOrdersCancelled) {
+				if (null == tradestrategyOrders) {
+					tradestrategyOrders = this.findTradestrategyOrders(tradestrategyId);
+				}
+				if (null == tradestrategyOrders.getStatus()) {
+					tradestrategyOrders.setStatus(TradestrategyStatus.CANCELLED);
+					tradestrategyOrders.setLastUpdateDate(TradingCalendar.getDateTimeNowMarketTimeZone());
+					this.persistTradestrategyOrders(tradestrategyOrders);
+				}
+			}
+			/*
+			 * If the commissions (note these are updated by the orderState
+			 * event after the order may have been filled) have changed update
+			 * the trade.
+			 */
+			if (CoreUtils.nullSafeComparator(comms.getBigDecimalValue(), tradePosition.getTotalCommission()) == 1) {
+				tradePosition.setTotalCommission(comms.getBigDecimalValue());
+				tradePosition.setLastUpdateDate(TradingCalendar.getDateTimeNowMarketTimeZone());
+				tradePosition = this.persistTradePosition(tradePosition);
+			}
+		}
+
+		return this.persistTradeOrderOnly(tradeOrder);
+	}
+
+	/**
+	 * Method persistTradeOrderfill. Set the orders filled quantity, average
+	 * filled price, filled date and commission from its TradeOrderfills then
+	 * save the order see persistTradeOrder().
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return TradeOrder
+	 * @throws PersistentModelException
+	 */
+	public TradeOrder persistTradeOrderfill(final TradeOrder tradeOrder) throws PersistentModelException {
+
+		ZonedDateTime filledDate = null;
+		double filledValue = 0;
+		double commission = 0;
+		int filledQuantity = 0;
+		for (TradeOrderfill tradeOrderfill : tradeOrder.getTradeOrderfills()) {
+
+			if (null != tradeOrderfill.getCommission())
+				commission = commission + tradeOrderfill.getCommission().doubleValue();
+
+			filledQuantity = filledQuantity + tradeOrderfill.getQuantity();
+			filledValue = filledValue + (tradeOrderfill.getPrice().doubleValue() * tradeOrderfill.getQuantity());
+			if (null == filledDate)
+				filledDate = tradeOrderfill.getTime();
+
+			if (filledDate.isBefore(tradeOrderfill.getTime()))
+				filledDate = tradeOrderfill.getTime();
+		}
+
+		if (filledQuantity > 0) {
+			BigDecimal avgFillPrice = (new BigDecimal(filledValue / filledQuantity)).setScale(SCALE_5,
+					BigDecimal.ROUND_HALF_EVEN);
+			BigDecimal commissionAmount = (new BigDecimal(commission)).setScale(SCALE_2, BigDecimal.ROUND_HALF_EVEN);
+
+			/*
+			 * If filled qty is greater than current filled qty set the new
+			 * value. Note openOrder can update the filled order quantity before
+			 * the orderFills have arrived.
+			 */
+			if (CoreUtils.nullSafeComparator(new Integer(filledQuantity), tradeOrder.getFilledQuantity()) == 1) {
+				tradeOrder.setAverageFilledPrice(avgFillPrice);
+				tradeOrder.setFilledQuantity(filledQuantity);
+				tradeOrder.setFilledDate(filledDate);
+				/*
+				 * If the commission amount is greater than the TradeOrder
+				 * commission set this amount. Note tradeOrder commission can
+				 * be set via the commissionReport event i.e each execution or
+				 * by the openOrder event.
+				 */
+				if (CoreUtils.nullSafeComparator(commissionAmount, tradeOrder.getCommission()) == 1)
+					tradeOrder.setCommission(commissionAmount);
+
+				tradeOrder.setLastUpdateDate(TradingCalendar.getDateTimeNowMarketTimeZone());
+			}
+		}
+		return this.persistTradeOrder(tradeOrder);
+	}
+
+	/**
+	 * Method findTradestrategyLite.
+	 * 
+	 * @param idTradestrategy
+	 *            Integer
+	 * @return TradestrategyLite
+	 * @throws PersistentModelException
+	 */
+	protected abstract TradestrategyLite findTradestrategyLite(Integer idTradestrategy)
+			throws PersistentModelException;
+
+	/**
+	 * Method findTradestrategyOrders.
+	 * 
+	 * @param idTradestrategy
+	 *            Integer
+	 * @return TradestrategyOrders the Tradestrategy with its contract and
+	 *         open TradePosition.
+	 * @throws PersistentModelException
+	 */
+	protected abstract TradestrategyOrders findTradestrategyOrders(Integer idTradestrategy)
+			throws PersistentModelException;
+
+	/**
+	 * Method findTradePosition. Returns the current instance of the
+	 * TradePosition the order is to be accounted against.
+	 * 
+	 * @param tradePosition
+	 *            TradePosition
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return TradePosition
+	 * @throws PersistentModelException
+	 */
+	protected abstract TradePosition findTradePosition(TradePosition tradePosition, TradeOrder tradeOrder)
+			throws PersistentModelException;
+
+	/**
+	 * Method persistTradestrategyOrders. Save the Tradestrategy status.
+	 * 
+	 * @param tradestrategyOrders
+	 *            TradestrategyOrders
+	 * @throws PersistentModelException
+	 */
+	protected abstract void persistTradestrategyOrders(TradestrategyOrders tradestrategyOrders)
+			throws PersistentModelException;
+
+	/**
+	 * Method persistTradestrategyLite. Save the status of another
+	 * Tradestrategy that traded the position.
+	 * 
+	 * @param tradestrategyLite
+	 *            TradestrategyLite
+	 * @throws PersistentModelException
+	 */
+	protected abstract void persistTradestrategyLite(TradestrategyLite tradestrategyLite)
+			throws PersistentModelException;
+
+	/**
+	 * Method persistTradePosition.
+	 * 
+	 * @param tradePosition
+	 *            TradePosition
+	 * @return TradePosition
+	 * @throws PersistentModelException
+	 */
+	protected abstract TradePosition persistTradePosition(TradePosition tradePosition)
+			throws PersistentModelException;
+
+	/**
+	 * Method persistContract. Save the contracts open TradePosition.
+	 * 
+	 * @param contract
+	 *            ContractLite
+	 * @throws PersistentModelException
+	 */
+	protected abstract void persistContract(ContractLite contract) throws PersistentModelException;
+
+	/**
+	 * Method persistTradeOrderOnly. Save the order once its TradePosition has
+	 * been updated.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return TradeOrder
+	 * @throws PersistentModelException
+	 */
+	protected abstract TradeOrder persistTradeOrderOnly(TradeOrder tradeOrder) throws PersistentModelException;
+}
@@ -35,12 +35,20 @@
  */
 package org.trade.persistent.dao;
 
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
@@ -50,6 +58,7 @@ import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
 import org.trade.core.dao.EntityManagerHelper;
+import org.trade.core.properties.ConfigProperties;
 import org.trade.strategy.data.CandleSeries;
 import org.trade.strategy.data.candle.CandleItem;
 
@@ -58,18 +67,74 @@ import org.trade.strategy.data.candle.CandleItem;
 @Stateless
 public class CandleHome {
 
+	private static final String INSERT_CANDLE = "insert into candle (open, high, low, close, period, startPeriod, "
+			+ "endPeriod, barSize, tradeCount, volume, vwap, lastUpdateDate, version, idContract, idTradingDay) values ";
+	private static final String INSERT_CANDLE_VALUES = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0, ?, ?)";
+	private static final String INSERT_CANDLE_UPDATE = " on duplicate key update open = values(open), "
+			+ "high = values(high), low = values(low), close = values(close), period = values(period), "
+			+ "barSize = values(barSize), tradeCount = values(tradeCount), volume = values(volume), "
+			+ "vwap = values(vwap), lastUpdateDate = values(lastUpdateDate)";
+
+	private static int _bulkInsertSize = 0;
+	private static final Object _tradingdayLock = new Object();
+	private static final ConcurrentHashMap<Integer, Object> _contractLocks = new ConcurrentHashMap<Integer, Object>();
+
+	static {
+		try {
+			_bulkInsertSize = ConfigProperties.getPropAsInt("trade.candle.bulkInsertSize");
+		} catch (IOException ex) {
+			throw new IllegalArgumentException("Error initializing CandleHome Msg: " + ex.getMessage());
+		}
+	}
+
 	public CandleHome() {
 
 	}
 
 	/**
-	 * Method persistCandleSeries.
+	 * Method setBulkInsertSize.
+	 * 
+	 * @param bulkInsertSize
+	 *            int
+	 */
+	static void setBulkInsertSize(int bulkInsertSize) {
+		_bulkInsertSize = bulkInsertSize;
+	}
+
+	/**
+	 * Method persistCandleSeries. When trade.candle.bulkInsertSize is set the
+	 * candles are inserted using multi row inserts and different contracts are
+	 * saved at the same time.
+	 * Otherwise each candle is persisted through the entity manager.
 	 * 
 	 * @param candleSeries
 	 *            CandleSeries
 	 * @throws Exception
 	 */
-	public synchronized void persistCandleSeries(final CandleSeries candleSeries) throws Exception {
+	public void persistCandleSeries(final CandleSeries candleSeries) throws Exception {
+		if (_bulkInsertSize > 0) {
+			Integer idContract = candleSeries.getContract().getIdContract();
+			Object contractLock = _contractLocks.get(idContract);
+			if (null == contractLock) {
+				_contractLocks.putIfAbsent(idContract, new Object());
+				contractLock = _contractLocks.get(idContract);
+			}
+			synchronized (contractLock) {
+				bulkInsertCandleSeries(candleSeries);
+			}
+		} else {
+			persistCandles(candleSeries);
+		}
+	}
+
+	/**
+	 * Method persistCandles.
+	 * 
+	 * @param candleSeries
+	 *            CandleSeries
+	 * @throws Exception
+	 */
+	private synchronized void persistCandles(final CandleSeries candleSeries) throws Exception {
 		Candle transientInstance = null;
 		try {
 			if (candleSeries.isEmpty())
@@ -142,6 +207,182 @@ public class CandleHome {
 		}
 	}
 
+	/**
+	 * Method bulkInsertCandleSeries. For each tradingday the candles for the
+	 * contract and bar size are deleted, as in persistCandles, and the series
+	 * is inserted in statements of trade.candle.bulkInsertSize rows. The
+	 * idCandle and version of each saved candle are then read back so the
+	 * candles in the series match their rows.
+	 * 
+	 * @param candleSeries
+	 *            CandleSeries
+	 * @throws Exception
+	 */
+	private void bulkInsertCandleSeries(final CandleSeries candleSeries) throws Exception {
+		try {
+			if (candleSeries.isEmpty())
+				return;
+
+			EntityManager entityManager = EntityManagerHelper.getEntityManager();
+			Tradingday tradingday = null;
+			List<Candle> candles = null;
+			Contract contract = findContractById(candleSeries.getContract().getIdContract());
+			final Map<Integer, List<Candle>> candlesByTradingday = new LinkedHashMap<Integer, List<Candle>>();
+			for (int i = 0; i < candleSeries.getItemCount(); i++) {
+				Candle candle = ((CandleItem) candleSeries.getDataItem(i)).getCandle();
+				if (!candle.getTradingday().equals(tradingday)) {
+					tradingday = persistTradingday(candle.getTradingday());
+					candles = candlesByTradingday.get(tradingday.getIdTradingDay());
+					if (null == candles) {
+						candles = new ArrayList<Candle>();
+						candlesByTradingday.put(tradingday.getIdTradingDay(), candles);
+					}
+				}
+				candle.setTradingday(tradingday);
+				candle.setContract(contract);
+				candles.add(candle);
+			}
+
+			Integer idContract = contract.getIdContract();
+			Integer barSize = candleSeries.getBarSize();
+			entityManager.getTransaction().begin();
+			for (Map.Entry<Integer, List<Candle>> entry : candlesByTradingday.entrySet()) {
+				String hqlDelete = "delete Candle where idContract = :idContract and idTradingday = :idTradingday and barSize = :barSize";
+				entityManager.createQuery(hqlDelete).setParameter("idContract", idContract)
+						.setParameter("idTradingday", entry.getKey()).setParameter("barSize", barSize)
+						.executeUpdate();
+				candles = entry.getValue();
+				for (int fromIndex = 0; fromIndex < candles.size(); fromIndex = fromIndex + _bulkInsertSize) {
+					insertCandles(entityManager,
+							candles.subList(fromIndex, Math.min(fromIndex + _bulkInsertSize, candles.size())));
+				}
+				setIdCandles(entityManager, idContract, entry.getKey(), barSize, candles);
+			}
+			entityManager.getTransaction().commit();
+		} catch (Exception re) {
+			EntityManagerHelper.logError("Error bulkInsertCandleSeries failed :" + re.getMessage(), re);
+			EntityManagerHelper.rollback();
+			throw re;
+		} finally {
+			EntityManagerHelper.close();
+		}
+	}
+
+	/**
+	 * Method setIdCandles. Read back the saved candles for the contract,
+	 * tradingday and bar size and set the idCandle and version of the matching
+	 * candle by start period.
+	 * 
+	 * @param entityManager
+	 *            EntityManager
+	 * @param idContract
+	 *            Integer
+	 * @param idTradingday
+	 *            Integer
+	 * @param barSize
+	 *            Integer
+	 * @param candles
+	 *            List<Candle>
+	 */
+	private void setIdCandles(EntityManager entityManager, Integer idContract, Integer idTradingday,
+			Integer barSize, List<Candle> candles) {
+		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Candle> query = builder.createQuery(Candle.class);
+		Root<Candle> from = query.from(Candle.class);
+		query.select(from);
+		Join<Candle, Contract> contract = from.join("contract");
+		Join<Candle, Tradingday> tradingday = from.join("tradingday");
+		query.where(builder.equal(contract.get("idContract"), idContract),
+				builder.equal(tradingday.get("idTradingDay"), idTradingday),
+				builder.equal(from.get("barSize"), barSize));
+		final Map<Instant, Candle> items = new HashMap<Instant, Candle>();
+		for (Candle item : entityManager.createQuery(query).getResultList()) {
+			items.put(item.getStartPeriod().toInstant(), item);
+		}
+		for (Candle candle : candles) {
+			Candle item = items.get(candle.getStartPeriod().toInstant());
+			if (null != item) {
+				candle.setIdCandle(item.getIdCandle());
+				candle.setVersion(item.getVersion());
+			}
+		}
+	}
+
+	/**
+	 * Method persistTradingday. Find the tradingday or save it if it does not
+	 * exist. This is locked so two contracts cannot save the same tradingday.
+	 * 
+	 * @param transientInstance
+	 *            Tradingday
+	 * @return Tradingday
+	 */
+	private Tradingday persistTradingday(Tradingday transientInstance) {
+		synchronized (_tradingdayLock) {
+			Tradingday tradingday = null;
+			if (null == transientInstance.getIdTradingDay()) {
+				tradingday = findTradingdayByDate(transientInstance.getOpen(), transientInstance.getClose());
+			} else {
+				tradingday = findTradingdayById(transientInstance.getIdTradingDay());
+			}
+			if (null == tradingday) {
+				EntityManager entityManager = EntityManagerHelper.getEntityManager();
+				entityManager.getTransaction().begin();
+				entityManager.persist(transientInstance);
+				entityManager.getTransaction().commit();
+				tradingday = transientInstance;
+			}
+			return tradingday;
+		}
+	}
+
+	/**
+	 * Method insertCandles. Insert the candles in one statement.
+	 * 
+	 * @param entityManager
+	 *            EntityManager
+	 * @param candles
+	 *            List<Candle>
+	 */
+	private void insertCandles(EntityManager entityManager, List<Candle> candles) {
+		StringBuffer sql = new StringBuffer(INSERT_CANDLE);
+		for (int row = 0; row < candles.size(); row++) {
+			if (row > 0)
+				sql.append(", ");
+			sql.append(INSERT_CANDLE_VALUES);
+		}
+		sql.append(INSERT_CANDLE_UPDATE);
+		Query query = entityManager.createNativeQuery(sql.toString());
+		int index = 1;
+		for (Candle candle : candles) {
+			query.setParameter(index++, candle.getOpen());
+			query.setParameter(index++, candle.getHigh());
+			query.setParameter(index++, candle.getLow());
+			query.setParameter(index++, candle.getClose());
+			query.setParameter(index++, candle.getPeriod());
+			query.setParameter(index++, toTimestamp(candle.getStartPeriod()));
+			query.setParameter(index++, toTimestamp(candle.getEndPeriod()));
+			query.setParameter(index++, candle.getBarSize());
+			query.setParameter(index++, candle.getTradeCount());
+			query.setParameter(index++, candle.getVolume());
+			query.setParameter(index++, candle.getVwap());
+			query.setParameter(index++, toTimestamp(candle.getLastUpdateDate()));
+			query.setParameter(index++, candle.getContract().getIdContract());
+			query.setParameter(index++, candle.getTradingday().getIdTradingDay());
+		}
+		query.executeUpdate();
+	}
+
+	/**
+	 * Method toTimestamp.
+	 * 
+	 * @param value
+	 *            ZonedDateTime
+	 * @return Timestamp
+	 */
+	private static Timestamp toTimestamp(ZonedDateTime value) {
+		return null == value ? null : Timestamp.from(value.toInstant());
+	}
+
 	/**
 	 * Method findByContractAndDateRange.
 	 * 
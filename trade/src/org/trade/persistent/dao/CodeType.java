@@ -66,7 +66,7 @@ import org.trade.core.dao.Aspect;
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
 @DiscriminatorColumn(name = "type", discriminatorType = DiscriminatorType.STRING)
 @DiscriminatorValue("CodeType")
-public class CodeType extends Aspect implements java.io.Serializable {
+public class CodeType extends Aspect implements java.io.Serializable, Cloneable {
 
 	private static final long serialVersionUID = 2273276207080568947L;
 
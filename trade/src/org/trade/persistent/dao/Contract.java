@@ -62,6 +62,7 @@ import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
 
 import org.trade.core.dao.Aspect;
+import org.trade.core.util.QuoteSnapshot;
 
 /**
  * Contract generated by hbm2java
@@ -128,9 +129,11 @@ public class Contract extends Aspect implements Serializable, Cloneable {
 	private BigDecimal lastAskPrice = new BigDecimal(0);
 	private BigDecimal lastBidPrice = new BigDecimal(0);
 	private BigDecimal lastPrice = new BigDecimal(0);
+	private transient QuoteSnapshot quote = null;
 
 	private TradePosition tradePosition;
 	private List<Tradestrategy> tradestrategies = Collections.synchronizedList(new ArrayList<Tradestrategy>(0));
+	private volatile List<Tradestrategy> sortedTradestrategies = Collections.emptyList();
 	private List<TradePosition> tradePositions = new ArrayList<TradePosition>(0);
 	private List<Candle> candles = new ArrayList<Candle>(0);
 
@@ -450,6 +453,9 @@ public class Contract extends Aspect implements Serializable, Cloneable {
 	 */
 	@Transient
 	public BigDecimal getLastPrice() {
+		QuoteSnapshot quote = this.quote;
+		if (null != quote && quote.getLast() > 0)
+			return quote.getLastPrice();
 		return this.lastPrice;
 	}
 
@@ -470,6 +476,9 @@ public class Contract extends Aspect implements Serializable, Cloneable {
 	 */
 	@Transient
 	public BigDecimal getLastAskPrice() {
+		QuoteSnapshot quote = this.quote;
+		if (null != quote && quote.getAsk() > 0)
+			return quote.getAskPrice();
 		return this.lastAskPrice;
 	}
 
@@ -490,6 +499,9 @@ public class Contract extends Aspect implements Serializable, Cloneable {
 	 */
 	@Transient
 	public BigDecimal getLastBidPrice() {
+		QuoteSnapshot quote = this.quote;
+		if (null != quote && quote.getBid() > 0)
+			return quote.getBidPrice();
 		return this.lastBidPrice;
 	}
 
@@ -503,6 +515,34 @@ public class Contract extends Aspect implements Serializable, Cloneable {
 		this.lastBidPrice = lastBidPrice;
 	}
 
+	/**
+	 * Method getQuote.
+	 * 
+	 * @return QuoteSnapshot the market data quote or null if there is no
+	 *         market data.
+	 */
+	@Transient
+	public QuoteSnapshot getQuote() {
+		return this.quote;
+	}
+
+	/**
+	 * Method setQuote. While a quote is set the last, ask and bid prices are
+	 * read from it. When the quote is removed its prices are kept as the last
+	 * prices.
+	 * 
+	 * @param quote
+	 *            QuoteSnapshot
+	 */
+	public void setQuote(QuoteSnapshot quote) {
+		if (null == quote && null != this.quote) {
+			this.lastPrice = this.getLastPrice();
+			this.lastAskPrice = this.getLastAskPrice();
+			this.lastBidPrice = this.getLastBidPrice();
+		}
+		this.quote = quote;
+	}
+
 	/**
 	 * Method getLocalSymbol.
 	 * 
@@ -911,7 +951,10 @@ public class Contract extends Aspect implements Serializable, Cloneable {
 	 *            Tradestrategy
 	 */
 	public void addTradestrategy(Tradestrategy tradestrategy) {
-		this.tradestrategies.add(tradestrategy);
+		synchronized (this.tradestrategies) {
+			this.tradestrategies.add(tradestrategy);
+			sortTradestrategies();
+		}
 	}
 
 	/**
@@ -921,11 +964,14 @@ public class Contract extends Aspect implements Serializable, Cloneable {
 	 *            Tradestrategy
 	 */
 	public boolean removeTradestrategy(Tradestrategy tradestrategy) {
-		for (ListIterator<Tradestrategy> itemIter = this.tradestrategies.listIterator(); itemIter.hasNext();) {
-			Tradestrategy item = itemIter.next();
-			if (item.equals(tradestrategy)) {
-				itemIter.remove();
-				return true;
+		synchronized (this.tradestrategies) {
+			for (ListIterator<Tradestrategy> itemIter = this.tradestrategies.listIterator(); itemIter.hasNext();) {
+				Tradestrategy item = itemIter.next();
+				if (item.equals(tradestrategy)) {
+					itemIter.remove();
+					sortTradestrategies();
+					return true;
+				}
 			}
 		}
 		return false;
@@ -954,6 +1000,32 @@ public class Contract extends Aspect implements Serializable, Cloneable {
 	 */
 	public void setTradestrategies(List<Tradestrategy> tradestrategies) {
 		this.tradestrategies = tradestrategies;
+		synchronized (this.tradestrategies) {
+			sortTradestrategies();
+		}
+	}
+
+	/**
+	 * Method getSortedTradestrategies. A copy of the tradestrategies sorted by
+	 * tradingday and bar size. The copy is made when a tradestrategy is added
+	 * or removed so it can be read on every bar without sorting or locking.
+	 * Tradestrategies added directly to getTradestrategies() are not included.
+	 * 
+	 * @return List<Tradestrategy> that cannot be changed.
+	 */
+	@Transient
+	public List<Tradestrategy> getSortedTradestrategies() {
+		return this.sortedTradestrategies;
+	}
+
+	/**
+	 * Method sortTradestrategies. Must be called holding the tradestrategies
+	 * lock.
+	 */
+	private void sortTradestrategies() {
+		List<Tradestrategy> sorted = new ArrayList<Tradestrategy>(this.tradestrategies);
+		Collections.sort(sorted, Tradestrategy.TRADINGDAY_CONTRACT);
+		this.sortedTradestrategies = Collections.unmodifiableList(sorted);
 	}
 
 	/**
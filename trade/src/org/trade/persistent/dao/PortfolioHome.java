@@ -47,6 +47,7 @@ import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import org.trade.core.dao.AspectCache;
 import org.trade.core.dao.EntityManagerHelper;
 import org.trade.core.util.CoreUtils;
 import org.trade.core.util.TradingCalendar;
@@ -210,6 +211,7 @@ public class PortfolioHome {
 				entityManager.persist(item);
 			}
 			entityManager.getTransaction().commit();
+			AspectCache.invalidate(Portfolio.class);
 		} catch (Exception re) {
 			EntityManagerHelper.rollback();
 			throw re;
@@ -272,6 +274,8 @@ public class PortfolioHome {
 				entityManager.persist(portfolio);
 			}
 			entityManager.getTransaction().commit();
+			AspectCache.invalidate(Portfolio.class);
+			AspectCache.invalidate(Account.class);
 			return (portfolio == null ? instance : portfolio);
 		} catch (Exception re) {
 			EntityManagerHelper.rollback();
@@ -66,7 +66,7 @@ import org.trade.core.util.TradingCalendar;
  */
 @Entity
 @Table(name = "rule")
-public class Rule extends Aspect implements java.io.Serializable {
+public class Rule extends Aspect implements java.io.Serializable, Cloneable {
 
 	/**
 	 * 
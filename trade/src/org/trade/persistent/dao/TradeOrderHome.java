@@ -35,6 +35,7 @@
  */
 package org.trade.persistent.dao;
 
+import java.time.ZonedDateTime;
 import java.util.List;
 
 import javax.ejb.Stateless;
@@ -43,10 +44,13 @@ import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import org.trade.core.dao.AspectCache;
 import org.trade.core.dao.EntityManagerHelper;
 import org.trade.core.util.TradingCalendar;
+import org.trade.dictionary.valuetype.OrderStatus;
 
 /**
  */
@@ -81,10 +85,14 @@ public class TradeOrderHome {
 				}
 				entityManager.persist(transientInstance);
 				entityManager.getTransaction().commit();
+				if (null != transientInstance.getTradePosition())
+					AspectCache.invalidate(transientInstance.getTradePosition());
 				return transientInstance;
 			} else {
 				TradeOrder instance = entityManager.merge(transientInstance);
 				entityManager.getTransaction().commit();
+				if (null != instance.getTradePosition())
+					AspectCache.invalidate(instance.getTradePosition());
 				transientInstance.setVersion(instance.getVersion());
 				return instance;
 			}
@@ -155,6 +163,43 @@ public class TradeOrderHome {
 		}
 	}
 
+	/**
+	 * Method findActiveTradeOrders. Returns the orders that are still active
+	 * i.e. not filled, cancelled or inactive plus those updated on or after the
+	 * lastUpdateDate. The order fills are read with the orders.
+	 * 
+	 * @param lastUpdateDate
+	 *            ZonedDateTime
+	 * @return List<TradeOrder>
+	 */
+	public List<TradeOrder> findActiveTradeOrders(ZonedDateTime lastUpdateDate) {
+
+		try {
+			EntityManager entityManager = EntityManagerHelper.getEntityManager();
+			entityManager.getTransaction().begin();
+			CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+			CriteriaQuery<TradeOrder> query = builder.createQuery(TradeOrder.class);
+			Root<TradeOrder> from = query.from(TradeOrder.class);
+			query.select(from);
+			Predicate active = builder.and(builder.equal(from.get("isFilled"), new Boolean(false)),
+					builder.not(from.get("status").in(OrderStatus.CANCELLED, OrderStatus.INACTIVE)));
+			Expression<ZonedDateTime> updateDate = from.get("lastUpdateDate");
+			query.where(builder.or(active, builder.greaterThanOrEqualTo(updateDate, lastUpdateDate)));
+			List<TradeOrder> items = entityManager.createQuery(query).getResultList();
+			for (TradeOrder tradeOrder : items) {
+				tradeOrder.getTradeOrderfills().size();
+			}
+			entityManager.getTransaction().commit();
+			return items;
+
+		} catch (Exception re) {
+			EntityManagerHelper.rollback();
+			throw re;
+		} finally {
+			EntityManagerHelper.close();
+		}
+	}
+
 	/**
 	 * Method findTradeOrderByMaxKey.
 	 * 
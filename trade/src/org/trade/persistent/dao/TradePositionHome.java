@@ -38,6 +38,7 @@ package org.trade.persistent.dao;
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
 
+import org.trade.core.dao.AspectCache;
 import org.trade.core.dao.EntityManagerHelper;
 
 /**
@@ -66,6 +67,7 @@ public class TradePositionHome {
 				entityManager.remove(tradePosition);
 			}
 			entityManager.getTransaction().commit();
+			AspectCache.invalidate(transientInstance);
 
 		} catch (Exception re) {
 			EntityManagerHelper.rollback();
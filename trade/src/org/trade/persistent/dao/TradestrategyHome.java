@@ -111,6 +111,43 @@ public class TradestrategyHome {
 		}
 	}
 
+	/**
+	 * Method findContractIdById.
+	 * 
+	 * @param id
+	 *            Integer
+	 * @return Integer the idContract of the Tradestrategy.
+	 */
+	public synchronized Integer findContractIdById(Integer id) {
+
+		try {
+			EntityManager entityManager = EntityManagerHelper.getEntityManager();
+			entityManager.getTransaction().begin();
+			CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+			CriteriaQuery<Integer> query = builder.createQuery(Integer.class);
+			Root<Tradestrategy> from = query.from(Tradestrategy.class);
+			Join<Tradestrategy, Contract> contract = from.join("contract");
+
+			CriteriaQuery<Integer> select = query.select(contract.<Integer> get("idContract"));
+			Predicate predicate = builder.equal(from.get("idTradeStrategy"), id);
+			query.where(predicate);
+			TypedQuery<Integer> typedQuery = entityManager.createQuery(select);
+			List<Integer> items = typedQuery.getResultList();
+
+			entityManager.getTransaction().commit();
+			if (items.size() > 0) {
+				return items.get(0);
+			}
+			return null;
+
+		} catch (Exception re) {
+			EntityManagerHelper.rollback();
+			throw re;
+		} finally {
+			EntityManagerHelper.close();
+		}
+	}
+
 	/**
 	 * Method findVersionById.
 	 * 
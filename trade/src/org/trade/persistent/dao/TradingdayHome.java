@@ -37,7 +37,9 @@ package org.trade.persistent.dao;
 
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
@@ -45,17 +47,28 @@ import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Fetch;
 import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import org.trade.core.dao.AspectCache;
 import org.trade.core.dao.EntityManagerHelper;
 
 /**
+ * Tradingdays are loaded with a fetch plan rather than by touching the lazy
+ * collections of each Tradestrategy. The grid plan loads the tradestrategies
+ * with their contract, strategy, portfolio and orders. The strategy plan also
+ * loads the portfolio accounts and indicator series needed to run a strategy.
+ * Each collection is loaded for all the tradestrategies in one query per
+ * FETCH_BATCH_SIZE tradestrategies.
  */
 @Stateless
 public class TradingdayHome {
 
+	private static final int FETCH_BATCH_SIZE = 500;
+
 	public TradingdayHome() {
 
 	}
@@ -162,6 +175,9 @@ public class TradingdayHome {
 				}
 			}
 			entityManager.getTransaction().commit();
+			AspectCache.invalidate(Tradingday.class);
+			AspectCache.invalidate(Tradestrategy.class);
+			AspectCache.invalidate(Contract.class);
 			detachedInstance.setDirty(false);
 
 		} catch (Exception re) {
@@ -187,10 +203,8 @@ public class TradingdayHome {
 			entityManager.getTransaction().begin();
 			Tradingday instance = entityManager.find(Tradingday.class, id);
 			if (null != instance) {
-				for (Tradestrategy tradestrategy : instance.getTradestrategies()) {
-					tradestrategy.getStrategy().getIndicatorSeries().size();
-					tradestrategy.getTradeOrders().size();
-				}
+				fetchTradeOrders(entityManager, instance.getTradestrategies());
+				fetchStrategyData(entityManager, instance.getTradestrategies());
 			}
 			entityManager.getTransaction().commit();
 			return instance;
@@ -203,7 +217,8 @@ public class TradingdayHome {
 	}
 
 	/**
-	 * Method findTradingdaysByDateRange.
+	 * Method findTradingdaysByDateRange. Load the tradingdays using the
+	 * strategy plan.
 	 * 
 	 * @param startDate
 	 *            ZonedDateTime
@@ -212,6 +227,23 @@ public class TradingdayHome {
 	 * @return Tradingdays
 	 */
 	public Tradingdays findTradingdaysByDateRange(ZonedDateTime startDate, ZonedDateTime endDate) {
+		return findTradingdaysByDateRange(startDate, endDate, true);
+	}
+
+	/**
+	 * Method findTradingdaysByDateRange.
+	 * 
+	 * @param startDate
+	 *            ZonedDateTime
+	 * @param endDate
+	 *            ZonedDateTime
+	 * @param strategyData
+	 *            boolean false to use the grid plan, true to use the strategy
+	 *            plan.
+	 * @return Tradingdays
+	 */
+	public Tradingdays findTradingdaysByDateRange(ZonedDateTime startDate, ZonedDateTime endDate,
+			boolean strategyData) {
 
 		try {
 			EntityManager entityManager = EntityManagerHelper.getEntityManager();
@@ -220,7 +252,11 @@ public class TradingdayHome {
 			CriteriaBuilder builder = entityManager.getCriteriaBuilder();
 			CriteriaQuery<Tradingday> query = builder.createQuery(Tradingday.class);
 			Root<Tradingday> from = query.from(Tradingday.class);
-			query.select(from);
+			Fetch<Tradingday, Tradestrategy> tradestrategies = from.fetch("tradestrategies", JoinType.LEFT);
+			tradestrategies.fetch("contract", JoinType.LEFT).fetch("tradePosition", JoinType.LEFT);
+			tradestrategies.fetch("strategy", JoinType.LEFT).fetch("strategyManager", JoinType.LEFT);
+			tradestrategies.fetch("portfolio", JoinType.LEFT);
+			query.select(from).distinct(true);
 			query.orderBy(builder.desc(from.get("open")));
 			List<Predicate> predicates = new ArrayList<Predicate>();
 
@@ -236,14 +272,14 @@ public class TradingdayHome {
 			query.where(predicates.toArray(new Predicate[] {}));
 			TypedQuery<Tradingday> typedQuery = entityManager.createQuery(query);
 			List<Tradingday> items = typedQuery.getResultList();
+			List<Tradestrategy> allTradestrategies = new ArrayList<Tradestrategy>();
 			for (Tradingday tradingday : items) {
 				tradingdays.add(tradingday);
-				for (Tradestrategy tradestrategy : tradingday.getTradestrategies()) {
-					tradestrategy.getTradeOrders().size();
-					tradestrategy.getPortfolio().getPortfolioAccounts().size();
-					tradestrategy.getStrategy().getIndicatorSeries().size();
-				}
+				allTradestrategies.addAll(tradingday.getTradestrategies());
 			}
+			fetchTradeOrders(entityManager, allTradestrategies);
+			if (strategyData)
+				fetchStrategyData(entityManager, allTradestrategies);
 			entityManager.getTransaction().commit();
 			return tradingdays;
 
@@ -279,10 +315,8 @@ public class TradingdayHome {
 				query.where(builder.equal(from.get("close"), closeDate));
 			List<Tradingday> items = entityManager.createQuery(query).getResultList();
 			for (Tradingday tradingday : items) {
-				for (Tradestrategy tradestrategy : tradingday.getTradestrategies()) {
-					tradestrategy.getTradeOrders().size();
-					tradestrategy.getStrategy().getIndicatorSeries().size();
-				}
+				fetchTradeOrders(entityManager, tradingday.getTradestrategies());
+				fetchStrategyData(entityManager, tradingday.getTradestrategies());
 			}
 			entityManager.getTransaction().commit();
 			if (items.size() > 0) {
@@ -298,6 +332,75 @@ public class TradingdayHome {
 		}
 	}
 
+	/**
+	 * Method fetchTradeOrders. Load the orders of the tradestrategies into the
+	 * persistence context.
+	 * 
+	 * @param entityManager
+	 *            EntityManager
+	 * @param tradestrategies
+	 *            List<Tradestrategy>
+	 */
+	private void fetchTradeOrders(EntityManager entityManager, List<Tradestrategy> tradestrategies) {
+
+		List<Integer> ids = new ArrayList<Integer>();
+		for (Tradestrategy tradestrategy : tradestrategies) {
+			if (null != tradestrategy.getIdTradeStrategy())
+				ids.add(tradestrategy.getIdTradeStrategy());
+		}
+		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+		for (int i = 0; i < ids.size(); i = i + FETCH_BATCH_SIZE) {
+			CriteriaQuery<Tradestrategy> query = builder.createQuery(Tradestrategy.class);
+			Root<Tradestrategy> from = query.from(Tradestrategy.class);
+			Fetch<Tradestrategy, TradeOrder> tradeOrders = from.fetch("tradeOrders", JoinType.LEFT);
+			tradeOrders.fetch("tradePosition", JoinType.LEFT);
+			tradeOrders.fetch("tradestrategyId", JoinType.LEFT);
+			query.select(from).distinct(true);
+			query.where(from.get("idTradeStrategy").in(ids.subList(i, Math.min(i + FETCH_BATCH_SIZE, ids.size()))));
+			entityManager.createQuery(query).getResultList();
+		}
+	}
+
+	/**
+	 * Method fetchStrategyData. Load the portfolio accounts and indicator
+	 * series of the tradestrategies into the persistence context.
+	 * 
+	 * @param entityManager
+	 *            EntityManager
+	 * @param tradestrategies
+	 *            List<Tradestrategy>
+	 */
+	private void fetchStrategyData(EntityManager entityManager, List<Tradestrategy> tradestrategies) {
+
+		Set<Integer> idPortfolios = new LinkedHashSet<Integer>();
+		Set<Integer> idStrategies = new LinkedHashSet<Integer>();
+		for (Tradestrategy tradestrategy : tradestrategies) {
+			if (null != tradestrategy.getPortfolio() && null != tradestrategy.getPortfolio().getIdPortfolio())
+				idPortfolios.add(tradestrategy.getPortfolio().getIdPortfolio());
+			if (null != tradestrategy.getStrategy() && null != tradestrategy.getStrategy().getIdStrategy())
+				idStrategies.add(tradestrategy.getStrategy().getIdStrategy());
+		}
+		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+		List<Integer> ids = new ArrayList<Integer>(idPortfolios);
+		for (int i = 0; i < ids.size(); i = i + FETCH_BATCH_SIZE) {
+			CriteriaQuery<Portfolio> query = builder.createQuery(Portfolio.class);
+			Root<Portfolio> from = query.from(Portfolio.class);
+			from.fetch("portfolioAccounts", JoinType.LEFT).fetch("account", JoinType.LEFT);
+			query.select(from).distinct(true);
+			query.where(from.get("idPortfolio").in(ids.subList(i, Math.min(i + FETCH_BATCH_SIZE, ids.size()))));
+			entityManager.createQuery(query).getResultList();
+		}
+		ids = new ArrayList<Integer>(idStrategies);
+		for (int i = 0; i < ids.size(); i = i + FETCH_BATCH_SIZE) {
+			CriteriaQuery<Strategy> query = builder.createQuery(Strategy.class);
+			Root<Strategy> from = query.from(Strategy.class);
+			from.fetch("indicatorSeries", JoinType.LEFT);
+			query.select(from).distinct(true);
+			query.where(from.get("idStrategy").in(ids.subList(i, Math.min(i + FETCH_BATCH_SIZE, ids.size()))));
+			entityManager.createQuery(query).getResultList();
+		}
+	}
+
 	/**
 	 * Method findStrategyByName.
 	 * 
@@ -51,7 +51,6 @@ import java.util.ListIterator;
 import java.util.Scanner;
 
 import org.trade.core.dao.Aspect;
-import org.trade.core.lookup.DBTableLookupServiceProvider;
 import org.trade.core.properties.ConfigProperties;
 import org.trade.core.util.TradingCalendar;
 import org.trade.dictionary.valuetype.BarSize;
@@ -393,10 +392,6 @@ public class Tradingdays extends Aspect implements java.io.Serializable {
 		 */
 		// FileReader fileReader = null;
 		// BufferedReader bufferedReader = null;
-		/*
-		 * Refresh the decode tables.
-		 */
-		DBTableLookupServiceProvider.clearLookup();
 		try (FileReader fileReader = new FileReader(fileName);
 				BufferedReader bufferedReader = new BufferedReader(fileReader)) {
 
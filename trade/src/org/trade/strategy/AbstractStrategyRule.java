@@ -39,14 +39,17 @@ import java.io.Serializable;
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
 
+import javax.swing.SwingUtilities;
 import javax.swing.event.EventListenerList;
 
 import org.jfree.data.general.SeriesChangeEvent;
 import org.jfree.data.general.SeriesChangeListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.trade.broker.BackTestOrderBook;
 import org.trade.broker.BrokerModel;
 import org.trade.broker.BrokerModelException;
+import org.trade.broker.client.Broker;
 import org.trade.core.factory.ClassFactory;
 import org.trade.core.util.CoreUtils;
 import org.trade.core.util.TradingCalendar;
@@ -267,6 +270,57 @@ public abstract class AbstractStrategyRule extends Worker implements SeriesChang
 
 	protected Void doInBackground() {
 
+		try {
+			if (startStrategy()) {
+				do {
+					/*
+					 * Lock until a candle arrives. First time in we process
+					 * the current candle.
+					 */
+					synchronized (lockStrategyWorker) {
+						while (!seriesChanged) {
+							lockStrategyWorker.wait();
+						}
+						seriesChanged = false;
+					}
+				} while (processSeriesChanged() && !this.isDone() && !this.isCancelled());
+			}
+		} catch (InterruptedException interExp) {
+			// Do nothing.
+		} finally {
+			/*
+			 * Ok we are complete clean up.
+			 */
+		}
+		return null;
+	}
+
+	/**
+	 * Method execute. When back testing with the event loop the back test
+	 * broker for this tradestrategy runs the strategy on its own thread for
+	 * each candle. Otherwise the strategy runs in its own thread.
+	 * 
+	 * @see org.trade.strategy.StrategyRule#execute()
+	 */
+	public void execute() {
+		if (!this.brokerModel.isConnected()) {
+			Broker backTestBroker = this.brokerModel.getBackTestBroker(this.idTradestrategy);
+			if (null != backTestBroker && backTestBroker.addStrategy(this)) {
+				return;
+			}
+		}
+		super.execute();
+	}
+
+	/**
+	 * Method startStrategy. Get the instances of the tradestrategy and
+	 * position orders for this strategy. The current candle if there is one
+	 * will be processed on the first series change.
+	 * 
+	 * @return boolean true if the strategy started.
+	 */
+	public boolean startStrategy() {
+
 		/*
 		 * We initialize here to keep this instances as part of this worker
 		 * thread
@@ -293,120 +347,150 @@ public abstract class AbstractStrategyRule extends Worker implements SeriesChang
 			seriesChanged = true;
 
 			reFreshPositionOrders();
+			return true;
 
-			do {
-				/*
-				 * Lock until a candle arrives. First time in we process the
-				 * current candle.
-				 */
-				synchronized (lockStrategyWorker) {
-					while (!seriesChanged) {
-						lockStrategyWorker.wait();
-					}
-					seriesChanged = false;
+		} catch (Exception ex) {
+			_log.error("Error StrategyWorker exception: " + getSymbol() + " class: " + this.getClass().getName()
+					+ " Msg: " + ex.getMessage(), ex);
+			error(1, 100, "Error StrategyWorker exception: " + ex.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * Method runSeriesChanged. Process the candle series change if there is
+	 * one waiting. This is used by the back test broker event loop in place of
+	 * this strategies worker thread.
+	 * 
+	 * @return boolean false if the strategy has finished.
+	 */
+	public boolean runSeriesChanged() {
+		synchronized (lockStrategyWorker) {
+			if (!seriesChanged) {
+				return !this.isCancelled();
+			}
+			seriesChanged = false;
+		}
+		return processSeriesChanged() && !this.isCancelled();
+	}
+
+	/**
+	 * Method completeStrategy. Mark the strategy as done and clean up. This is
+	 * used by the back test broker event loop in place of this strategies
+	 * worker thread finishing. As with the worker the clean up is run on the
+	 * event dispatch thread as the listeners are Swing panels.
+	 */
+	public void completeStrategy() {
+		if (!this.isDone) {
+			this.isDone = true;
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					done();
 				}
+			});
+		}
+	}
 
-				if (!this.isCancelled()) {
+	/**
+	 * Method processSeriesChanged. Fire the rules for the current candle.
+	 * 
+	 * @return boolean false if the strategy has finished.
+	 */
+	private boolean processSeriesChanged() {
 
+		try {
+			if (!this.isCancelled()) {
+
+				/*
+				 * If candle count > than current we have a new candle
+				 * 
+				 * If equal then we have an updated candle.
+				 * 
+				 * The currentCandleCount is greater than the candle series.
+				 * Then another thread must have cleared the candle series so
+				 * shut down the strategy.
+				 */
+				CandleSeries candleSeries = this.tradestrategy.getStrategyData().getBaseCandleSeries();
+
+				boolean newCandle = false;
+				if ((candleSeries.getItemCount() - 1) > currentCandleCount) {
 					/*
-					 * If candle count > than current we have a new candle
-					 * 
-					 * If equal then we have an updated candle.
-					 * 
-					 * The currentCandleCount is greater than the candle series.
-					 * Then another thread must have cleared the candle series
-					 * so shut down the strategy.
+					 * Add one to the currentCandleCount until we catch up to
+					 * the candleSeries candle count. As it is possible the
+					 * candle count in another thread gets ahead of this thread
+					 * and so this thread is playing catch up.
 					 */
-					CandleSeries candleSeries = this.tradestrategy.getStrategyData().getBaseCandleSeries();
-
-					boolean newCandle = false;
-					if ((candleSeries.getItemCount() - 1) > currentCandleCount) {
-						/*
-						 * Add one to the currentCandleCount until we catch up
-						 * to the candleSeries candle count. As it is possible
-						 * the candle count in another thread gets ahead of this
-						 * thread and so this thread is playing catch up.
-						 */
-						currentCandleCount++;
-						newCandle = true;
+					currentCandleCount++;
+					newCandle = true;
 
-					} else if (currentCandleCount > (candleSeries.getItemCount() - 1)) {
+				} else if (currentCandleCount > (candleSeries.getItemCount() - 1)) {
 
-						_log.info("Cancelled as candleSeries have been cleared Symbol: " + getSymbol() + " class: "
-								+ this.getClass().getName());
+					_log.info("Cancelled as candleSeries have been cleared Symbol: " + getSymbol() + " class: "
+							+ this.getClass().getName());
+					this.cancel();
+					return false;
+				} else if (currentCandleCount == (candleSeries.getItemCount() - 1)) {
+					/*
+					 * We have an updated candle. If we are listening for
+					 * candles and none are arriving then close the strategy.
+					 */
+					if (currentCandleCount == -1 && listeningCandles) {
 						this.cancel();
-						break;
-					} else if (currentCandleCount == (candleSeries.getItemCount() - 1)) {
-						/*
-						 * We have an updated candle. If we are listening for
-						 * candles and none are arriving then close the
-						 * strategy.
-						 */
-						if (currentCandleCount == -1 && listeningCandles) {
-							this.cancel();
-							break;
-						}
+						return false;
 					}
+				}
 
-					if (currentCandleCount > -1) {
+				if (currentCandleCount > -1) {
+					/*
+					 * Check the candle is during the trading range and fire the
+					 * rules.
+					 */
+					if (!getCurrentCandle().getPeriod().getStart()
+							.isBefore(this.tradestrategy.getTradingday().getOpen())) {
 						/*
-						 * Check the candle is during the trading range and fire
-						 * the rules.
+						 * Refresh the orders in the positionOrders as these may
+						 * have been filled via another thread. This gets the
+						 * Orders/OpenPosition and Contract
 						 */
-						if (!getCurrentCandle().getPeriod().getStart()
-								.isBefore(this.tradestrategy.getTradingday().getOpen())) {
-							/*
-							 * Refresh the orders in the positionOrders as these
-							 * may have been filled via another thread. This
-							 * gets the Orders/OpenPosition and Contract
-							 */
-							reFreshPositionOrders();
-							this.tradestrategy.getContract()
-									.setLastAskPrice(candleSeries.getContract().getLastAskPrice());
-							this.tradestrategy.getContract()
-									.setLastBidPrice(candleSeries.getContract().getLastBidPrice());
-							this.tradestrategy.getContract().setLastPrice(candleSeries.getContract().getLastPrice());
-							runStrategy(candleSeries, newCandle);
-							strategyLastFired = TradingCalendar.getDateTimeNowMarketTimeZone();
-						}
+						reFreshPositionOrders();
+						this.tradestrategy.getContract().setLastAskPrice(candleSeries.getContract().getLastAskPrice());
+						this.tradestrategy.getContract().setLastBidPrice(candleSeries.getContract().getLastBidPrice());
+						this.tradestrategy.getContract().setLastPrice(candleSeries.getContract().getLastPrice());
+						runStrategy(candleSeries, newCandle);
+						strategyLastFired = TradingCalendar.getDateTimeNowMarketTimeZone();
 					}
+				}
+				/*
+				 * First time in add a listener for new candle.
+				 */
+				if (!listeningCandles) {
+
+					/*
+					 * Start listening for new candles and candle changes.
+					 */
+					this.strategyData.getBaseCandleSeries().addChangeListener(this);
 					/*
-					 * First time in add a listener for new candle.
+					 * Tell the worker if listening. Note only for back testing
+					 * that the strategy is running.
 					 */
-					if (!listeningCandles) {
+					this.fireStrategyStarted(this.getClass().getSimpleName(), this.tradestrategy);
+					listeningCandles = true;
 
-						/*
-						 * Start listening for new candles and candle changes.
-						 */
-						this.strategyData.getBaseCandleSeries().addChangeListener(this);
-						/*
-						 * Tell the worker if listening. Note only for back
-						 * testing that the strategy is running.
-						 */
-						this.fireStrategyStarted(this.getClass().getSimpleName(), this.tradestrategy);
-						listeningCandles = true;
-
-						_log.info("Started strategyClass: " + this.getClass().getName()
-								+ " engine doInBackground Symbol: " + this.symbol + " idTradestrategy: "
-								+ this.idTradestrategy);
-					} else {
-						this.fireRuleComplete(this.tradestrategy);
-					}
+					_log.info("Started strategyClass: " + this.getClass().getName()
+							+ " engine doInBackground Symbol: " + this.symbol + " idTradestrategy: "
+							+ this.idTradestrategy);
+				} else {
+					this.fireRuleComplete(this.tradestrategy);
 				}
+			}
+			return true;
 
-			} while (!this.isDone() && !this.isCancelled());
-		} catch (InterruptedException interExp) {
-			// Do nothing.
 		} catch (Exception ex) {
 			_log.error("Error StrategyWorker exception: " + getSymbol() + " class: " + this.getClass().getName()
 					+ " Msg: " + ex.getMessage(), ex);
 			error(1, 100, "Error StrategyWorker exception: " + ex.getMessage());
-		} finally {
-			/*
-			 * Ok we are complete clean up.
-			 */
 		}
-		return null;
+		return false;
 	}
 
 	/**
@@ -685,7 +769,9 @@ public abstract class AbstractStrategyRule extends Worker implements SeriesChang
 			if (null == orderKey)
 				throw new StrategyRuleException(1, 200, "Order Key cannot be null");
 
-			TradeOrder tradeOrder = tradePersistentModel.findTradeOrderByKey(orderKey);
+			BackTestOrderBook orderBook = BackTestOrderBook.getOrderBook(this.idTradestrategy);
+			TradeOrder tradeOrder = (null == orderBook ? tradePersistentModel.findTradeOrderByKey(orderKey)
+					: orderBook.getTradeOrder(orderKey));
 
 			if (null == action)
 				throw new StrategyRuleException(1, 201, "Action cannot be null");
@@ -1264,7 +1350,12 @@ public abstract class AbstractStrategyRule extends Worker implements SeriesChang
 		try {
 			this.getTradestrategyOrders().setStatus(status);
 			this.getTradestrategyOrders().setLastUpdateDate(TradingCalendar.getDateTimeNowMarketTimeZone());
-			this.tradestrategyOrders = this.tradePersistentModel.persistAspect(this.getTradestrategyOrders());
+			BackTestOrderBook orderBook = BackTestOrderBook.getOrderBook(this.idTradestrategy);
+			if (null == orderBook) {
+				this.tradestrategyOrders = this.tradePersistentModel.persistAspect(this.getTradestrategyOrders());
+			} else {
+				orderBook.setStatus(status);
+			}
 		} catch (Exception ex) {
 			throw new StrategyRuleException(1, 400, "Error updating tradestrategy status: " + ex.getMessage());
 		}
@@ -1288,6 +1379,69 @@ public abstract class AbstractStrategyRule extends Worker implements SeriesChang
 		return this.entryLimits;
 	}
 
+	/**
+	 * Method getParameter. Get the value of a strategy parameter. The value set
+	 * by a parameter sweep is used first, then the value saved for the
+	 * tradestrategy (Strategy Parms) otherwise the default value.
+	 * 
+	 * @param name
+	 *            String
+	 * @param defaultValue
+	 *            int
+	 * @return int
+	 * @throws StrategyRuleException
+	 */
+	public int getParameter(String name, int defaultValue) throws StrategyRuleException {
+		Number value = getParameterValue(name);
+		if (null == value)
+			return defaultValue;
+		return value.intValue();
+	}
+
+	/**
+	 * Method getParameter. Get the value of a strategy parameter. The value set
+	 * by a parameter sweep is used first, then the value saved for the
+	 * tradestrategy (Strategy Parms) otherwise the default value.
+	 * 
+	 * @param name
+	 *            String
+	 * @param defaultValue
+	 *            double
+	 * @return double
+	 * @throws StrategyRuleException
+	 */
+	public double getParameter(String name, double defaultValue) throws StrategyRuleException {
+		Number value = getParameterValue(name);
+		if (null == value)
+			return defaultValue;
+		return value.doubleValue();
+	}
+
+	/**
+	 * Method getParameterValue.
+	 * 
+	 * @param name
+	 *            String
+	 * @return Number the value or null if the parameter is not set.
+	 * @throws StrategyRuleException
+	 */
+	private Number getParameterValue(String name) throws StrategyRuleException {
+		try {
+			Object value = StrategyParameters.getValue(name);
+			if (null == value) {
+				value = this.getTradestrategy().getValueCode(name);
+			}
+			if (null == value)
+				return null;
+			if (value instanceof Number)
+				return (Number) value;
+			return new BigDecimal(value.toString());
+		} catch (Exception ex) {
+			throw new StrategyRuleException(1, 570,
+					"Error getting strategy parameter: " + name + " Msg: " + ex.getMessage());
+		}
+	}
+
 	/**
 	 * Method getTradestrategy.
 	 * 
@@ -1323,8 +1477,13 @@ public abstract class AbstractStrategyRule extends Worker implements SeriesChang
 
 	public void reFreshPositionOrders() throws StrategyRuleException {
 		try {
-			this.tradestrategyOrders = this.tradePersistentModel
-					.findPositionOrdersByTradestrategyId(this.idTradestrategy);
+			BackTestOrderBook orderBook = BackTestOrderBook.getOrderBook(this.idTradestrategy);
+			if (null == orderBook) {
+				this.tradestrategyOrders = this.tradePersistentModel
+						.findPositionOrdersByTradestrategyId(this.idTradestrategy);
+			} else {
+				this.tradestrategyOrders = orderBook.getPositionOrders();
+			}
 		} catch (Exception ex) {
 			throw new StrategyRuleException(1, 410, "Error position orders: " + ex.getMessage());
 		}
@@ -0,0 +1,220 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A set of strategy parameters and the values to try for each. The points in
+ * the space are either every combination of the values (grid) or a random
+ * sample of them.
+ */
+public class ParameterSpace {
+
+	private final LinkedHashMap<String, List<Object>> parameters = new LinkedHashMap<String, List<Object>>();
+
+	public ParameterSpace() {
+	}
+
+	/**
+	 * Method parse. Create a parameter space from a string of the form
+	 * name=value,value;name=value,value. Values that are numbers are returned
+	 * as Integer or Double.
+	 * 
+	 * @param space
+	 *            String
+	 * @return ParameterSpace
+	 */
+	public static ParameterSpace parse(String space) {
+
+		ParameterSpace parameterSpace = new ParameterSpace();
+		if (null == space)
+			return parameterSpace;
+
+		for (String parameter : space.split(";")) {
+			if (parameter.trim().length() == 0)
+				continue;
+
+			int index = parameter.indexOf('=');
+			if (index < 1)
+				throw new IllegalArgumentException("Parameter must be name=value,value: " + parameter);
+
+			String name = parameter.substring(0, index).trim();
+			List<Object> values = new ArrayList<Object>();
+			for (String value : parameter.substring(index + 1).split(",")) {
+				if (value.trim().length() > 0)
+					values.add(parseValue(value.trim()));
+			}
+			parameterSpace.addParameter(name, values);
+		}
+		return parameterSpace;
+	}
+
+	/**
+	 * Method addParameter.
+	 * 
+	 * @param name
+	 *            String
+	 * @param values
+	 *            List<Object>
+	 */
+	public void addParameter(String name, List<Object> values) {
+		if (values.isEmpty())
+			throw new IllegalArgumentException("Parameter: " + name + " has no values.");
+		this.parameters.put(name, new ArrayList<Object>(values));
+	}
+
+	/**
+	 * Method getParameters.
+	 * 
+	 * @return Map<String,List<Object>>
+	 */
+	public Map<String, List<Object>> getParameters() {
+		return Collections.unmodifiableMap(this.parameters);
+	}
+
+	/**
+	 * Method isEmpty.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isEmpty() {
+		return this.parameters.isEmpty();
+	}
+
+	/**
+	 * Method size.
+	 * 
+	 * @return int the number of points in the grid.
+	 */
+	public int size() {
+		if (this.parameters.isEmpty())
+			return 0;
+
+		int size = 1;
+		for (List<Object> values : this.parameters.values()) {
+			size = size * values.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Method getGridPoints. Every combination of the parameter values. The
+	 * last parameter changes fastest.
+	 * 
+	 * @return List<Map<String,Object>>
+	 */
+	public List<Map<String, Object>> getGridPoints() {
+		List<Map<String, Object>> points = new ArrayList<Map<String, Object>>(size());
+		for (int i = 0; i < size(); i++) {
+			points.add(getPoint(i));
+		}
+		return points;
+	}
+
+	/**
+	 * Method getRandomPoints. A random sample of the grid without repeats. If
+	 * count is not less than the grid size all the grid points are returned.
+	 * 
+	 * @param count
+	 *            int
+	 * @param seed
+	 *            long
+	 * @return List<Map<String,Object>>
+	 */
+	public List<Map<String, Object>> getRandomPoints(int count, long seed) {
+		if (count >= size())
+			return getGridPoints();
+
+		List<Integer> indexes = new ArrayList<Integer>(size());
+		for (int i = 0; i < size(); i++) {
+			indexes.add(i);
+		}
+		Collections.shuffle(indexes, new Random(seed));
+		List<Map<String, Object>> points = new ArrayList<Map<String, Object>>(count);
+		for (int i = 0; i < count; i++) {
+			points.add(getPoint(indexes.get(i)));
+		}
+		return points;
+	}
+
+	/**
+	 * Method getPoint.
+	 * 
+	 * @param index
+	 *            int the index of the point in the grid.
+	 * @return Map<String,Object>
+	 */
+	private Map<String, Object> getPoint(int index) {
+		List<String> names = new ArrayList<String>(this.parameters.keySet());
+		LinkedHashMap<String, Object> point = new LinkedHashMap<String, Object>();
+		for (int i = names.size() - 1; i > -1; i--) {
+			List<Object> values = this.parameters.get(names.get(i));
+			point.put(names.get(i), values.get(index % values.size()));
+			index = index / values.size();
+		}
+		LinkedHashMap<String, Object> ordered = new LinkedHashMap<String, Object>();
+		for (String name : names) {
+			ordered.put(name, point.get(name));
+		}
+		return ordered;
+	}
+
+	/**
+	 * Method parseValue.
+	 * 
+	 * @param value
+	 *            String
+	 * @return Object
+	 */
+	private static Object parseValue(String value) {
+		try {
+			return Integer.valueOf(value);
+		} catch (NumberFormatException ex) {
+			// Not an integer.
+		}
+		try {
+			return Double.valueOf(value);
+		} catch (NumberFormatException ex) {
+			return value;
+		}
+	}
+}
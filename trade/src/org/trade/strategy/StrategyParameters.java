@@ -0,0 +1,90 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The strategy parameter values set by a parameter sweep. While a sweep point
+ * is being back tested these values override the values saved for the
+ * tradestrategy (Strategy Parms) and the defaults in the strategy.
+ */
+public class StrategyParameters {
+
+	private static volatile Map<String, Object> _values = Collections.emptyMap();
+
+	private StrategyParameters() {
+	}
+
+	/**
+	 * Method getValue.
+	 * 
+	 * @param name
+	 *            String
+	 * @return Object the value or null if this parameter is not set.
+	 */
+	public static Object getValue(String name) {
+		return _values.get(name);
+	}
+
+	/**
+	 * Method getValues.
+	 * 
+	 * @return Map<String,Object>
+	 */
+	public static Map<String, Object> getValues() {
+		return _values;
+	}
+
+	/**
+	 * Method setValues.
+	 * 
+	 * @param values
+	 *            Map<String,Object>
+	 */
+	public static void setValues(Map<String, Object> values) {
+		_values = Collections.unmodifiableMap(new HashMap<String, Object>(values));
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public static void clear() {
+		_values = Collections.emptyMap();
+	}
+}
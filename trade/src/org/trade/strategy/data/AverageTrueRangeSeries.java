@@ -48,6 +48,7 @@ import org.trade.persistent.dao.Strategy;
 import org.trade.strategy.data.atr.AverageTrueRangeItem;
 import org.trade.strategy.data.base.RegularTimePeriod;
 import org.trade.strategy.data.candle.CandleItem;
+import org.trade.strategy.data.kernel.WilderSmoothing;
 
 /**
  * Typically, the Average True Range (ATR) is based on 14 periods and can be
@@ -87,10 +88,7 @@ public class AverageTrueRangeSeries extends IndicatorSeries {
 	 * Vales used to calculate AverageTrueRange. These need to be reset when the
 	 * series is cleared.
 	 */
-	private double sum = 0.0;
-	private double currATR = -1;
-	private double prevATR = 0;
-	private double prevTR = 0;
+	private WilderSmoothing trueRangeValues = null;
 
 	/**
 	 * Creates a new empty series. By default, items added to the series will be
@@ -157,6 +155,7 @@ public class AverageTrueRangeSeries extends IndicatorSeries {
 	 */
 	public Object clone() throws CloneNotSupportedException {
 		AverageTrueRangeSeries clone = (AverageTrueRangeSeries) super.clone();
+		clone.trueRangeValues = null;
 		return clone;
 	}
 
@@ -167,10 +166,7 @@ public class AverageTrueRangeSeries extends IndicatorSeries {
 	 */
 	public void clear() {
 		super.clear();
-		sum = 0.0;
-		currATR = -1;
-		prevATR = 0;
-		prevTR = 0;
+		trueRangeValues = null;
 	}
 
 	/**
@@ -341,25 +337,24 @@ public class AverageTrueRangeSeries extends IndicatorSeries {
 
 				double tR = Math.max(highLessLow, Math.max(absHighLessPrevClose, absLowLessPrevClose));
 
-				if (newBar) {
-					sum = sum + tR;
-					prevTR = tR;
-					prevATR = currATR;
-
-				} else {
-					sum = sum - prevTR + tR;
+				if (null == this.trueRangeValues || this.trueRangeValues.getPeriod() != getLength()) {
+					this.trueRangeValues = new WilderSmoothing(getLength());
 				}
+				/*
+				 * The TR's are summed until the first ATR which is the sum
+				 * divided by the length, after that each ATR is smoothed from
+				 * the previous bars ATR.
+				 */
+				this.trueRangeValues.update(tR, newBar);
 
 				if (skip >= getLength() - 1) {
 
-					if (currATR == -1) {
-						currATR = sum / getLength();
-					} else {
-						currATR = ((prevATR * (getLength() - 1)) + tR) / getLength();
+					if (!this.trueRangeValues.isSeeded()) {
+						this.trueRangeValues.seed();
 					}
+					double currATR = this.trueRangeValues.getValue();
 					if (newBar) {
-						AverageTrueRangeItem dataItem = new AverageTrueRangeItem(candleItem.getPeriod(),
-								new BigDecimal(currATR));
+						AverageTrueRangeItem dataItem = new AverageTrueRangeItem(candleItem.getPeriod(), currATR);
 						this.add(dataItem, false);
 
 					} else {
@@ -36,7 +36,6 @@
 package org.trade.strategy.data;
 
 import java.math.BigDecimal;
-import java.util.LinkedList;
 
 import javax.persistence.DiscriminatorValue;
 import javax.persistence.Entity;
@@ -49,6 +48,7 @@ import org.trade.persistent.dao.Strategy;
 import org.trade.strategy.data.base.RegularTimePeriod;
 import org.trade.strategy.data.bollingerbands.BollingerBandsItem;
 import org.trade.strategy.data.candle.CandleItem;
+import org.trade.strategy.data.kernel.RollingVariance;
 
 /**
  * Developed by John Bollinger, Bollinger Bands are volatility bands placed
@@ -89,8 +89,7 @@ public class BollingerBandsSeries extends IndicatorSeries {
 	 * Vales used to calculate MA's. These need to be reset when the series is
 	 * cleared.
 	 */
-	private double sum = 0.0;
-	private LinkedList<Double> yyValues = new LinkedList<Double>();
+	private RollingVariance yyValues = null;
 
 	/**
 	 * Creates a new empty series. By default, items added to the series will be
@@ -160,7 +159,7 @@ public class BollingerBandsSeries extends IndicatorSeries {
 	 */
 	public Object clone() throws CloneNotSupportedException {
 		BollingerBandsSeries clone = (BollingerBandsSeries) super.clone();
-		clone.yyValues = new LinkedList<Double>();
+		clone.yyValues = null;
 		return clone;
 	}
 
@@ -171,8 +170,7 @@ public class BollingerBandsSeries extends IndicatorSeries {
 	 */
 	public void clear() {
 		super.clear();
-		sum = 0.0;
-		yyValues.clear();
+		yyValues = null;
 	}
 
 	/**
@@ -349,41 +347,22 @@ public class BollingerBandsSeries extends IndicatorSeries {
 			Number yy = candleItem.getY();
 
 			if (null != yy) {
-				if (this.yyValues.size() == getLength()) {
-					/*
-					 * If the item does not exist in the series then this is a
-					 * new time period and so we need to remove the last in the
-					 * set and add the new periods values. Otherwise we just
-					 * update the last value in the set. Sum is just used for
-					 * performance save having to sum the last set of values
-					 * each time.
-					 */
-					if (newBar) {
-						sum = sum - this.yyValues.getLast() + yy.doubleValue();
-						this.yyValues.removeLast();
-						this.yyValues.addFirst(yy.doubleValue());
-
-					} else {
-						sum = sum - this.yyValues.getFirst() + yy.doubleValue();
-						this.yyValues.removeFirst();
-						this.yyValues.addFirst(yy.doubleValue());
-					}
-				} else {
-					if (newBar) {
-						sum = sum + yy.doubleValue();
-						this.yyValues.addFirst(yy.doubleValue());
-					} else {
-						sum = sum + yy.doubleValue() - this.yyValues.getFirst();
-						this.yyValues.removeFirst();
-						this.yyValues.addFirst(yy.doubleValue());
-					}
+				if (null == this.yyValues || this.yyValues.capacity() != getLength()) {
+					this.yyValues = new RollingVariance(getLength());
 				}
+				/*
+				 * If the item does not exist in the series then this is a new
+				 * time period and so we need to remove the last in the set and
+				 * add the new periods values. Otherwise we just update the last
+				 * value in the set. The kernel keeps the sum and the sum of
+				 * squared deviations so the STD does not loop over the set.
+				 */
+				this.yyValues.update(yy.doubleValue(), newBar);
 
 				if (this.yyValues.size() == getLength()) {
-					double ma = calculateBBands(this.getNumberOfSTD(), this.yyValues, sum);
+					double ma = calculateBBands(this.getNumberOfSTD(), this.yyValues);
 					if (newBar) {
-						BollingerBandsItem dataItem = new BollingerBandsItem(candleItem.getPeriod(),
-								new BigDecimal(ma));
+						BollingerBandsItem dataItem = new BollingerBandsItem(candleItem.getPeriod(), ma);
 						this.add(dataItem, false);
 
 					} else {
@@ -396,38 +375,23 @@ public class BollingerBandsSeries extends IndicatorSeries {
 	}
 
 	/**
-	 * Method calculateMA.
+	 * Method calculateBBands.
 	 * 
 	 * @param numberOfSTD
 	 *            BigDecimal
 	 * @param yyValues
-	 *            LinkedList<Double>
-	 * @param volValues
-	 *            LinkedList<Long>
-	 * @param sum
-	 *            Double
+	 *            RollingVariance
 	 * @return double
 	 */
-	private double calculateBBands(BigDecimal numberOfSTD, LinkedList<Double> yyValues, Double sum) {
+	private double calculateBBands(BigDecimal numberOfSTD, RollingVariance yyValues) {
 
 		if (this.isUpper) {
-			return ((sum / this.getLength())
-					+ (standardDeviation(yyValues, sum) * this.getNumberOfSTD().doubleValue()));
+			return (yyValues.getMean() + (yyValues.getSampleStandardDeviation() * numberOfSTD.doubleValue()));
 		} else {
-			return ((sum / this.getLength())
-					- (standardDeviation(yyValues, sum) * this.getNumberOfSTD().doubleValue()));
+			return (yyValues.getMean() - (yyValues.getSampleStandardDeviation() * numberOfSTD.doubleValue()));
 		}
 	}
 
-	public double standardDeviation(LinkedList<Double> a, Double sum) {
-
-		double sumTotal = 0;
-		double mean = sum / (a.size() * 1.0);
-		for (Double i : a)
-			sumTotal += Math.pow((i - mean), 2);
-		return Math.sqrt(sumTotal / (a.size() - 1)); // sample
-	}
-
 	/**
 	 * Method printSeries.
 	 * 
@@ -35,10 +35,10 @@
  */
 package org.trade.strategy.data;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.NoSuchElementException;
 
 import javax.persistence.DiscriminatorValue;
 import javax.persistence.Entity;
@@ -47,6 +47,7 @@ import javax.persistence.Transient;
 import org.jfree.data.ComparableObjectItem;
 import org.jfree.data.general.SeriesChangeEvent;
 import org.jfree.data.time.ohlc.OHLCSeriesCollection;
+import org.trade.core.properties.ConfigProperties;
 import org.trade.core.util.TradingCalendar;
 import org.trade.core.valuetype.Percent;
 import org.trade.core.valuetype.ValueTypeException;
@@ -58,6 +59,10 @@ import org.trade.persistent.dao.Tradingday;
 import org.trade.strategy.data.base.RegularTimePeriod;
 import org.trade.strategy.data.candle.CandleItem;
 import org.trade.strategy.data.candle.CandlePeriod;
+import org.trade.strategy.data.candle.CandlePeriodIndex;
+import org.trade.strategy.data.candle.CandleStore;
+import org.trade.strategy.data.kernel.DoubleRingBuffer;
+import org.trade.strategy.data.kernel.RollingExtremum;
 
 /**
  * A list of (RegularTimePeriod, open, high, low, close) data items.
@@ -88,25 +93,75 @@ public class CandleSeries extends IndicatorSeries {
 	private ZonedDateTime endTime;
 	private int barSize = 0;
 
+	/*
+	 * When columnar the candle values are held in primitive columns and the
+	 * Candle entity is only created when the item is persisted.
+	 */
+	private static boolean _columnar = false;
+	private boolean columnar = _columnar;
+	private CandleStore candleStore = null;
+	private CandlePeriodIndex periodIndex = null;
+
 	private Candle candleBar = null;
 	private Percent percentChangeFromClose = new Percent(0);
 	private Percent percentChangeFromOpen = new Percent(0);
 
 	// Parms used for the rolling candle bar.
 	private RollingCandle rollingCandle = new RollingCandle();
-	private RollingCandle prevRollingCandle = null;
 
-	private Double sumVwapVolume = new Double(0);
-	private Long sumVolume = new Long(0);
-	private Integer sumTradeCount = new Integer(0);
-
-	private LinkedList<RollingCandle> rollingCandleValues = new LinkedList<RollingCandle>();
-	private LinkedList<Double> openValues = new LinkedList<Double>();
-	private LinkedList<Double> highValues = new LinkedList<Double>();
-	private LinkedList<Double> lowValues = new LinkedList<Double>();
-	private LinkedList<Long> volumeValues = new LinkedList<Long>();
-	private LinkedList<Integer> tradeCountValues = new LinkedList<Integer>();
-	private LinkedList<Double> vwapVolumeValues = new LinkedList<Double>();
+	private double sumVwapVolume = 0;
+	private long sumVolume = 0;
+	private int sumTradeCount = 0;
+
+	/*
+	 * The rolling window is held in primitive ring buffers sized to the rollup
+	 * interval. The high/low use monotonic deques so they never need to be
+	 * rescanned when the bar that set them drops out of the window. The
+	 * values of each rolling candle are held in primitive rings sized to the
+	 * window so nothing is allocated per bar, the RollingCandle is only built
+	 * when getRollingCandle/getPreviousRollingCandle is called.
+	 */
+	private int rollingCandleHead = -1;
+	private int rollingCandleCount = 0;
+	private int[] rollingIntervals = null;
+	private RegularTimePeriod[] rollingPeriods = null;
+	private double[] rollingOpens = null;
+	private double[] rollingHighs = null;
+	private double[] rollingLows = null;
+	private double[] rollingCloses = null;
+	private long[] rollingVolumes = null;
+	private int[] rollingTradeCounts = null;
+	private double[] rollingVwaps = null;
+	private ZonedDateTime[] rollingLastUpdateDates = null;
+	/*
+	 * The previous rolling candle is the one that last dropped out of the
+	 * window.
+	 */
+	private boolean prevRolling = false;
+	private int prevRollingInterval = 0;
+	private RegularTimePeriod prevRollingPeriod = null;
+	private double prevRollingOpen = 0;
+	private double prevRollingHigh = 0;
+	private double prevRollingLow = 0;
+	private double prevRollingClose = 0;
+	private long prevRollingVolume = 0;
+	private int prevRollingTradeCount = 0;
+	private double prevRollingVwap = 0;
+	private ZonedDateTime prevRollingLastUpdateDate = null;
+	private DoubleRingBuffer openValues = null;
+	private RollingExtremum highValues = null;
+	private RollingExtremum lowValues = null;
+	private DoubleRingBuffer volumeValues = null;
+	private DoubleRingBuffer tradeCountValues = null;
+	private DoubleRingBuffer vwapVolumeValues = null;
+
+	static {
+		try {
+			_columnar = ConfigProperties.getPropAsBoolean("trade.candle.columnar");
+		} catch (IOException ex) {
+			_columnar = false;
+		}
+	}
 
 	public CandleSeries() {
 		super(IndicatorSeries.CandleSeries, true, 0, false);
@@ -383,6 +438,33 @@ public class CandleSeries extends IndicatorSeries {
 	 */
 	public void setBarSize(Integer barSize) {
 		this.barSize = barSize;
+		if (null != this.periodIndex)
+			this.periodIndex.setBarSize(barSize);
+	}
+
+	/**
+	 * Returns true if the candle values are held in a columnar CandleStore
+	 * rather than in a Candle entity per item.
+	 * 
+	 * @return boolean
+	 */
+	@Transient
+	public boolean isColumnar() {
+		return this.columnar;
+	}
+
+	/**
+	 * Method setColumnar. Sets the storage mode for new candles, this can only
+	 * be changed while the series is empty.
+	 * 
+	 * @param columnar
+	 *            boolean
+	 */
+	public void setColumnar(boolean columnar) {
+		if (!this.isEmpty() && this.columnar != columnar) {
+			throw new IllegalStateException("Can't change the storage mode of a CandleSeries that has data.");
+		}
+		this.columnar = columnar;
 	}
 
 	/**
@@ -428,8 +510,53 @@ public class CandleSeries extends IndicatorSeries {
 				throw new IllegalArgumentException("Can't mix RegularTimePeriod class types.");
 			}
 		}
-		super.add(new CandleItem(contract, tradingday, period, open, high, low, close, volume, vwap, tradeCount,
-				lastUpdateDate), true);
+		CandleItem candleItem = createCandleItem(contract, tradingday, period, open, high, low, close, volume, vwap,
+				tradeCount, lastUpdateDate);
+		int itemCount = this.getItemCount();
+		super.add(candleItem, true);
+		indexCandleItem(candleItem, itemCount);
+	}
+
+	/**
+	 * Creates a candle item for this series either backed by the series
+	 * CandleStore or by a Candle entity.
+	 * 
+	 * @param contract
+	 *            Contract
+	 * @param tradingday
+	 *            Tradingday
+	 * @param period
+	 *            RegularTimePeriod
+	 * @param open
+	 *            double
+	 * @param high
+	 *            double
+	 * @param low
+	 *            double
+	 * @param close
+	 *            double
+	 * @param volume
+	 *            long
+	 * @param vwap
+	 *            double
+	 * @param tradeCount
+	 *            int
+	 * @param lastUpdateDate
+	 *            ZonedDateTime
+	 * @return CandleItem
+	 */
+	private CandleItem createCandleItem(Contract contract, Tradingday tradingday, RegularTimePeriod period,
+			double open, double high, double low, double close, long volume, double vwap, int tradeCount,
+			ZonedDateTime lastUpdateDate) {
+		if (this.columnar) {
+			if (null == this.candleStore)
+				this.candleStore = new CandleStore(contract);
+			int row = this.candleStore.add(tradingday, period, open, high, low, close, volume, vwap, tradeCount,
+					lastUpdateDate);
+			return new CandleItem(this.candleStore, period, row);
+		}
+		return new CandleItem(contract, tradingday, period, open, high, low, close, volume, vwap, tradeCount,
+				lastUpdateDate);
 	}
 
 	/**
@@ -447,7 +574,74 @@ public class CandleSeries extends IndicatorSeries {
 				throw new IllegalArgumentException("Can't mix RegularTimePeriod class types.");
 			}
 		}
+		int itemCount = this.getItemCount();
 		super.add(candleItem, notify);
+		indexCandleItem(candleItem, itemCount);
+	}
+
+	/**
+	 * Method indexCandleItem. Appends the items period to the period index if
+	 * the item was added to the end of the series, dropping the first period
+	 * if the add evicted the oldest item because the series is at its maximum
+	 * item count. Otherwise the index will be rebuilt on the next lookup.
+	 * 
+	 * @param candleItem
+	 *            CandleItem
+	 * @param previousItemCount
+	 *            int the item count before the add.
+	 */
+	private void indexCandleItem(CandleItem candleItem, int previousItemCount) {
+		if (null != this.periodIndex) {
+			synchronized (this.periodIndex) {
+				int itemCount = this.getItemCount();
+				if (this.periodIndex.size() == previousItemCount && this.getDataItem(itemCount - 1) == candleItem) {
+					if (itemCount == previousItemCount)
+						this.periodIndex.removeFirst();
+					this.periodIndex.add(candleItem.getPeriod());
+				} else {
+					this.periodIndex.clear();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method periodIndex. Returns the period index for this series building it
+	 * if it is out of step with the series data.
+	 * 
+	 * @return CandlePeriodIndex
+	 */
+	private CandlePeriodIndex periodIndex() {
+		if (null == this.periodIndex)
+			this.periodIndex = new CandlePeriodIndex(this.getBarSize());
+
+		synchronized (this.periodIndex) {
+			if (this.periodIndex.size() != this.getItemCount()) {
+				this.periodIndex.clear();
+				for (int i = 0; i < this.getItemCount(); i++) {
+					this.periodIndex.add(this.getPeriod(i));
+				}
+			}
+		}
+		return this.periodIndex;
+	}
+
+	/**
+	 * Returns the index of the item for the period. Candle periods are found
+	 * via the period index, anything else falls through to the sorted search.
+	 * 
+	 * @param x
+	 *            the period.
+	 * @return The index.
+	 */
+	public int indexOf(@SuppressWarnings("rawtypes") Comparable x) {
+		if (x instanceof RegularTimePeriod) {
+			RegularTimePeriod period = (RegularTimePeriod) x;
+			int index = this.periodIndex().indexOfStart(period.getStart());
+			if (index > -1 && this.getPeriod(index).compareTo(period) == 0)
+				return index;
+		}
+		return super.indexOf(x);
 	}
 
 	/**
@@ -458,18 +652,18 @@ public class CandleSeries extends IndicatorSeries {
 	 * @return exists
 	 */
 	public int indexOf(ZonedDateTime date) {
+		return this.periodIndex().indexOf(date);
+	}
 
-		for (int i = this.data.size(); i > 0; i--) {
-			CandleItem item = (CandleItem) this.data.get(i - 1);
-			if (date.isAfter(item.getPeriod().getEnd())) {
-				return -1;
-			}
-			if ((date.isAfter(item.getPeriod().getStart()) || date.equals(item.getPeriod().getStart()))
-					&& (date.isBefore(item.getPeriod().getEnd()) || date.equals(item.getPeriod().getEnd()))) {
-				return i - 1;
-			}
-		}
-		return -1;
+	/**
+	 * Returns the index of the period that contains the time.
+	 * 
+	 * @param epochMillis
+	 *            the time in milliseconds from the epoch.
+	 * @return the index or -1 if no period contains the time.
+	 */
+	public int indexOf(long epochMillis) {
+		return this.periodIndex().indexOf(epochMillis);
 	}
 
 	/**
@@ -549,7 +743,7 @@ public class CandleSeries extends IndicatorSeries {
 
 			this.rollCandle(period, rollupInterval, open, high, low, close, volume, tradeCount, vwap, lastUpdateDate);
 
-			candleItem = new CandleItem(this.getContract(), tradingday, period, open, high, low, close, volume,
+			candleItem = createCandleItem(this.getContract(), tradingday, period, open, high, low, close, volume,
 					this.rollingCandle.getVwap(), tradeCount, lastUpdateDate);
 			this.add(candleItem, false);
 
@@ -565,13 +759,13 @@ public class CandleSeries extends IndicatorSeries {
 	 * Clears down and resets all the Vwap calculated fields.
 	 */
 	public void clear() {
-		this.openValues.clear();
-		this.highValues.clear();
-		this.lowValues.clear();
-		this.volumeValues.clear();
-		this.tradeCountValues.clear();
-		this.vwapVolumeValues.clear();
-		this.rollingCandleValues.clear();
+		this.clearRollingValues();
+		/*
+		 * Items may still be referenced by other series so start a new store
+		 * rather than reusing the columns.
+		 */
+		this.candleStore = null;
+		this.periodIndex = null;
 		super.clear();
 	}
 
@@ -592,6 +786,26 @@ public class CandleSeries extends IndicatorSeries {
 		clone.endTime = this.getEndTime();
 		clone.barSize = this.getBarSize();
 		clone.rollingCandle = new RollingCandle();
+		clone.rollingIntervals = null;
+		clone.rollingPeriods = null;
+		clone.rollingOpens = null;
+		clone.rollingHighs = null;
+		clone.rollingLows = null;
+		clone.rollingCloses = null;
+		clone.rollingVolumes = null;
+		clone.rollingTradeCounts = null;
+		clone.rollingVwaps = null;
+		clone.rollingLastUpdateDates = null;
+		clone.rollingCandleHead = -1;
+		clone.rollingCandleCount = 0;
+		clone.openValues = null;
+		clone.highValues = null;
+		clone.lowValues = null;
+		clone.volumeValues = null;
+		clone.tradeCountValues = null;
+		clone.vwapVolumeValues = null;
+		clone.candleStore = null;
+		clone.periodIndex = null;
 		return clone;
 	}
 
@@ -633,7 +847,9 @@ public class CandleSeries extends IndicatorSeries {
 	 */
 	@Transient
 	public RollingCandle getRollingCandle() {
-		return this.rollingCandleValues.getFirst();
+		if (this.rollingCandleCount == 0)
+			throw new NoSuchElementException();
+		return this.getRollingCandle(0);
 	}
 
 	/**
@@ -645,7 +861,14 @@ public class CandleSeries extends IndicatorSeries {
 	 */
 	@Transient
 	public RollingCandle getRollingCandle(int index) {
-		return this.rollingCandleValues.get(index);
+		if (index < 0 || index >= this.rollingCandleCount)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.rollingCandleCount);
+		int slot = this.rollingCandleHead - index;
+		if (slot < 0)
+			slot = slot + this.rollingOpens.length;
+		return new RollingCandle(this.rollingPeriods[slot], this.rollingIntervals[slot], this.rollingOpens[slot],
+				this.rollingHighs[slot], this.rollingLows[slot], this.rollingCloses[slot], this.rollingVolumes[slot],
+				this.rollingTradeCounts[slot], this.rollingVwaps[slot], this.rollingLastUpdateDates[slot]);
 	}
 
 	/**
@@ -655,7 +878,7 @@ public class CandleSeries extends IndicatorSeries {
 	 */
 	@Transient
 	public int getRollingCandleSize() {
-		return this.rollingCandleValues.size();
+		return this.rollingCandleCount;
 	}
 
 	/**
@@ -665,7 +888,11 @@ public class CandleSeries extends IndicatorSeries {
 	 */
 	@Transient
 	public RollingCandle getPreviousRollingCandle() {
-		return this.prevRollingCandle;
+		if (!this.prevRolling)
+			return null;
+		return new RollingCandle(this.prevRollingPeriod, this.prevRollingInterval, this.prevRollingOpen,
+				this.prevRollingHigh, this.prevRollingLow, this.prevRollingClose, this.prevRollingVolume,
+				this.prevRollingTradeCount, this.prevRollingVwap, this.prevRollingLastUpdateDate);
 	}
 
 	/**
@@ -699,8 +926,11 @@ public class CandleSeries extends IndicatorSeries {
 			if (newBar) {
 				this.add(candleItem, true);
 			} else {
-				CandleItem dataItem = (CandleItem) this.getDataItem(this.getItemCount() - 1);
-				this.update(dataItem.getPeriod(), dataItem.getCandle());
+				/*
+				 * The last item is shared with the source series so it has
+				 * already been updated, just notify the listeners.
+				 */
+				this.fireSeriesChanged();
 			}
 		}
 	}
@@ -964,37 +1194,38 @@ public class CandleSeries extends IndicatorSeries {
 							candleItem.getHigh(), candleItem.getLow(), candleItem.getClose(), candleItem.getVolume(),
 							candleItem.getCount(), candleItem.getVwap(), lastUpdateDate);
 
-					this.sumVwapVolume = new Double(candleItem.getVwap() * candleItem.getVolume());
+					this.sumVwapVolume = candleItem.getVwap() * candleItem.getVolume();
 					this.sumVolume = candleItem.getVolume();
 					this.sumTradeCount = candleItem.getCount();
 				} else {
-					this.sumVwapVolume = new Double(0);
-					this.sumVolume = new Long(0);
-					this.sumTradeCount = new Integer(0);
+					this.sumVwapVolume = 0;
+					this.sumVolume = 0;
+					this.sumTradeCount = 0;
 					this.rollingCandle.rollupInterval = rollupInterval;
 				}
 				if (this.getItemCount() > 1) {
 					CandleItem prevCandleItem = (CandleItem) this.getDataItem(this.getItemCount() - 2);
-					this.prevRollingCandle = new RollingCandle(prevCandleItem.getPeriod(),
-							this.rollingCandle.rollupInterval, prevCandleItem.getOpen(), prevCandleItem.getHigh(),
-							prevCandleItem.getLow(), prevCandleItem.getClose(), prevCandleItem.getVolume(),
-							prevCandleItem.getCount(), prevCandleItem.getVwap(), prevCandleItem.getLastUpdateDate());
+					this.prevRolling = true;
+					this.prevRollingInterval = this.rollingCandle.rollupInterval;
+					this.prevRollingPeriod = prevCandleItem.getPeriod();
+					this.prevRollingOpen = prevCandleItem.getOpen();
+					this.prevRollingHigh = prevCandleItem.getHigh();
+					this.prevRollingLow = prevCandleItem.getLow();
+					this.prevRollingClose = prevCandleItem.getClose();
+					this.prevRollingVolume = prevCandleItem.getVolume();
+					this.prevRollingTradeCount = prevCandleItem.getCount();
+					this.prevRollingVwap = prevCandleItem.getVwap();
+					this.prevRollingLastUpdateDate = prevCandleItem.getLastUpdateDate();
 				}
 			} else {
 				this.rollingCandle.rollupInterval = rollupInterval;
 				this.rollingCandle.open = open;
-				this.sumVwapVolume = new Double(0);
-				this.sumVolume = new Long(0);
-				this.sumTradeCount = new Integer(0);
+				this.sumVwapVolume = 0;
+				this.sumVolume = 0;
+				this.sumTradeCount = 0;
 			}
 
-			this.openValues.clear();
-			this.highValues.clear();
-			this.lowValues.clear();
-			this.volumeValues.clear();
-			this.tradeCountValues.clear();
-			this.vwapVolumeValues.clear();
-			this.rollingCandleValues.clear();
+			this.resetRollingValues(rollupInterval);
 		}
 
 		updateRollingCandle(period, rollupInterval, open, high, low, close, volume, tradeCount, vwap, lastUpdateDate);
@@ -1029,59 +1260,74 @@ public class CandleSeries extends IndicatorSeries {
 	private void updateRollingCandle(RegularTimePeriod period, int rollupInterval, double open, double high, double low,
 			double close, long volume, int tradeCount, double vwap, ZonedDateTime lastUpdateDate) {
 
-		if (rollupInterval == this.rollingCandleValues.size()) {
-			this.prevRollingCandle = this.rollingCandleValues.removeLast();
-
-			this.rollingCandle.open = this.openValues.removeLast();
+		if (rollupInterval == this.rollingCandleCount) {
+			int slot = this.rollingCandleHead - (this.rollingCandleCount - 1);
+			if (slot < 0)
+				slot = slot + this.rollingOpens.length;
+			this.prevRolling = true;
+			this.prevRollingInterval = this.rollingIntervals[slot];
+			this.prevRollingPeriod = this.rollingPeriods[slot];
+			this.prevRollingOpen = this.rollingOpens[slot];
+			this.prevRollingHigh = this.rollingHighs[slot];
+			this.prevRollingLow = this.rollingLows[slot];
+			this.prevRollingClose = this.rollingCloses[slot];
+			this.prevRollingVolume = this.rollingVolumes[slot];
+			this.prevRollingTradeCount = this.rollingTradeCounts[slot];
+			this.prevRollingVwap = this.rollingVwaps[slot];
+			this.prevRollingLastUpdateDate = this.rollingLastUpdateDates[slot];
+			this.rollingCandleCount--;
+
+			this.rollingCandle.open = this.openValues.removeOldest();
 			if (this.openValues.isEmpty())
 				this.rollingCandle.open = open;
 
-			if (this.rollingCandle.high == this.highValues.removeLast()) {
+			if (this.rollingCandle.high == this.highValues.removeOldest()) {
 				if (this.highValues.isEmpty()) {
 					this.rollingCandle.high = high;
 				} else {
-					this.rollingCandle.high = Collections.max(this.highValues);
+					this.rollingCandle.high = this.highValues.get();
 				}
 			}
 
-			if (this.rollingCandle.low == this.lowValues.removeLast()) {
+			if (this.rollingCandle.low == this.lowValues.removeOldest()) {
 				if (this.lowValues.isEmpty()) {
 					this.rollingCandle.low = low;
 				} else {
-					this.rollingCandle.low = Collections.min(this.lowValues);
+					this.rollingCandle.low = this.lowValues.get();
 				}
 			}
 
-			sumVolume = sumVolume - this.volumeValues.removeLast();
-			sumVwapVolume = sumVwapVolume - this.vwapVolumeValues.removeLast();
-			sumTradeCount = sumTradeCount - this.tradeCountValues.removeLast();
+			sumVolume = sumVolume - (long) this.volumeValues.removeOldest();
+			sumVwapVolume = sumVwapVolume - this.vwapVolumeValues.removeOldest();
+			sumTradeCount = sumTradeCount - (int) this.tradeCountValues.removeOldest();
 		}
 
 		this.rollingCandle.period = period;
 		this.rollingCandle.lastUpdateDate = lastUpdateDate;
 
-		this.openValues.addFirst(open);
+		this.openValues.add(open);
 
-		this.highValues.addFirst(high);
+		this.highValues.add(high);
 		if (high > this.rollingCandle.high)
 			this.rollingCandle.high = high;
 
-		this.lowValues.addFirst(low);
+		this.lowValues.add(low);
 		if (low < this.rollingCandle.low)
 			this.rollingCandle.low = low;
 
 		this.rollingCandle.close = close;
 
-		this.tradeCountValues.addFirst(tradeCount);
+		this.tradeCountValues.add(tradeCount);
 		sumTradeCount = sumTradeCount + tradeCount;
 		this.rollingCandle.tradeCount = sumTradeCount;
 
-		this.volumeValues.addFirst(volume);
+		this.volumeValues.add(volume);
 		sumVolume = sumVolume + volume;
 		this.rollingCandle.volume = sumVolume;
 
-		this.vwapVolumeValues.addFirst(vwap * volume);
-		sumVwapVolume = sumVwapVolume + this.vwapVolumeValues.getFirst();
+		double vwapVolume = vwap * volume;
+		this.vwapVolumeValues.add(vwapVolume);
+		sumVwapVolume = sumVwapVolume + vwapVolume;
 
 		if (sumVolume > 0) {
 			this.rollingCandle.vwap = sumVwapVolume / sumVolume;
@@ -1092,11 +1338,64 @@ public class CandleSeries extends IndicatorSeries {
 		// _log.info("**Date: " + period.getStart() + " sumVwapVolume: "
 		// + sumVwapVolume + " sumVolume: " + sumVolume + " volume: "
 		// + volume + " vwap: " + this.rollingCandle.vwap);
-		try {
-			this.rollingCandleValues.addFirst((RollingCandle) this.rollingCandle.clone());
-		} catch (CloneNotSupportedException e) {
-			// TODO Auto-generated catch block
-			_log.error("Error updateRollingCandle cannot clone candle Msg: " + e.getMessage());
+		int head = (this.rollingCandleHead + 1) % this.rollingOpens.length;
+		this.rollingIntervals[head] = this.rollingCandle.rollupInterval;
+		this.rollingPeriods[head] = this.rollingCandle.period;
+		this.rollingOpens[head] = this.rollingCandle.open;
+		this.rollingHighs[head] = this.rollingCandle.high;
+		this.rollingLows[head] = this.rollingCandle.low;
+		this.rollingCloses[head] = this.rollingCandle.close;
+		this.rollingVolumes[head] = this.rollingCandle.volume;
+		this.rollingTradeCounts[head] = this.rollingCandle.tradeCount;
+		this.rollingVwaps[head] = this.rollingCandle.vwap;
+		this.rollingLastUpdateDates[head] = this.rollingCandle.lastUpdateDate;
+		this.rollingCandleHead = head;
+		this.rollingCandleCount++;
+	}
+
+	/**
+	 * Method resetRollingValues. Empties the rolling window, the buffers are
+	 * only re-created if the rollup interval has changed.
+	 * 
+	 * @param rollupInterval
+	 *            the rollup Interval.
+	 */
+	private void resetRollingValues(int rollupInterval) {
+		int capacity = Math.max(rollupInterval, 1);
+		if (null == this.openValues || this.openValues.capacity() != capacity) {
+			this.rollingIntervals = new int[capacity];
+			this.rollingPeriods = new RegularTimePeriod[capacity];
+			this.rollingOpens = new double[capacity];
+			this.rollingHighs = new double[capacity];
+			this.rollingLows = new double[capacity];
+			this.rollingCloses = new double[capacity];
+			this.rollingVolumes = new long[capacity];
+			this.rollingTradeCounts = new int[capacity];
+			this.rollingVwaps = new double[capacity];
+			this.rollingLastUpdateDates = new ZonedDateTime[capacity];
+			this.openValues = new DoubleRingBuffer(capacity);
+			this.highValues = new RollingExtremum(capacity, true);
+			this.lowValues = new RollingExtremum(capacity, false);
+			this.volumeValues = new DoubleRingBuffer(capacity);
+			this.tradeCountValues = new DoubleRingBuffer(capacity);
+			this.vwapVolumeValues = new DoubleRingBuffer(capacity);
+		}
+		this.clearRollingValues();
+	}
+
+	/**
+	 * Method clearRollingValues.
+	 */
+	private void clearRollingValues() {
+		this.rollingCandleHead = -1;
+		this.rollingCandleCount = 0;
+		if (null != this.openValues) {
+			this.openValues.clear();
+			this.highValues.clear();
+			this.lowValues.clear();
+			this.volumeValues.clear();
+			this.tradeCountValues.clear();
+			this.vwapVolumeValues.clear();
 		}
 	}
 
@@ -36,7 +36,6 @@
 package org.trade.strategy.data;
 
 import java.math.BigDecimal;
-import java.util.LinkedList;
 
 import javax.persistence.DiscriminatorValue;
 import javax.persistence.Entity;
@@ -49,6 +48,9 @@ import org.trade.persistent.dao.CodeValue;
 import org.trade.persistent.dao.Strategy;
 import org.trade.strategy.data.base.RegularTimePeriod;
 import org.trade.strategy.data.candle.CandleItem;
+import org.trade.strategy.data.kernel.ExponentialAverage;
+import org.trade.strategy.data.kernel.LinearWeightedSum;
+import org.trade.strategy.data.kernel.RunningSum;
 import org.trade.strategy.data.movingaverage.MovingAverageItem;
 
 /**
@@ -78,10 +80,12 @@ public class MovingAverageSeries extends IndicatorSeries {
 	 * Vales used to calculate MA's. These need to be reset when the series is
 	 * cleared.
 	 */
-	private double sum = 0.0;
-	private double multiplyer = 0;
-	private LinkedList<Double> yyValues = new LinkedList<Double>();
-	private LinkedList<Long> volValues = new LinkedList<Long>();
+	private RunningSum yyValues = null;
+	private ExponentialAverage emaValues = null;
+	private LinearWeightedSum weightedValues = null;
+	private LinearWeightedSum weightedVolValues = null;
+	private RunningSum triangularValues = null;
+	private RunningSum triangularMAValues = null;
 
 	/**
 	 * Creates a new empty series. By default, items added to the series will be
@@ -149,8 +153,7 @@ public class MovingAverageSeries extends IndicatorSeries {
 	 */
 	public Object clone() throws CloneNotSupportedException {
 		MovingAverageSeries clone = (MovingAverageSeries) super.clone();
-		clone.yyValues = new LinkedList<Double>();
-		clone.volValues = new LinkedList<Long>();
+		clone.clearValues();
 		return clone;
 	}
 
@@ -161,10 +164,7 @@ public class MovingAverageSeries extends IndicatorSeries {
 	 */
 	public void clear() {
 		super.clear();
-		sum = 0.0;
-		multiplyer = 0;
-		yyValues.clear();
-		volValues.clear();
+		clearValues();
 	}
 
 	/**
@@ -336,45 +336,21 @@ public class MovingAverageSeries extends IndicatorSeries {
 			// get the current data item...
 			CandleItem candleItem = (CandleItem) source.getDataItem(skip);
 			if (0 != candleItem.getClose()) {
-				double price = this.getPrice(candleItem);
-				if (this.yyValues.size() == getLength()) {
-					/*
-					 * If the item does not exist in the series then this is a
-					 * new time period and so we need to remove the last in the
-					 * set and add the new periods values. Otherwise we just
-					 * update the last value in the set. Sum is just used for
-					 * performance save having to sum the last set of values
-					 * each time.
-					 */
-					if (newBar) {
-						sum = sum - this.yyValues.getLast() + price;
-						this.yyValues.removeLast();
-						this.yyValues.addFirst(price);
-						this.volValues.removeLast();
-						this.volValues.addFirst(candleItem.getVolume());
-					} else {
-						sum = sum - this.yyValues.getFirst() + price;
-						this.yyValues.removeFirst();
-						this.yyValues.addFirst(price);
-					}
-				} else {
-					if (newBar) {
-						sum = sum + price;
-						this.yyValues.addFirst(price);
-						this.volValues.addFirst(candleItem.getVolume());
-					} else {
-						sum = sum + price - this.yyValues.getFirst();
-						this.yyValues.removeFirst();
-						this.yyValues.addFirst(price);
-						this.volValues.removeFirst();
-						this.volValues.addFirst(candleItem.getVolume());
-					}
+				if (null == this.yyValues || this.yyValues.capacity() != getLength()) {
+					createValues();
 				}
-
-				if (this.yyValues.size() == getLength()) {
-					double ma = calculateMA(this.getMAType(), this.yyValues, this.volValues, sum);
+				/*
+				 * If the item does not exist in the series then this is a new
+				 * time period and so the kernels add the new periods values.
+				 * Otherwise we just update the last value in the set. The
+				 * kernels keep running sums so no loop over the set is needed.
+				 */
+				double ma = calculateMA(this.getMAType(), this.getPrice(candleItem), candleItem.getVolume(),
+						newBar);
+
+				if (this.yyValues.isFull()) {
 					if (newBar) {
-						MovingAverageItem dataItem = new MovingAverageItem(candleItem.getPeriod(), new BigDecimal(ma));
+						MovingAverageItem dataItem = new MovingAverageItem(candleItem.getPeriod(), ma);
 						this.add(dataItem, false);
 
 					} else {
@@ -403,84 +379,81 @@ public class MovingAverageSeries extends IndicatorSeries {
 	 * 
 	 * @param calcType
 	 *            String
-	 * @param yyValues
-	 *            LinkedList<Double>
-	 * @param volValues
-	 *            LinkedList<Long>
-	 * @param sum
-	 *            Double
+	 * @param price
+	 *            double
+	 * @param volume
+	 *            long
+	 * @param newBar
+	 *            boolean
 	 * @return double
 	 */
-	private double calculateMA(String calcType, LinkedList<Double> yyValues, LinkedList<Long> volValues, Double sum) {
+	private double calculateMA(String calcType, double price, long volume, boolean newBar) {
 
+		this.yyValues.update(price, newBar);
 		double ma = 0;
 		if (CalculationType.LINEAR.equals(calcType)) {
-			ma = sum / getLength();
+			ma = this.yyValues.getMean();
 		} else if (CalculationType.EXPONENTIAL.equals(calcType)) {
 			/*
-			 * Multiplier: (2 / (Time periods + 1) ) = (2 / (10 + 1) ) = 0.1818
-			 * (18.18%). EMA: {Close - EMA(previous day)} x * multiplier +
-			 * EMA(previous day).
+			 * The EMA is seeded with the SMA of the first full set of values.
 			 */
-			if (multiplyer == 0) {
-				ma = sum / getLength();
-				multiplyer = 2 / (getLength() + 1.0d);
-			} else {
-				ma = ((yyValues.getFirst() - yyValues.get(1)) * multiplyer) + yyValues.get(1);
+			this.emaValues.update(price, newBar);
+			if (this.yyValues.isFull() && !this.emaValues.isSeeded()) {
+				this.emaValues.seed();
 			}
-			/*
-			 * Use the EMA in the stored values as we need the previous one for
-			 * the calc.
-			 */
-			yyValues.removeFirst();
-			yyValues.addFirst(ma);
+			ma = this.emaValues.getValue();
 
 		} else if (CalculationType.WEIGHTED.equals(calcType)) {
 
-			double sumYY = 0;
-			int count = 0;
-			for (int i = yyValues.size(); i > 0; i--) {
-				count = count + (getLength() + 1 - i);
-				sumYY = sumYY + (yyValues.get(i - 1) * (getLength() + 1 - i));
-			}
-			ma = sumYY / count;
+			this.weightedValues.update(price, newBar);
+			ma = this.weightedValues.getWeightedMean();
 
 		} else if (CalculationType.WEIGHTED_VOLUME.equals(calcType)) {
 
-			double sumYY = 0;
-			double count = 0;
-			for (int i = yyValues.size(); i > 0; i--) {
-				count = count + ((getLength() + 1 - i) * volValues.get(i - 1));
-				sumYY = sumYY + (yyValues.get(i - 1) * volValues.get(i - 1) * (getLength() + 1 - i));
-			}
-			ma = sumYY / count;
-		} else if (CalculationType.TRIANGULAR.equals(calcType)) {
+			this.weightedValues.update(price * volume, newBar);
+			this.weightedVolValues.update(volume, newBar);
+			ma = this.weightedValues.getWeightedSum() / this.weightedVolValues.getWeightedSum();
 
-			double sumYY = 0;
-			int count = 0;
-			int half = getLength() / 2;
-			int y = 0;
-			for (int x = 1; x <= half; x++) {
-				sumYY = sumYY + (yyValues.get(y) * x);
-				count = count + x;
-				y++;
-			}
-			if ((getLength() % 2) != 0) {
-				int z = half + 1;
-				sumYY = sumYY + (yyValues.get(y) * z);
-				count = count + z;
-				y++;
-			}
-			for (int x = half; x >= 1; x--) {
-				sumYY = sumYY + (yyValues.get(y) * x);
-				count = count + x;
-				y++;
+		} else if (CalculationType.TRIANGULAR.equals(calcType)) {
+			/*
+			 * The triangular weights 1..n/2..1 are the SMA of an SMA whose
+			 * lengths add up to the length plus one.
+			 */
+			this.triangularValues.update(price, newBar);
+			if (this.triangularValues.isFull()) {
+				this.triangularMAValues.update(this.triangularValues.getMean(), newBar);
+				ma = this.triangularMAValues.getMean();
 			}
-			ma = sumYY / count;
 		}
 		return ma;
 	}
 
+	/**
+	 * Method createValues. Creates the kernels used to calculate the MA for the
+	 * current length.
+	 */
+	private void createValues() {
+		int half = getLength() / 2;
+		this.yyValues = new RunningSum(getLength());
+		this.emaValues = new ExponentialAverage(getLength());
+		this.weightedValues = new LinearWeightedSum(getLength());
+		this.weightedVolValues = new LinearWeightedSum(getLength());
+		this.triangularValues = new RunningSum((getLength() % 2) != 0 ? half + 1 : half);
+		this.triangularMAValues = new RunningSum(getLength() + 1 - this.triangularValues.capacity());
+	}
+
+	/**
+	 * Method clearValues.
+	 */
+	private void clearValues() {
+		this.yyValues = null;
+		this.emaValues = null;
+		this.weightedValues = null;
+		this.weightedVolValues = null;
+		this.triangularValues = null;
+		this.triangularMAValues = null;
+	}
+
 	/**
 	 * Method get the price.
 	 * 
@@ -47,6 +47,7 @@ import org.trade.persistent.dao.CodeValue;
 import org.trade.persistent.dao.Strategy;
 import org.trade.strategy.data.base.RegularTimePeriod;
 import org.trade.strategy.data.candle.CandleItem;
+import org.trade.strategy.data.kernel.WilderSmoothing;
 import org.trade.strategy.data.rsi.RelativeStrengthIndexItem;
 
 /**
@@ -92,14 +93,8 @@ public class RelativeStrengthIndexSeries extends IndicatorSeries {
 	 * Vales used to calculate RelativeStrengthIndex. These need to be reset
 	 * when the series is cleared.
 	 */
-	private double posSumCloseDiff = 0;
-	private double negSumCloseDiff = 0;
-	private double preDiffCloseValue = 0;
-	private double avgLossRSI = 0;
-	private double avgGainRSI = 0;
-	private double prevAvgLossRSI = 0;
-	private double prevAvgGainRSI = 0;
-	private double currentRSI = Double.MAX_VALUE;
+	private WilderSmoothing gainValues = null;
+	private WilderSmoothing lossValues = null;
 
 	/**
 	 * Creates a new empty series. By default, items added to the series will be
@@ -166,6 +161,8 @@ public class RelativeStrengthIndexSeries extends IndicatorSeries {
 	 */
 	public Object clone() throws CloneNotSupportedException {
 		RelativeStrengthIndexSeries clone = (RelativeStrengthIndexSeries) super.clone();
+		clone.gainValues = null;
+		clone.lossValues = null;
 		return clone;
 	}
 
@@ -176,14 +173,8 @@ public class RelativeStrengthIndexSeries extends IndicatorSeries {
 	 */
 	public void clear() {
 		super.clear();
-		posSumCloseDiff = 0;
-		negSumCloseDiff = 0;
-		preDiffCloseValue = 0;
-		avgLossRSI = 0;
-		avgGainRSI = 0;
-		prevAvgLossRSI = 0;
-		prevAvgGainRSI = 0;
-		currentRSI = Double.MAX_VALUE;
+		gainValues = null;
+		lossValues = null;
 	}
 
 	/**
@@ -334,6 +325,11 @@ public class RelativeStrengthIndexSeries extends IndicatorSeries {
 			// get the current data item...
 			CandleItem candleItem = (CandleItem) source.getDataItem(skip);
 
+			if (null == this.gainValues || this.gainValues.getPeriod() != getLength()) {
+				this.gainValues = new WilderSmoothing(getLength());
+				this.lossValues = new WilderSmoothing(getLength());
+			}
+
 			double diffCloseValue = 0;
 			if (source.getItemCount() > 1) {
 				CandleItem prevCandleItem = (CandleItem) source.getDataItem(skip - 1);
@@ -345,62 +341,26 @@ public class RelativeStrengthIndexSeries extends IndicatorSeries {
 
 				/*
 				 * If the item does not exist in the series then this is a new
-				 * time period and so we need to remove the last in the set and
-				 * add the new periods values. Otherwise we just update the last
-				 * value in the set. Sum is just used for performance save
-				 * having to sum the last set of values each time.
+				 * time period and so we need to add the new periods gain or
+				 * loss. Otherwise we just update the last value. The gains and
+				 * losses are summed until the first RSI after that each
+				 * average is smoothed from the previous bars average.
 				 */
-
-				if (newBar) {
-
-					if (diffCloseValue > 0) {
-						posSumCloseDiff = posSumCloseDiff + Math.abs(diffCloseValue);
-
-					} else {
-						negSumCloseDiff = negSumCloseDiff + Math.abs(diffCloseValue);
-					}
-					prevAvgLossRSI = avgLossRSI;
-					prevAvgGainRSI = avgGainRSI;
-					preDiffCloseValue = diffCloseValue;
-
-				} else {
-					if (diffCloseValue > 0 && preDiffCloseValue > 0) {
-						posSumCloseDiff = posSumCloseDiff + Math.abs(diffCloseValue) - Math.abs(preDiffCloseValue);
-
-					} else if (diffCloseValue > 0 && preDiffCloseValue < 0) {
-						posSumCloseDiff = posSumCloseDiff + Math.abs(diffCloseValue);
-						negSumCloseDiff = negSumCloseDiff - Math.abs(preDiffCloseValue);
-					} else if (diffCloseValue < 0 && preDiffCloseValue < 0) {
-						negSumCloseDiff = negSumCloseDiff + Math.abs(diffCloseValue) - Math.abs(preDiffCloseValue);
-
-					} else if (diffCloseValue < 0 && preDiffCloseValue > 0) {
-						negSumCloseDiff = negSumCloseDiff + Math.abs(diffCloseValue);
-						posSumCloseDiff = posSumCloseDiff - Math.abs(preDiffCloseValue);
-					}
-				}
+				this.gainValues.update(diffCloseValue > 0 ? diffCloseValue : 0, newBar);
+				this.lossValues.update(diffCloseValue > 0 ? 0 : Math.abs(diffCloseValue), newBar);
 			}
 			if (skip >= getLength()) {
-				if (currentRSI == Double.MAX_VALUE) {
-					avgGainRSI = posSumCloseDiff / getLength();
-					avgLossRSI = negSumCloseDiff / getLength();
-					currentRSI = 100 - (100 / (1 + (avgGainRSI / (avgLossRSI == 0 ? 1 : avgLossRSI))));
-				} else {
-					if (preDiffCloseValue > 0) {
-						avgGainRSI = (((prevAvgGainRSI * (getLength() - 1)) + Math.abs(preDiffCloseValue)))
-								/ getLength();
-						avgLossRSI = (((prevAvgLossRSI * (getLength() - 1)) + 0)) / getLength();
-
-					} else {
-						avgGainRSI = (((prevAvgGainRSI * (getLength() - 1)) + 0)) / getLength();
-						avgLossRSI = (((prevAvgLossRSI * (getLength() - 1)) + Math.abs(preDiffCloseValue)))
-								/ getLength();
-					}
-					currentRSI = 100 - (100 / (1 + (avgGainRSI / (avgLossRSI == 0 ? 1 : avgLossRSI))));
+				if (!this.gainValues.isSeeded()) {
+					this.gainValues.seed();
+					this.lossValues.seed();
 				}
+				double avgGainRSI = this.gainValues.getValue();
+				double avgLossRSI = this.lossValues.getValue();
+				double currentRSI = 100 - (100 / (1 + (avgGainRSI / (avgLossRSI == 0 ? 1 : avgLossRSI))));
 
 				if (newBar) {
 					RelativeStrengthIndexItem dataItem = new RelativeStrengthIndexItem(candleItem.getPeriod(),
-							new BigDecimal(currentRSI));
+							currentRSI);
 					this.add(dataItem, false);
 				} else {
 					RelativeStrengthIndexItem dataItem = (RelativeStrengthIndexItem) this
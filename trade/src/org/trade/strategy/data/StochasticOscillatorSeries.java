@@ -36,8 +36,6 @@
 package org.trade.strategy.data;
 
 import java.math.BigDecimal;
-import java.util.Collections;
-import java.util.LinkedList;
 
 import javax.persistence.DiscriminatorValue;
 import javax.persistence.Entity;
@@ -49,6 +47,8 @@ import org.trade.persistent.dao.CodeValue;
 import org.trade.persistent.dao.Strategy;
 import org.trade.strategy.data.base.RegularTimePeriod;
 import org.trade.strategy.data.candle.CandleItem;
+import org.trade.strategy.data.kernel.RollingExtremum;
+import org.trade.strategy.data.kernel.RunningSum;
 import org.trade.strategy.data.stochasticoscillator.StochasticOscillatorItem;
 
 /**
@@ -138,11 +138,10 @@ public class StochasticOscillatorSeries extends IndicatorSeries {
 	 * Vales used to calculate StochasticOscillator. These need to be reset when
 	 * the series is cleared.
 	 */
-	private double sumFullKRValues = 0.0;
-	private double sumFullDValues = 0.0;
-	private LinkedList<Double> yyValues = new LinkedList<Double>();
-	private LinkedList<Double> fullKRValues = new LinkedList<Double>();
-	private LinkedList<Double> fullDValues = new LinkedList<Double>();
+	private RollingExtremum highValues = null;
+	private RollingExtremum lowValues = null;
+	private RunningSum fullKRValues = null;
+	private RunningSum fullDValues = null;
 
 	/**
 	 * Creates a new empty series. By default, items added to the series will be
@@ -216,9 +215,7 @@ public class StochasticOscillatorSeries extends IndicatorSeries {
 	 */
 	public Object clone() throws CloneNotSupportedException {
 		StochasticOscillatorSeries clone = (StochasticOscillatorSeries) super.clone();
-		clone.yyValues = new LinkedList<Double>();
-		clone.fullKRValues = new LinkedList<Double>();
-		clone.fullDValues = new LinkedList<Double>();
+		clone.clearValues();
 		return clone;
 	}
 
@@ -229,11 +226,7 @@ public class StochasticOscillatorSeries extends IndicatorSeries {
 	 */
 	public void clear() {
 		super.clear();
-		sumFullKRValues = 0.0;
-		sumFullDValues = 0.0;
-		yyValues.clear();
-		fullKRValues.clear();
-		fullDValues.clear();
+		clearValues();
 	}
 
 	/**
@@ -439,35 +432,25 @@ public class StochasticOscillatorSeries extends IndicatorSeries {
 			// get the current data item...
 			CandleItem candleItem = (CandleItem) source.getDataItem(skip);
 			if (0 != candleItem.getClose()) {
-				if (this.yyValues.size() == getLength()) {
-					/*
-					 * If the item does not exist in the series then this is a
-					 * new time period and so we need to remove the last in the
-					 * set and add the new periods values. Otherwise we just
-					 * update the last value in the set. Sum is just used for
-					 * performance save having to sum the last set of values
-					 * each time.
-					 */
-					if (newBar) {
-						this.yyValues.removeLast();
-						this.yyValues.addFirst(candleItem.getClose());
-					} else {
-						this.yyValues.removeFirst();
-						this.yyValues.addFirst(candleItem.getClose());
-					}
-				} else {
-					if (newBar) {
-						this.yyValues.addFirst(candleItem.getClose());
-					} else {
-						this.yyValues.removeFirst();
-						this.yyValues.addFirst(candleItem.getClose());
-					}
+				if (null == this.highValues || this.highValues.capacity() != getLength()
+						|| this.fullKRValues.capacity() != this.getKSmoothing()
+						|| this.fullDValues.capacity() != this.getPercentD()) {
+					createValues();
 				}
+				/*
+				 * If the item does not exist in the series then this is a new
+				 * time period and so we need to remove the last in the set and
+				 * add the new periods values. Otherwise we just update the last
+				 * value in the set. The highest high and lowest low are kept
+				 * by the kernels so the set is not searched each time.
+				 */
+				this.highValues.update(candleItem.getClose(), newBar);
+				this.lowValues.update(candleItem.getClose(), newBar);
 
-				if (this.yyValues.size() == getLength()) {
+				if (this.highValues.size() == getLength()) {
 
-					double high = Collections.max(this.yyValues);
-					double low = Collections.min(this.yyValues);
+					double high = this.highValues.get();
+					double low = this.lowValues.get();
 
 					/*
 					 * %K = (Current Close - Lowest Low)/(Highest High - Lowest
@@ -496,72 +479,18 @@ public class StochasticOscillatorSeries extends IndicatorSeries {
 						fastKR = ((high - candleItem.getClose()) / (high - low)) * -100;
 					}
 
-					if (this.fullKRValues.size() == this.getKSmoothing()) {
-						/*
-						 * If the item does not exist in the series then this is
-						 * a new time period and so we need to remove the last
-						 * in the set and add the new periods values. Otherwise
-						 * we just update the last value in the set. Sum is just
-						 * used for performance save having to sum the last set
-						 * of values each time.
-						 */
-						if (newBar) {
-							sumFullKRValues = sumFullKRValues - this.fullKRValues.getLast() + fastKR;
-							this.fullKRValues.removeLast();
-							this.fullKRValues.addFirst(fastKR);
-						} else {
-							sumFullKRValues = sumFullKRValues - this.fullKRValues.getFirst() + fastKR;
-							this.fullKRValues.removeFirst();
-							this.fullKRValues.addFirst(fastKR);
-						}
-					} else {
-						if (newBar) {
-							sumFullKRValues = sumFullKRValues + fastKR;
-							this.fullKRValues.addFirst(fastKR);
-						} else {
-							sumFullKRValues = sumFullKRValues + fastKR - this.fullKRValues.getFirst();
-							this.fullKRValues.removeFirst();
-							this.fullKRValues.addFirst(fastKR);
-						}
-					}
-					if (this.fullKRValues.size() == this.getKSmoothing()) {
-
-						double fullKR = sumFullKRValues / this.getKSmoothing();
-
-						if (this.fullDValues.size() == this.getPercentD()) {
-							/*
-							 * If the item does not exist in the series then
-							 * this is a new time period and so we need to
-							 * remove the last in the set and add the new
-							 * periods values. Otherwise we just update the last
-							 * value in the set. Sum is just used for
-							 * performance save having to sum the last set of
-							 * values each time.
-							 */
-							if (newBar) {
-								sumFullDValues = sumFullDValues - this.fullDValues.getLast() + fullKR;
-								this.fullDValues.removeLast();
-								this.fullDValues.addFirst(fullKR);
-							} else {
-								sumFullDValues = sumFullDValues - this.fullDValues.getFirst() + fullKR;
-								this.fullDValues.removeFirst();
-								this.fullDValues.addFirst(fullKR);
-							}
-						} else {
-							if (newBar) {
-								sumFullDValues = sumFullDValues + fullKR;
-								this.fullDValues.addFirst(fullKR);
-							} else {
-								sumFullDValues = sumFullDValues + fullKR - this.fullDValues.getFirst();
-								this.fullDValues.removeFirst();
-								this.fullDValues.addFirst(fullKR);
-							}
-						}
-						if (this.fullDValues.size() == this.getPercentD()) {
-							double fullD = sumFullDValues / this.getPercentD();
+					this.fullKRValues.update(fastKR, newBar);
+
+					if (this.fullKRValues.isFull()) {
+
+						double fullKR = this.fullKRValues.getSum() / this.getKSmoothing();
+						this.fullDValues.update(fullKR, newBar);
+
+						if (this.fullDValues.isFull()) {
+							double fullD = this.fullDValues.getSum() / this.getPercentD();
 							if (newBar) {
 								StochasticOscillatorItem dataItem = new StochasticOscillatorItem(candleItem.getPeriod(),
-										new BigDecimal(fullD));
+										fullD);
 								this.add(dataItem, false);
 
 							} else {
@@ -576,6 +505,27 @@ public class StochasticOscillatorSeries extends IndicatorSeries {
 		}
 	}
 
+	/**
+	 * Method createValues. Creates the kernels used to calculate the %K and %D
+	 * for the current lengths.
+	 */
+	private void createValues() {
+		this.highValues = new RollingExtremum(getLength(), true);
+		this.lowValues = new RollingExtremum(getLength(), false);
+		this.fullKRValues = new RunningSum(this.getKSmoothing());
+		this.fullDValues = new RunningSum(this.getPercentD());
+	}
+
+	/**
+	 * Method clearValues.
+	 */
+	private void clearValues() {
+		this.highValues = null;
+		this.lowValues = null;
+		this.fullKRValues = null;
+		this.fullDValues = null;
+	}
+
 	/**
 	 * Method printSeries.
 	 * 
@@ -40,11 +40,16 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Vector;
 
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceUtil;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.trade.core.factory.ClassFactory;
 import org.trade.core.util.TradingCalendar;
 import org.trade.core.util.Worker;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.dao.Portfolio;
 import org.trade.persistent.dao.Strategy;
 import org.trade.persistent.dao.Tradestrategy;
 import org.trade.persistent.dao.Tradingday;
@@ -432,6 +437,7 @@ public class StrategyData extends Worker {
 	 */
 	public static StrategyData create(final Tradestrategy tradestrategy) {
 
+		loadStrategyData(tradestrategy);
 		CandleDataset candleDataset = new CandleDataset();
 		CandleSeries candleSeries = new CandleSeries(tradestrategy.getContract().getSymbol(),
 				tradestrategy.getContract(), tradestrategy.getBarSize(), tradestrategy.getTradingday().getOpen(),
@@ -440,6 +446,55 @@ public class StrategyData extends Worker {
 		return new StrategyData(tradestrategy.getStrategy(), candleDataset);
 	}
 
+	/**
+	 * Method loadStrategyData. Tradestrategies read for the Tradingday grid do
+	 * not have the indicator series of their Strategy or the accounts of their
+	 * Portfolio. Read them once for the Strategy and Portfolio, which are
+	 * shared by the tradestrategies of the grid.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 */
+	private static void loadStrategyData(final Tradestrategy tradestrategy) {
+
+		PersistenceUtil persistenceUtil = Persistence.getPersistenceUtil();
+		Strategy strategy = tradestrategy.getStrategy();
+		Portfolio portfolio = tradestrategy.getPortfolio();
+		try {
+			if (null != strategy && null != strategy.getIdStrategy()) {
+				synchronized (strategy) {
+					if (!persistenceUtil.isLoaded(strategy, "indicatorSeries")) {
+						strategy.setIndicatorSeries(
+								getPersistentModel().findStrategyById(strategy.getIdStrategy()).getIndicatorSeries());
+					}
+				}
+			}
+			if (null != portfolio && null != portfolio.getIdPortfolio()) {
+				synchronized (portfolio) {
+					if (!persistenceUtil.isLoaded(portfolio, "portfolioAccounts")) {
+						portfolio.setPortfolioAccounts(getPersistentModel()
+								.findPortfolioById(portfolio.getIdPortfolio()).getPortfolioAccounts());
+					}
+				}
+			}
+		} catch (Exception ex) {
+			throw new IllegalArgumentException(
+					"Could not construct StrategyData Object. Strategy data could not be read Msg: "
+							+ ex.getMessage());
+		}
+	}
+
+	/**
+	 * Method getPersistentModel.
+	 * 
+	 * @return PersistentModel
+	 * @throws Exception
+	 */
+	private static PersistentModel getPersistentModel() throws Exception {
+		return (PersistentModel) ClassFactory.getServiceForInterface(PersistentModel._persistentModel,
+				StrategyData.class);
+	}
+
 	/**
 	 * Method doDummyData.
 	 * 
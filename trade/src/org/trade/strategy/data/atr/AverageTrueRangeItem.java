@@ -54,6 +54,9 @@ public class AverageTrueRangeItem extends ComparableObjectItem {
 	 */
 	private static final long serialVersionUID = -3888996139640449109L;
 
+	private double averageTrueRange;
+	private boolean stale = false;
+
 	/**
 	 * Creates a new instance of <code>CandleItem</code>.
 	 * 
@@ -64,6 +67,24 @@ public class AverageTrueRangeItem extends ComparableObjectItem {
 	 */
 	public AverageTrueRangeItem(RegularTimePeriod period, BigDecimal averageTrueRange) {
 		super(period, new AverageTrueRange(averageTrueRange));
+		this.averageTrueRange = (null == averageTrueRange ? 0 : averageTrueRange.doubleValue());
+	}
+
+	/**
+	 * Creates a new instance of <code>AverageTrueRangeItem</code> from a
+	 * primitive value. The BigDecimal held by the value object is only created
+	 * when it is read.
+	 * 
+	 * @param period
+	 *            the time period.
+	 * 
+	 * @param averageTrueRange
+	 *            double
+	 */
+	public AverageTrueRangeItem(RegularTimePeriod period, double averageTrueRange) {
+		super(period, new AverageTrueRange());
+		this.averageTrueRange = averageTrueRange;
+		this.stale = true;
 	}
 
 	/**
@@ -94,11 +115,8 @@ public class AverageTrueRangeItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setAverageTrueRange(double averageTrueRange) {
-		AverageTrueRange dataItem = (AverageTrueRange) getObject();
-		if (dataItem != null) {
-			dataItem.setAverageTrueRange(new BigDecimal(averageTrueRange));
-		}
-
+		this.averageTrueRange = averageTrueRange;
+		this.stale = true;
 	}
 
 	/**
@@ -108,14 +126,21 @@ public class AverageTrueRangeItem extends ComparableObjectItem {
 	 * @return The averageTrueRange value.
 	 */
 	public double getAverageTrueRange() {
-		AverageTrueRange dataItem = (AverageTrueRange) getObject();
-		if (dataItem != null) {
-			if (null == dataItem.getAverageTrueRange()) {
-				return 0;
-			}
-			return dataItem.getAverageTrueRange().doubleValue();
-		} else {
-			return 0;
+		return this.averageTrueRange;
+	}
+
+	/**
+	 * Method getObject. Brings the value object up to date with the primitive
+	 * value before it is returned.
+	 * 
+	 * @return Object
+	 */
+	@Override
+	protected Object getObject() {
+		if (this.stale) {
+			((AverageTrueRange) super.getObject()).setAverageTrueRange(new BigDecimal(this.averageTrueRange));
+			this.stale = false;
 		}
+		return super.getObject();
 	}
 }
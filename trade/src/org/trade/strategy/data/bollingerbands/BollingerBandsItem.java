@@ -54,6 +54,9 @@ public class BollingerBandsItem extends ComparableObjectItem {
 	 */
 	private static final long serialVersionUID = -3888996139640449109L;
 
+	private double bollingerBands;
+	private boolean stale = false;
+
 	/**
 	 * Creates a new instance of <code>BollingerBandsItem</code>.
 	 * 
@@ -66,6 +69,24 @@ public class BollingerBandsItem extends ComparableObjectItem {
 	 */
 	public BollingerBandsItem(RegularTimePeriod period, BigDecimal bollingerBands) {
 		super(period, new BollingerBands(bollingerBands));
+		this.bollingerBands = (null == bollingerBands ? 0 : bollingerBands.doubleValue());
+	}
+
+	/**
+	 * Creates a new instance of <code>BollingerBandsItem</code> from a
+	 * primitive value. The BigDecimal held by the value object is only created
+	 * when it is read.
+	 * 
+	 * @param period
+	 *            the time period.
+	 * 
+	 * @param bollingerBands
+	 *            double
+	 */
+	public BollingerBandsItem(RegularTimePeriod period, double bollingerBands) {
+		super(period, new BollingerBands());
+		this.bollingerBands = bollingerBands;
+		this.stale = true;
 	}
 
 	/**
@@ -96,11 +117,8 @@ public class BollingerBandsItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setBollingerBands(double bollingerBands) {
-		BollingerBands dataItem = (BollingerBands) getObject();
-		if (dataItem != null) {
-			dataItem.setBollingerBands(new BigDecimal(bollingerBands));
-		}
-
+		this.bollingerBands = bollingerBands;
+		this.stale = true;
 	}
 
 	/**
@@ -110,14 +128,21 @@ public class BollingerBandsItem extends ComparableObjectItem {
 	 * @return The bollingerBands value.
 	 */
 	public double getBollingerBands() {
-		BollingerBands dataItem = (BollingerBands) getObject();
-		if (dataItem != null) {
-			if (null == dataItem.getBollingerBands()) {
-				return 0;
-			}
-			return dataItem.getBollingerBands().doubleValue();
-		} else {
-			return 0;
+		return this.bollingerBands;
+	}
+
+	/**
+	 * Method getObject. Brings the value object up to date with the primitive
+	 * value before it is returned.
+	 * 
+	 * @return Object
+	 */
+	@Override
+	protected Object getObject() {
+		if (this.stale) {
+			((BollingerBands) super.getObject()).setBollingerBands(new BigDecimal(this.bollingerBands));
+			this.stale = false;
 		}
+		return super.getObject();
 	}
 }
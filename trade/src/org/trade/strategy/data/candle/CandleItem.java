@@ -59,6 +59,14 @@ public class CandleItem extends ComparableObjectItem {
 	 */
 	private static final long serialVersionUID = -3888996139640449109L;
 
+	/*
+	 * When the item is backed by a CandleStore the values are held in the
+	 * store's columns and the Candle entity is only materialized on request.
+	 */
+	private CandleStore store = null;
+	private int row = -1;
+	private volatile boolean candleStale = false;
+
 	/**
 	 * Creates a new instance of <code>CandleItem</code>.
 	 * 
@@ -91,6 +99,23 @@ public class CandleItem extends ComparableObjectItem {
 				new Candle(contract, tradingday, period, open, high, low, close, volume, vwap, count, lastUpdateDate));
 	}
 
+	/**
+	 * Creates a new instance of <code>CandleItem</code> whose values are held
+	 * in a row of a columnar candle store.
+	 * 
+	 * @param store
+	 *            the CandleStore that holds the values.
+	 * @param period
+	 *            the time period.
+	 * @param row
+	 *            the row in the store for this item.
+	 */
+	public CandleItem(CandleStore store, RegularTimePeriod period, int row) {
+		super(period, null);
+		this.store = store;
+		this.row = row;
+	}
+
 	/**
 	 * Returns the period.
 	 * 
@@ -108,9 +133,41 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The period (never <code>null</code>).
 	 */
 	public Candle getCandle() {
+		if (null != this.store) {
+			synchronized (this) {
+				Candle candle = (Candle) getObject();
+				if (null == candle) {
+					candle = new Candle(this.store.getContract(), this.store.getTradingday(this.row), getPeriod(),
+							getOpen(), getHigh(), getLow(), getClose(), getVolume(), getVwap(), getCount(),
+							getLastUpdateDate());
+					setObject(candle);
+				} else if (this.candleStale) {
+					candle.setOpen(new BigDecimal(getOpen()));
+					candle.setHigh(new BigDecimal(getHigh()));
+					candle.setLow(new BigDecimal(getLow()));
+					candle.setClose(new BigDecimal(getClose()));
+					candle.setVwap(new BigDecimal(getVwap()));
+					candle.setVolume(new Long(getVolume()));
+					candle.setTradeCount(new Integer(getCount()));
+					candle.setLastUpdateDate(getLastUpdateDate());
+				}
+				this.candleStale = false;
+				return candle;
+			}
+		}
 		return (Candle) getObject();
 	}
 
+	/**
+	 * Returns true if the values are held in a columnar CandleStore.
+	 * 
+	 * 
+	 * @return boolean
+	 */
+	public boolean isColumnar() {
+		return null != this.store;
+	}
+
 	/**
 	 * Returns the y-value.
 	 * 
@@ -128,6 +185,8 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The open value.
 	 */
 	public double getOpen() {
+		if (null != this.store)
+			return this.store.getOpen(this.row);
 		if (null != getCandle())
 			return getCandle().getOpen().doubleValue();
 		return Double.NaN;
@@ -140,6 +199,8 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The high value.
 	 */
 	public double getHigh() {
+		if (null != this.store)
+			return this.store.getHigh(this.row);
 		if (null != getCandle())
 			return getCandle().getHigh().doubleValue();
 		return Double.NaN;
@@ -152,6 +213,8 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The low value.
 	 */
 	public double getLow() {
+		if (null != this.store)
+			return this.store.getLow(this.row);
 		if (null != getCandle())
 			return getCandle().getLow().doubleValue();
 		return Double.NaN;
@@ -165,6 +228,8 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The close value.
 	 */
 	public double getClose() {
+		if (null != this.store)
+			return this.store.getClose(this.row);
 		if (null != getCandle())
 			return getCandle().getClose().doubleValue();
 		return Double.NaN;
@@ -178,6 +243,8 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The volume value.
 	 */
 	public long getVolume() {
+		if (null != this.store)
+			return this.store.getVolume(this.row);
 		if (null != getCandle())
 			return getCandle().getVolume().longValue();
 		return 0;
@@ -190,6 +257,8 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The trade count value.
 	 */
 	public int getCount() {
+		if (null != this.store)
+			return this.store.getTradeCount(this.row);
 		if (null != getCandle())
 			return getCandle().getTradeCount().intValue();
 		return 0;
@@ -202,6 +271,8 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The Vwap value.
 	 */
 	public double getVwap() {
+		if (null != this.store)
+			return this.store.getVwap(this.row);
 		if (null != getCandle())
 			return getCandle().getVwap().doubleValue();
 		return 0;
@@ -215,7 +286,10 @@ public class CandleItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setVwap(double vwap) {
-		if (null != getCandle())
+		if (null != this.store) {
+			this.store.setVwap(this.row, vwap);
+			this.candleStale = true;
+		} else if (null != getCandle())
 			getCandle().setVwap(new BigDecimal(vwap));
 	}
 
@@ -227,7 +301,10 @@ public class CandleItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setOpen(double open) {
-		if (null != getCandle())
+		if (null != this.store) {
+			this.store.setOpen(this.row, open);
+			this.candleStale = true;
+		} else if (null != getCandle())
 			getCandle().setOpen(new BigDecimal(open));
 	}
 
@@ -239,7 +316,10 @@ public class CandleItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setClose(double close) {
-		if (null != getCandle())
+		if (null != this.store) {
+			this.store.setClose(this.row, close);
+			this.candleStale = true;
+		} else if (null != getCandle())
 			getCandle().setClose(new BigDecimal(close));
 	}
 
@@ -251,7 +331,10 @@ public class CandleItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setHigh(double high) {
-		if (null != getCandle())
+		if (null != this.store) {
+			this.store.setHigh(this.row, high);
+			this.candleStale = true;
+		} else if (null != getCandle())
 			getCandle().setHigh(new BigDecimal(high));
 	}
 
@@ -263,7 +346,10 @@ public class CandleItem extends ComparableObjectItem {
 	 *            int
 	 */
 	public void setCount(int count) {
-		if (null != getCandle())
+		if (null != this.store) {
+			this.store.setTradeCount(this.row, count);
+			this.candleStale = true;
+		} else if (null != getCandle())
 			getCandle().setTradeCount(new Integer(count));
 	}
 
@@ -275,7 +361,10 @@ public class CandleItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setLow(double low) {
-		if (null != getCandle())
+		if (null != this.store) {
+			this.store.setLow(this.row, low);
+			this.candleStale = true;
+		} else if (null != getCandle())
 			getCandle().setLow(new BigDecimal(low));
 	}
 
@@ -287,7 +376,10 @@ public class CandleItem extends ComparableObjectItem {
 	 *            long
 	 */
 	public void setVolume(long volume) {
-		if (null != getCandle())
+		if (null != this.store) {
+			this.store.setVolume(this.row, volume);
+			this.candleStale = true;
+		} else if (null != getCandle())
 			getCandle().setVolume(new Long(volume));
 	}
 
@@ -322,7 +414,10 @@ public class CandleItem extends ComparableObjectItem {
 	 *            ZonedDateTime
 	 */
 	public void setLastUpdateDate(ZonedDateTime lastUpdateDate) {
-		if (null != getCandle())
+		if (null != this.store) {
+			this.store.setLastUpdateDate(this.row, lastUpdateDate);
+			this.candleStale = true;
+		} else if (null != getCandle())
 			getCandle().setLastUpdateDate(lastUpdateDate);
 	}
 
@@ -333,6 +428,8 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The lastUpdateDate value.
 	 */
 	public ZonedDateTime getLastUpdateDate() {
+		if (null != this.store)
+			return this.store.getLastUpdateDate(this.row);
 		if (null != getCandle())
 			return getCandle().getLastUpdateDate();
 		return null;
@@ -0,0 +1,394 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.candle;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+import org.trade.strategy.data.base.RegularTimePeriod;
+
+/**
+ * A lookup index from a time to the candle period that contains it. As bar
+ * periods are a fixed size from the trading day open the period start for any
+ * time can be calculated with epoch second arithmetic against a known period
+ * start and then found in a hash of period starts. Periods that are not on the
+ * bar boundary i.e. daily bars or bars that span a market close are found via
+ * a binary search of the period starts.
+ * 
+ * The index is only valid while items are appended in period order and the
+ * oldest items are evicted from the head of the series, callers should
+ * {@link #clear()} it and re-add all the periods if an item is inserted or
+ * removed anywhere else.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class CandlePeriodIndex implements Serializable {
+
+	private static final long serialVersionUID = 6530961541379562931L;
+
+	private static final int INITIAL_CAPACITY = 64;
+	private static final long NANOS_PER_SECOND = 1000000000L;
+	private static final long NANOS_PER_MILLI = 1000000L;
+	private static final long MILLIS_PER_SECOND = 1000L;
+	private static final long EMPTY_KEY = Long.MIN_VALUE;
+
+	private int barSize = 0;
+	private int head = 0;
+	private int size = 0;
+
+	// Period start/end in epoch nanos by series index offset by head.
+	private long[] starts = new long[INITIAL_CAPACITY];
+	private long[] ends = new long[INITIAL_CAPACITY];
+
+	// Open addressing hash of period start epoch second to array position.
+	private long[] keys = newKeys(INITIAL_CAPACITY * 2);
+	private int[] values = new int[INITIAL_CAPACITY * 2];
+
+	/**
+	 * Constructor for CandlePeriodIndex.
+	 * 
+	 * @param barSize
+	 *            int the length in seconds of the series bars.
+	 */
+	public CandlePeriodIndex(int barSize) {
+		this.barSize = barSize;
+	}
+
+	/**
+	 * Method setBarSize.
+	 * 
+	 * @param barSize
+	 *            int the length in seconds of the series bars.
+	 */
+	public synchronized void setBarSize(int barSize) {
+		this.barSize = barSize;
+	}
+
+	/**
+	 * Method size.
+	 * 
+	 * @return int the number of periods indexed.
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public synchronized void clear() {
+		this.head = 0;
+		this.size = 0;
+		Arrays.fill(this.keys, EMPTY_KEY);
+	}
+
+	/**
+	 * Method add. Appends the period for the next item in the series.
+	 * 
+	 * @param period
+	 *            RegularTimePeriod
+	 */
+	public synchronized void add(RegularTimePeriod period) {
+
+		if (this.head + this.size == this.starts.length) {
+			if (this.head * 2 >= this.starts.length) {
+				compact();
+			} else {
+				int capacity = this.starts.length * 2;
+				this.starts = Arrays.copyOf(this.starts, capacity);
+				this.ends = Arrays.copyOf(this.ends, capacity);
+			}
+		}
+		int position = this.head + this.size;
+		this.starts[position] = toEpochNanos(period.getStart());
+		this.ends[position] = toEpochNanos(period.getEnd());
+		this.size++;
+		if (period.getStart().getNano() == 0) {
+			if (this.size * 2 > this.keys.length)
+				rehash(this.keys.length * 2);
+			put(period.getStart().toEpochSecond(), position);
+		}
+	}
+
+	/**
+	 * Method removeFirst. Removes the period for the first item in the series
+	 * i.e. when the series has evicted its oldest item. The remaining periods
+	 * move down one index.
+	 */
+	public synchronized void removeFirst() {
+
+		if (this.size == 0)
+			return;
+		long start = this.starts[this.head];
+		if (Math.floorMod(start, NANOS_PER_SECOND) == 0) {
+			long key = Math.floorDiv(start, NANOS_PER_SECOND);
+			if (get(key) == this.head)
+				remove(key);
+		}
+		this.head++;
+		this.size--;
+		if (this.size == 0)
+			this.head = 0;
+	}
+
+	/**
+	 * Method indexOf. Returns the index of the period that contains the time.
+	 * 
+	 * @param date
+	 *            ZonedDateTime
+	 * @return int the index or -1 if no period contains the time.
+	 */
+	public synchronized int indexOf(ZonedDateTime date) {
+		return indexOf(toEpochNanos(date), date.toEpochSecond());
+	}
+
+	/**
+	 * Method indexOf. Returns the index of the period that contains the time.
+	 * 
+	 * @param epochMillis
+	 *            long the time in milliseconds from the epoch.
+	 * @return int the index or -1 if no period contains the time.
+	 */
+	public synchronized int indexOf(long epochMillis) {
+		return indexOf(epochMillis * NANOS_PER_MILLI, Math.floorDiv(epochMillis, MILLIS_PER_SECOND));
+	}
+
+	/**
+	 * Method indexOf.
+	 * 
+	 * @param time
+	 *            long the time in epoch nanos.
+	 * @param seconds
+	 *            long the time in epoch seconds.
+	 * @return int the index or -1 if no period contains the time.
+	 */
+	private int indexOf(long time, long seconds) {
+
+		if (this.size == 0)
+			return -1;
+
+		int last = this.head + this.size - 1;
+		if (time > this.ends[last])
+			return -1;
+		if (time >= this.starts[last])
+			return last - this.head;
+
+		if (this.barSize > 0) {
+			long anchor = Math.floorDiv(this.starts[last], NANOS_PER_SECOND);
+			int position = get(seconds - Math.floorMod(seconds - anchor, (long) this.barSize));
+			if (position > -1 && contains(position, time))
+				return position - this.head;
+		}
+
+		int position = floorPosition(time);
+		if (position > -1 && contains(position, time))
+			return position - this.head;
+		return -1;
+	}
+
+	/**
+	 * Method indexOfStart. Returns the index of the period that starts at the
+	 * time.
+	 * 
+	 * @param start
+	 *            ZonedDateTime
+	 * @return int the index or -1 if no period starts at the time.
+	 */
+	public synchronized int indexOfStart(ZonedDateTime start) {
+
+		if (this.size == 0)
+			return -1;
+		long time = toEpochNanos(start);
+		if (start.getNano() == 0) {
+			int position = get(start.toEpochSecond());
+			if (position > -1)
+				return position - this.head;
+		}
+		int position = floorPosition(time);
+		if (position > -1 && this.starts[position] == time)
+			return position - this.head;
+		return -1;
+	}
+
+	/**
+	 * Method contains.
+	 * 
+	 * @param position
+	 *            int
+	 * @param time
+	 *            long
+	 * @return boolean true if the period at position contains the time.
+	 */
+	private boolean contains(int position, long time) {
+		return time >= this.starts[position] && time <= this.ends[position];
+	}
+
+	/**
+	 * Method floorPosition. Binary search for the last period starting at or
+	 * before the time.
+	 * 
+	 * @param time
+	 *            long
+	 * @return int the array position or -1 if all periods start after the
+	 *         time.
+	 */
+	private int floorPosition(long time) {
+		int low = this.head;
+		int high = this.head + this.size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (this.starts[mid] <= time) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high < this.head ? -1 : high;
+	}
+
+	/**
+	 * Method get.
+	 * 
+	 * @param key
+	 *            long
+	 * @return int the array position for the period start or -1 if not
+	 *         found.
+	 */
+	private int get(long key) {
+		int mask = this.keys.length - 1;
+		int slot = hash(key) & mask;
+		while (this.keys[slot] != EMPTY_KEY) {
+			if (this.keys[slot] == key)
+				return this.values[slot];
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Method put.
+	 * 
+	 * @param key
+	 *            long
+	 * @param value
+	 *            int
+	 */
+	private void put(long key, int value) {
+		int mask = this.keys.length - 1;
+		int slot = hash(key) & mask;
+		while (this.keys[slot] != EMPTY_KEY && this.keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		this.keys[slot] = key;
+		this.values[slot] = value;
+	}
+
+	/**
+	 * Method remove. Deletes the key and shifts back any following keys in
+	 * its probe sequence so lookups do not stop short at the empty slot.
+	 * 
+	 * @param key
+	 *            long
+	 */
+	private void remove(long key) {
+		int mask = this.keys.length - 1;
+		int slot = hash(key) & mask;
+		while (this.keys[slot] != key) {
+			if (this.keys[slot] == EMPTY_KEY)
+				return;
+			slot = (slot + 1) & mask;
+		}
+		int next = (slot + 1) & mask;
+		while (this.keys[next] != EMPTY_KEY) {
+			int ideal = hash(this.keys[next]) & mask;
+			if (((next - ideal) & mask) >= ((next - slot) & mask)) {
+				this.keys[slot] = this.keys[next];
+				this.values[slot] = this.values[next];
+				slot = next;
+			}
+			next = (next + 1) & mask;
+		}
+		this.keys[slot] = EMPTY_KEY;
+	}
+
+	/**
+	 * Method compact. Moves the periods down to the start of the arrays
+	 * reclaiming the space of evicted periods.
+	 */
+	private void compact() {
+		System.arraycopy(this.starts, this.head, this.starts, 0, this.size);
+		System.arraycopy(this.ends, this.head, this.ends, 0, this.size);
+		for (int i = 0; i < this.keys.length; i++) {
+			if (this.keys[i] != EMPTY_KEY)
+				this.values[i] -= this.head;
+		}
+		this.head = 0;
+	}
+
+	/**
+	 * Method rehash.
+	 * 
+	 * @param capacity
+	 *            int must be a power of two.
+	 */
+	private void rehash(int capacity) {
+		long[] oldKeys = this.keys;
+		int[] oldValues = this.values;
+		this.keys = newKeys(capacity);
+		this.values = new int[capacity];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY_KEY)
+				put(oldKeys[i], oldValues[i]);
+		}
+	}
+
+	private static long[] newKeys(int capacity) {
+		long[] keys = new long[capacity];
+		Arrays.fill(keys, EMPTY_KEY);
+		return keys;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private static long toEpochNanos(ZonedDateTime date) {
+		return (date.toEpochSecond() * NANOS_PER_SECOND) + date.getNano();
+	}
+}
@@ -0,0 +1,422 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.candle;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+import org.trade.persistent.dao.Contract;
+import org.trade.persistent.dao.Tradingday;
+import org.trade.strategy.data.base.RegularTimePeriod;
+
+/**
+ * A growable columnar store of candle values. Each candle is a row index into
+ * primitive columns for open/high/low/close/vwap, volume, trade count and the
+ * period start in epoch seconds. This avoids a BigDecimal allocation for every
+ * update to a forming bar, the Candle entity is only materialized by the
+ * CandleItem when it is persisted or needed by the API.
+ * 
+ * The store is updated from the broker thread while the strategy and chart
+ * threads read it, every access is synchronized on the store.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class CandleStore implements Serializable {
+
+	private static final long serialVersionUID = -4128457103766295917L;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final Contract contract;
+	private int size = 0;
+
+	private long[] startPeriod;
+	private int[] barSize;
+	private double[] open;
+	private double[] high;
+	private double[] low;
+	private double[] close;
+	private double[] vwap;
+	private long[] volume;
+	private int[] tradeCount;
+	private Tradingday[] tradingday;
+	private ZonedDateTime[] lastUpdateDate;
+
+	/**
+	 * Constructor for CandleStore.
+	 * 
+	 * @param contract
+	 *            Contract the contract for all the candles in this store.
+	 */
+	public CandleStore(Contract contract) {
+		this(contract, INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Constructor for CandleStore.
+	 * 
+	 * @param contract
+	 *            Contract the contract for all the candles in this store.
+	 * @param capacity
+	 *            int the initial number of rows.
+	 */
+	public CandleStore(Contract contract, int capacity) {
+		this.contract = contract;
+		capacity = Math.max(capacity, 1);
+		this.startPeriod = new long[capacity];
+		this.barSize = new int[capacity];
+		this.open = new double[capacity];
+		this.high = new double[capacity];
+		this.low = new double[capacity];
+		this.close = new double[capacity];
+		this.vwap = new double[capacity];
+		this.volume = new long[capacity];
+		this.tradeCount = new int[capacity];
+		this.tradingday = new Tradingday[capacity];
+		this.lastUpdateDate = new ZonedDateTime[capacity];
+	}
+
+	/**
+	 * Method add. Appends a row to the store.
+	 * 
+	 * @param tradingday
+	 *            Tradingday
+	 * @param period
+	 *            RegularTimePeriod
+	 * @param open
+	 *            double
+	 * @param high
+	 *            double
+	 * @param low
+	 *            double
+	 * @param close
+	 *            double
+	 * @param volume
+	 *            long
+	 * @param vwap
+	 *            double
+	 * @param tradeCount
+	 *            int
+	 * @param lastUpdateDate
+	 *            ZonedDateTime
+	 * @return int the row index of the new candle.
+	 */
+	public synchronized int add(Tradingday tradingday, RegularTimePeriod period, double open, double high,
+			double low, double close, long volume, double vwap, int tradeCount, ZonedDateTime lastUpdateDate) {
+
+		if (this.size == this.open.length)
+			grow();
+
+		int row = this.size;
+		this.startPeriod[row] = period.getStart().toEpochSecond();
+		this.barSize[row] = (int) ((period.getLastMillisecond() - period.getFirstMillisecond() + 999) / 1000);
+		this.open[row] = open;
+		this.high[row] = high;
+		this.low[row] = low;
+		this.close[row] = close;
+		this.vwap[row] = vwap;
+		this.volume[row] = volume;
+		this.tradeCount[row] = tradeCount;
+		/*
+		 * Candles for the same day share the one Tradingday instance.
+		 */
+		if (row > 0 && null != tradingday && tradingday.equals(this.tradingday[row - 1])) {
+			this.tradingday[row] = this.tradingday[row - 1];
+		} else {
+			this.tradingday[row] = tradingday;
+		}
+		this.lastUpdateDate[row] = lastUpdateDate;
+		this.size++;
+		return row;
+	}
+
+	/**
+	 * Method size.
+	 * 
+	 * @return int the number of rows in the store.
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * Method getContract.
+	 * 
+	 * @return Contract
+	 */
+	public Contract getContract() {
+		return this.contract;
+	}
+
+	/**
+	 * Method getStartPeriod.
+	 * 
+	 * @param row
+	 *            int
+	 * @return long the period start in epoch seconds.
+	 */
+	public synchronized long getStartPeriod(int row) {
+		return this.startPeriod[row];
+	}
+
+	/**
+	 * Method getBarSize.
+	 * 
+	 * @param row
+	 *            int
+	 * @return int the length of the period in seconds.
+	 */
+	public synchronized int getBarSize(int row) {
+		return this.barSize[row];
+	}
+
+	/**
+	 * Method getOpen.
+	 * 
+	 * @param row
+	 *            int
+	 * @return double
+	 */
+	public synchronized double getOpen(int row) {
+		return this.open[row];
+	}
+
+	/**
+	 * Method setOpen.
+	 * 
+	 * @param row
+	 *            int
+	 * @param open
+	 *            double
+	 */
+	public synchronized void setOpen(int row, double open) {
+		this.open[row] = open;
+	}
+
+	/**
+	 * Method getHigh.
+	 * 
+	 * @param row
+	 *            int
+	 * @return double
+	 */
+	public synchronized double getHigh(int row) {
+		return this.high[row];
+	}
+
+	/**
+	 * Method setHigh.
+	 * 
+	 * @param row
+	 *            int
+	 * @param high
+	 *            double
+	 */
+	public synchronized void setHigh(int row, double high) {
+		this.high[row] = high;
+	}
+
+	/**
+	 * Method getLow.
+	 * 
+	 * @param row
+	 *            int
+	 * @return double
+	 */
+	public synchronized double getLow(int row) {
+		return this.low[row];
+	}
+
+	/**
+	 * Method setLow.
+	 * 
+	 * @param row
+	 *            int
+	 * @param low
+	 *            double
+	 */
+	public synchronized void setLow(int row, double low) {
+		this.low[row] = low;
+	}
+
+	/**
+	 * Method getClose.
+	 * 
+	 * @param row
+	 *            int
+	 * @return double
+	 */
+	public synchronized double getClose(int row) {
+		return this.close[row];
+	}
+
+	/**
+	 * Method setClose.
+	 * 
+	 * @param row
+	 *            int
+	 * @param close
+	 *            double
+	 */
+	public synchronized void setClose(int row, double close) {
+		this.close[row] = close;
+	}
+
+	/**
+	 * Method getVwap.
+	 * 
+	 * @param row
+	 *            int
+	 * @return double
+	 */
+	public synchronized double getVwap(int row) {
+		return this.vwap[row];
+	}
+
+	/**
+	 * Method setVwap.
+	 * 
+	 * @param row
+	 *            int
+	 * @param vwap
+	 *            double
+	 */
+	public synchronized void setVwap(int row, double vwap) {
+		this.vwap[row] = vwap;
+	}
+
+	/**
+	 * Method getVolume.
+	 * 
+	 * @param row
+	 *            int
+	 * @return long
+	 */
+	public synchronized long getVolume(int row) {
+		return this.volume[row];
+	}
+
+	/**
+	 * Method setVolume.
+	 * 
+	 * @param row
+	 *            int
+	 * @param volume
+	 *            long
+	 */
+	public synchronized void setVolume(int row, long volume) {
+		this.volume[row] = volume;
+	}
+
+	/**
+	 * Method getTradeCount.
+	 * 
+	 * @param row
+	 *            int
+	 * @return int
+	 */
+	public synchronized int getTradeCount(int row) {
+		return this.tradeCount[row];
+	}
+
+	/**
+	 * Method setTradeCount.
+	 * 
+	 * @param row
+	 *            int
+	 * @param tradeCount
+	 *            int
+	 */
+	public synchronized void setTradeCount(int row, int tradeCount) {
+		this.tradeCount[row] = tradeCount;
+	}
+
+	/**
+	 * Method getTradingday.
+	 * 
+	 * @param row
+	 *            int
+	 * @return Tradingday
+	 */
+	public synchronized Tradingday getTradingday(int row) {
+		return this.tradingday[row];
+	}
+
+	/**
+	 * Method getLastUpdateDate.
+	 * 
+	 * @param row
+	 *            int
+	 * @return ZonedDateTime
+	 */
+	public synchronized ZonedDateTime getLastUpdateDate(int row) {
+		return this.lastUpdateDate[row];
+	}
+
+	/**
+	 * Method setLastUpdateDate.
+	 * 
+	 * @param row
+	 *            int
+	 * @param lastUpdateDate
+	 *            ZonedDateTime
+	 */
+	public synchronized void setLastUpdateDate(int row, ZonedDateTime lastUpdateDate) {
+		this.lastUpdateDate[row] = lastUpdateDate;
+	}
+
+	/**
+	 * Method grow. Grows all the columns by half again their current size. The
+	 * caller holds the store's monitor, the accessors are synchronized so a
+	 * value set while the columns are replaced is not lost.
+	 */
+	private void grow() {
+		int capacity = this.open.length + (this.open.length >> 1) + 1;
+		this.startPeriod = Arrays.copyOf(this.startPeriod, capacity);
+		this.barSize = Arrays.copyOf(this.barSize, capacity);
+		this.open = Arrays.copyOf(this.open, capacity);
+		this.high = Arrays.copyOf(this.high, capacity);
+		this.low = Arrays.copyOf(this.low, capacity);
+		this.close = Arrays.copyOf(this.close, capacity);
+		this.vwap = Arrays.copyOf(this.vwap, capacity);
+		this.volume = Arrays.copyOf(this.volume, capacity);
+		this.tradeCount = Arrays.copyOf(this.tradeCount, capacity);
+		this.tradingday = Arrays.copyOf(this.tradingday, capacity);
+		this.lastUpdateDate = Arrays.copyOf(this.lastUpdateDate, capacity);
+	}
+}
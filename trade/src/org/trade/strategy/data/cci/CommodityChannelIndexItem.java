@@ -54,6 +54,9 @@ public class CommodityChannelIndexItem extends ComparableObjectItem {
 	 */
 	private static final long serialVersionUID = -3888996139640449109L;
 
+	private double commodityChannelIndex;
+	private boolean stale = false;
+
 	/**
 	 * Creates a new instance of <code>CandleItem</code>.
 	 * 
@@ -66,6 +69,24 @@ public class CommodityChannelIndexItem extends ComparableObjectItem {
 	 */
 	public CommodityChannelIndexItem(RegularTimePeriod period, BigDecimal cciAverage) {
 		super(period, new CommodityChannelIndex(cciAverage));
+		this.commodityChannelIndex = (null == cciAverage ? 0 : cciAverage.doubleValue());
+	}
+
+	/**
+	 * Creates a new instance of <code>CommodityChannelIndexItem</code> from a
+	 * primitive value. The BigDecimal held by the value object is only created
+	 * when it is read.
+	 * 
+	 * @param period
+	 *            the time period.
+	 * 
+	 * @param cciAverage
+	 *            double
+	 */
+	public CommodityChannelIndexItem(RegularTimePeriod period, double cciAverage) {
+		super(period, new CommodityChannelIndex());
+		this.commodityChannelIndex = cciAverage;
+		this.stale = true;
 	}
 
 	/**
@@ -96,11 +117,8 @@ public class CommodityChannelIndexItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setCommodityChannelIndex(double cciAverage) {
-		CommodityChannelIndex dataItem = (CommodityChannelIndex) getObject();
-		if (dataItem != null) {
-			dataItem.setCommodityChannelIndex(new BigDecimal(cciAverage));
-		}
-
+		this.commodityChannelIndex = cciAverage;
+		this.stale = true;
 	}
 
 	/**
@@ -110,14 +128,21 @@ public class CommodityChannelIndexItem extends ComparableObjectItem {
 	 * @return The moving Average value.
 	 */
 	public double getCommodityChannelIndex() {
-		CommodityChannelIndex dataItem = (CommodityChannelIndex) getObject();
-		if (dataItem != null) {
-			if (null == dataItem.getCommodityChannelIndex()) {
-				return 0;
-			}
-			return dataItem.getCommodityChannelIndex().doubleValue();
-		} else {
-			return 0;
+		return this.commodityChannelIndex;
+	}
+
+	/**
+	 * Method getObject. Brings the value object up to date with the primitive
+	 * value before it is returned.
+	 * 
+	 * @return Object
+	 */
+	@Override
+	protected Object getObject() {
+		if (this.stale) {
+			((CommodityChannelIndex) super.getObject()).setCommodityChannelIndex(new BigDecimal(this.commodityChannelIndex));
+			this.stale = false;
 		}
+		return super.getObject();
 	}
 }
@@ -0,0 +1,187 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.kernel;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A fixed capacity ring buffer of primitive doubles. Values are added at the
+ * head and once the buffer is full the oldest value must be removed before
+ * another is added. No allocation is made after construction.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class DoubleRingBuffer {
+
+	private final double[] values;
+	private int head = -1;
+	private int size = 0;
+
+	/**
+	 * Constructor for DoubleRingBuffer.
+	 * 
+	 * @param capacity
+	 *            int the maximum number of values held.
+	 */
+	public DoubleRingBuffer(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be greater than zero.");
+		}
+		this.values = new double[capacity];
+	}
+
+	/**
+	 * Method add. Adds the value as the newest in the buffer.
+	 * 
+	 * @param value
+	 *            double
+	 */
+	public void add(double value) {
+		if (isFull()) {
+			throw new IllegalStateException("Buffer is full remove the oldest value first.");
+		}
+		this.head = (this.head + 1) % this.values.length;
+		this.values[this.head] = value;
+		this.size++;
+	}
+
+	/**
+	 * Method replaceNewest. Replaces the newest value in the buffer.
+	 * 
+	 * @param value
+	 *            double
+	 * @return double the value that was replaced.
+	 */
+	public double replaceNewest(double value) {
+		if (this.size == 0) {
+			throw new NoSuchElementException();
+		}
+		double replaced = this.values[this.head];
+		this.values[this.head] = value;
+		return replaced;
+	}
+
+	/**
+	 * Method removeOldest.
+	 * 
+	 * @return double the value that was removed.
+	 */
+	public double removeOldest() {
+		if (this.size == 0) {
+			throw new NoSuchElementException();
+		}
+		double value = this.values[oldestSlot()];
+		this.size--;
+		return value;
+	}
+
+	/**
+	 * Method get.
+	 * 
+	 * @param index
+	 *            int zero is the newest value.
+	 * @return double
+	 */
+	public double get(int index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index: " + index + " Size: " + this.size);
+		}
+		return this.values[slot(index)];
+	}
+
+	/**
+	 * Method getOldest.
+	 * 
+	 * @return double the oldest value in the buffer.
+	 */
+	public double getOldest() {
+		return get(this.size - 1);
+	}
+
+	/**
+	 * Method size.
+	 * 
+	 * @return int
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Method capacity.
+	 * 
+	 * @return int
+	 */
+	public int capacity() {
+		return this.values.length;
+	}
+
+	/**
+	 * Method isEmpty.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Method isFull.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isFull() {
+		return this.size == this.values.length;
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public void clear() {
+		this.head = -1;
+		this.size = 0;
+	}
+
+	private int oldestSlot() {
+		return slot(this.size - 1);
+	}
+
+	private int slot(int index) {
+		int slot = this.head - index;
+		return slot < 0 ? slot + this.values.length : slot;
+	}
+}
@@ -0,0 +1,181 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.kernel;
+
+/**
+ * The linearly weighted sum of a sliding window of values. The newest value
+ * has a weight equal to the window capacity and each older value has a weight
+ * one less than the value after it. When a value is added every weight in the
+ * window drops by one which is the same as subtracting the plain sum, so the
+ * weighted sum is updated in O(1). It is recalculated from the window every
+ * RESYNC_INTERVAL updates so that rounding errors do not accumulate.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class LinearWeightedSum extends StreamingKernel {
+
+	private static final int RESYNC_INTERVAL = 1024;
+
+	private final DoubleRingBuffer values;
+	private double sum = 0;
+	private double weightedSum = 0;
+	private int updates = 0;
+
+	/**
+	 * Constructor for LinearWeightedSum.
+	 * 
+	 * @param capacity
+	 *            int the number of values in a full window.
+	 */
+	public LinearWeightedSum(int capacity) {
+		this.values = new DoubleRingBuffer(capacity);
+	}
+
+	/**
+	 * Method add.
+	 * 
+	 * @param value
+	 *            double
+	 */
+	public void add(double value) {
+		this.weightedSum = this.weightedSum - this.sum + (this.values.capacity() * value);
+		if (this.values.isFull()) {
+			this.sum = this.sum - this.values.removeOldest() + value;
+		} else {
+			this.sum = this.sum + value;
+		}
+		this.values.add(value);
+		resync();
+	}
+
+	/**
+	 * Method replaceNewest.
+	 * 
+	 * @param value
+	 *            double
+	 */
+	public void replaceNewest(double value) {
+		if (this.values.isEmpty()) {
+			add(value);
+		} else {
+			double oldValue = this.values.replaceNewest(value);
+			this.sum = this.sum - oldValue + value;
+			this.weightedSum = this.weightedSum + (this.values.capacity() * (value - oldValue));
+			resync();
+		}
+	}
+
+	/**
+	 * Method getWeightedSum.
+	 * 
+	 * @return double
+	 */
+	public double getWeightedSum() {
+		return this.weightedSum;
+	}
+
+	/**
+	 * Method getTotalWeight.
+	 * 
+	 * @return double the sum of the weights of the values in the window.
+	 */
+	public double getTotalWeight() {
+		int size = this.values.size();
+		return (size * ((2.0d * this.values.capacity()) - size + 1)) / 2;
+	}
+
+	/**
+	 * Method getWeightedMean.
+	 * 
+	 * @return double
+	 */
+	public double getWeightedMean() {
+		return this.weightedSum / getTotalWeight();
+	}
+
+	/**
+	 * Method size.
+	 * 
+	 * @return int
+	 */
+	public int size() {
+		return this.values.size();
+	}
+
+	/**
+	 * Method capacity.
+	 * 
+	 * @return int
+	 */
+	public int capacity() {
+		return this.values.capacity();
+	}
+
+	/**
+	 * Method isFull.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isFull() {
+		return this.values.isFull();
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public void clear() {
+		this.values.clear();
+		this.sum = 0;
+		this.weightedSum = 0;
+		this.updates = 0;
+	}
+
+	private void resync() {
+		if (++this.updates < RESYNC_INTERVAL) {
+			return;
+		}
+		this.updates = 0;
+		double total = 0;
+		double weighted = 0;
+		for (int i = 0; i < this.values.size(); i++) {
+			total = total + this.values.get(i);
+			weighted = weighted + (this.values.get(i) * (this.values.capacity() - i));
+		}
+		this.sum = total;
+		this.weightedSum = weighted;
+	}
+}
@@ -0,0 +1,218 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.kernel;
+
+import java.util.NoSuchElementException;
+
+/**
+ * The maximum or minimum of a sliding window of values. A monotonic deque of
+ * window positions is kept so that the current extremum is always at the
+ * front, adding and removing values is amortized O(1) and no allocation is
+ * made after construction. Replacing the newest value is O(1) when the new
+ * value is at least as extreme as the one it replaces, otherwise the deque is
+ * rebuilt from the window.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class RollingExtremum extends StreamingKernel {
+
+	private final boolean maximum;
+	private final int capacity;
+
+	// Values by window position modulo capacity.
+	private final double[] values;
+	// Deque of window positions whose values are monotonic from the front.
+	private final long[] deque;
+	private int dequeHead = 0;
+	private int dequeSize = 0;
+
+	// Window positions of the oldest value and the next value to be added.
+	private long oldest = 0;
+	private long next = 0;
+
+	/**
+	 * Constructor for RollingExtremum.
+	 * 
+	 * @param capacity
+	 *            int the maximum number of values in the window.
+	 * @param maximum
+	 *            boolean true for the maximum false for the minimum.
+	 */
+	public RollingExtremum(int capacity, boolean maximum) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be greater than zero.");
+		}
+		this.capacity = capacity;
+		this.maximum = maximum;
+		this.values = new double[capacity];
+		this.deque = new long[capacity];
+	}
+
+	/**
+	 * Method add. Adds the value as the newest in the window, if the window is
+	 * full the oldest value is removed first.
+	 * 
+	 * @param value
+	 *            double
+	 */
+	public void add(double value) {
+		if (size() == this.capacity)
+			removeOldest();
+
+		this.values[index(this.next)] = value;
+		push(this.next);
+		this.next++;
+	}
+
+	/**
+	 * Method replaceNewest.
+	 * 
+	 * @param value
+	 *            double
+	 */
+	public void replaceNewest(double value) {
+		if (size() == 0) {
+			add(value);
+			return;
+		}
+		int newest = index(this.next - 1);
+		boolean dominates = dominates(value, this.values[newest]);
+		this.values[newest] = value;
+		if (dominates) {
+			/*
+			 * The newest position is always at the back of the deque so it
+			 * can be pushed again once the values it now dominates are
+			 * removed.
+			 */
+			this.dequeSize--;
+			push(this.next - 1);
+		} else {
+			this.dequeSize = 0;
+			for (long position = this.oldest; position < this.next; position++) {
+				push(position);
+			}
+		}
+	}
+
+	/**
+	 * Method removeOldest.
+	 * 
+	 * @return double the value that was removed.
+	 */
+	public double removeOldest() {
+		if (size() == 0) {
+			throw new NoSuchElementException();
+		}
+		double value = this.values[index(this.oldest)];
+		if (this.deque[this.dequeHead] == this.oldest) {
+			this.dequeHead = (this.dequeHead + 1) % this.capacity;
+			this.dequeSize--;
+		}
+		this.oldest++;
+		return value;
+	}
+
+	/**
+	 * Method get.
+	 * 
+	 * @return double the maximum or minimum of the values in the window.
+	 */
+	public double get() {
+		if (size() == 0) {
+			throw new NoSuchElementException();
+		}
+		return this.values[index(this.deque[this.dequeHead])];
+	}
+
+	/**
+	 * Method size.
+	 * 
+	 * @return int the number of values in the window.
+	 */
+	public int size() {
+		return (int) (this.next - this.oldest);
+	}
+
+	/**
+	 * Method capacity.
+	 * 
+	 * @return int
+	 */
+	public int capacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Method isEmpty.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public void clear() {
+		this.dequeHead = 0;
+		this.dequeSize = 0;
+		this.oldest = 0;
+		this.next = 0;
+	}
+
+	private void push(long position) {
+		double value = this.values[index(position)];
+		while (this.dequeSize > 0 && dominates(value, this.values[index(back())])) {
+			this.dequeSize--;
+		}
+		this.deque[(this.dequeHead + this.dequeSize) % this.capacity] = position;
+		this.dequeSize++;
+	}
+
+	private long back() {
+		return this.deque[(this.dequeHead + this.dequeSize - 1) % this.capacity];
+	}
+
+	private int index(long position) {
+		return (int) (position % this.capacity);
+	}
+
+	private boolean dominates(double value, double other) {
+		return this.maximum ? value >= other : value <= other;
+	}
+}
@@ -0,0 +1,206 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.kernel;
+
+/**
+ * The mean and variance of a sliding window of values. The sum of squared
+ * deviations from the mean is updated in O(1) using Welford's method for each
+ * value added, removed or replaced. It is recalculated from the window every
+ * RESYNC_INTERVAL updates so that rounding errors do not accumulate.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class RollingVariance extends StreamingKernel {
+
+	private static final int RESYNC_INTERVAL = 1024;
+
+	private final DoubleRingBuffer values;
+	private double sum = 0;
+	private double sumSquaredDeviations = 0;
+	private int updates = 0;
+
+	/**
+	 * Constructor for RollingVariance.
+	 * 
+	 * @param capacity
+	 *            int the number of values in a full window.
+	 */
+	public RollingVariance(int capacity) {
+		this.values = new DoubleRingBuffer(capacity);
+	}
+
+	/**
+	 * Method add.
+	 * 
+	 * @param value
+	 *            double
+	 */
+	public void add(double value) {
+		if (this.values.isFull()) {
+			double oldValue = this.values.removeOldest();
+			this.values.add(value);
+			replace(oldValue, value);
+		} else {
+			double mean = this.values.isEmpty() ? 0 : getMean();
+			this.sum = this.sum + value;
+			this.values.add(value);
+			this.sumSquaredDeviations = this.sumSquaredDeviations + ((value - mean) * (value - getMean()));
+		}
+		resync();
+	}
+
+	/**
+	 * Method replaceNewest.
+	 * 
+	 * @param value
+	 *            double
+	 */
+	public void replaceNewest(double value) {
+		if (this.values.isEmpty()) {
+			add(value);
+		} else {
+			replace(this.values.replaceNewest(value), value);
+			resync();
+		}
+	}
+
+	/**
+	 * Method getMean.
+	 * 
+	 * @return double
+	 */
+	public double getMean() {
+		return this.sum / this.values.size();
+	}
+
+	/**
+	 * Method getSum.
+	 * 
+	 * @return double
+	 */
+	public double getSum() {
+		return this.sum;
+	}
+
+	/**
+	 * Method getSampleVariance.
+	 * 
+	 * @return double the sum of squared deviations divided by size - 1.
+	 */
+	public double getSampleVariance() {
+		return this.sumSquaredDeviations / (this.values.size() - 1);
+	}
+
+	/**
+	 * Method getSampleStandardDeviation.
+	 * 
+	 * @return double
+	 */
+	public double getSampleStandardDeviation() {
+		return Math.sqrt(getSampleVariance());
+	}
+
+	/**
+	 * Method size.
+	 * 
+	 * @return int
+	 */
+	public int size() {
+		return this.values.size();
+	}
+
+	/**
+	 * Method capacity.
+	 * 
+	 * @return int
+	 */
+	public int capacity() {
+		return this.values.capacity();
+	}
+
+	/**
+	 * Method isFull.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isFull() {
+		return this.values.isFull();
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public void clear() {
+		this.values.clear();
+		this.sum = 0;
+		this.sumSquaredDeviations = 0;
+		this.updates = 0;
+	}
+
+	/**
+	 * Method replace. Replaces one value in the window with another, the
+	 * window size is unchanged.
+	 * 
+	 * @param oldValue
+	 *            double
+	 * @param value
+	 *            double
+	 */
+	private void replace(double oldValue, double value) {
+		double oldMean = getMean();
+		this.sum = this.sum - oldValue + value;
+		double mean = getMean();
+		this.sumSquaredDeviations = this.sumSquaredDeviations
+				+ ((value - oldValue) * ((value - mean) + (oldValue - oldMean)));
+		if (this.sumSquaredDeviations < 0) {
+			this.sumSquaredDeviations = 0;
+		}
+	}
+
+	private void resync() {
+		if (++this.updates < RESYNC_INTERVAL) {
+			return;
+		}
+		this.updates = 0;
+		double mean = getMean();
+		double total = 0;
+		for (int i = 0; i < this.values.size(); i++) {
+			total = total + ((this.values.get(i) - mean) * (this.values.get(i) - mean));
+		}
+		this.sumSquaredDeviations = total;
+	}
+}
@@ -0,0 +1,152 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.kernel;
+
+/**
+ * The sum and mean of a sliding window of values. The oldest value is removed
+ * from the sum when a new value is added to a full window.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class RunningSum extends StreamingKernel {
+
+	private final DoubleRingBuffer values;
+	private double sum = 0;
+
+	/**
+	 * Constructor for RunningSum.
+	 * 
+	 * @param capacity
+	 *            int the number of values in a full window.
+	 */
+	public RunningSum(int capacity) {
+		this.values = new DoubleRingBuffer(capacity);
+	}
+
+	/**
+	 * Method add.
+	 * 
+	 * @param value
+	 *            double
+	 */
+	public void add(double value) {
+		if (this.values.isFull()) {
+			this.sum = this.sum - this.values.removeOldest() + value;
+		} else {
+			this.sum = this.sum + value;
+		}
+		this.values.add(value);
+	}
+
+	/**
+	 * Method replaceNewest.
+	 * 
+	 * @param value
+	 *            double
+	 */
+	public void replaceNewest(double value) {
+		if (this.values.isEmpty()) {
+			add(value);
+		} else {
+			this.sum = this.sum - this.values.replaceNewest(value) + value;
+		}
+	}
+
+	/**
+	 * Method getSum.
+	 * 
+	 * @return double
+	 */
+	public double getSum() {
+		return this.sum;
+	}
+
+	/**
+	 * Method getMean.
+	 * 
+	 * @return double the sum divided by the number of values in the window.
+	 */
+	public double getMean() {
+		return this.sum / this.values.size();
+	}
+
+	/**
+	 * Method get.
+	 * 
+	 * @param index
+	 *            int zero is the newest value.
+	 * @return double
+	 */
+	public double get(int index) {
+		return this.values.get(index);
+	}
+
+	/**
+	 * Method size.
+	 * 
+	 * @return int
+	 */
+	public int size() {
+		return this.values.size();
+	}
+
+	/**
+	 * Method capacity.
+	 * 
+	 * @return int
+	 */
+	public int capacity() {
+		return this.values.capacity();
+	}
+
+	/**
+	 * Method isFull.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isFull() {
+		return this.values.isFull();
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public void clear() {
+		this.values.clear();
+		this.sum = 0;
+	}
+}
@@ -0,0 +1,181 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.kernel;
+
+/**
+ * A recursively smoothed average. Values are summed until the average is
+ * seeded with the mean of that sum, after which each value is smoothed into
+ * the previous bars average. Replacing the newest value recalculates the
+ * current bar from the previous bars average so intra bar updates do not
+ * compound.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public abstract class SmoothedAverage extends StreamingKernel {
+
+	private final int period;
+	private double sum = 0;
+	private double newest = 0;
+	private int count = 0;
+	private boolean seeded = false;
+	private boolean seedNewest = false;
+	private double previous = 0;
+	private double value = 0;
+
+	/**
+	 * Constructor for SmoothedAverage.
+	 * 
+	 * @param period
+	 *            int
+	 */
+	protected SmoothedAverage(int period) {
+		if (period < 1) {
+			throw new IllegalArgumentException("Period must be greater than zero.");
+		}
+		this.period = period;
+	}
+
+	/**
+	 * Method smooth.
+	 * 
+	 * @param previous
+	 *            double the previous bars average.
+	 * @param value
+	 *            double the current bars value.
+	 * @return double the current bars average.
+	 */
+	protected abstract double smooth(double previous, double value);
+
+	/**
+	 * Method add.
+	 * 
+	 * @param value
+	 *            double
+	 */
+	public void add(double value) {
+		if (this.seeded) {
+			this.previous = this.value;
+			this.value = smooth(this.previous, value);
+			this.seedNewest = false;
+		} else {
+			this.sum = this.sum + value;
+		}
+		this.newest = value;
+		this.count++;
+	}
+
+	/**
+	 * Method replaceNewest.
+	 * 
+	 * @param value
+	 *            double
+	 */
+	public void replaceNewest(double value) {
+		if (this.count == 0) {
+			add(value);
+			return;
+		}
+		if (!this.seeded || this.seedNewest) {
+			this.sum = this.sum - this.newest + value;
+			if (this.seeded) {
+				this.value = this.sum / this.period;
+			}
+		} else {
+			this.value = smooth(this.previous, value);
+		}
+		this.newest = value;
+	}
+
+	/**
+	 * Method seed. Sets the average to the sum of the values added so far
+	 * divided by the period.
+	 */
+	public void seed() {
+		this.value = this.sum / this.period;
+		this.seeded = true;
+		this.seedNewest = true;
+	}
+
+	/**
+	 * Method isSeeded.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isSeeded() {
+		return this.seeded;
+	}
+
+	/**
+	 * Method getValue.
+	 * 
+	 * @return double the current bars average.
+	 */
+	public double getValue() {
+		return this.value;
+	}
+
+	/**
+	 * Method getCount.
+	 * 
+	 * @return int the number of bars added.
+	 */
+	public int getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Method getPeriod.
+	 * 
+	 * @return int
+	 */
+	public int getPeriod() {
+		return this.period;
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public void clear() {
+		this.sum = 0;
+		this.newest = 0;
+		this.count = 0;
+		this.seeded = false;
+		this.seedNewest = false;
+		this.previous = 0;
+		this.value = 0;
+	}
+}
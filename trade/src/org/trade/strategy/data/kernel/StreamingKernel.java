@@ -0,0 +1,87 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.kernel;
+
+/**
+ * Base class for the streaming indicator kernels. Each kernel is fed one value
+ * per bar, a new bar adds a value and an update to the current bar replaces
+ * the newest value. Both operations are O(1) and make no allocation so that
+ * the IndicatorSeries can be updated on every tick.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public abstract class StreamingKernel {
+
+	/**
+	 * Method add. Adds the value for a new bar.
+	 * 
+	 * @param value
+	 *            double
+	 */
+	public abstract void add(double value);
+
+	/**
+	 * Method replaceNewest. Replaces the value for the current bar, if no
+	 * value has been added this is the same as add.
+	 * 
+	 * @param value
+	 *            double
+	 */
+	public abstract void replaceNewest(double value);
+
+	/**
+	 * Method clear.
+	 */
+	public abstract void clear();
+
+	/**
+	 * Method update. Adds the value if this is a new bar otherwise replaces
+	 * the newest value.
+	 * 
+	 * @param value
+	 *            double
+	 * @param newBar
+	 *            boolean
+	 */
+	public void update(double value, boolean newBar) {
+		if (newBar) {
+			add(value);
+		} else {
+			replaceNewest(value);
+		}
+	}
+}
@@ -54,6 +54,9 @@ public class MoneyFlowIndexItem extends ComparableObjectItem {
 	 */
 	private static final long serialVersionUID = -3888996139640449109L;
 
+	private double moneyFlowIndex;
+	private boolean stale = false;
+
 	/**
 	 * Creates a new instance of <code>CandleItem</code>.
 	 * 
@@ -65,6 +68,24 @@ public class MoneyFlowIndexItem extends ComparableObjectItem {
 	 */
 	public MoneyFlowIndexItem(RegularTimePeriod period, BigDecimal moneyFlowIndex) {
 		super(period, new MoneyFlowIndex(moneyFlowIndex));
+		this.moneyFlowIndex = (null == moneyFlowIndex ? 0 : moneyFlowIndex.doubleValue());
+	}
+
+	/**
+	 * Creates a new instance of <code>MoneyFlowIndexItem</code> from a
+	 * primitive value. The BigDecimal held by the value object is only created
+	 * when it is read.
+	 * 
+	 * @param period
+	 *            the time period.
+	 * 
+	 * @param moneyFlowIndex
+	 *            double
+	 */
+	public MoneyFlowIndexItem(RegularTimePeriod period, double moneyFlowIndex) {
+		super(period, new MoneyFlowIndex());
+		this.moneyFlowIndex = moneyFlowIndex;
+		this.stale = true;
 	}
 
 	/**
@@ -95,11 +116,8 @@ public class MoneyFlowIndexItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setMoneyFlowIndex(double moneyFlowIndex) {
-		MoneyFlowIndex dataItem = (MoneyFlowIndex) getObject();
-		if (dataItem != null) {
-			dataItem.setMoneyFlowIndex(new BigDecimal(moneyFlowIndex));
-		}
-
+		this.moneyFlowIndex = moneyFlowIndex;
+		this.stale = true;
 	}
 
 	/**
@@ -108,14 +126,21 @@ public class MoneyFlowIndexItem extends ComparableObjectItem {
 	 * @return The Money Flow Index value.
 	 */
 	public double getMoneyFlowIndex() {
-		MoneyFlowIndex dataItem = (MoneyFlowIndex) getObject();
-		if (dataItem != null) {
-			if (null == dataItem.getMoneyFlowIndex()) {
-				return 0;
-			}
-			return dataItem.getMoneyFlowIndex().doubleValue();
-		} else {
-			return 0;
+		return this.moneyFlowIndex;
+	}
+
+	/**
+	 * Method getObject. Brings the value object up to date with the primitive
+	 * value before it is returned.
+	 * 
+	 * @return Object
+	 */
+	@Override
+	protected Object getObject() {
+		if (this.stale) {
+			((MoneyFlowIndex) super.getObject()).setMoneyFlowIndex(new BigDecimal(this.moneyFlowIndex));
+			this.stale = false;
 		}
+		return super.getObject();
 	}
 }
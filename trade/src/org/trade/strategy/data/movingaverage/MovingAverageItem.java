@@ -54,6 +54,9 @@ public class MovingAverageItem extends ComparableObjectItem {
 	 */
 	private static final long serialVersionUID = -3888996139640449109L;
 
+	private double movingAverage;
+	private boolean stale = false;
+
 	/**
 	 * Creates a new instance of <code>CandleItem</code>.
 	 * 
@@ -65,6 +68,24 @@ public class MovingAverageItem extends ComparableObjectItem {
 	 */
 	public MovingAverageItem(RegularTimePeriod period, BigDecimal movingAverage) {
 		super(period, new MovingAverage(movingAverage));
+		this.movingAverage = (null == movingAverage ? 0 : movingAverage.doubleValue());
+	}
+
+	/**
+	 * Creates a new instance of <code>MovingAverageItem</code> from a
+	 * primitive value. The BigDecimal held by the value object is only created
+	 * when it is read.
+	 * 
+	 * @param period
+	 *            the time period.
+	 * 
+	 * @param movingAverage
+	 *            double
+	 */
+	public MovingAverageItem(RegularTimePeriod period, double movingAverage) {
+		super(period, new MovingAverage());
+		this.movingAverage = movingAverage;
+		this.stale = true;
 	}
 
 	/**
@@ -93,10 +114,8 @@ public class MovingAverageItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setMovingAverage(double movingAverage) {
-		MovingAverage dataItem = (MovingAverage) getObject();
-		if (dataItem != null) {
-			dataItem.setMovingAverage(new BigDecimal(movingAverage));
-		}
+		this.movingAverage = movingAverage;
+		this.stale = true;
 	}
 
 	/**
@@ -105,14 +124,21 @@ public class MovingAverageItem extends ComparableObjectItem {
 	 * @return The moving Average value.
 	 */
 	public double getMovingAverage() {
-		MovingAverage dataItem = (MovingAverage) getObject();
-		if (dataItem != null) {
-			if (null == dataItem.getMovingAverage()) {
-				return 0;
-			}
-			return dataItem.getMovingAverage().doubleValue();
-		} else {
-			return 0;
+		return this.movingAverage;
+	}
+
+	/**
+	 * Method getObject. Brings the value object up to date with the primitive
+	 * value before it is returned.
+	 * 
+	 * @return Object
+	 */
+	@Override
+	protected Object getObject() {
+		if (this.stale) {
+			((MovingAverage) super.getObject()).setMovingAverage(new BigDecimal(this.movingAverage));
+			this.stale = false;
 		}
+		return super.getObject();
 	}
 }
@@ -54,6 +54,9 @@ public class RelativeStrengthIndexItem extends ComparableObjectItem {
 	 */
 	private static final long serialVersionUID = -3888996139640449109L;
 
+	private double relativeStrengthIndex;
+	private boolean stale = false;
+
 	/**
 	 * Creates a new instance of <code>RelativeStrengthIndexItem</code>.
 	 * 
@@ -64,6 +67,24 @@ public class RelativeStrengthIndexItem extends ComparableObjectItem {
 	 */
 	public RelativeStrengthIndexItem(RegularTimePeriod period, BigDecimal relativeStrengthIndex) {
 		super(period, new RelativeStrengthIndex(relativeStrengthIndex));
+		this.relativeStrengthIndex = (null == relativeStrengthIndex ? 0 : relativeStrengthIndex.doubleValue());
+	}
+
+	/**
+	 * Creates a new instance of <code>RelativeStrengthIndexItem</code> from a
+	 * primitive value. The BigDecimal held by the value object is only created
+	 * when it is read.
+	 * 
+	 * @param period
+	 *            the time period.
+	 * 
+	 * @param relativeStrengthIndex
+	 *            double
+	 */
+	public RelativeStrengthIndexItem(RegularTimePeriod period, double relativeStrengthIndex) {
+		super(period, new RelativeStrengthIndex());
+		this.relativeStrengthIndex = relativeStrengthIndex;
+		this.stale = true;
 	}
 
 	/**
@@ -94,11 +115,8 @@ public class RelativeStrengthIndexItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setRelativeStrengthIndex(double relativeStrengthIndex) {
-		RelativeStrengthIndex dataItem = (RelativeStrengthIndex) getObject();
-		if (dataItem != null) {
-			dataItem.setRelativeStrengthIndex(new BigDecimal(relativeStrengthIndex));
-		}
-
+		this.relativeStrengthIndex = relativeStrengthIndex;
+		this.stale = true;
 	}
 
 	/**
@@ -108,14 +126,21 @@ public class RelativeStrengthIndexItem extends ComparableObjectItem {
 	 * @return The relativeStrengthIndex value.
 	 */
 	public double getRelativeStrengthIndex() {
-		RelativeStrengthIndex dataItem = (RelativeStrengthIndex) getObject();
-		if (dataItem != null) {
-			if (null == dataItem.getRelativeStrengthIndex()) {
-				return 0;
-			}
-			return dataItem.getRelativeStrengthIndex().doubleValue();
-		} else {
-			return 0;
+		return this.relativeStrengthIndex;
+	}
+
+	/**
+	 * Method getObject. Brings the value object up to date with the primitive
+	 * value before it is returned.
+	 * 
+	 * @return Object
+	 */
+	@Override
+	protected Object getObject() {
+		if (this.stale) {
+			((RelativeStrengthIndex) super.getObject()).setRelativeStrengthIndex(new BigDecimal(this.relativeStrengthIndex));
+			this.stale = false;
 		}
+		return super.getObject();
 	}
 }
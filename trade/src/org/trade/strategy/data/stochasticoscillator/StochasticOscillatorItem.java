@@ -54,6 +54,9 @@ public class StochasticOscillatorItem extends ComparableObjectItem {
 	 */
 	private static final long serialVersionUID = -3888996139640449109L;
 
+	private double stochasticOscillator;
+	private boolean stale = false;
+
 	/**
 	 * Creates a new instance of <code>CandleItem</code>.
 	 * 
@@ -65,6 +68,24 @@ public class StochasticOscillatorItem extends ComparableObjectItem {
 	 */
 	public StochasticOscillatorItem(RegularTimePeriod period, BigDecimal stochasticOscillator) {
 		super(period, new StochasticOscillator(stochasticOscillator));
+		this.stochasticOscillator = (null == stochasticOscillator ? 0 : stochasticOscillator.doubleValue());
+	}
+
+	/**
+	 * Creates a new instance of <code>StochasticOscillatorItem</code> from a
+	 * primitive value. The BigDecimal held by the value object is only created
+	 * when it is read.
+	 * 
+	 * @param period
+	 *            the time period.
+	 * 
+	 * @param stochasticOscillator
+	 *            double
+	 */
+	public StochasticOscillatorItem(RegularTimePeriod period, double stochasticOscillator) {
+		super(period, new StochasticOscillator());
+		this.stochasticOscillator = stochasticOscillator;
+		this.stale = true;
 	}
 
 	/**
@@ -92,11 +113,8 @@ public class StochasticOscillatorItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setStochasticOscillator(double stochasticOscillator) {
-		StochasticOscillator dataItem = (StochasticOscillator) getObject();
-		if (dataItem != null) {
-			dataItem.setStochasticOscillator(new BigDecimal(stochasticOscillator));
-		}
-
+		this.stochasticOscillator = stochasticOscillator;
+		this.stale = true;
 	}
 
 	/**
@@ -105,14 +123,21 @@ public class StochasticOscillatorItem extends ComparableObjectItem {
 	 * @return The Stochastic Oscillator value.
 	 */
 	public double getStochasticOscillator() {
-		StochasticOscillator dataItem = (StochasticOscillator) getObject();
-		if (dataItem != null) {
-			if (null == dataItem.getStochasticOscillator()) {
-				return 0;
-			}
-			return dataItem.getStochasticOscillator().doubleValue();
-		} else {
-			return 0;
+		return this.stochasticOscillator;
+	}
+
+	/**
+	 * Method getObject. Brings the value object up to date with the primitive
+	 * value before it is returned.
+	 * 
+	 * @return Object
+	 */
+	@Override
+	protected Object getObject() {
+		if (this.stale) {
+			((StochasticOscillator) super.getObject()).setStochasticOscillator(new BigDecimal(this.stochasticOscillator));
+			this.stale = false;
 		}
+		return super.getObject();
 	}
 }
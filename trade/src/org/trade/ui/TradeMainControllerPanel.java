@@ -59,6 +59,8 @@ import javax.swing.SwingWorker;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.trade.broker.BackTestScheduler;
+import org.trade.broker.BackTestSweep;
 import org.trade.broker.BrokerChangeListener;
 import org.trade.broker.BrokerDataRequestMonitor;
 import org.trade.broker.BrokerModel;
@@ -149,7 +151,7 @@ public class TradeMainControllerPanel extends TabbedAppPanel implements BrokerCh
 	private static Tradingdays m_tradingdays = null;
 	private BrokerModel m_brokerModel = null;
 	private PersistentModel m_tradePersistentModel = null;
-	private BrokerDataRequestMonitor brokerDataRequestProgressMonitor = null;
+	private SwingWorker<Void, String> brokerDataRequestProgressMonitor = null;
 
 	private TradingdayPanel tradingdayPanel = null;
 	private ContractPanel contractPanel = null;
@@ -1733,8 +1735,16 @@ public class TradeMainControllerPanel extends TabbedAppPanel implements BrokerCh
 			 * Now run a thread that gets and saves historical data from IB TWS.
 			 */
 			getProgressBar().setMaximum(100);
-			brokerDataRequestProgressMonitor = new BrokerDataRequestMonitor(m_brokerModel, m_tradePersistentModel,
-					tradingdays);
+			if (!brokerDataOnly && !m_brokerModel.isConnected() && BackTestSweep.isEnabled()) {
+				brokerDataRequestProgressMonitor = new BackTestSweep(m_brokerModel, m_tradePersistentModel,
+						tradingdays, BackTestSweep.getPoints());
+			} else if (!brokerDataOnly && !m_brokerModel.isConnected() && BackTestScheduler.isEnabled()) {
+				brokerDataRequestProgressMonitor = new BackTestScheduler(m_brokerModel, m_tradePersistentModel,
+						tradingdays);
+			} else {
+				brokerDataRequestProgressMonitor = new BrokerDataRequestMonitor(m_brokerModel,
+						m_tradePersistentModel, tradingdays);
+			}
 			brokerDataRequestProgressMonitor.addPropertyChangeListener(new java.beans.PropertyChangeListener() {
 				public void propertyChange(final PropertyChangeEvent evt) {
 					SwingUtilities.invokeLater(new Runnable() {
@@ -93,6 +93,7 @@ import org.trade.dictionary.valuetype.AllocationMethod;
 import org.trade.dictionary.valuetype.Side;
 import org.trade.dictionary.valuetype.Tier;
 import org.trade.dictionary.valuetype.TradestrategyStatus;
+import org.trade.persistent.CandleCache;
 import org.trade.persistent.PersistentModel;
 import org.trade.persistent.PersistentModelException;
 import org.trade.persistent.dao.Candle;
@@ -644,7 +645,7 @@ public class ContractPanel extends BasePanel implements TreeSelectionListener, C
 			startDate = endDate.minusDays((tradestrategy.getChartDays() - 1));
 			startDate = TradingCalendar.getPrevTradingDay(startDate);
 			startDate = TradingCalendar.getDateAtTime(startDate, tradestrategy.getTradingday().getOpen());
-			List<Candle> candles = m_tradePersistentModel.findCandlesByContractDateRangeBarSize(
+			List<Candle> candles = CandleCache.findCandlesByContractDateRangeBarSize(m_tradePersistentModel,
 					tradestrategy.getContract().getIdContract(), startDate, endDate, tradestrategy.getBarSize());
 			if (candles.isEmpty()) {
 				this.setStatusBarMessage("No chart data available for " + tradestrategy.getContract().getSymbol(),
@@ -693,8 +694,8 @@ public class ContractPanel extends BasePanel implements TreeSelectionListener, C
 							tradestrategy.getChartDays(), tradestrategy.getBarSize());
 					childTradestrategy.setDirty(false);
 
-					List<Candle> indicatorCandles = m_tradePersistentModel.findCandlesByContractDateRangeBarSize(
-							childTradestrategy.getContract().getIdContract(), startDate, endDate,
+					List<Candle> indicatorCandles = CandleCache.findCandlesByContractDateRangeBarSize(
+							m_tradePersistentModel, childTradestrategy.getContract().getIdContract(), startDate, endDate,
 							childTradestrategy.getBarSize());
 					if (indicatorCandles.isEmpty()) {
 						this.setStatusBarMessage(
@@ -49,10 +49,13 @@ import java.math.BigDecimal;
 import java.text.NumberFormat;
 import java.time.ZonedDateTime;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 
+import javax.persistence.Persistence;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JComboBox;
 import javax.swing.JEditorPane;
@@ -121,6 +124,12 @@ public class TradingdayPanel extends BasePanel {
 	private TradestrategyTableModel m_tradestrategyModel = null;
 	private Table m_tradingdayTable = null;
 	private Tradingdays m_tradingdays = null;
+	/*
+	 * The search loads the grid only. The portfolio accounts and indicator
+	 * series of a tradingday are loaded when it is selected. Use
+	 * idTradingDay.
+	 */
+	private final Set<Integer> m_strategyDataLoaded = new HashSet<Integer>();
 	private static final ConcurrentHashMap<String, StrategyRule> m_strategyWorkers = new ConcurrentHashMap<String, StrategyRule>();
 	private DeleteProgressMonitor deleteProgressMonitor = null;
 	private static String m_defaultDir = null;
@@ -487,7 +496,8 @@ public class TradingdayPanel extends BasePanel {
 			 * search hand over the DatasetContainers. We do this as these
 			 * Datasets may have live data running into them.
 			 */
-			Tradingdays tradingdays = m_tradePersistentModel.findTradingdaysByDateRange(startDate, endDate);
+			Tradingdays tradingdays = m_tradePersistentModel.findTradingdaysByDateRange(startDate, endDate, false);
+			m_strategyDataLoaded.clear();
 			Tradingday todayTradingday = tradingdays.getTradingday(
 					TradingCalendar.getTradingDayStart(TradingCalendar.getDateTimeNowMarketTimeZone()),
 					TradingCalendar.getTradingDayEnd(TradingCalendar.getDateTimeNowMarketTimeZone()));
@@ -609,6 +619,7 @@ public class TradingdayPanel extends BasePanel {
 				Tradingday instance = m_tradePersistentModel.findTradingdayById(currentTradingday.getIdTradingDay());
 				instance.populateStrategyData(currentTradingday);
 				m_tradingdays.replaceTradingday(instance);
+				m_strategyDataLoaded.add(instance.getIdTradingDay());
 			}
 		} catch (Exception ex) {
 			this.setErrorMessage("Error finding Tradingday.", ex.getMessage(), ex);
@@ -782,7 +793,15 @@ public class TradingdayPanel extends BasePanel {
 			BigDecimal realizedPnL = new BigDecimal(0);
 			BigDecimal unrealizedPnL = new BigDecimal(0);
 			ZonedDateTime updateDate = TradingCalendar.getDateTimeNowMarketTimeZone();
-			for (PortfolioAccount portfolioAccount : portfolio.getPortfolioAccounts()) {
+			/*
+			 * A Portfolio from the Tradingday grid does not have its accounts.
+			 */
+			List<PortfolioAccount> portfolioAccounts = portfolio.getPortfolioAccounts();
+			if (!Persistence.getPersistenceUtil().isLoaded(portfolio, "portfolioAccounts")) {
+				portfolioAccounts = m_tradePersistentModel.findPortfolioById(portfolio.getIdPortfolio())
+						.getPortfolioAccounts();
+			}
+			for (PortfolioAccount portfolioAccount : portfolioAccounts) {
 				availableFunds = availableFunds.add((portfolioAccount.getAccount().getAvailableFunds() == null
 						? new BigDecimal(0) : portfolioAccount.getAccount().getAvailableFunds()));
 				buyingPower = buyingPower.add((portfolioAccount.getAccount().getBuyingPower() == null
@@ -1196,6 +1215,12 @@ public class TradingdayPanel extends BasePanel {
 						m_tradestrategyModel.setData(transferObject);
 						m_tradestrategyTable.enablePopupMenu(true);
 						enableTradestrategyButtons(null);
+						if (null != transferObject && null != transferObject.getIdTradingDay()
+								&& m_strategyDataLoaded.add(transferObject.getIdTradingDay())) {
+							StrategyDataWorker strategyDataWorker = new StrategyDataWorker(m_tradePersistentModel,
+									transferObject);
+							strategyDataWorker.execute();
+						}
 
 					} else {
 						m_tradestrategyModel.setData(null);
@@ -1427,4 +1452,58 @@ public class TradingdayPanel extends BasePanel {
 			setStatusBarMessage(message, BasePanel.INFORMATION);
 		}
 	}
+
+	/**
+	 * Loads the portfolio accounts and indicator series of the selected
+	 * tradingday. The tradingday is replaced if it has not been changed while
+	 * loading.
+	 */
+	private class StrategyDataWorker extends SwingWorker<Tradingday, Void> {
+
+		private PersistentModel tradeManagerModel = null;
+		private Tradingday tradingday = null;
+
+		/**
+		 * Constructor for StrategyDataWorker.
+		 * 
+		 * @param tradeManagerModel
+		 *            PersistentModel
+		 * @param tradingday
+		 *            Tradingday
+		 */
+		public StrategyDataWorker(PersistentModel tradeManagerModel, Tradingday tradingday) {
+			this.tradeManagerModel = tradeManagerModel;
+			this.tradingday = tradingday;
+		}
+
+		/**
+		 * Method doInBackground.
+		 * 
+		 * @return Tradingday
+		 */
+		public Tradingday doInBackground() throws Exception {
+			return this.tradeManagerModel.findTradingdayById(this.tradingday.getIdTradingDay());
+		}
+
+		public void done() {
+			try {
+				Tradingday instance = get();
+				Tradingday currentTradingday = m_tradingdays.getTradingday(this.tradingday.getOpen(),
+						this.tradingday.getClose());
+				if (currentTradingday != this.tradingday || this.tradingday.isDirty()) {
+					m_strategyDataLoaded.remove(this.tradingday.getIdTradingDay());
+					return;
+				}
+				instance.populateStrategyData(this.tradingday);
+				m_tradingdays.replaceTradingday(instance);
+				if (m_tradestrategyModel.getData() == this.tradingday) {
+					m_tradestrategyModel.setData(instance);
+					enableTradestrategyButtons(null);
+				}
+			} catch (Exception ex) {
+				m_strategyDataLoaded.remove(this.tradingday.getIdTradingDay());
+				setErrorMessage("Error finding Tradingday.", ex.getMessage(), ex);
+			}
+		}
+	}
 }
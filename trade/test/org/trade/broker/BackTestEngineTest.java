@@ -0,0 +1,368 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.broker.client.BackTestEngine;
+import org.trade.broker.client.Broker;
+import org.trade.core.factory.ClassFactory;
+import org.trade.core.properties.ConfigProperties;
+import org.trade.core.util.DynamicCode;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.dao.TradeOrder;
+import org.trade.persistent.dao.TradePosition;
+import org.trade.persistent.dao.Tradestrategy;
+import org.trade.persistent.dao.TradestrategyTest;
+import org.trade.strategy.StrategyRule;
+import org.trade.strategy.data.StrategyData;
+import org.trade.ui.TradeAppLoadConfig;
+
+/**
+ * Back test the same tradestrategy with the strategy worker threads and with
+ * the back test event loop and check the orders are the same.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class BackTestEngineTest implements BrokerChangeListener {
+
+	private final static Logger _log = LoggerFactory.getLogger(BackTestEngineTest.class);
+
+	@Rule
+	public TestName name = new TestName();
+
+	private String symbol = "TEST";
+	private Tradestrategy tradestrategy = null;
+	private PersistentModel tradePersistentModel = null;
+	private BrokerModel backTestbrokerModel = null;
+	private StrategyRule strategy = null;
+	private StrategyRule strategyManager = null;
+	private String m_strategyDir = null;
+	private boolean eventLoop = false;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		TradeAppLoadConfig.loadAppProperties();
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		try {
+			eventLoop = BackTestEngine.isEventLoop();
+			m_strategyDir = ConfigProperties.getPropAsString("trade.strategy.default.dir");
+			tradePersistentModel = (PersistentModel) ClassFactory
+					.getServiceForInterface(PersistentModel._persistentModel, this);
+			this.tradestrategy = TradestrategyTest.getTestTradestrategy(symbol);
+			assertNotNull("1", this.tradestrategy);
+			this.tradestrategy.setTrade(true);
+			StrategyData.doDummyData(this.tradestrategy.getStrategyData().getBaseCandleSeries(),
+					this.tradestrategy.getTradingday(), 1, this.tradestrategy.getBarSize(), true, 0);
+			tradePersistentModel.persistCandleSeries(this.tradestrategy.getStrategyData().getBaseCandleSeries());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		BackTestEngine.setEventLoop(eventLoop);
+		TradestrategyTest.clearDBData();
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testEventLoopMatchesWorkerThreads() {
+
+		try {
+			List<String> workerOrders = runBackTest(false);
+			List<String> eventLoopOrders = runBackTest(true);
+			_log.info("Worker orders: " + workerOrders + " event loop orders: " + eventLoopOrders);
+			assertEquals("1", workerOrders.size(), eventLoopOrders.size());
+			for (int i = 0; i < workerOrders.size(); i++) {
+				assertEquals("2", workerOrders.get(i), eventLoopOrders.get(i));
+			}
+
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method runBackTest. Back test the tradestrategy and return the orders it
+	 * created in the order they were created.
+	 * 
+	 * @param eventLoop
+	 *            boolean true to run the strategies on the back test broker.
+	 * @return List<String> the orders.
+	 * @throws Exception
+	 */
+	private List<String> runBackTest(boolean eventLoop) throws Exception {
+
+		BackTestEngine.setEventLoop(eventLoop);
+		tradePersistentModel.removeTradestrategyTradeOrders(this.tradestrategy);
+		this.tradestrategy = tradePersistentModel.findTradestrategyById(this.tradestrategy.getIdTradeStrategy());
+		this.tradestrategy.setStrategyData(StrategyData.create(this.tradestrategy));
+		this.strategy = null;
+		this.strategyManager = null;
+
+		backTestbrokerModel = (BrokerModel) ClassFactory.getServiceForInterface(BrokerModel._brokerTest, this);
+		backTestbrokerModel.addMessageListener(this);
+		backTestbrokerModel.onBrokerData(this.tradestrategy, this.tradestrategy.getTradingday().getClose());
+
+		Broker backTestBroker = backTestbrokerModel.getBackTestBroker(this.tradestrategy.getIdTradeStrategy());
+		assertNotNull("10", backTestBroker);
+		do {
+			Thread.sleep(250);
+		} while (!backTestBroker.isDone());
+		backTestbrokerModel.removeMessageListener(this);
+
+		List<TradeOrder> tradeOrders = new ArrayList<TradeOrder>(tradePersistentModel
+				.findPositionOrdersByTradestrategyId(this.tradestrategy.getIdTradeStrategy()).getTradeOrders());
+		Collections.sort(tradeOrders, new Comparator<TradeOrder>() {
+			public int compare(TradeOrder o1, TradeOrder o2) {
+				return o1.getOrderKey().compareTo(o2.getOrderKey());
+			}
+		});
+		List<String> orders = new ArrayList<String>();
+		for (TradeOrder tradeOrder : tradeOrders) {
+			orders.add(tradeOrder.getAction() + " " + tradeOrder.getOrderType() + " " + tradeOrder.getQuantity()
+					+ " Lmt: " + tradeOrder.getLimitPrice() + " Aux: " + tradeOrder.getAuxPrice() + " Status: "
+					+ tradeOrder.getStatus() + " Filled: " + tradeOrder.getFilledQuantity() + " @ "
+					+ tradeOrder.getAverageFilledPrice());
+		}
+		return orders;
+	}
+
+	/**
+	 * Method createStrategy. Start the strategy as the main controller does
+	 * for a back test.
+	 * 
+	 * @param strategyClassName
+	 *            String
+	 * @return StrategyRule
+	 * @throws Exception
+	 */
+	private StrategyRule createStrategy(String strategyClassName) throws Exception {
+		Vector<Object> parm = new Vector<Object>(0);
+		parm.add(backTestbrokerModel);
+		parm.add(this.tradestrategy.getStrategyData());
+		parm.add(this.tradestrategy.getIdTradeStrategy());
+		DynamicCode dynacode = new DynamicCode();
+		dynacode.addSourceDir(new File(m_strategyDir));
+		StrategyRule strategyRule = (StrategyRule) dynacode.newProxyInstance(StrategyRule.class,
+				StrategyRule.PACKAGE + strategyClassName, parm);
+		strategyRule.addMessageListener(backTestbrokerModel.getBackTestBroker(this.tradestrategy.getId()));
+		strategyRule.execute();
+		return strategyRule;
+	}
+
+	public void connectionOpened() {
+		_log.info("Connection opened");
+	}
+
+	public void connectionClosed(boolean forced) {
+		_log.info("Connection closed");
+	}
+
+	/**
+	 * Method executionDetailsEnd.
+	 * 
+	 * @param execDetails
+	 *            ConcurrentHashMap<Integer,TradeOrder>
+	 */
+	public void executionDetailsEnd(ConcurrentHashMap<Integer, TradeOrder> execDetails) {
+
+	}
+
+	/**
+	 * Method historicalDataComplete. Start the strategy for the tradestrategy.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 */
+	public void historicalDataComplete(Tradestrategy tradestrategy) {
+		try {
+			this.strategy = createStrategy(tradestrategy.getStrategy().getClassName());
+		} catch (Exception ex) {
+			_log.error("Could not start strategy Msg: " + ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * Method managedAccountsUpdated.
+	 * 
+	 * @param accountNumber
+	 *            String
+	 */
+	public void managedAccountsUpdated(String accountNumber) {
+
+	}
+
+	/**
+	 * Method fAAccountsCompleted.
+	 * 
+	 */
+	public void fAAccountsCompleted() {
+
+	}
+
+	/**
+	 * Method updateAccountTime.
+	 * 
+	 * @param accountNumber
+	 *            String
+	 */
+	public void updateAccountTime(String accountNumber) {
+
+	}
+
+	/**
+	 * Method brokerError.
+	 * 
+	 * @param brokerError
+	 *            BrokerModelException
+	 */
+	public void brokerError(BrokerModelException ex) {
+		_log.error("Error: " + ex.getErrorCode() + " Msg: " + ex.getMessage());
+	}
+
+	/**
+	 * Method tradeOrderFilled. If the order opened a position start the
+	 * strategy manager and cancel the strategy that opened the position.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 */
+	public void tradeOrderFilled(TradeOrder tradeOrder) {
+		try {
+			if (tradeOrder.getIsOpenPosition() && null != tradeOrder.getStopPrice()
+					&& this.tradestrategy.getStrategy().hasStrategyManager() && null == this.strategyManager) {
+				if (null != this.strategy) {
+					this.strategy.cancel();
+				}
+				this.strategyManager = createStrategy(
+						this.tradestrategy.getStrategy().getStrategyManager().getClassName());
+			}
+		} catch (Exception ex) {
+			_log.error("Could not start strategy manager Msg: " + ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * Method tradeOrderCancelled.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 */
+	public void tradeOrderCancelled(TradeOrder tradeOrder) {
+
+	}
+
+	/**
+	 * Method tradeOrderStatusChanged.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 */
+	public void tradeOrderStatusChanged(TradeOrder tradeOrder) {
+
+	}
+
+	/**
+	 * Method positionClosed.
+	 * 
+	 * @param tradePosition
+	 *            TradePosition
+	 */
+	public void positionClosed(TradePosition tradePosition) {
+
+	}
+
+	/**
+	 * Method openOrderEnd.
+	 * 
+	 * @param openOrders
+	 *            ConcurrentHashMap<Integer,TradeOrder>
+	 */
+	public void openOrderEnd(ConcurrentHashMap<Integer, TradeOrder> openOrders) {
+
+	}
+}
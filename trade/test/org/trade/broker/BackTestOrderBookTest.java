@@ -0,0 +1,251 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.factory.ClassFactory;
+import org.trade.core.util.TradingCalendar;
+import org.trade.core.valuetype.Money;
+import org.trade.dictionary.valuetype.Action;
+import org.trade.dictionary.valuetype.OrderStatus;
+import org.trade.dictionary.valuetype.OrderType;
+import org.trade.dictionary.valuetype.TradestrategyStatus;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.dao.TradeOrder;
+import org.trade.persistent.dao.TradeOrderfill;
+import org.trade.persistent.dao.TradePosition;
+import org.trade.persistent.dao.Tradestrategy;
+import org.trade.persistent.dao.TradestrategyOrders;
+import org.trade.persistent.dao.TradestrategyTest;
+import org.trade.ui.TradeAppLoadConfig;
+
+/**
+ * Some tests for the {@link BackTestOrderBook} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class BackTestOrderBookTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(BackTestOrderBookTest.class);
+	@org.junit.Rule
+	public TestName name = new TestName();
+
+	private String symbol = "TEST";
+	private PersistentModel tradePersistentModel = null;
+	private Tradestrategy tradestrategy = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		TradeAppLoadConfig.loadAppProperties();
+		this.tradePersistentModel = (PersistentModel) ClassFactory
+				.getServiceForInterface(PersistentModel._persistentModel, this);
+		this.tradestrategy = TradestrategyTest.getTestTradestrategy(symbol);
+		assertNotNull("1", this.tradestrategy);
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		BackTestOrderBook orderBook = BackTestOrderBook.getOrderBook(this.tradestrategy.getIdTradeStrategy());
+		if (null != orderBook)
+			orderBook.close();
+		TradestrategyTest.clearDBData();
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testPersistTradeOrderFilledLong() {
+
+		try {
+			BackTestOrderBook orderBook = BackTestOrderBook.open(this.tradePersistentModel,
+					this.tradestrategy.getIdTradeStrategy());
+			assertSame("1", orderBook, BackTestOrderBook.getOrderBook(this.tradestrategy.getIdTradeStrategy()));
+
+			BigDecimal price = new BigDecimal(100.00);
+			TradeOrder tradeOrderBuy = new TradeOrder(this.tradestrategy, Action.BUY, OrderType.STPLMT, 1000, price,
+					price.add(new BigDecimal(2)), TradingCalendar.getDateTimeNowMarketTimeZone());
+			tradeOrderBuy.setOrderKey((new BigDecimal((Math.random() * 1000000))).intValue());
+			tradeOrderBuy.validate();
+			tradeOrderBuy = orderBook.persistTradeOrder(tradeOrderBuy);
+			assertEquals("2", OrderStatus.UNSUBMIT, tradeOrderBuy.getStatus());
+			assertSame("3", orderBook, BackTestOrderBook.findOrderBookByOrderKey(tradeOrderBuy.getOrderKey()));
+			tradeOrderBuy.setStatus(OrderStatus.SUBMITTED);
+			tradeOrderBuy = orderBook.persistTradeOrder(tradeOrderBuy);
+
+			TradeOrderfill orderfill = new TradeOrderfill(tradeOrderBuy, "Paper", price,
+					tradeOrderBuy.getQuantity() / 2, "ISLAND", "1a", price, tradeOrderBuy.getQuantity() / 2,
+					this.tradestrategy.getSide(), TradingCalendar.getDateTimeNowMarketTimeZone());
+			tradeOrderBuy.addTradeOrderfill(orderfill);
+			tradeOrderBuy = orderBook.persistTradeOrderfill(tradeOrderBuy);
+			assertTrue("4", orderBook.getPositionOrders().hasOpenTradePosition());
+			assertTrue("5", tradeOrderBuy.getTradePosition().isOpen());
+
+			TradeOrderfill orderfill1 = new TradeOrderfill(tradeOrderBuy, "Paper", tradeOrderBuy.getLimitPrice(),
+					tradeOrderBuy.getQuantity(), "BATS", "1b", tradeOrderBuy.getLimitPrice(),
+					tradeOrderBuy.getQuantity() / 2, this.tradestrategy.getSide(),
+					TradingCalendar.getDateTimeNowMarketTimeZone());
+			tradeOrderBuy.addTradeOrderfill(orderfill1);
+			tradeOrderBuy.setCommission(new BigDecimal(5.0));
+			tradeOrderBuy = orderBook.persistTradeOrderfill(tradeOrderBuy);
+
+			TradeOrder tradeOrderSell = new TradeOrder(this.tradestrategy, Action.SELL, OrderType.LMT,
+					tradeOrderBuy.getQuantity(), null, new BigDecimal(105.00),
+					TradingCalendar.getDateTimeNowMarketTimeZone());
+			tradeOrderSell.setOrderKey((new BigDecimal((Math.random() * 1000000))).intValue());
+			tradeOrderSell = orderBook.persistTradeOrder(tradeOrderSell);
+			tradeOrderSell.setStatus(OrderStatus.SUBMITTED);
+			tradeOrderSell.validate();
+			tradeOrderSell = orderBook.persistTradeOrder(tradeOrderSell);
+
+			TradeOrderfill orderfill2 = new TradeOrderfill(tradeOrderSell, "Paper", tradeOrderSell.getLimitPrice(),
+					tradeOrderSell.getQuantity(), "BATS", "2a", tradeOrderSell.getLimitPrice(),
+					tradeOrderSell.getQuantity(), this.tradestrategy.getSide(),
+					TradingCalendar.getDateTimeNowMarketTimeZone());
+			tradeOrderSell.addTradeOrderfill(orderfill2);
+			tradeOrderSell.setCommission(new BigDecimal(5.0));
+			TradeOrder result = orderBook.persistTradeOrderfill(tradeOrderSell);
+
+			TradePosition tradePosition = result.getTradePosition();
+			assertFalse("6", tradePosition.isOpen());
+			assertEquals("7", (new Money(4000.00)).getBigDecimalValue(), tradePosition.getTotalNetValue());
+			assertEquals("8", new Integer(0), tradePosition.getOpenQuantity());
+			assertEquals("9", TradestrategyStatus.CLOSED, orderBook.getPositionOrders().getStatus());
+
+			/*
+			 * Nothing is written until the book is closed.
+			 */
+			assertNull("10", tradeOrderSell.getIdTradeOrder());
+			assertNull("11", tradePosition.getIdTradePosition());
+			assertNull("12", this.tradePersistentModel.findTradeOrderByKey(tradeOrderSell.getOrderKey()));
+
+			orderBook.close();
+			assertNull("13", BackTestOrderBook.getOrderBook(this.tradestrategy.getIdTradeStrategy()));
+			assertNotNull("14", tradeOrderBuy.getIdTradeOrder());
+			assertNotNull("15", tradePosition.getIdTradePosition());
+
+			TradestrategyOrders positionOrders = this.tradePersistentModel
+					.findPositionOrdersByTradestrategyId(this.tradestrategy.getIdTradeStrategy());
+			assertEquals("16", TradestrategyStatus.CLOSED, positionOrders.getStatus());
+			assertEquals("17", 2, positionOrders.getTradeOrders().size());
+			assertFalse("18", positionOrders.hasOpenTradePosition());
+
+			TradeOrder tradeOrder = this.tradePersistentModel.findTradeOrderByKey(tradeOrderBuy.getOrderKey());
+			assertEquals("19", 2, tradeOrder.getTradeOrderfills().size());
+			assertEquals("20", tradePosition.getIdTradePosition(), tradeOrder.getTradePosition().getIdTradePosition());
+
+			TradePosition instance = this.tradePersistentModel
+					.findTradePositionById(tradePosition.getIdTradePosition());
+			assertEquals("21", (new Money(4000.00)).getBigDecimalValue(), instance.getTotalNetValue());
+			assertEquals("22", new Integer(1000), instance.getTotalBuyQuantity());
+			assertEquals("23", new Integer(1000), instance.getTotalSellQuantity());
+
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testCancelTradeOrder() {
+
+		try {
+			BackTestOrderBook orderBook = BackTestOrderBook.open(this.tradePersistentModel,
+					this.tradestrategy.getIdTradeStrategy());
+
+			TradeOrder tradeOrder = new TradeOrder(this.tradestrategy, Action.BUY, OrderType.LMT, 1000, null,
+					new BigDecimal(100.00), TradingCalendar.getDateTimeNowMarketTimeZone());
+			tradeOrder.setOrderKey((new BigDecimal((Math.random() * 1000000))).intValue());
+			tradeOrder.validate();
+			tradeOrder = orderBook.persistTradeOrder(tradeOrder);
+			assertSame("1", tradeOrder, orderBook.getTradeOrder(tradeOrder.getOrderKey()));
+			assertEquals("2", 1, orderBook.getPositionOrders().getTradeOrders().size());
+
+			tradeOrder.setStatus(OrderStatus.CANCELLED);
+			tradeOrder = orderBook.persistTradeOrder(tradeOrder);
+			assertEquals("3", 1, orderBook.getPositionOrders().getTradeOrders().size());
+			assertFalse("4", tradeOrder.hasTradePosition());
+
+			orderBook.close();
+			TradeOrder instance = this.tradePersistentModel.findTradeOrderByKey(tradeOrder.getOrderKey());
+			assertNotNull("5", instance);
+			assertEquals("6", OrderStatus.CANCELLED, instance.getStatus());
+
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+}
@@ -0,0 +1,313 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.util.TradingCalendar;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.dao.Contract;
+import org.trade.persistent.dao.Portfolio;
+import org.trade.persistent.dao.Strategy;
+import org.trade.persistent.dao.TradelogDetail;
+import org.trade.persistent.dao.TradelogReport;
+import org.trade.persistent.dao.Tradestrategy;
+import org.trade.persistent.dao.Tradingday;
+import org.trade.persistent.dao.Tradingdays;
+
+/**
+ * Some tests for the {@link BackTestScheduler} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class BackTestSchedulerTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(BackTestSchedulerTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	private BrokerModel brokerModel = null;
+	private PersistentModel persistentModel = null;
+	private final ConcurrentHashMap<Integer, Tradestrategy> historicalData = new ConcurrentHashMap<Integer, Tradestrategy>();
+	private final List<Tradestrategy> requested = Collections.synchronizedList(new ArrayList<Tradestrategy>());
+	private final List<Integer> realtimeBarsRunning = new ArrayList<Integer>();
+	private final AtomicInteger sameContractRunning = new AtomicInteger(0);
+	private final AtomicInteger reports = new AtomicInteger(0);
+	private Tradingdays tradingdays = null;
+	private Portfolio portfolio1 = null;
+	private Portfolio portfolio2 = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		historicalData.clear();
+		requested.clear();
+		realtimeBarsRunning.clear();
+		sameContractRunning.set(0);
+		reports.set(0);
+
+		/*
+		 * The back test broker completes the historical data for each request
+		 * on another thread a little later.
+		 */
+		brokerModel = (BrokerModel) Proxy.newProxyInstance(BrokerModel.class.getClassLoader(),
+				new Class<?>[] { BrokerModel.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if ("onBrokerData".equals(method.getName())) {
+							final Tradestrategy tradestrategy = (Tradestrategy) args[0];
+							for (Tradestrategy running : historicalData.values()) {
+								if (running.getContract().equals(tradestrategy.getContract()))
+									sameContractRunning.incrementAndGet();
+							}
+							historicalData.put(tradestrategy.getIdTradeStrategy(), tradestrategy);
+							requested.add(tradestrategy);
+							new Thread(new Runnable() {
+								public void run() {
+									try {
+										Thread.sleep(20);
+									} catch (InterruptedException ex) {
+										// Do nothing.
+									}
+									synchronized (historicalData) {
+										historicalData.remove(tradestrategy.getIdTradeStrategy());
+										historicalData.notifyAll();
+									}
+								}
+							}).start();
+							return null;
+						} else if ("isHistoricalDataRunning".equals(method.getName())) {
+							return historicalData.containsKey(((Tradestrategy) args[0]).getIdTradeStrategy());
+						} else if ("getHistoricalData".equals(method.getName())) {
+							return historicalData;
+						} else if ("isRealtimeBarsRunning".equals(method.getName())) {
+							return realtimeBarsRunning.contains(((Tradestrategy) args[0]).getIdTradeStrategy());
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+
+		persistentModel = (PersistentModel) Proxy.newProxyInstance(PersistentModel.class.getClassLoader(),
+				new Class<?>[] { PersistentModel.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (!"findTradelogReport".equals(method.getName()))
+							throw new UnsupportedOperationException(method.getName());
+						reports.incrementAndGet();
+						TradelogReport report = new TradelogReport();
+						TradelogDetail tradelogDetail = new TradelogDetail();
+						tradelogDetail.setName(((Portfolio) args[0]).getName());
+						report.add(tradelogDetail);
+						return report;
+					}
+				});
+
+		portfolio1 = new Portfolio("Portfolio1", "Portfolio1");
+		portfolio2 = new Portfolio("Portfolio2", "Portfolio2");
+		Contract contract1 = getContract(1, "TEST1");
+		Contract contract2 = getContract(2, "TEST2");
+
+		/*
+		 * Three tradingdays added newest first.
+		 */
+		tradingdays = new Tradingdays();
+		ZonedDateTime date = ZonedDateTime.of(2016, 3, 4, 12, 0, 0, 0, TradingCalendar.MKT_TIMEZONE);
+		int idTradestrategy = 1;
+		for (int i = 0; i < 3; i++) {
+			Tradingday tradingday = Tradingday.newInstance(date);
+			tradingday.addTradestrategy(getTradestrategy(idTradestrategy++, contract1, tradingday, portfolio1));
+			tradingday.addTradestrategy(getTradestrategy(idTradestrategy++, contract2, tradingday, portfolio2));
+			tradingdays.add(tradingday);
+			date = TradingCalendar.getPrevTradingDay(date);
+		}
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testScheduleByContract() {
+		try {
+			BackTestScheduler scheduler = new BackTestScheduler(brokerModel, persistentModel, tradingdays);
+			scheduler.doInBackground();
+
+			assertEquals("1", 6, requested.size());
+			assertEquals("2", 0, sameContractRunning.get());
+
+			/*
+			 * Each contract is back tested one tradingday after the other in
+			 * date order.
+			 */
+			for (int idContract = 1; idContract < 3; idContract++) {
+				ZonedDateTime lastOpen = null;
+				int count = 0;
+				for (Tradestrategy tradestrategy : new ArrayList<Tradestrategy>(requested)) {
+					if (idContract != tradestrategy.getContract().getIdContract())
+						continue;
+					if (null != lastOpen)
+						assertTrue("3", tradestrategy.getTradingday().getOpen().isAfter(lastOpen));
+					lastOpen = tradestrategy.getTradingday().getOpen();
+					assertNotNull("4", tradestrategy.getStrategyData());
+					count++;
+				}
+				assertEquals("5", 3, count);
+			}
+			assertTrue("6", historicalData.isEmpty());
+
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testCompleteWithTradelogReport() {
+		try {
+			/*
+			 * Tradestrategies with real time bars running are not back tested.
+			 */
+			realtimeBarsRunning.add(1);
+
+			BackTestScheduler scheduler = new BackTestScheduler(brokerModel, persistentModel, tradingdays);
+			assertNull("1", scheduler.getTradelogReport());
+			scheduler.doInBackground();
+
+			assertEquals("2", 5, requested.size());
+			for (Tradestrategy tradestrategy : requested) {
+				assertFalse("3", new Integer(1).equals(tradestrategy.getIdTradeStrategy()));
+			}
+
+			/*
+			 * One report for the range with the details for each portfolio.
+			 */
+			TradelogReport tradelogReport = scheduler.getTradelogReport();
+			assertNotNull("4", tradelogReport);
+			assertEquals("5", 2, reports.get());
+			assertEquals("6", 2, tradelogReport.getTradelogDetail().size());
+			assertEquals("7", portfolio1.getName(), tradelogReport.getTradelogDetail().get(0).getName());
+			assertEquals("8", portfolio2.getName(), tradelogReport.getTradelogDetail().get(1).getName());
+
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method getContract.
+	 * 
+	 * @param idContract
+	 *            int
+	 * @param symbol
+	 *            String
+	 * @return Contract
+	 */
+	private Contract getContract(int idContract, String symbol) {
+		Contract contract = new Contract("STK", symbol, "SMART", "USD", null, null);
+		contract.setIdContract(idContract);
+		return contract;
+	}
+
+	/**
+	 * Method getTradestrategy.
+	 * 
+	 * @param idTradestrategy
+	 *            int
+	 * @param contract
+	 *            Contract
+	 * @param tradingday
+	 *            Tradingday
+	 * @param portfolio
+	 *            Portfolio
+	 * @return Tradestrategy
+	 */
+	private Tradestrategy getTradestrategy(int idTradestrategy, Contract contract, Tradingday tradingday,
+			Portfolio portfolio) {
+		Tradestrategy tradestrategy = new Tradestrategy(contract, tradingday, new Strategy("Test"), portfolio,
+				new BigDecimal(100), "BUY", "0", true, 2, 300);
+		tradestrategy.setIdTradeStrategy(idTradestrategy);
+		return tradestrategy;
+	}
+}
@@ -0,0 +1,252 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.util.TradingCalendar;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.dao.Contract;
+import org.trade.persistent.dao.Portfolio;
+import org.trade.persistent.dao.Strategy;
+import org.trade.persistent.dao.TradeOrder;
+import org.trade.persistent.dao.TradelogReport;
+import org.trade.persistent.dao.TradelogSummary;
+import org.trade.persistent.dao.Tradestrategy;
+import org.trade.persistent.dao.TradestrategyOrders;
+import org.trade.persistent.dao.Tradingday;
+import org.trade.persistent.dao.Tradingdays;
+import org.trade.strategy.StrategyParameters;
+
+/**
+ * Some tests for the {@link BackTestSweep} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class BackTestSweepTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(BackTestSweepTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	private BrokerModel brokerModel = null;
+	private PersistentModel persistentModel = null;
+	private Tradingdays tradingdays = null;
+	private boolean savedOrders = false;
+	private int brokerDataRequests = 0;
+	private int ordersRemoved = 0;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		savedOrders = false;
+		brokerDataRequests = 0;
+		ordersRemoved = 0;
+
+		brokerModel = (BrokerModel) Proxy.newProxyInstance(BrokerModel.class.getClassLoader(),
+				new Class<?>[] { BrokerModel.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if ("onBrokerData".equals(method.getName())) {
+							brokerDataRequests++;
+							return null;
+						} else if ("isHistoricalDataRunning".equals(method.getName())
+								|| "isRealtimeBarsRunning".equals(method.getName())) {
+							return false;
+						} else if ("getHistoricalData".equals(method.getName())) {
+							return new ConcurrentHashMap<Integer, Tradestrategy>();
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+
+		/*
+		 * The net P/L for each point is the value of the Factor parameter.
+		 */
+		persistentModel = (PersistentModel) Proxy.newProxyInstance(PersistentModel.class.getClassLoader(),
+				new Class<?>[] { PersistentModel.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if ("findPositionOrdersByTradestrategyId".equals(method.getName())) {
+							TradestrategyOrders positionOrders = new TradestrategyOrders();
+							List<TradeOrder> tradeOrders = new ArrayList<TradeOrder>();
+							if (savedOrders)
+								tradeOrders.add(new TradeOrder());
+							positionOrders.setTradeOrders(tradeOrders);
+							return positionOrders;
+						} else if ("removeTradingdayTradeOrders".equals(method.getName())) {
+							ordersRemoved++;
+							return null;
+						} else if ("findTradelogReport".equals(method.getName())) {
+							TradelogReport report = new TradelogReport();
+							TradelogSummary total = new TradelogSummary();
+							total.setPeriod("Total");
+							total.setNetProfitLoss(new BigDecimal((Integer) StrategyParameters.getValue("Factor")));
+							report.add(total);
+							return report;
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+
+		Contract contract = new Contract("STK", "TEST", "SMART", "USD", null, null);
+		contract.setIdContract(1);
+		Portfolio portfolio = new Portfolio("Portfolio", "Portfolio");
+		tradingdays = new Tradingdays();
+		ZonedDateTime date = ZonedDateTime.of(2016, 3, 4, 12, 0, 0, 0, TradingCalendar.MKT_TIMEZONE);
+		for (int i = 0; i < 2; i++) {
+			Tradingday tradingday = Tradingday.newInstance(date);
+			Tradestrategy tradestrategy = new Tradestrategy(contract, tradingday, new Strategy("Test"), portfolio,
+					new BigDecimal(100), "BUY", "0", true, 2, 300);
+			tradestrategy.setIdTradeStrategy(i + 1);
+			tradingday.addTradestrategy(tradestrategy);
+			tradingdays.add(tradingday);
+			date = TradingCalendar.getPrevTradingDay(date);
+		}
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		StrategyParameters.clear();
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testRankAndRemoveSweepOrders() {
+		try {
+			BackTestSweep sweep = new BackTestSweep(brokerModel, persistentModel, tradingdays, getPoints(1, 3, 2));
+			sweep.doInBackground();
+
+			assertEquals("1", 6, brokerDataRequests);
+			assertEquals("2", 3, sweep.getResults().size());
+			assertEquals("3", 3, sweep.getResults().get(0).getPoint().get("Factor"));
+			assertEquals("4", 2, sweep.getResults().get(1).getPoint().get("Factor"));
+			assertEquals("5", 1, sweep.getResults().get(2).getPoint().get("Factor"));
+
+			/*
+			 * The orders are removed before each point and after the last
+			 * point for both tradingdays.
+			 */
+			assertEquals("6", 8, ordersRemoved);
+			assertNull("7", StrategyParameters.getValue("Factor"));
+
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testKeepSavedOrders() {
+		try {
+			savedOrders = true;
+			BackTestSweep sweep = new BackTestSweep(brokerModel, persistentModel, tradingdays, getPoints(1, 2));
+			sweep.doInBackground();
+
+			assertEquals("1", 0, ordersRemoved);
+			assertEquals("2", 0, brokerDataRequests);
+			assertTrue("3", sweep.getResults().isEmpty());
+
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method getPoints.
+	 * 
+	 * @param factors
+	 *            int...
+	 * @return List<Map<String,Object>> one point for each factor.
+	 */
+	private List<Map<String, Object>> getPoints(int... factors) {
+		List<Map<String, Object>> points = new ArrayList<Map<String, Object>>();
+		for (int factor : factors) {
+			Map<String, Object> point = new HashMap<String, Object>();
+			point.put("Factor", factor);
+			points.add(point);
+		}
+		return points;
+	}
+}
@@ -0,0 +1,305 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.broker.BackfillPlanner.BackfillPlan;
+import org.trade.core.util.TradingCalendar;
+import org.trade.persistent.CandleCache;
+import org.trade.persistent.CandleCoverage;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.dao.Candle;
+import org.trade.persistent.dao.Contract;
+import org.trade.persistent.dao.Tradestrategy;
+import org.trade.persistent.dao.Tradingday;
+import org.trade.strategy.data.CandleSeries;
+import org.trade.strategy.data.candle.CandleItem;
+import org.trade.strategy.data.candle.CandlePeriod;
+
+/**
+ * Some tests for the {@link BackfillPlanner} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class BackfillPlannerTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(BackfillPlannerTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	private static final Integer ID_CONTRACT = 1;
+	private static final Integer BAR_SIZE = 300;
+	private static final int BARS_PER_DAY = 78;
+
+	private final List<Candle> candles = new ArrayList<Candle>();
+	private BackfillPlanner backfillPlanner = null;
+	private Tradestrategy tradestrategy = null;
+	private ZonedDateTime day1Open = null;
+	private ZonedDateTime day2Open = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		CandleCache.clear();
+		CandleCoverage.clear();
+		day1Open = ZonedDateTime.of(2016, 3, 1, 9, 30, 0, 0, TradingCalendar.MKT_TIMEZONE);
+		day2Open = day1Open.plusDays(1);
+		Contract contract = new Contract();
+		contract.setIdContract(ID_CONTRACT);
+		contract.setSymbol("IBM");
+		tradestrategy = new Tradestrategy(contract);
+		tradestrategy.setTradingday(new Tradingday(day2Open, day2Open.withHour(16).withMinute(0)));
+		tradestrategy.setBarSize(BAR_SIZE);
+		tradestrategy.setChartDays(2);
+		PersistentModel persistentModel = (PersistentModel) Proxy.newProxyInstance(
+				PersistentModel.class.getClassLoader(), new Class<?>[] { PersistentModel.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (!"findCandlesByContractDateRangeBarSize".equals(method.getName()))
+							throw new UnsupportedOperationException(method.getName());
+						ZonedDateTime startOpenDate = (ZonedDateTime) args[1];
+						ZonedDateTime endOpenDate = (ZonedDateTime) args[2];
+						List<Candle> items = new ArrayList<Candle>();
+						for (Candle candle : candles) {
+							ZonedDateTime open = candle.getTradingday().getOpen();
+							if (!open.isBefore(startOpenDate) && !open.isAfter(endOpenDate))
+								items.add(candle);
+						}
+						return items;
+					}
+				});
+		backfillPlanner = new BackfillPlanner(persistentModel);
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		CandleCache.clear();
+		CandleCoverage.clear();
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testAllInDatabase() {
+		try {
+			addCandles(day1Open, BARS_PER_DAY);
+			addCandles(day2Open, BARS_PER_DAY);
+			BackfillPlan plan = backfillPlanner.getPlan(tradestrategy, tradestrategy.getTradingday().getClose());
+			assertFalse("1", plan.isRequired());
+			assertEquals("2", BARS_PER_DAY * 2, plan.getCandles().size());
+			assertTrue("3", CandleCoverage.isComplete(ID_CONTRACT, BAR_SIZE, day1Open.toLocalDate()));
+			assertTrue("4", CandleCoverage.isComplete(ID_CONTRACT, BAR_SIZE, day2Open.toLocalDate()));
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testLastDayMissing() {
+		try {
+			addCandles(day1Open, BARS_PER_DAY);
+			addCandles(day2Open, 40);
+			BackfillPlan plan = backfillPlanner.getPlan(tradestrategy, tradestrategy.getTradingday().getClose());
+			assertTrue("1", plan.isRequired());
+			assertEquals("2", 1, plan.getChartDays());
+			assertEquals("3", BARS_PER_DAY, plan.getCandles().size());
+			assertEquals("4", day1Open, plan.getCandles().get(0).getStartPeriod());
+			assertFalse("5", CandleCoverage.isComplete(ID_CONTRACT, BAR_SIZE, day2Open.toLocalDate()));
+
+			backfillPlanner.setComplete(tradestrategy, plan);
+			assertTrue("6", CandleCoverage.isComplete(ID_CONTRACT, BAR_SIZE, day2Open.toLocalDate()));
+			plan = backfillPlanner.getPlan(tradestrategy, tradestrategy.getTradingday().getClose());
+			assertFalse("7", plan.isRequired());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testFirstDayMissing() {
+		try {
+			addCandles(day1Open, 40);
+			addCandles(day2Open, BARS_PER_DAY);
+			BackfillPlan plan = backfillPlanner.getPlan(tradestrategy, tradestrategy.getTradingday().getClose());
+			assertTrue("1", plan.isRequired());
+			assertEquals("2", 2, plan.getChartDays());
+			assertTrue("3", plan.getCandles().isEmpty());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testHalfDayComplete() {
+		try {
+			ZonedDateTime halfdayOpen = ZonedDateTime.of(2016, 11, 25, 9, 30, 0, 0, TradingCalendar.MKT_TIMEZONE);
+			tradestrategy.setTradingday(new Tradingday(halfdayOpen, halfdayOpen.withHour(16).withMinute(0)));
+			tradestrategy.setChartDays(1);
+			addCandles(halfdayOpen, 42);
+			BackfillPlan plan = backfillPlanner.getPlan(tradestrategy, tradestrategy.getTradingday().getClose());
+			assertTrue("1", plan.isRequired());
+
+			TradingCalendar.setHalfDays(2016, String.valueOf(halfdayOpen.getDayOfYear()));
+			assertEquals("2", halfdayOpen.withHour(13).withMinute(0),
+					TradingCalendar.getTradingDayClose(tradestrategy.getTradingday().getClose()));
+			plan = backfillPlanner.getPlan(tradestrategy, tradestrategy.getTradingday().getClose());
+			assertFalse("3", plan.isRequired());
+			assertTrue("4", CandleCoverage.isComplete(ID_CONTRACT, BAR_SIZE, halfdayOpen.toLocalDate()));
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		} finally {
+			TradingCalendar.setHalfDays(2016, null);
+		}
+	}
+
+	@Test
+	public void testPersistRequestedDays() {
+		try {
+			addCandles(day1Open, BARS_PER_DAY);
+			addCandles(day2Open, 40);
+			BackfillPlan plan = backfillPlanner.getPlan(tradestrategy, tradestrategy.getTradingday().getClose());
+			assertTrue("1", plan.isPartial());
+			assertEquals("2", day2Open.toLocalDate().atStartOfDay(TradingCalendar.MKT_TIMEZONE), plan.getStartDate());
+
+			/*
+			 * The series holds the candles read from the database and the
+			 * requested day, only the requested day is saved.
+			 */
+			CandleSeries candleSeries = new CandleSeries("IBM", tradestrategy.getContract(), BAR_SIZE,
+					day1Open, tradestrategy.getTradingday().getClose());
+			for (Candle candle : candles) {
+				candleSeries.add(new CandleItem(tradestrategy.getContract(), candle.getTradingday(),
+						new CandlePeriod(candle.getStartPeriod(), BAR_SIZE), candle.getOpen().doubleValue(),
+						candle.getHigh().doubleValue(), candle.getLow().doubleValue(),
+						candle.getClose().doubleValue(), candle.getVolume(), candle.getVwap().doubleValue(), 1,
+						candle.getLastUpdateDate()), false);
+			}
+			CandleSeries persistSeries = TWSBrokerModel.getCandleSeries(candleSeries, plan.getStartDate());
+			assertEquals("3", 40, persistSeries.getItemCount());
+			assertEquals("4", day2Open, ((CandleItem) persistSeries.getDataItem(0)).getPeriod().getStart());
+			assertEquals("5", BAR_SIZE.intValue(), persistSeries.getBarSize());
+			assertEquals("6", tradestrategy.getContract(), persistSeries.getContract());
+
+			addCandles(day2Open.plusSeconds(BAR_SIZE * 40), BARS_PER_DAY - 40);
+			CandleCache.clear();
+			plan = backfillPlanner.getPlan(tradestrategy, tradestrategy.getTradingday().getClose());
+			assertFalse("7", plan.isPartial());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method addCandles.
+	 * 
+	 * @param open
+	 *            ZonedDateTime
+	 * @param count
+	 *            int
+	 */
+	private void addCandles(ZonedDateTime open, int count) {
+		Tradingday tradingday = new Tradingday(open, open.withHour(16).withMinute(0));
+		for (int i = 0; i < count; i++) {
+			Candle candle = new Candle();
+			candle.setTradingday(tradingday);
+			candle.setBarSize(BAR_SIZE);
+			candle.setStartPeriod(open.plusSeconds(BAR_SIZE * i));
+			candle.setEndPeriod(open.plusSeconds((BAR_SIZE * (i + 1)) - 1));
+			candle.setLastUpdateDate(candle.getEndPeriod());
+			candle.setOpen(new BigDecimal("10.00"));
+			candle.setHigh(new BigDecimal("12.50"));
+			candle.setLow(new BigDecimal("9.25"));
+			candle.setClose(new BigDecimal("11.75"));
+			candle.setVwap(new BigDecimal("11.10"));
+			candle.setVolume(1000L + i);
+			candles.add(candle);
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import static org.junit.Assert.*;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceUtil;
+import javax.swing.SwingUtilities;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.factory.ClassFactory;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.dao.Tradestrategy;
+import org.trade.persistent.dao.TradestrategyTest;
+import org.trade.persistent.dao.Tradingday;
+import org.trade.persistent.dao.Tradingdays;
+import org.trade.strategy.data.StrategyData;
+import org.trade.ui.TradeAppLoadConfig;
+
+/**
+ * Some tests for the {@link BrokerDataRequestMonitor} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class BrokerDataRequestMonitorTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(BrokerDataRequestMonitorTest.class);
+
+	@Rule
+	public TestName name = new TestName();
+
+	private String symbol = "TEST";
+	private Tradestrategy tradestrategy = null;
+	private PersistentModel tradePersistentModel = null;
+	private BrokerModel backTestbrokerModel = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		TradeAppLoadConfig.loadAppProperties();
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		try {
+			tradePersistentModel = (PersistentModel) ClassFactory
+					.getServiceForInterface(PersistentModel._persistentModel, this);
+			backTestbrokerModel = (BrokerModel) ClassFactory.getServiceForInterface(BrokerModel._brokerTest, this);
+			this.tradestrategy = TradestrategyTest.getTestTradestrategy(symbol);
+			assertNotNull("1", this.tradestrategy);
+			StrategyData.doDummyData(this.tradestrategy.getStrategyData().getBaseCandleSeries(),
+					this.tradestrategy.getTradingday(), 1, this.tradestrategy.getBarSize(), true, 0);
+			tradePersistentModel.persistCandleSeries(this.tradestrategy.getStrategyData().getBaseCandleSeries());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		TradestrategyTest.clearDBData();
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testGridLoadedTradingdays() {
+		try {
+			/*
+			 * The Tradingday tab reads the tradingdays without the indicator
+			 * series and portfolio accounts.
+			 */
+			Tradingday tradingday = this.tradestrategy.getTradingday();
+			Tradingdays tradingdays = tradePersistentModel.findTradingdaysByDateRange(tradingday.getOpen(),
+					tradingday.getOpen(), false);
+			Tradestrategy gridTradestrategy = null;
+			for (Tradestrategy item : tradingdays.getTradingday(tradingday.getOpen(), tradingday.getClose())
+					.getTradestrategies()) {
+				if (item.getIdTradeStrategy().equals(this.tradestrategy.getIdTradeStrategy()))
+					gridTradestrategy = item;
+			}
+			assertNotNull("1", gridTradestrategy);
+			PersistenceUtil persistenceUtil = Persistence.getPersistenceUtil();
+			assertFalse("2", persistenceUtil.isLoaded(gridTradestrategy.getStrategy(), "indicatorSeries"));
+			assertFalse("3", persistenceUtil.isLoaded(gridTradestrategy.getPortfolio(), "portfolioAccounts"));
+
+			final List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+			backTestbrokerModel.setBrokerDataOnly(false);
+			BrokerDataRequestMonitor brokerDataRequestMonitor = new BrokerDataRequestMonitor(backTestbrokerModel,
+					tradePersistentModel, tradingdays);
+			brokerDataRequestMonitor.addPropertyChangeListener(new PropertyChangeListener() {
+				public void propertyChange(PropertyChangeEvent evt) {
+					if ("error".equals(evt.getPropertyName())) {
+						errors.add((Exception) evt.getNewValue());
+					}
+				}
+			});
+			brokerDataRequestMonitor.doInBackground();
+
+			/*
+			 * The property changes are fired on the event thread.
+			 */
+			SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+				}
+			});
+			assertTrue("4", errors.isEmpty());
+			assertNotNull("5", gridTradestrategy.getStrategyData());
+			assertTrue("6", persistenceUtil.isLoaded(gridTradestrategy.getStrategy(), "indicatorSeries"));
+			assertTrue("7", persistenceUtil.isLoaded(gridTradestrategy.getPortfolio(), "portfolioAccounts"));
+			assertFalse("8", gridTradestrategy.getPortfolio().getPortfolioAccounts().isEmpty());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+}
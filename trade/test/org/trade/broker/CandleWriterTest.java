@@ -0,0 +1,300 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.properties.ConfigProperties;
+import org.trade.core.util.TradingCalendar;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.PersistentModelException;
+import org.trade.persistent.dao.Candle;
+import org.trade.persistent.dao.Contract;
+import org.trade.persistent.dao.Tradingday;
+
+/**
+ * Some tests for the {@link CandleWriter} class. The candles are saved to a
+ * PersistentModel that records the saves so no database is needed.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class CandleWriterTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(CandleWriterTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	private final List<Candle> saved = Collections.synchronizedList(new ArrayList<Candle>());
+	private final List<String> savedOn = Collections.synchronizedList(new ArrayList<String>());
+	private int batches = 0;
+	private boolean failBatch = false;
+	private final CountDownLatch saving = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+	private PersistentModel persistentModel = null;
+	private Contract contract = null;
+	private Tradingday tradingday = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		contract = new Contract();
+		contract.setIdContract(1);
+		ZonedDateTime open = ZonedDateTime.of(2016, 3, 1, 9, 30, 0, 0, TradingCalendar.MKT_TIMEZONE);
+		tradingday = new Tradingday(open, open.withHour(16).withMinute(0));
+		tradingday.setIdTradingDay(1);
+		persistentModel = (PersistentModel) Proxy.newProxyInstance(PersistentModel.class.getClassLoader(),
+				new Class<?>[] { PersistentModel.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if ("persistCandle".equals(method.getName())) {
+							saving.countDown();
+							release.await(5, TimeUnit.SECONDS);
+							return save((Candle) args[0]);
+						} else if ("persistCandles".equals(method.getName())) {
+							saving.countDown();
+							release.await(5, TimeUnit.SECONDS);
+							batches++;
+							if (failBatch)
+								throw new PersistentModelException("Batch failed");
+							List<Candle> items = new ArrayList<Candle>();
+							for (Object candle : (List<?>) args[0]) {
+								items.add(save((Candle) candle));
+							}
+							return items;
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	/**
+	 * Method save.
+	 * 
+	 * @param candle
+	 *            Candle
+	 * @return Candle
+	 */
+	private Candle save(Candle candle) {
+		saved.add(candle);
+		savedOn.add(Thread.currentThread().getName());
+		Candle item = new Candle();
+		item.setIdCandle(saved.size());
+		item.setVersion(null == candle.getVersion() ? 0 : candle.getVersion() + 1);
+		return item;
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		release.countDown();
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testCoalesce() {
+		try {
+			assertTrue("1", CandleWriter.isEnabled());
+			CandleWriter candleWriter = new CandleWriter(persistentModel);
+			Candle candle1 = createCandle(0, "10.00");
+			Candle candle2 = createCandle(5, "10.50");
+
+			candleWriter.persistCandle(candle1);
+			assertTrue("2", saving.await(5, TimeUnit.SECONDS));
+			candleWriter.persistCandle(candle2);
+			candle2.setClose(new BigDecimal("10.75"));
+			candleWriter.persistCandle(candle2);
+			candle2.setClose(new BigDecimal("11.00"));
+			candleWriter.persistCandle(candle2);
+			assertEquals("3", 1, candleWriter.getQueueDepth());
+
+			release.countDown();
+			candleWriter.flush();
+			assertEquals("4", 0, candleWriter.getQueueDepth());
+			assertEquals("5", 2, saved.size());
+			assertNotSame("6", candle2, saved.get(1));
+			assertEquals("7", new BigDecimal("11.00"), saved.get(1).getClose());
+			assertEquals("8", Integer.valueOf(2), candle2.getIdCandle());
+			assertEquals("9", Integer.valueOf(0), candle2.getVersion());
+
+			candle2.setClose(new BigDecimal("11.25"));
+			candleWriter.persistCandle(candle2);
+			candleWriter.flush();
+			assertEquals("10", 3, saved.size());
+			assertEquals("11", Integer.valueOf(2), saved.get(2).getIdCandle());
+			assertEquals("12", Integer.valueOf(1), candle2.getVersion());
+			assertEquals("13", 0, candleWriter.getWaitedCount());
+			assertEquals("14", 3, batches);
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testQueueFull() {
+		try {
+			final CandleWriter candleWriter = new CandleWriter(persistentModel);
+			candleWriter.persistCandle(createCandle(0, "10.00"));
+			assertTrue("1", saving.await(5, TimeUnit.SECONDS));
+
+			int queueSize = ConfigProperties.getPropAsInt("trade.candle.writeBehind.size");
+			for (int i = 0; i < queueSize; i++) {
+				candleWriter.persistCandle(createCandle(5 * (i + 1), "10.50"));
+			}
+			assertEquals("2", queueSize, candleWriter.getQueueDepth());
+			final Candle candle = createCandle(5 * (queueSize + 1), "11.00");
+			final CountDownLatch queued = new CountDownLatch(1);
+			Thread caller = new Thread(new Runnable() {
+				public void run() {
+					try {
+						candleWriter.persistCandle(candle);
+						queued.countDown();
+					} catch (Exception ex) {
+						_log.error("Error queuing candle msg: " + ex.getMessage());
+					}
+				}
+			});
+			caller.start();
+			assertFalse("3", queued.await(200, TimeUnit.MILLISECONDS));
+			assertEquals("4", 1, candleWriter.getWaitedCount());
+
+			release.countDown();
+			assertTrue("5", queued.await(5, TimeUnit.SECONDS));
+			candleWriter.flush();
+			assertEquals("6", queueSize + 2, saved.size());
+			assertEquals("7", new BigDecimal("11.00"), saved.get(queueSize + 1).getClose());
+			for (String threadName : savedOn) {
+				assertEquals("8", "CandleWriter", threadName);
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testBatchFailed() {
+		try {
+			failBatch = true;
+			release.countDown();
+			CandleWriter candleWriter = new CandleWriter(persistentModel);
+			Candle candle = createCandle(0, "10.00");
+			candleWriter.persistCandle(candle);
+			candleWriter.flush();
+			assertEquals("1", 1, batches);
+			assertEquals("2", 1, saved.size());
+			assertEquals("3", Integer.valueOf(1), candle.getIdCandle());
+			assertEquals("4", Integer.valueOf(0), candle.getVersion());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method createCandle.
+	 * 
+	 * @param minute
+	 *            int
+	 * @param close
+	 *            String
+	 * @return Candle
+	 */
+	private Candle createCandle(int minute, String close) {
+		Candle candle = new Candle();
+		candle.setContract(contract);
+		candle.setTradingday(tradingday);
+		candle.setBarSize(300);
+		candle.setStartPeriod(tradingday.getOpen().plusMinutes(minute));
+		candle.setEndPeriod(candle.getStartPeriod().plusSeconds(299));
+		candle.setLastUpdateDate(candle.getStartPeriod());
+		candle.setOpen(new BigDecimal("10.00"));
+		candle.setHigh(new BigDecimal(close));
+		candle.setLow(new BigDecimal("10.00"));
+		candle.setClose(new BigDecimal(close));
+		candle.setVwap(new BigDecimal("10.25"));
+		candle.setVolume(100L);
+		return candle;
+	}
+}
@@ -0,0 +1,183 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ib.client.CommissionReport;
+import com.ib.client.Execution;
+
+/**
+ * Some tests for the {@link ExecutionDetails} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class ExecutionDetailsTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(ExecutionDetailsTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testGroupByPermId() {
+		try {
+			ExecutionDetails executionDetails = new ExecutionDetails(0);
+			executionDetails.addExecution(getExecution("E1", 100));
+			executionDetails.addExecution(getExecution("E2", 200));
+			executionDetails.addExecution(getExecution("E3", 100));
+			// Same execId replaces the one held.
+			executionDetails.addExecution(getExecution("E2", 200));
+			assertEquals("1", 3, executionDetails.size());
+
+			List<List<Execution>> groups = executionDetails.getExecutions();
+			assertEquals("2", 2, groups.size());
+			assertEquals("3", 2, groups.get(0).size());
+			assertEquals("4", "E1", groups.get(0).get(0).m_execId);
+			assertEquals("5", "E3", groups.get(0).get(1).m_execId);
+			assertEquals("6", 1, groups.get(1).size());
+
+			CommissionReport commsReport = new CommissionReport();
+			commsReport.m_execId = "E3";
+			commsReport.m_commission = 1.25;
+			executionDetails.addCommissionReport(commsReport);
+			assertEquals("7", 1.25, executionDetails.getCommissionReport("E3").m_commission, 0);
+
+			executionDetails.clear();
+			assertTrue("8", executionDetails.isEmpty());
+			assertNull("9", executionDetails.getCommissionReport("E3"));
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testRetain() {
+		try {
+			ExecutionDetails executionDetails = new ExecutionDetails(3);
+			executionDetails.addExecution(getExecution("E1", 100));
+			executionDetails.addExecution(getExecution("E2", 100));
+			executionDetails.addExecution(getExecution("E3", 200));
+			executionDetails.addExecution(getExecution("E4", 300));
+
+			/*
+			 * The oldest order's executions are dropped together.
+			 */
+			assertEquals("1", 2, executionDetails.size());
+			List<List<Execution>> groups = executionDetails.getExecutions();
+			assertEquals("2", 2, groups.size());
+			assertEquals("3", 200, groups.get(0).get(0).m_permId);
+
+			for (int i = 0; i < 5; i++) {
+				CommissionReport commsReport = new CommissionReport();
+				commsReport.m_execId = "E" + i;
+				executionDetails.addCommissionReport(commsReport);
+			}
+			assertNull("4", executionDetails.getCommissionReport("E1"));
+			assertNotNull("5", executionDetails.getCommissionReport("E2"));
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method getExecution.
+	 * 
+	 * @param execId
+	 *            String
+	 * @param permId
+	 *            int
+	 * @return Execution
+	 */
+	private static Execution getExecution(String execId, int permId) {
+		Execution execution = new Execution();
+		execution.m_execId = execId;
+		execution.m_permId = permId;
+		return execution;
+	}
+}
@@ -0,0 +1,192 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.persistent.dao.Contract;
+import org.trade.persistent.dao.TradePosition;
+
+/**
+ * Some tests for the {@link MarketDataLines} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class MarketDataLinesTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(MarketDataLinesTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testLines() {
+		try {
+			MarketDataLines lines = new MarketDataLines(3);
+			Contract ibm = getContract(1, "IBM");
+			Contract msft = getContract(2, "MSFT");
+			Contract aapl = getContract(3, "AAPL");
+			List<Contract> downgraded = new ArrayList<Contract>();
+
+			assertNull("1", lines.addRealtimeBars(ibm));
+			assertTrue("2", lines.addMarketData(ibm, downgraded));
+			assertTrue("3", lines.addMarketData(msft, downgraded));
+			assertEquals("4", 3, lines.getLinesInUse());
+			assertFalse("5", lines.addMarketData(aapl, downgraded));
+			assertTrue("6", lines.isSnapshot(aapl));
+			assertTrue("7", downgraded.isEmpty());
+
+			/*
+			 * Real time bars take the line of the least recently used.
+			 */
+			assertEquals("8", ibm, lines.addRealtimeBars(msft));
+			assertTrue("9", lines.isSnapshot(ibm));
+			assertTrue("10", lines.isStreaming(msft));
+
+			/*
+			 * Freeing a line gives it to the most recently used snapshot.
+			 */
+			assertEquals("11", ibm, lines.removeRealtimeBars(msft));
+			assertTrue("12", lines.isStreaming(ibm));
+			assertTrue("13", lines.isSnapshot(aapl));
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testOpenPositionPriority() {
+		try {
+			MarketDataLines lines = new MarketDataLines(2);
+			Contract ibm = getContract(1, "IBM");
+			Contract msft = getContract(2, "MSFT");
+			Contract aapl = getContract(3, "AAPL");
+			List<Contract> downgraded = new ArrayList<Contract>();
+
+			assertTrue("1", lines.addMarketData(ibm, downgraded));
+			assertTrue("2", lines.addMarketData(msft, downgraded));
+			assertFalse("3", lines.addMarketData(aapl, downgraded));
+
+			aapl.setTradePosition(new TradePosition());
+			lines.touch(ibm);
+			List<Contract> promoted = lines.rotate(downgraded);
+			assertEquals("4", 1, promoted.size());
+			assertEquals("5", aapl, promoted.get(0));
+			assertEquals("6", 1, downgraded.size());
+			assertEquals("7", msft, downgraded.get(0));
+
+			/*
+			 * A contract with an open position is never moved to snapshots.
+			 */
+			ibm.setTradePosition(new TradePosition());
+			downgraded.clear();
+			assertNull("8", lines.addRealtimeBars(msft));
+			assertTrue("9", downgraded.isEmpty());
+			assertTrue("10", lines.isStreaming(ibm));
+			assertTrue("11", lines.isStreaming(aapl));
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method getContract.
+	 * 
+	 * @param idContract
+	 *            Integer
+	 * @param symbol
+	 *            String
+	 * @return Contract
+	 */
+	private Contract getContract(Integer idContract, String symbol) {
+		Contract contract = new Contract();
+		contract.setIdContract(idContract);
+		contract.setSymbol(symbol);
+		return contract;
+	}
+}
@@ -0,0 +1,224 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.dictionary.valuetype.OrderStatus;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.dao.TradeOrder;
+import org.trade.persistent.dao.TradeOrderfill;
+
+/**
+ * Some tests for the {@link OrderCache} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class OrderCacheTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(OrderCacheTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	private PersistentModel persistentModel = null;
+	private int dbReads = 0;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		dbReads = 0;
+		persistentModel = (PersistentModel) Proxy.newProxyInstance(PersistentModel.class.getClassLoader(),
+				new Class<?>[] { PersistentModel.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (!"findTradeOrderByKey".equals(method.getName()))
+							throw new UnsupportedOperationException(method.getName());
+						dbReads++;
+						Integer orderKey = (Integer) args[0];
+						if (orderKey.intValue() > 1000)
+							return null;
+						return getTradeOrder(orderKey, orderKey + 5000, "DB" + orderKey);
+					}
+				});
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testLoadAndLookup() {
+		try {
+			OrderCache orderCache = new OrderCache(persistentModel, true);
+			List<TradeOrder> orders = new ArrayList<TradeOrder>();
+			orders.add(getTradeOrder(1, 5001, "EXEC1"));
+			orders.add(getTradeOrder(2, 5002, "EXEC2"));
+			orderCache.load(orders);
+			assertEquals("1", 2, orderCache.size());
+
+			/*
+			 * Loaded orders are found without reading the database.
+			 */
+			TradeOrder tradeOrder = orderCache.getTradeOrder(1);
+			assertSame("2", orders.get(0), tradeOrder);
+			assertEquals("3", new Integer(1), orderCache.getOrderKeyByExecId("EXEC1"));
+			assertEquals("4", 0, dbReads);
+			assertEquals("5", 1, orderCache.getHitCount());
+
+			/*
+			 * A miss reads the database once and is then held.
+			 */
+			assertNotNull("6", orderCache.getTradeOrder(3));
+			assertNotNull("7", orderCache.getTradeOrder(3));
+			assertEquals("8", 1, dbReads);
+			assertEquals("9", new Integer(3), orderCache.getOrderKeyByExecId("DB3"));
+			assertNull("10", orderCache.getTradeOrder(2000));
+			assertEquals("11", 2, dbReads);
+
+			/*
+			 * A removed order is read from the database again.
+			 */
+			orderCache.remove(1);
+			assertNull("12", orderCache.getOrderKeyByExecId("EXEC1"));
+			assertNotNull("13", orderCache.getTradeOrder(1));
+			assertEquals("14", 3, dbReads);
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testPutHoldsCopy() {
+		try {
+			OrderCache orderCache = new OrderCache(persistentModel, true);
+			TradeOrder saved = getTradeOrder(10, 5010, "EXEC10");
+			orderCache.put(saved);
+
+			TradeOrder cached = orderCache.getTradeOrder(10);
+			assertNotSame("1", saved, cached);
+			assertEquals("2", 1, cached.getTradeOrderfills().size());
+			assertSame("3", cached, cached.getTradeOrderfills().get(0).getTradeOrder());
+
+			/*
+			 * Changes to the order held by the caller do not change the cache.
+			 */
+			saved.setStatus(OrderStatus.CANCELLED);
+			assertEquals("4", OrderStatus.SUBMITTED, orderCache.getTradeOrder(10).getStatus());
+			assertEquals("5", 0, dbReads);
+
+			/*
+			 * Disabled always reads the database.
+			 */
+			OrderCache disabled = new OrderCache(persistentModel, false);
+			disabled.put(saved);
+			assertEquals("6", 0, disabled.size());
+			assertNotNull("7", disabled.getTradeOrder(10));
+			assertNotNull("8", disabled.getTradeOrder(10));
+			assertEquals("9", 2, dbReads);
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method getTradeOrder.
+	 * 
+	 * @param orderKey
+	 *            Integer
+	 * @param permId
+	 *            Integer
+	 * @param execId
+	 *            String
+	 * @return TradeOrder
+	 */
+	private static TradeOrder getTradeOrder(Integer orderKey, Integer permId, String execId) {
+		TradeOrder tradeOrder = new TradeOrder();
+		tradeOrder.setOrderKey(orderKey);
+		tradeOrder.setPermId(permId);
+		tradeOrder.setStatus(OrderStatus.SUBMITTED);
+		TradeOrderfill tradeOrderfill = new TradeOrderfill();
+		tradeOrderfill.setExecId(execId);
+		tradeOrderfill.setTradeOrder(tradeOrder);
+		tradeOrder.addTradeOrderfill(tradeOrderfill);
+		return tradeOrder;
+	}
+}
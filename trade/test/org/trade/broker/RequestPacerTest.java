@@ -0,0 +1,144 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Some tests for the {@link RequestPacer} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class RequestPacerTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(RequestPacerTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testRequestLimit() {
+		try {
+			RequestPacer pacer = new RequestPacer(3, 10000, 5, 2000, 15000);
+			long now = 100000;
+			for (int i = 0; i < 3; i++) {
+				assertEquals("1", 0, pacer.getWaitMillis("IBM", "IBM:" + i, now + i));
+				pacer.submitted("IBM" + i, "IBM:" + i, now + i);
+			}
+			assertEquals("2", 10000, pacer.getWaitMillis("MSFT", "MSFT:0", now));
+			assertEquals("3", 1, pacer.getWaitMillis("MSFT", "MSFT:0", now + 9999));
+			assertEquals("4", 0, pacer.getWaitMillis("MSFT", "MSFT:0", now + 10000));
+			/*
+			 * Three are in use. The next three are submitted when the tokens
+			 * are returned and the seventh in the next period.
+			 */
+			assertEquals("5", 0, pacer.getEstimatedMillis(0, now + 10000));
+			assertEquals("6", 2, pacer.getEstimatedMillis(3, now + 10000));
+			assertEquals("7", 10000, pacer.getEstimatedMillis(4, now + 10000));
+			assertEquals("8", 20001, pacer.getEstimatedMillis(6, now + 1));
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testContractAndIdenticalLimits() {
+		try {
+			RequestPacer pacer = new RequestPacer(60, 600000, 2, 2000, 15000);
+			long now = 100000;
+			pacer.submitted("IBM", "IBM:0", now);
+			assertEquals("1", 15000, pacer.getWaitMillis("IBM", "IBM:0", now));
+			assertEquals("2", 0, pacer.getWaitMillis("IBM", "IBM:1", now));
+			pacer.submitted("IBM", "IBM:1", now + 500);
+			assertEquals("3", 1500, pacer.getWaitMillis("IBM", "IBM:2", now + 500));
+			assertEquals("4", 0, pacer.getWaitMillis("MSFT", "MSFT:0", now + 500));
+			assertEquals("5", 0, pacer.getWaitMillis("IBM", "IBM:2", now + 2000));
+			assertEquals("6", 0, pacer.getWaitMillis("IBM", "IBM:0", now + 15000));
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+}
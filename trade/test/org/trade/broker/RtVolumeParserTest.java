@@ -0,0 +1,147 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Some tests for the {@link RtVolumeParser} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class RtVolumeParserTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(RtVolumeParserTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testParse() {
+		try {
+			String value = "701.28;1;1348075471534;67854;701.46918464;true";
+			assertEquals("1", 701.28d, RtVolumeParser.getPrice(value), 0);
+			assertEquals("2", 1, RtVolumeParser.getSize(value));
+			assertEquals("3", 1348075471534L, RtVolumeParser.getTime(value));
+			assertEquals("4", 67854, RtVolumeParser.getLong(value, RtVolumeParser.TOTAL_VOLUME));
+			assertEquals("5", 701.46918464d, RtVolumeParser.getDouble(value, RtVolumeParser.VWAP), 0);
+			assertEquals("6", 25d, RtVolumeParser.getPrice("25;100;1348075471534;67854;25;false"), 0);
+			assertEquals("7", 0.0001d, RtVolumeParser.getPrice(".0001;100"), 0);
+			assertEquals("8", 1.5e3d, RtVolumeParser.getPrice("1.5E3;100"), 0);
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testParseDoubleMatches() {
+		try {
+			String[] prices = { "0.01", "9.99", "10.1", "123.45", "4321.0625", "99999.99999", "0.3", "1234567.89" };
+			for (String price : prices) {
+				assertEquals(price, Double.parseDouble(price), RtVolumeParser.getPrice(price + ";1;0"), 0);
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testEmptyFields() {
+		try {
+			String value = ";0;1348075471534;67854;;true";
+			assertTrue("1", Double.isNaN(RtVolumeParser.getPrice(value)));
+			assertEquals("2", 0, RtVolumeParser.getSize(value));
+			assertTrue("3", Double.isNaN(RtVolumeParser.getDouble(value, RtVolumeParser.VWAP)));
+			assertEquals("4", -1, RtVolumeParser.getTime("701.28;1"));
+			assertEquals("5", -1, RtVolumeParser.getSize("701.28;x;1"));
+			assertTrue("6", Double.isNaN(RtVolumeParser.getPrice(null)));
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+}
@@ -0,0 +1,242 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.util.TradingCalendar;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.dao.Candle;
+import org.trade.persistent.dao.Contract;
+import org.trade.persistent.dao.Portfolio;
+import org.trade.persistent.dao.Strategy;
+import org.trade.persistent.dao.Tradestrategy;
+import org.trade.persistent.dao.Tradingday;
+import org.trade.strategy.data.CandleSeries;
+import org.trade.strategy.data.StrategyData;
+import org.trade.strategy.data.candle.CandleItem;
+import org.trade.ui.TradeAppLoadConfig;
+
+/**
+ * Some tests for the {@link TWSBrokerModel} class that add the real time bars
+ * to the tradestrategies of a contract. The candles are saved to a
+ * PersistentModel that records the saves so no database is needed.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class TWSBrokerRealtimeBarTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(TWSBrokerRealtimeBarTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	private static final int BAR_SIZE = 300;
+	private static final int ROLLUP_BAR_SIZE = 900;
+	private static final int REALTIME_BAR_SIZE = 5;
+
+	private final List<Candle> saved = Collections.synchronizedList(new ArrayList<Candle>());
+	private TWSBrokerModel brokerModel = null;
+	private Contract contract = null;
+	private Tradestrategy tradestrategy = null;
+	private Tradestrategy rollupTradestrategy = null;
+	private Tradestrategy lateOpenTradestrategy = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		TradeAppLoadConfig.loadAppProperties();
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		PersistentModel persistentModel = (PersistentModel) Proxy.newProxyInstance(
+				PersistentModel.class.getClassLoader(), new Class<?>[] { PersistentModel.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						List<Candle> items = new ArrayList<Candle>();
+						if ("persistCandle".equals(method.getName())) {
+							items.add((Candle) args[0]);
+						} else if ("persistCandles".equals(method.getName())) {
+							for (Object candle : (List<?>) args[0]) {
+								items.add((Candle) candle);
+							}
+						} else {
+							throw new UnsupportedOperationException(method.getName());
+						}
+						for (Candle candle : items) {
+							saved.add(candle);
+							candle.setIdCandle(saved.size());
+							candle.setVersion(0);
+						}
+						return "persistCandle".equals(method.getName()) ? items.get(0) : items;
+					}
+				});
+		brokerModel = new TWSBrokerModel(persistentModel);
+		Tradingday tradingday = Tradingday
+				.newInstance(ZonedDateTime.of(2016, 3, 4, 12, 0, 0, 0, TradingCalendar.MKT_TIMEZONE));
+		Tradingday lateOpenTradingday = new Tradingday(tradingday.getOpen().plusHours(1), tradingday.getClose());
+		contract = new Contract("STK", "IBM", "SMART", "USD", null, null);
+		contract.setIdContract(1);
+		rollupTradestrategy = getTradestrategy(tradingday, 2, ROLLUP_BAR_SIZE);
+		tradestrategy = getTradestrategy(tradingday, 1, BAR_SIZE);
+		lateOpenTradestrategy = getTradestrategy(lateOpenTradingday, 3, BAR_SIZE);
+		brokerModel.addRealtimeBarsRequest(contract);
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		brokerModel.onCancelRealtimeBars(contract);
+		tradestrategy.getStrategyData().cancel();
+		rollupTradestrategy.getStrategyData().cancel();
+		lateOpenTradestrategy.getStrategyData().cancel();
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testRealtimeBar() {
+		try {
+			ZonedDateTime open = tradestrategy.getTradingday().getOpen();
+			int bars = (2 * BAR_SIZE) / REALTIME_BAR_SIZE;
+
+			/*
+			 * A bar before the open is not added or saved. The bars are all
+			 * before the open of the late open tradestrategy.
+			 */
+			brokerModel.realtimeBar(contract.getId(), open.minusSeconds(REALTIME_BAR_SIZE).toEpochSecond(), 10,
+					10, 10, 10, 1, 10, 1);
+			for (int i = 0; i < bars; i++) {
+				double price = 10 + (i * 0.01);
+				brokerModel.realtimeBar(contract.getId(), open.plusSeconds(i * REALTIME_BAR_SIZE).toEpochSecond(),
+						price, price + 0.05, price - 0.05, price, 1, price, 1);
+			}
+			brokerModel.getCandleWriter().flush();
+
+			CandleSeries candleSeries = tradestrategy.getStrategyData().getBaseCandleSeries();
+			CandleSeries rollupSeries = rollupTradestrategy.getStrategyData().getBaseCandleSeries();
+			assertEquals("1", 2, candleSeries.getItemCount());
+			assertEquals("2", 1, rollupSeries.getItemCount());
+			assertTrue("3", lateOpenTradestrategy.getStrategyData().getBaseCandleSeries().isEmpty());
+			for (int i = 0; i < candleSeries.getItemCount(); i++) {
+				CandleItem candleItem = (CandleItem) candleSeries.getDataItem(i);
+				assertEquals("4", open.plusSeconds(i * BAR_SIZE), candleItem.getPeriod().getStart());
+				int lastBar = ((i + 1) * (BAR_SIZE / REALTIME_BAR_SIZE)) - 1;
+				assertEquals("5", 10 + (lastBar * 0.01), candleItem.getClose(), 0.000001);
+				assertEquals("6", (BAR_SIZE / REALTIME_BAR_SIZE) * 100, candleItem.getVolume());
+			}
+			CandleItem rollupItem = (CandleItem) rollupSeries.getDataItem(0);
+			assertEquals("7", 10 + ((bars - 1) * 0.01), rollupItem.getClose(), 0.000001);
+			assertEquals("8", bars * 100, rollupItem.getVolume());
+
+			/*
+			 * One candle of the smallest bar size is saved for each bar.
+			 */
+			CandleWriter candleWriter = brokerModel.getCandleWriter();
+			assertEquals("9", bars, candleWriter.getQueuedCount() + candleWriter.getCoalescedCount());
+			assertFalse("10", saved.isEmpty());
+			for (Candle candle : saved) {
+				assertEquals("11", Integer.valueOf(BAR_SIZE), candle.getBarSize());
+			}
+			Candle lastSaved = saved.get(saved.size() - 1);
+			assertEquals("12", open.plusSeconds(BAR_SIZE), lastSaved.getStartPeriod());
+			assertEquals("13", 10 + ((bars - 1) * 0.01), lastSaved.getClose().doubleValue(), 0.000001);
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method getTradestrategy.
+	 * 
+	 * @param tradingday
+	 *            Tradingday
+	 * @param idTradestrategy
+	 *            Integer
+	 * @param barSize
+	 *            Integer
+	 * @return Tradestrategy
+	 */
+	private Tradestrategy getTradestrategy(Tradingday tradingday, Integer idTradestrategy, Integer barSize) {
+		Tradestrategy item = new Tradestrategy(contract, tradingday, new Strategy("Test"), new Portfolio(),
+				new BigDecimal(100), "BUY", "0", true, 1, barSize);
+		item.setIdTradeStrategy(idTradestrategy);
+		item.setStrategyData(StrategyData.create(item));
+		contract.addTradestrategy(item);
+		return item;
+	}
+}
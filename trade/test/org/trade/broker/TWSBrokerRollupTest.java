@@ -0,0 +1,275 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.util.TradingCalendar;
+import org.trade.persistent.dao.Contract;
+import org.trade.persistent.dao.Portfolio;
+import org.trade.persistent.dao.Strategy;
+import org.trade.persistent.dao.Tradestrategy;
+import org.trade.persistent.dao.Tradingday;
+import org.trade.strategy.data.CandleSeries;
+import org.trade.strategy.data.StrategyData;
+import org.trade.strategy.data.candle.CandleItem;
+import org.trade.ui.TradeAppLoadConfig;
+
+/**
+ * Some tests for the {@link TWSBrokerModel} class that build the candles for
+ * rollup tradestrategies from the request for a smaller bar size.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class TWSBrokerRollupTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(TWSBrokerRollupTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	private static final int BAR_SIZE = 300;
+	private static final int ROLLUP_BAR_SIZE = 900;
+	private static final int BARS = 10;
+
+	private TWSBrokerModel brokerModel = null;
+	private Tradestrategy tradestrategy = null;
+	private Tradestrategy rollupTradestrategy = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		TradeAppLoadConfig.loadAppProperties();
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		brokerModel = new TWSBrokerModel();
+		Tradingday tradingday = Tradingday
+				.newInstance(ZonedDateTime.of(2016, 3, 4, 12, 0, 0, 0, TradingCalendar.MKT_TIMEZONE));
+		Contract contract = new Contract("STK", "IBM", "SMART", "USD", null, null);
+		contract.setIdContract(1);
+		tradestrategy = getTradestrategy(contract, tradingday, 1, BAR_SIZE);
+		rollupTradestrategy = getTradestrategy(contract, tradingday, 2, ROLLUP_BAR_SIZE);
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		brokerModel.getHistoricalData().remove(tradestrategy.getId());
+		brokerModel.getHistoricalData().remove(rollupTradestrategy.getId());
+		tradestrategy.getStrategyData().cancel();
+		rollupTradestrategy.getStrategyData().cancel();
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testRollupCandles() {
+		try {
+			/*
+			 * Build the base candles and the larger bars the broker would
+			 * return for the same period. The last larger bar only has one
+			 * base candle.
+			 */
+			Tradestrategy directTradestrategy = getTradestrategy(tradestrategy.getContract(),
+					tradestrategy.getTradingday(), 3, ROLLUP_BAR_SIZE);
+			int rollupInterval = ROLLUP_BAR_SIZE / BAR_SIZE;
+			ZonedDateTime open = tradestrategy.getTradingday().getOpen();
+			for (int i = 0; i < BARS; i = i + rollupInterval) {
+				double high = 0;
+				double low = Double.MAX_VALUE;
+				double close = 0;
+				double value = 0;
+				long volume = 0;
+				int tradeCount = 0;
+				for (int j = i; j < Math.min(i + rollupInterval, BARS); j++) {
+					double barOpen = 10 + (j * 0.1);
+					double barHigh = barOpen + 0.5 + ((j % 3) * 0.1);
+					double barLow = barOpen - 0.3 - ((j % 2) * 0.1);
+					double barClose = barOpen + 0.2;
+					double barVwap = barOpen + 0.1;
+					long barVolume = 100 + (j * 10);
+					tradestrategy.getStrategyData().buildCandle(open.plusSeconds(BAR_SIZE * j), barOpen, barHigh,
+							barLow, barClose, barVolume, barVwap, 5 + j, 1, null);
+					high = Math.max(high, barHigh);
+					low = Math.min(low, barLow);
+					close = barClose;
+					value = value + (barVwap * barVolume);
+					volume = volume + barVolume;
+					tradeCount = tradeCount + 5 + j;
+				}
+				directTradestrategy.getStrategyData().buildCandle(open.plusSeconds(BAR_SIZE * i), 10 + (i * 0.1),
+						high, low, close, volume, value / volume, tradeCount, 1, null);
+			}
+
+			brokerModel.rollupCandles(tradestrategy, rollupTradestrategy);
+
+			CandleSeries rollupSeries = rollupTradestrategy.getStrategyData().getBaseCandleSeries();
+			CandleSeries directSeries = directTradestrategy.getStrategyData().getBaseCandleSeries();
+			assertEquals("1", 4, directSeries.getItemCount());
+			assertEquals("2", directSeries.getItemCount(), rollupSeries.getItemCount());
+			for (int i = 0; i < directSeries.getItemCount(); i++) {
+				CandleItem directItem = (CandleItem) directSeries.getDataItem(i);
+				CandleItem rollupItem = (CandleItem) rollupSeries.getDataItem(i);
+				assertEquals("3", directItem.getPeriod().getStart(), rollupItem.getPeriod().getStart());
+				assertEquals("4", directItem.getOpen(), rollupItem.getOpen(), 0.000001);
+				assertEquals("5", directItem.getHigh(), rollupItem.getHigh(), 0.000001);
+				assertEquals("6", directItem.getLow(), rollupItem.getLow(), 0.000001);
+				assertEquals("7", directItem.getClose(), rollupItem.getClose(), 0.000001);
+				assertEquals("8", directItem.getVolume(), rollupItem.getVolume());
+				assertEquals("9", directItem.getCount(), rollupItem.getCount());
+				assertEquals("10", directItem.getVwap(), rollupItem.getVwap(), 0.000001);
+			}
+			directTradestrategy.getStrategyData().cancel();
+
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testFailedRequestClearsRollups() {
+		try {
+			List<Tradestrategy> rollupTradestrategies = new ArrayList<Tradestrategy>();
+			rollupTradestrategies.add(rollupTradestrategy);
+			assertFalse("1", brokerModel.isConnected());
+			try {
+				brokerModel.onBrokerData(tradestrategy, tradestrategy.getTradingday().getClose(),
+						rollupTradestrategies);
+				fail("2");
+			} catch (BrokerModelException ex) {
+				_log.info("Request failed as not connected Msg: " + ex.getMessage());
+			}
+			assertFalse("3", brokerModel.isRollupRequest(rollupTradestrategy.getId()));
+			assertFalse("4", brokerModel.getHistoricalData().containsKey(rollupTradestrategy.getId()));
+
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testCancelledRequestClearsRollups() {
+		try {
+			List<Tradestrategy> rollupTradestrategies = new ArrayList<Tradestrategy>();
+			rollupTradestrategies.add(rollupTradestrategy);
+
+			brokerModel.getHistoricalData().put(tradestrategy.getId(), tradestrategy);
+			brokerModel.addRollupRequests(tradestrategy, rollupTradestrategies);
+			assertTrue("1", brokerModel.isRollupRequest(rollupTradestrategy.getId()));
+			brokerModel.onCancelBrokerData(tradestrategy);
+			assertFalse("2", brokerModel.isRollupRequest(rollupTradestrategy.getId()));
+			assertFalse("3", brokerModel.getHistoricalData().containsKey(tradestrategy.getId()));
+			assertFalse("4", brokerModel.getHistoricalData().containsKey(rollupTradestrategy.getId()));
+
+			/*
+			 * An error on the request clears its rollups in the same way.
+			 */
+			brokerModel.getHistoricalData().put(tradestrategy.getId(), tradestrategy);
+			brokerModel.addRollupRequests(tradestrategy, rollupTradestrategies);
+			brokerModel.error(tradestrategy.getId(), 162, "Historical Market Data Service error message");
+			assertFalse("5", brokerModel.isRollupRequest(rollupTradestrategy.getId()));
+			assertFalse("6", brokerModel.getHistoricalData().containsKey(tradestrategy.getId()));
+			assertFalse("7", brokerModel.getHistoricalData().containsKey(rollupTradestrategy.getId()));
+
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method getTradestrategy.
+	 * 
+	 * @param contract
+	 *            Contract
+	 * @param tradingday
+	 *            Tradingday
+	 * @param idTradestrategy
+	 *            Integer
+	 * @param barSize
+	 *            Integer
+	 * @return Tradestrategy
+	 */
+	private Tradestrategy getTradestrategy(Contract contract, Tradingday tradingday, Integer idTradestrategy,
+			Integer barSize) {
+		Tradestrategy item = new Tradestrategy(contract, tradingday, new Strategy("Test"), new Portfolio(),
+				new BigDecimal(100), "BUY", "0", true, 1, barSize);
+		item.setIdTradeStrategy(idTradestrategy);
+		item.setStrategyData(StrategyData.create(item));
+		return item;
+	}
+}
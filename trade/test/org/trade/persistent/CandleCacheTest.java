@@ -0,0 +1,367 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.persistent;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.util.TradingCalendar;
+import org.trade.persistent.dao.Candle;
+import org.trade.persistent.dao.Contract;
+import org.trade.persistent.dao.Tradingday;
+
+/**
+ * Some tests for the {@link CandleCache} class. The candles are read from a
+ * PersistentModel that counts the reads so no database is needed.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class CandleCacheTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(CandleCacheTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	private static final Integer ID_CONTRACT = 1;
+	private static final Integer BAR_SIZE = 300;
+
+	private final List<Candle> candles = new ArrayList<Candle>();
+	private int reads = 0;
+	private boolean invalidateOnRead = false;
+	private final List<ZonedDateTime> readStarts = new ArrayList<ZonedDateTime>();
+	private Contract contract = null;
+	private PersistentModel persistentModel = null;
+	private ZonedDateTime day1Open = null;
+	private ZonedDateTime day2Open = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		CandleCache.clear();
+		contract = new Contract("STK", "TEST", "SMART", "USD", null, null);
+		contract.setIdContract(ID_CONTRACT);
+		day1Open = ZonedDateTime.of(2016, 3, 1, 9, 30, 0, 0, TradingCalendar.MKT_TIMEZONE);
+		day2Open = day1Open.plusDays(1);
+		addCandles(day1Open, 3);
+		addCandles(day2Open, 4);
+		persistentModel = (PersistentModel) Proxy.newProxyInstance(PersistentModel.class.getClassLoader(),
+				new Class<?>[] { PersistentModel.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (!"findCandlesByContractDateRangeBarSize".equals(method.getName()))
+							throw new UnsupportedOperationException(method.getName());
+						reads++;
+						if (invalidateOnRead)
+							CandleCache.invalidate(ID_CONTRACT, BAR_SIZE, day1Open);
+						ZonedDateTime startOpenDate = (ZonedDateTime) args[1];
+						ZonedDateTime endOpenDate = (ZonedDateTime) args[2];
+						readStarts.add(startOpenDate);
+						List<Candle> items = new ArrayList<Candle>();
+						for (Candle candle : candles) {
+							ZonedDateTime open = candle.getTradingday().getOpen();
+							if (!open.isBefore(startOpenDate) && !open.isAfter(endOpenDate)
+									&& candle.getBarSize().equals(args[3]))
+								items.add(candle);
+						}
+						return items;
+					}
+				});
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		CandleCache.clear();
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testFindCandles() {
+		try {
+			long hits = CandleCache.getHits();
+			List<Candle> items = CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT,
+					day1Open, day1Open, BAR_SIZE);
+			assertEquals("1", 3, items.size());
+			assertEquals("2", 1, reads);
+
+			items = CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT, day1Open,
+					day1Open, BAR_SIZE);
+			assertEquals("3", 3, items.size());
+			assertEquals("4", 1, reads);
+			assertEquals("5", hits + 1, CandleCache.getHits());
+
+			Candle candle = items.get(1);
+			assertNotSame("6", candles.get(1), candle);
+			assertEquals("7", candles.get(1).getStartPeriod(), candle.getStartPeriod());
+			assertEquals("8", candles.get(1).getEndPeriod(), candle.getEndPeriod());
+			assertEquals("9", candles.get(1).getClose(), candle.getClose());
+			assertEquals("10", candles.get(1).getVolume(), candle.getVolume());
+			assertNull("11", candle.getTradeCount());
+
+			items.clear();
+			items = CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT, day1Open,
+					day2Open, BAR_SIZE);
+			assertEquals("12", 7, items.size());
+			assertEquals("13", 2, reads);
+			assertTrue("14", TradingCalendar.sameDay(day2Open, readStarts.get(1)));
+			assertTrue("15", items.get(3).getStartPeriod().isAfter(items.get(2).getStartPeriod()));
+
+			items = CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT, day2Open,
+					day2Open, BAR_SIZE);
+			assertEquals("16", 4, items.size());
+			assertEquals("17", 2, reads);
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testInvalidate() {
+		try {
+			CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT, day1Open, day2Open,
+					BAR_SIZE);
+			assertEquals("1", 1, reads);
+			assertEquals("2", 7, CandleCache.getCandleCount());
+
+			CandleCache.invalidate(ID_CONTRACT, BAR_SIZE, day2Open);
+			assertEquals("3", 3, CandleCache.getCandleCount());
+			CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT, day1Open, day1Open,
+					BAR_SIZE);
+			assertEquals("4", 1, reads);
+			CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT, day2Open, day2Open,
+					BAR_SIZE);
+			assertEquals("5", 2, reads);
+
+			CandleCache.invalidate(ID_CONTRACT);
+			assertEquals("6", 0, CandleCache.getCandleCount());
+			CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT, day1Open, day1Open,
+					BAR_SIZE);
+			assertEquals("7", 3, reads);
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testInvalidateWhileReading() {
+		try {
+			invalidateOnRead = true;
+			List<Candle> items = CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT,
+					day1Open, day1Open, BAR_SIZE);
+			assertEquals("1", 3, items.size());
+			assertEquals("2", 1, reads);
+			assertEquals("3", 0, CandleCache.getCandleCount());
+
+			invalidateOnRead = false;
+			items = CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT, day1Open,
+					day1Open, BAR_SIZE);
+			assertEquals("4", 3, items.size());
+			assertEquals("5", 2, reads);
+			assertEquals("6", 3, CandleCache.getCandleCount());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testEmptyDay() {
+		try {
+			ZonedDateTime day3Open = day2Open.plusDays(1);
+			List<Candle> items = CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT,
+					day3Open, day3Open, BAR_SIZE);
+			assertTrue("1", items.isEmpty());
+			items = CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT, day3Open,
+					day3Open, BAR_SIZE);
+			assertTrue("2", items.isEmpty());
+			assertEquals("3", 1, reads);
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testKeepScale() {
+		try {
+			candles.get(0).setClose(new BigDecimal("11.7525"));
+			candles.get(1).setClose(new BigDecimal("11.750"));
+			candles.get(2).setVwap(null);
+			CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT, day1Open, day1Open,
+					BAR_SIZE);
+			List<Candle> items = CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT,
+					day1Open, day1Open, BAR_SIZE);
+			assertEquals("1", 1, reads);
+			assertEquals("2", new BigDecimal("11.7525"), items.get(0).getClose());
+			assertEquals("3", new BigDecimal("11.750"), items.get(1).getClose());
+			assertEquals("4", new BigDecimal("12.50"), items.get(0).getHigh());
+			assertNull("5", items.get(2).getVwap());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testContractAndTradingday() {
+		try {
+			CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT, day1Open, day2Open,
+					BAR_SIZE);
+			List<Candle> items = CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT,
+					day1Open, day2Open, BAR_SIZE);
+			assertEquals("1", 1, reads);
+			assertEquals("2", 7, items.size());
+			for (Candle candle : items) {
+				assertSame("3", contract, candle.getContract());
+				assertNotNull("4", candle.getTradingday());
+				assertTrue("5", TradingCalendar.sameDay(candle.getTradingday().getOpen(), candle.getStartPeriod()));
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testLoadMissingDays() {
+		try {
+			ZonedDateTime day3Open = day2Open.plusDays(1);
+			addCandles(day3Open, 2);
+			CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT, day2Open, day2Open,
+					BAR_SIZE);
+			assertEquals("1", 1, reads);
+
+			/*
+			 * Day one and three are read on their own as day two is cached.
+			 */
+			List<Candle> items = CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT,
+					day1Open, day3Open, BAR_SIZE);
+			assertEquals("2", 9, items.size());
+			assertEquals("3", 3, reads);
+			assertTrue("4", TradingCalendar.sameDay(day1Open, readStarts.get(1)));
+			assertTrue("5", TradingCalendar.sameDay(day3Open, readStarts.get(2)));
+			for (int i = 1; i < items.size(); i++) {
+				assertTrue("6", items.get(i).getStartPeriod().isAfter(items.get(i - 1).getStartPeriod()));
+			}
+
+			items = CandleCache.findCandlesByContractDateRangeBarSize(persistentModel, ID_CONTRACT, day1Open,
+					day3Open, BAR_SIZE);
+			assertEquals("7", 9, items.size());
+			assertEquals("8", 3, reads);
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method addCandles.
+	 * 
+	 * @param open
+	 *            ZonedDateTime
+	 * @param count
+	 *            int
+	 */
+	private void addCandles(ZonedDateTime open, int count) {
+		Tradingday tradingday = new Tradingday(open, open.withHour(16).withMinute(0));
+		for (int i = 0; i < count; i++) {
+			Candle candle = new Candle();
+			candle.setContract(contract);
+			candle.setTradingday(tradingday);
+			candle.setBarSize(BAR_SIZE);
+			candle.setStartPeriod(open.plusSeconds(BAR_SIZE * i));
+			candle.setEndPeriod(open.plusSeconds((BAR_SIZE * (i + 1)) - 1));
+			candle.setLastUpdateDate(candle.getEndPeriod());
+			candle.setOpen(new BigDecimal("10.00").add(new BigDecimal(i)));
+			candle.setHigh(new BigDecimal("12.50").add(new BigDecimal(i)));
+			candle.setLow(new BigDecimal("9.25").add(new BigDecimal(i)));
+			candle.setClose(new BigDecimal("11.75").add(new BigDecimal(i)));
+			candle.setVwap(new BigDecimal("11.10").add(new BigDecimal(i)));
+			candle.setVolume(1000L + i);
+			candles.add(candle);
+		}
+	}
+}
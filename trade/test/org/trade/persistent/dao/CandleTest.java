@@ -39,6 +39,7 @@ import static org.junit.Assert.*;
 
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -52,6 +53,7 @@ import org.slf4j.LoggerFactory;
 import org.trade.core.dao.AspectHome;
 import org.trade.core.util.TradingCalendar;
 import org.trade.dictionary.valuetype.BarSize;
+import org.trade.strategy.data.CandleSeries;
 import org.trade.strategy.data.StrategyData;
 import org.trade.strategy.data.base.RegularTimePeriod;
 import org.trade.strategy.data.candle.CandleItem;
@@ -174,4 +176,66 @@ public class CandleTest {
 			fail(msg);
 		}
 	}
+
+	@Test
+	public void testBulkInsertCandleSeries() {
+
+		try {
+
+			CandleHome candleHome = new CandleHome();
+			AspectHome aspectHome = new AspectHome();
+			this.tradestrategy.setStrategyData(StrategyData.create(this.tradestrategy));
+			CandleSeries candleSeries = this.tradestrategy.getStrategyData().getBaseCandleSeries();
+			StrategyData.doDummyData(candleSeries, this.tradestrategy.getTradingday(), 1, BarSize.FIVE_MIN, true, 0);
+			assertFalse("1", candleSeries.isEmpty());
+
+			CandleHome.setBulkInsertSize(0);
+			candleHome.persistCandleSeries(candleSeries);
+			List<Candle> candles = candleHome.findCandlesByContractDateRangeBarSize(
+					this.tradestrategy.getContract().getIdContract(), this.tradestrategy.getTradingday().getOpen(),
+					this.tradestrategy.getTradingday().getOpen(), candleSeries.getBarSize());
+			assertEquals("2", candleSeries.getItemCount(), candles.size());
+
+			CandleHome.setBulkInsertSize(7);
+			candleHome.persistCandleSeries(candleSeries);
+			List<Candle> bulkCandles = candleHome.findCandlesByContractDateRangeBarSize(
+					this.tradestrategy.getContract().getIdContract(), this.tradestrategy.getTradingday().getOpen(),
+					this.tradestrategy.getTradingday().getOpen(), candleSeries.getBarSize());
+			assertEquals("3", candles.size(), bulkCandles.size());
+
+			for (int i = 0; i < candles.size(); i++) {
+				Candle candle = candles.get(i);
+				Candle bulkCandle = bulkCandles.get(i);
+				assertEquals("4", candle.getStartPeriod().toInstant(), bulkCandle.getStartPeriod().toInstant());
+				assertEquals("5", candle.getEndPeriod().toInstant(), bulkCandle.getEndPeriod().toInstant());
+				assertEquals("6", 0, candle.getOpen().compareTo(bulkCandle.getOpen()));
+				assertEquals("7", 0, candle.getHigh().compareTo(bulkCandle.getHigh()));
+				assertEquals("8", 0, candle.getLow().compareTo(bulkCandle.getLow()));
+				assertEquals("9", 0, candle.getClose().compareTo(bulkCandle.getClose()));
+				assertEquals("10", candle.getVolume(), bulkCandle.getVolume());
+				assertEquals("11", candle.getTradeCount(), bulkCandle.getTradeCount());
+				assertEquals("12", candle.getBarSize(), bulkCandle.getBarSize());
+
+				Candle seriesCandle = ((CandleItem) candleSeries.getDataItem(i)).getCandle();
+				assertEquals("13", bulkCandle.getIdCandle(), seriesCandle.getIdCandle());
+				assertEquals("14", bulkCandle.getVersion(), seriesCandle.getVersion());
+			}
+
+			/*
+			 * The candles in the series can still be saved one at a time as
+			 * the CandleWriter does for realtime bars.
+			 */
+			Candle lastCandle = ((CandleItem) candleSeries.getDataItem(candleSeries.getItemCount() - 1)).getCandle();
+			lastCandle.setClose(lastCandle.getClose().add(new BigDecimal("0.01")));
+			lastCandle = aspectHome.persist(lastCandle);
+			assertNotNull("15", lastCandle.getIdCandle());
+
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		} finally {
+			CandleHome.setBulkInsertSize(0);
+		}
+	}
 }
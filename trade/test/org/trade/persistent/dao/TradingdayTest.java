@@ -161,4 +161,42 @@ public class TradingdayTest {
 			fail(msg);
 		}
 	}
+
+	@Test
+	public void testFindTradingdaysByDateRange() {
+
+		try {
+			TradingdayHome tradingdayHome = new TradingdayHome();
+			ZonedDateTime open = TradingCalendar.getTradingDayStart(
+					TradingCalendar.getPrevTradingDay(TradingCalendar.getDateTimeNowMarketTimeZone()));
+			/*
+			 * The grid plan loads the orders, the strategy plan also loads the
+			 * portfolio accounts and indicator series. These are read after
+			 * the EntityManager is closed.
+			 */
+			Tradingdays tradingdays = tradingdayHome.findTradingdaysByDateRange(open, open, false);
+			for (Tradingday tradingday : tradingdays.getTradingdays()) {
+				for (Tradestrategy tradestrategy : tradingday.getTradestrategies()) {
+					assertNotNull("1", tradestrategy.getContract().getSymbol());
+					assertNotNull("2", tradestrategy.getStrategy().getName());
+					assertNotNull("3", tradestrategy.getPortfolio().getName());
+					assertTrue("4", tradestrategy.getTradeOrders().size() >= 0);
+				}
+			}
+			tradingdays = tradingdayHome.findTradingdaysByDateRange(open, open, true);
+			for (Tradingday tradingday : tradingdays.getTradingdays()) {
+				_log.info("Tradingday Id = " + tradingday.getIdTradingDay() + " Tradestrategies: "
+						+ tradingday.getTradestrategies().size());
+				for (Tradestrategy tradestrategy : tradingday.getTradestrategies()) {
+					assertTrue("5", tradestrategy.getTradeOrders().size() >= 0);
+					assertTrue("6", tradestrategy.getPortfolio().getPortfolioAccounts().size() >= 0);
+					assertTrue("7", tradestrategy.getStrategy().getIndicatorSeries().size() >= 0);
+				}
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
 }
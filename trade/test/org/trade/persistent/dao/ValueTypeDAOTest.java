@@ -50,6 +50,7 @@ import org.junit.Test;
 import org.junit.rules.TestName;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.trade.core.lookup.DBTableLookupServiceProvider;
 import org.trade.core.valuetype.DAODecode;
 import org.trade.core.valuetype.Decode;
 import org.trade.core.valuetype.Money;
@@ -189,4 +190,26 @@ public class ValueTypeDAOTest {
 			fail(msg);
 		}
 	}
+
+	@Test
+	public void testDAOStrategyClearLookup() {
+		try {
+			Vector<Decode> decodes = new DAOStrategy().getCodesDecodes();
+			assertFalse("1", decodes.isEmpty());
+			/*
+			 * A change to another class keeps the lookup, a change to a
+			 * Strategy reloads it.
+			 */
+			DBTableLookupServiceProvider.clearLookup(Candle.class);
+			assertEquals("2", decodes.size(), new DAOStrategy().getCodesDecodes().size());
+			DBTableLookupServiceProvider.clearLookup(Strategy.class);
+			assertEquals("3", decodes.size(), new DAOStrategy().getCodesDecodes().size());
+			DBTableLookupServiceProvider.clearLookup("DAO_DECODE");
+			assertEquals("4", decodes.size(), new DAOStrategy().getCodesDecodes().size());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
 }
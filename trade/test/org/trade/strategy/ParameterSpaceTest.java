@@ -0,0 +1,174 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Some tests for the {@link ParameterSpace} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class ParameterSpaceTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(ParameterSpaceTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		StrategyParameters.clear();
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testParse() {
+		try {
+			ParameterSpace parameterSpace = ParameterSpace
+					.parse("BarBodyPercent=5,10,15;TimeOutMinutes=60, 120;PercentOfPriceFactor=0.5");
+			assertEquals("1", 3, parameterSpace.getParameters().size());
+			assertEquals("2", 6, parameterSpace.size());
+			assertEquals("3", Integer.valueOf(10), parameterSpace.getParameters().get("BarBodyPercent").get(1));
+			assertEquals("4", Integer.valueOf(120), parameterSpace.getParameters().get("TimeOutMinutes").get(1));
+			assertEquals("5", Double.valueOf(0.5),
+					parameterSpace.getParameters().get("PercentOfPriceFactor").get(0));
+			assertTrue("6", ParameterSpace.parse("").isEmpty());
+			assertEquals("7", 0, ParameterSpace.parse(null).size());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testGridPoints() {
+		try {
+			ParameterSpace parameterSpace = ParameterSpace.parse("A=1,2,3;B=10,20");
+			List<Map<String, Object>> points = parameterSpace.getGridPoints();
+			assertEquals("1", 6, points.size());
+			assertEquals("2", Integer.valueOf(1), points.get(0).get("A"));
+			assertEquals("3", Integer.valueOf(10), points.get(0).get("B"));
+			assertEquals("4", Integer.valueOf(1), points.get(1).get("A"));
+			assertEquals("5", Integer.valueOf(20), points.get(1).get("B"));
+			assertEquals("6", Integer.valueOf(3), points.get(5).get("A"));
+			assertEquals("7", Integer.valueOf(20), points.get(5).get("B"));
+			assertEquals("8", 6, new HashSet<Map<String, Object>>(points).size());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testRandomPoints() {
+		try {
+			ParameterSpace parameterSpace = ParameterSpace.parse("A=1,2,3,4,5;B=10,20,30,40");
+			List<Map<String, Object>> points = parameterSpace.getRandomPoints(7, 42);
+			assertEquals("1", 7, points.size());
+			assertEquals("2", 7, new HashSet<Map<String, Object>>(points).size());
+			assertEquals("3", points, parameterSpace.getRandomPoints(7, 42));
+			assertEquals("4", 20, parameterSpace.getRandomPoints(50, 42).size());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testStrategyParameters() {
+		try {
+			ParameterSpace parameterSpace = ParameterSpace.parse("BarBodyPercent=5,10");
+			StrategyParameters.setValues(parameterSpace.getGridPoints().get(1));
+			assertEquals("1", Integer.valueOf(10), StrategyParameters.getValue("BarBodyPercent"));
+			assertNull("2", StrategyParameters.getValue("TimeOutMinutes"));
+			StrategyParameters.clear();
+			assertNull("3", StrategyParameters.getValue("BarBodyPercent"));
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+}
@@ -2,6 +2,10 @@ package org.trade.strategy.data;
 
 import static org.junit.Assert.*;
 
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -11,8 +15,10 @@ import org.junit.Test;
 import org.junit.rules.TestName;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.trade.persistent.dao.Candle;
 import org.trade.persistent.dao.Tradestrategy;
 import org.trade.persistent.dao.TradestrategyTest;
+import org.trade.strategy.data.candle.CandleItem;
 import org.trade.ui.TradeAppLoadConfig;
 
 public class CandleSeriesTest {
@@ -87,4 +93,99 @@ public class CandleSeriesTest {
 		}
 	}
 
+	@Test
+	public void testColumnarCandleSeries() {
+		try {
+
+			CandleSeries candleSeries = new CandleSeries(this.tradestrategy.getContract().getSymbol(),
+					this.tradestrategy.getContract(), this.tradestrategy.getBarSize(),
+					this.tradestrategy.getTradingday().getOpen(), this.tradestrategy.getTradingday().getClose());
+			candleSeries.setColumnar(false);
+			CandleSeries columnarSeries = new CandleSeries(this.tradestrategy.getContract().getSymbol(),
+					this.tradestrategy.getContract(), this.tradestrategy.getBarSize(),
+					this.tradestrategy.getTradingday().getOpen(), this.tradestrategy.getTradingday().getClose());
+			columnarSeries.setColumnar(true);
+
+			StrategyData.doDummyData(candleSeries, this.tradestrategy.getTradingday(), 2,
+					this.tradestrategy.getBarSize(), true, 0);
+			StrategyData.doDummyData(columnarSeries, this.tradestrategy.getTradingday(), 2,
+					this.tradestrategy.getBarSize(), true, 0);
+
+			assertEquals("1", candleSeries.getItemCount(), columnarSeries.getItemCount());
+			for (int i = 0; i < candleSeries.getItemCount(); i++) {
+				CandleItem item = (CandleItem) candleSeries.getDataItem(i);
+				CandleItem columnarItem = (CandleItem) columnarSeries.getDataItem(i);
+				assertTrue("2", columnarItem.isColumnar());
+				assertEquals("3", item.getPeriod(), columnarItem.getPeriod());
+				assertEquals("4", item.getOpen(), columnarItem.getOpen(), 0);
+				assertEquals("5", item.getHigh(), columnarItem.getHigh(), 0);
+				assertEquals("6", item.getLow(), columnarItem.getLow(), 0);
+				assertEquals("7", item.getClose(), columnarItem.getClose(), 0);
+				assertEquals("8", item.getVwap(), columnarItem.getVwap(), 0);
+				assertEquals("9", item.getVolume(), columnarItem.getVolume());
+				assertEquals("10", item.getCount(), columnarItem.getCount());
+			}
+
+			/*
+			 * The entity is only created on request and reflects any updates
+			 * made to the columns.
+			 */
+			CandleItem columnarItem = (CandleItem) columnarSeries.getDataItem(columnarSeries.getItemCount() - 1);
+			Candle candle = columnarItem.getCandle();
+			assertNotNull("11", candle);
+			assertEquals("12", columnarItem.getClose(), candle.getClose().doubleValue(), 0);
+			columnarItem.setClose(columnarItem.getClose() + 1);
+			assertEquals("13", columnarItem.getClose(), columnarItem.getCandle().getClose().doubleValue(), 0);
+			assertSame("14", candle, columnarItem.getCandle());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testRollingCandleSnapshots() {
+		try {
+
+			CandleSeries candleSeries = new CandleSeries(this.tradestrategy.getContract().getSymbol(),
+					this.tradestrategy.getContract(), this.tradestrategy.getBarSize(),
+					this.tradestrategy.getTradingday().getOpen(), this.tradestrategy.getTradingday().getClose());
+			ZonedDateTime time = this.tradestrategy.getTradingday().getOpen();
+			int rollupInterval = 3;
+
+			/*
+			 * Rolling candles handed out must keep their values as later
+			 * updates roll the window on.
+			 */
+			List<CandleSeries.RollingCandle> rollingCandles = new ArrayList<CandleSeries.RollingCandle>();
+			List<Double> closes = new ArrayList<Double>();
+			List<Double> highs = new ArrayList<Double>();
+			for (int i = 0; i < 20; i++) {
+				double price = 100 + i;
+				candleSeries.buildCandle(time.plusSeconds(i * 5), price, price + 1, price - 1, price, 100, price, 1,
+						rollupInterval, time.plusSeconds(i * 5));
+				CandleSeries.RollingCandle rollingCandle = candleSeries.getRollingCandle();
+				rollingCandles.add(rollingCandle);
+				closes.add(rollingCandle.getClose());
+				highs.add(rollingCandle.getHigh());
+				if (i >= rollupInterval) {
+					assertEquals("1", closes.get(i - rollupInterval),
+							candleSeries.getPreviousRollingCandle().getClose(), 0);
+					assertEquals("2", rollingCandles.get(i - rollupInterval).getPeriod(),
+							candleSeries.getPreviousRollingCandle().getPeriod());
+				}
+			}
+			for (int i = 0; i < rollingCandles.size(); i++) {
+				assertEquals("3", closes.get(i), rollingCandles.get(i).getClose(), 0);
+				assertEquals("4", highs.get(i), rollingCandles.get(i).getHigh(), 0);
+				assertEquals("5", 100 + i, rollingCandles.get(i).getClose(), 0);
+			}
+			assertNotSame("6", candleSeries.getRollingCandle(0), candleSeries.getRollingCandle(1));
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
 }
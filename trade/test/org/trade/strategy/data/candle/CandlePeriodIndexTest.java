@@ -0,0 +1,202 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.candle;
+
+import static org.junit.Assert.*;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.persistent.dao.Contract;
+import org.trade.strategy.data.CandleSeries;
+
+/**
+ * Some tests for the {@link CandlePeriodIndex} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class CandlePeriodIndexTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(CandlePeriodIndexTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	private static final int BAR_SIZE = 300;
+	private ZonedDateTime open = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		open = ZonedDateTime.of(2016, 3, 1, 9, 30, 0, 0, ZoneId.of("America/New_York"));
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testIndexOf() {
+		try {
+			CandlePeriodIndex index = new CandlePeriodIndex(BAR_SIZE);
+			for (int i = 0; i < 200; i++) {
+				index.add(new CandlePeriod(open.plusSeconds(i * BAR_SIZE), BAR_SIZE));
+			}
+			assertEquals("1", 200, index.size());
+			for (int i = 0; i < 200; i++) {
+				ZonedDateTime start = open.plusSeconds(i * BAR_SIZE);
+				assertEquals("2", i, index.indexOfStart(start));
+				assertEquals("3", i, index.indexOf(start.plusSeconds(BAR_SIZE / 2)));
+			}
+			assertEquals("4", -1, index.indexOf(open.minusSeconds(1)));
+			assertEquals("5", -1, index.indexOfStart(open.plusSeconds(1)));
+			assertEquals("6", -1, index.indexOf(open.plusSeconds(201 * BAR_SIZE)));
+			for (int i = 0; i < 200; i++) {
+				long startMillis = open.plusSeconds(i * BAR_SIZE).toInstant().toEpochMilli();
+				assertEquals("7", i, index.indexOf(startMillis));
+				assertEquals("8", i, index.indexOf(startMillis + (BAR_SIZE * 1000L) - 1));
+			}
+			assertEquals("9", -1, index.indexOf(open.toInstant().toEpochMilli() - 1));
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testIndexOfAfterEviction() {
+		try {
+			CandlePeriodIndex index = new CandlePeriodIndex(BAR_SIZE);
+			int window = 50;
+			for (int i = 0; i < 1000; i++) {
+				if (index.size() == window)
+					index.removeFirst();
+				index.add(new CandlePeriod(open.plusSeconds(i * BAR_SIZE), BAR_SIZE));
+
+				int first = Math.max(0, i - window + 1);
+				assertEquals("1", i - first + 1, index.size());
+				if (first > 0) {
+					assertEquals("2", -1, index.indexOfStart(open.plusSeconds((first - 1) * BAR_SIZE)));
+					assertEquals("3", -1, index.indexOf(open.plusSeconds((first - 1) * BAR_SIZE + 1)));
+				}
+				for (int j = first; j <= i; j++) {
+					ZonedDateTime start = open.plusSeconds(j * BAR_SIZE);
+					assertEquals("4", j - first, index.indexOfStart(start));
+					assertEquals("5", j - first, index.indexOf(start.plusSeconds(1)));
+				}
+			}
+			index.clear();
+			assertEquals("6", 0, index.size());
+			assertEquals("7", -1, index.indexOf(open));
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testCandleSeriesIndexOfAfterEviction() {
+		try {
+			CandleSeries candleSeries = new CandleSeries("TEST", new Contract(), BAR_SIZE, open,
+					open.plusSeconds(2000 * BAR_SIZE));
+			candleSeries.setMaximumItemCount(100);
+			for (int i = 0; i < 400; i++) {
+				candleSeries.add(new CandleItem(null, null, new CandlePeriod(open.plusSeconds(i * BAR_SIZE), BAR_SIZE),
+						10, 11, 9, 10, 100, 10, 1, open), true);
+				/*
+				 * Look up the first, middle and last items so the index is
+				 * built and then maintained as items are evicted.
+				 */
+				int itemCount = candleSeries.getItemCount();
+				int[] indexes = { 0, itemCount / 2, itemCount - 1 };
+				for (int index : indexes) {
+					CandleItem candleItem = (CandleItem) candleSeries.getDataItem(index);
+					assertEquals("1", index, candleSeries.indexOf(candleItem.getPeriod()));
+					assertEquals("2", index, candleSeries.indexOf(candleItem.getPeriod().getStart().plusSeconds(1)));
+				}
+			}
+			assertEquals("3", 100, candleSeries.getItemCount());
+			assertEquals("4", -1, candleSeries.indexOf(open.plusSeconds(299 * BAR_SIZE)));
+			for (int i = 0; i < candleSeries.getItemCount(); i++) {
+				CandleItem candleItem = (CandleItem) candleSeries.getDataItem(i);
+				assertEquals("5", open.plusSeconds((300 + i) * BAR_SIZE), candleItem.getPeriod().getStart());
+				assertEquals("6", i, candleSeries.indexOf(candleItem.getPeriod().getStart()));
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+}
@@ -0,0 +1,390 @@
+/* ===========================================================
+ * TradeManager : An application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.kernel;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Correctness harness for the streaming indicator kernels. Each kernel is fed
+ * a random series of new bars and intra bar updates and compared with the
+ * value recalculated from the full set of values the way the IndicatorSeries
+ * did before the kernels were used.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class IndicatorKernelTest {
+
+	private final static Logger _log = LoggerFactory.getLogger(IndicatorKernelTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	private static final int BARS = 5000;
+	private static final double TOLERANCE = 1e-9;
+
+	private Random random = null;
+	private LinkedList<Double> yyValues = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		random = new Random(20170101);
+		yyValues = new LinkedList<Double>();
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testRunningSum() {
+		try {
+			int length = 20;
+			RunningSum kernel = new RunningSum(length);
+			double price = 30;
+			for (int i = 0; i < BARS; i++) {
+				boolean newBar = nextNewBar(i);
+				price = nextPrice(price);
+				kernel.update(price, newBar);
+				updateValues(price, newBar, length);
+
+				double sum = 0;
+				for (double value : yyValues) {
+					sum = sum + value;
+				}
+				assertEquals("1", yyValues.size(), kernel.size());
+				assertEquals("2", sum, kernel.getSum(), TOLERANCE * Math.abs(sum));
+				assertEquals("3", yyValues.getFirst(), kernel.get(0), 0);
+			}
+			kernel.clear();
+			assertEquals("4", 0, kernel.size());
+			assertEquals("5", 0, kernel.getSum(), 0);
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testExponentialAverage() {
+		try {
+			int length = 10;
+			double multiplyer = 2 / (length + 1.0d);
+			ExponentialAverage kernel = new ExponentialAverage(length);
+			double price = 30;
+			double prevEMA = 0;
+			double ema = 0;
+			for (int i = 0; i < BARS; i++) {
+				boolean newBar = nextNewBar(i);
+				price = nextPrice(price);
+				kernel.update(price, newBar);
+				updateValues(price, newBar, length);
+				if (newBar) {
+					prevEMA = ema;
+				}
+				if (!kernel.isSeeded() && yyValues.size() == length) {
+					kernel.seed();
+				}
+				if (kernel.isSeeded()) {
+					if (kernel.getCount() == length) {
+						ema = sum(yyValues) / length;
+					} else {
+						ema = ((price - prevEMA) * multiplyer) + prevEMA;
+					}
+					assertEquals("1", ema, kernel.getValue(), TOLERANCE * Math.abs(ema));
+				}
+			}
+			assertTrue("2", kernel.isSeeded());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testWilderSmoothing() {
+		try {
+			int length = 14;
+			WilderSmoothing kernel = new WilderSmoothing(length);
+			double price = 30;
+			double prevAvg = 0;
+			double avg = 0;
+			for (int i = 0; i < BARS; i++) {
+				boolean newBar = nextNewBar(i);
+				price = nextPrice(price);
+				double range = Math.abs(price - 30);
+				kernel.update(range, newBar);
+				updateValues(range, newBar, Integer.MAX_VALUE);
+				if (newBar) {
+					prevAvg = avg;
+				}
+				if (!kernel.isSeeded() && yyValues.size() == length - 1) {
+					/*
+					 * Seed before a full period as the ATR does.
+					 */
+					kernel.seed();
+				}
+				if (kernel.isSeeded()) {
+					if (kernel.getCount() == length - 1) {
+						avg = sum(yyValues) / length;
+					} else {
+						avg = ((prevAvg * (length - 1)) + range) / length;
+					}
+					assertEquals("1", avg, kernel.getValue(), TOLERANCE * Math.max(1, Math.abs(avg)));
+				}
+			}
+			assertTrue("2", kernel.isSeeded());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testRollingVariance() {
+		try {
+			int length = 20;
+			RollingVariance kernel = new RollingVariance(length);
+			double price = 30;
+			for (int i = 0; i < BARS; i++) {
+				boolean newBar = nextNewBar(i);
+				price = nextPrice(price);
+				kernel.update(price, newBar);
+				updateValues(price, newBar, length);
+
+				if (yyValues.size() == length) {
+					double mean = sum(yyValues) / length;
+					double sumTotal = 0;
+					for (double value : yyValues) {
+						sumTotal += Math.pow((value - mean), 2);
+					}
+					double std = Math.sqrt(sumTotal / (length - 1));
+					assertEquals("1", mean, kernel.getMean(), TOLERANCE * mean);
+					assertEquals("2", std, kernel.getSampleStandardDeviation(), TOLERANCE * mean);
+				}
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testLinearWeightedSum() {
+		try {
+			int length = 8;
+			LinearWeightedSum kernel = new LinearWeightedSum(length);
+			double price = 30;
+			for (int i = 0; i < BARS; i++) {
+				boolean newBar = nextNewBar(i);
+				price = nextPrice(price);
+				kernel.update(price, newBar);
+				updateValues(price, newBar, length);
+
+				double sumYY = 0;
+				int count = 0;
+				for (int x = yyValues.size(); x > 0; x--) {
+					count = count + (length + 1 - x);
+					sumYY = sumYY + (yyValues.get(x - 1) * (length + 1 - x));
+				}
+				assertEquals("1", count, kernel.getTotalWeight(), 0);
+				assertEquals("2", sumYY / count, kernel.getWeightedMean(), TOLERANCE * price);
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testTriangularAverage() {
+		try {
+			for (int length = 1; length < 12; length++) {
+				int half = length / 2;
+				RunningSum values = new RunningSum((length % 2) != 0 ? half + 1 : half);
+				RunningSum maValues = new RunningSum(length + 1 - values.capacity());
+				yyValues.clear();
+				double price = 30;
+				for (int i = 0; i < BARS / 10; i++) {
+					boolean newBar = nextNewBar(i);
+					price = nextPrice(price);
+					values.update(price, newBar);
+					if (values.isFull()) {
+						maValues.update(values.getMean(), newBar);
+					}
+					updateValues(price, newBar, length);
+
+					if (yyValues.size() == length) {
+						double sumYY = 0;
+						int count = 0;
+						int y = 0;
+						for (int x = 1; x <= half; x++) {
+							sumYY = sumYY + (yyValues.get(y) * x);
+							count = count + x;
+							y++;
+						}
+						if ((length % 2) != 0) {
+							int z = half + 1;
+							sumYY = sumYY + (yyValues.get(y) * z);
+							count = count + z;
+							y++;
+						}
+						for (int x = half; x >= 1; x--) {
+							sumYY = sumYY + (yyValues.get(y) * x);
+							count = count + x;
+							y++;
+						}
+						assertTrue("1", maValues.isFull());
+						assertEquals("2", sumYY / count, maValues.getMean(), TOLERANCE * price);
+					}
+				}
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testRollingExtremum() {
+		try {
+			int length = 14;
+			RollingExtremum high = new RollingExtremum(length, true);
+			RollingExtremum low = new RollingExtremum(length, false);
+			double price = 30;
+			for (int i = 0; i < BARS; i++) {
+				boolean newBar = nextNewBar(i);
+				price = nextPrice(price);
+				high.update(price, newBar);
+				low.update(price, newBar);
+				updateValues(price, newBar, length);
+
+				assertEquals("1", yyValues.size(), high.size());
+				assertEquals("2", Collections.max(yyValues), high.get(), 0);
+				assertEquals("3", Collections.min(yyValues), low.get(), 0);
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: " + ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method updateValues. Maintains the full set of values with the newest
+	 * first.
+	 * 
+	 * @param value
+	 *            double
+	 * @param newBar
+	 *            boolean
+	 * @param length
+	 *            int
+	 */
+	private void updateValues(double value, boolean newBar, int length) {
+		if (newBar || yyValues.isEmpty()) {
+			if (yyValues.size() == length) {
+				yyValues.removeLast();
+			}
+		} else {
+			yyValues.removeFirst();
+		}
+		yyValues.addFirst(value);
+	}
+
+	private boolean nextNewBar(int i) {
+		return i == 0 || random.nextInt(4) == 0;
+	}
+
+	private double nextPrice(double price) {
+		return Math.max(1, price + ((random.nextDouble() - 0.5) * 0.5));
+	}
+
+	private static double sum(LinkedList<Double> values) {
+		double sum = 0;
+		for (double value : values) {
+			sum = sum + value;
+		}
+		return sum;
+	}
+}